@@ -0,0 +1,171 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.bench;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.sf.farrago.util.*;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * FarragoObjectCacheBenchmark measures {@link FarragoObjectCache#pin} and
+ * {@link FarragoObjectCache#unpin} under contention from several threads, for
+ * each victimization policy, with and without segmentation. The cache holds
+ * three quarters of the keyspace, so the mix includes misses and evictions as
+ * well as hits.
+ *
+ * @author agent
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class FarragoObjectCacheBenchmark
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final int KEY_COUNT = 4096;
+
+    private static final long ENTRY_BYTES = 1000;
+
+    //~ Instance fields --------------------------------------------------------
+
+    /**
+     * Number of cache segments; 1 means an unsegmented cache.
+     */
+    @Param({ "1", "16" })
+    public int segments;
+
+    /**
+     * Victimization policy: LRU, TINY_LFU or COST_AWARE.
+     */
+    @Param({ "LRU", "TINY_LFU", "COST_AWARE" })
+    public String policy;
+
+    private FarragoCompoundAllocation owner;
+    private FarragoObjectCache cache;
+    private Integer [] keys;
+    private final FarragoObjectCache.CachedObjectFactory factory =
+        new BenchFactory();
+
+    //~ Methods ----------------------------------------------------------------
+
+    @Setup
+    public void setUp()
+    {
+        FarragoCacheVictimPolicyFactory policyFactory;
+        if (policy.equals("LRU")) {
+            policyFactory = FarragoLruVictimPolicy.FACTORY;
+        } else if (policy.equals("TINY_LFU")) {
+            policyFactory = FarragoTinyLfuVictimPolicy.FACTORY;
+        } else if (policy.equals("COST_AWARE")) {
+            policyFactory = FarragoCostAwareVictimPolicy.FACTORY;
+        } else {
+            throw new IllegalArgumentException(policy);
+        }
+
+        long bytesMax = ENTRY_BYTES * KEY_COUNT * 3 / 4;
+        owner = new FarragoCompoundAllocation();
+        if (segments == 1) {
+            cache =
+                new FarragoObjectCache(
+                    owner,
+                    bytesMax,
+                    policyFactory.newVictimPolicy());
+        } else {
+            cache =
+                new FarragoSegmentedObjectCache(
+                    owner,
+                    bytesMax,
+                    segments,
+                    policyFactory);
+        }
+
+        // pre-box the keys so that the benchmark doesn't measure allocation
+        keys = new Integer[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; ++i) {
+            keys[i] = i;
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        owner.closeAllocation();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object pinUnpin(ThreadState threadState)
+    {
+        Integer key = keys[threadState.nextKeyIndex()];
+        FarragoObjectCache.Entry entry = cache.pin(key, factory, false);
+        Object value = entry.getValue();
+        cache.unpin(entry);
+        return value;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Per-thread source of keys. Keys are skewed towards the low end of the
+     * keyspace, as in a statement cache where a few statements are hot.
+     */
+    @State(Scope.Thread)
+    public static class ThreadState
+    {
+        private final Random random = new Random();
+
+        int nextKeyIndex()
+        {
+            int i = random.nextInt(KEY_COUNT);
+            return (i * i) / KEY_COUNT;
+        }
+    }
+
+    /**
+     * Factory which creates trivial cache values, so that the benchmark
+     * measures the cache itself.
+     */
+    private static class BenchFactory
+        implements FarragoObjectCache.CachedObjectFactory
+    {
+        // implement CachedObjectFactory
+        public void initializeEntry(
+            Object key,
+            FarragoObjectCache.UninitializedEntry entry)
+        {
+            entry.initialize(key, ENTRY_BYTES, true);
+        }
+
+        // implement CachedObjectFactory
+        public boolean isStale(Object value)
+        {
+            return false;
+        }
+    }
+}
+
+// End FarragoObjectCacheBenchmark.java
@@ -0,0 +1,207 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.bench;
+
+import java.math.*;
+
+import java.sql.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.sf.farrago.db.*;
+import net.sf.farrago.jdbc.engine.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+
+/**
+ * FarragoQueryBenchmark measures end-to-end execution of small queries
+ * through the local JDBC driver, iterating the result set with {@link
+ * ResultSet#next} and the typed getters. This covers the Java side of query
+ * execution: the generated {@link net.sf.farrago.runtime.FennelTupleReader}
+ * unmarshalling tuples from Fennel, {@link
+ * org.eigenbase.runtime.CalcTupleIter} running a generated calculator (when
+ * the calc virtual machine is CALCVM_JAVA), and {@link
+ * net.sf.farrago.runtime.FarragoTupleIterResultSet}.
+ *
+ * <p>The statements are prepared once per trial, so preparation and code
+ * generation are not measured.
+ *
+ * @author agent
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class FarragoQueryBenchmark
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final String SCHEMA_NAME = "JMH_BENCH";
+
+    //~ Instance fields --------------------------------------------------------
+
+    /**
+     * Value of the calcVirtualMachine system parameter during the trial.
+     */
+    @Param({ "CALCVM_JAVA", "CALCVM_FENNEL" })
+    public String calcVirtualMachine;
+
+    /**
+     * Number of rows in the benchmark table.
+     */
+    @Param({ "10000" })
+    public int rowCount;
+
+    private Connection connection;
+    private String savedCalcVirtualMachine;
+    private PreparedStatement scanStmt;
+    private PreparedStatement calcStmt;
+
+    //~ Methods ----------------------------------------------------------------
+
+    @Setup
+    public void setUp()
+        throws SQLException
+    {
+        FarragoJdbcEngineDriver driver = new FarragoJdbcEngineDriver();
+        Properties props = new Properties();
+        props.setProperty("user", "sa");
+        connection = driver.connect(driver.getBaseUrl(), props);
+
+        Statement stmt = connection.createStatement();
+        try {
+            ResultSet resultSet =
+                stmt.executeQuery(
+                    "select \"calcVirtualMachine\""
+                    + " from sys_fem.\"Config\".\"FarragoConfig\"");
+            resultSet.next();
+            savedCalcVirtualMachine = resultSet.getString(1);
+            resultSet.close();
+            setCalcVirtualMachine(stmt, calcVirtualMachine);
+
+            stmt.execute("create schema " + SCHEMA_NAME);
+            stmt.execute(
+                "create table " + SCHEMA_NAME + ".items("
+                + "id int not null primary key, "
+                + "qty int, "
+                + "price decimal(10, 2), "
+                + "name varchar(40))");
+        } finally {
+            stmt.close();
+        }
+        populate();
+
+        scanStmt =
+            connection.prepareStatement(
+                "select id, qty, price, name from " + SCHEMA_NAME
+                + ".items");
+        calcStmt =
+            connection.prepareStatement(
+                "select id, qty * price, upper(name) from " + SCHEMA_NAME
+                + ".items where qty > 0");
+    }
+
+    private void populate()
+        throws SQLException
+    {
+        connection.setAutoCommit(false);
+        PreparedStatement insertStmt =
+            connection.prepareStatement(
+                "insert into " + SCHEMA_NAME + ".items values (?, ?, ?, ?)");
+        try {
+            for (int i = 0; i < rowCount; ++i) {
+                insertStmt.setInt(1, i);
+                insertStmt.setInt(2, i % 100);
+                insertStmt.setBigDecimal(3, BigDecimal.valueOf(i, 2));
+                insertStmt.setString(4, "item number " + i);
+                insertStmt.addBatch();
+            }
+            insertStmt.executeBatch();
+            connection.commit();
+        } finally {
+            insertStmt.close();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static void setCalcVirtualMachine(Statement stmt, String value)
+        throws SQLException
+    {
+        stmt.execute(
+            "alter system set \"calcVirtualMachine\" = '" + value + "'");
+    }
+
+    @TearDown
+    public void tearDown()
+        throws SQLException
+    {
+        scanStmt.close();
+        calcStmt.close();
+        Statement stmt = connection.createStatement();
+        try {
+            stmt.execute("drop schema " + SCHEMA_NAME + " cascade");
+            setCalcVirtualMachine(stmt, savedCalcVirtualMachine);
+        } finally {
+            stmt.close();
+            connection.close();
+        }
+        FarragoDbSingleton.shutdown();
+    }
+
+    @Benchmark
+    public void scan(Blackhole blackhole)
+        throws SQLException
+    {
+        ResultSet resultSet = scanStmt.executeQuery();
+        try {
+            while (resultSet.next()) {
+                blackhole.consume(resultSet.getInt(1));
+                blackhole.consume(resultSet.getInt(2));
+                blackhole.consume(resultSet.getBigDecimal(3));
+                blackhole.consume(resultSet.getString(4));
+            }
+        } finally {
+            resultSet.close();
+        }
+    }
+
+    @Benchmark
+    public void filterAndProject(Blackhole blackhole)
+        throws SQLException
+    {
+        ResultSet resultSet = calcStmt.executeQuery();
+        try {
+            while (resultSet.next()) {
+                blackhole.consume(resultSet.getInt(1));
+                blackhole.consume(resultSet.getBigDecimal(2));
+                blackhole.consume(resultSet.getString(3));
+            }
+        } finally {
+            resultSet.close();
+        }
+    }
+}
+
+// End FarragoQueryBenchmark.java
@@ -0,0 +1,136 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.bench;
+
+import java.nio.*;
+
+import java.util.concurrent.*;
+
+import net.sf.farrago.fennel.tuple.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+
+/**
+ * FennelTupleBenchmark measures marshalling and unmarshalling of a typical
+ * Fennel tuple (fixed-width, nullable and variable-width attributes) via
+ * {@link FennelTupleAccessor}, which is the path taken by tuples passed
+ * between Java and Fennel.
+ *
+ * @author agent
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class FennelTupleBenchmark
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private FennelTupleAccessor accessor;
+    private FennelTupleData inputData;
+    private FennelTupleData outputData;
+    private ByteBuffer marshalBuffer;
+    private ByteBuffer unmarshalBuffer;
+
+    //~ Methods ----------------------------------------------------------------
+
+    @Setup
+    public void setUp()
+    {
+        FennelTupleDescriptor desc = new FennelTupleDescriptor();
+        desc.add(
+            new FennelTupleAttributeDescriptor(
+                FennelStandardTypeDescriptor.INT_32,
+                false,
+                0));
+        desc.add(
+            new FennelTupleAttributeDescriptor(
+                FennelStandardTypeDescriptor.INT_64,
+                true,
+                0));
+        desc.add(
+            new FennelTupleAttributeDescriptor(
+                FennelStandardTypeDescriptor.DOUBLE,
+                true,
+                0));
+        desc.add(
+            new FennelTupleAttributeDescriptor(
+                FennelStandardTypeDescriptor.VARCHAR,
+                true,
+                40));
+        desc.add(
+            new FennelTupleAttributeDescriptor(
+                FennelStandardTypeDescriptor.VARCHAR,
+                true,
+                200));
+
+        accessor = new FennelTupleAccessor(true);
+        accessor.compute(desc);
+
+        inputData = new FennelTupleData(desc);
+        inputData.getDatum(0).setInt(42);
+        inputData.getDatum(1).setLong(123456789012L);
+        inputData.getDatum(2).setDouble(3.25);
+        inputData.getDatum(3).setString("Widget, large");
+        inputData.getDatum(4).setString(
+            "A typical free-text column holding a sentence or two");
+        outputData = new FennelTupleData(desc);
+
+        marshalBuffer = newBuffer();
+        unmarshalBuffer = newBuffer();
+        accessor.marshal(inputData, unmarshalBuffer);
+    }
+
+    private ByteBuffer newBuffer()
+    {
+        ByteBuffer buffer =
+            ByteBuffer.allocate(accessor.getMaxByteCount());
+        buffer.order(ByteOrder.nativeOrder());
+        return buffer;
+    }
+
+    @Benchmark
+    public int marshal()
+    {
+        marshalBuffer.clear();
+        accessor.marshal(inputData, marshalBuffer);
+        return marshalBuffer.position();
+    }
+
+    @Benchmark
+    public void unmarshal(Blackhole blackhole)
+    {
+        // unmarshal advances the buffer past the tuple
+        unmarshalBuffer.position(0);
+        accessor.setCurrentTupleBuf(unmarshalBuffer);
+        accessor.unmarshal(outputData);
+        blackhole.consume(outputData.getDatum(0).getInt());
+        blackhole.consume(outputData.getDatum(1).getLong());
+        blackhole.consume(outputData.getDatum(2).getDouble());
+        blackhole.consume(outputData.getDatum(3).getLength());
+        blackhole.consume(outputData.getDatum(4).getLength());
+    }
+}
+
+// End FennelTupleBenchmark.java
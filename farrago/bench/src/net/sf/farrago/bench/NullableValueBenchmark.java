@@ -0,0 +1,154 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.bench;
+
+import java.math.*;
+
+import java.util.concurrent.*;
+
+import net.sf.farrago.type.runtime.*;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * NullableValueBenchmark measures the runtime value classes manipulated by
+ * generated Java calculators: {@link NullablePrimitive} arithmetic and
+ * assignment, and {@link EncodedSqlDecimal} arithmetic (with the overflow
+ * check the calculator generates) and conversion to and from {@link
+ * BigDecimal}, as done for JDBC parameters and results.
+ *
+ * @author agent
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class NullableValueBenchmark
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final Decimal10_2 decimalA = new Decimal10_2();
+    private final Decimal10_2 decimalB = new Decimal10_2();
+    private final Decimal10_2 decimalResult = new Decimal10_2();
+    private final NullablePrimitive.NullableLong longA =
+        new NullablePrimitive.NullableLong();
+    private final NullablePrimitive.NullableLong longB =
+        new NullablePrimitive.NullableLong();
+    private final NullablePrimitive.NullableLong longResult =
+        new NullablePrimitive.NullableLong();
+    private BigDecimal bigDecimal;
+    private Long boxedLong;
+
+    //~ Methods ----------------------------------------------------------------
+
+    @Setup
+    public void setUp()
+    {
+        decimalA.assignFrom(12345L);
+        decimalB.assignFrom(678L);
+        longA.assignFrom(Long.valueOf(123456789L));
+        longB.assignFrom(Long.valueOf(987654321L));
+        bigDecimal = new BigDecimal("1234567.89");
+        boxedLong = Long.valueOf(42L);
+    }
+
+    @Benchmark
+    public long decimalAdd()
+    {
+        if (decimalA.isNull() || decimalB.isNull()) {
+            decimalResult.setNull(true);
+        } else {
+            decimalResult.reinterpret(decimalA.value + decimalB.value, true);
+        }
+        return decimalResult.value;
+    }
+
+    @Benchmark
+    public long decimalMultiply()
+    {
+        // the product has scale 4; rescale it back to 2
+        if (decimalA.isNull() || decimalB.isNull()) {
+            decimalResult.setNull(true);
+        } else {
+            decimalResult.reinterpret(
+                (decimalA.value * decimalB.value) / 100,
+                true);
+        }
+        return decimalResult.value;
+    }
+
+    @Benchmark
+    public long decimalFromBigDecimal()
+    {
+        decimalResult.assignFrom(bigDecimal);
+        return decimalResult.value;
+    }
+
+    @Benchmark
+    public Object decimalToBigDecimal()
+    {
+        return decimalA.getNullableData();
+    }
+
+    @Benchmark
+    public long nullableLongAdd()
+    {
+        if (longA.isNull() || longB.isNull()) {
+            longResult.setNull(true);
+        } else {
+            longResult.setNull(false);
+            longResult.value = longA.value + longB.value;
+        }
+        return longResult.value;
+    }
+
+    @Benchmark
+    public long nullableLongFromObject()
+    {
+        longResult.assignFrom(boxedLong);
+        return longResult.value;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * DECIMAL(10, 2), as the code generator would declare it.
+     */
+    public static class Decimal10_2
+        extends EncodedSqlDecimal
+    {
+        // implement EncodedSqlDecimal
+        protected int getPrecision()
+        {
+            return 10;
+        }
+
+        // implement EncodedSqlDecimal
+        protected int getScale()
+        {
+            return 2;
+        }
+    }
+}
+
+// End NullableValueBenchmark.java
@@ -1202,6 +1202,34 @@ public abstract class FarragoCatalogUtil
         }
     }
 
+    /**
+     * Returns the time of the most recent DML statement (including TRUNCATE)
+     * which modified an abstract column set, as recorded with its row count
+     * statistics.
+     *
+     * @param table the abstract column set
+     *
+     * @return timestamp of the last DML, or null if none has been recorded
+     */
+    public static Timestamp getDmlTimestamp(FemAbstractColumnSet table)
+    {
+        List<FemRowCountStatistics> rowCountStatsList =
+            table.getRowCountStats();
+        if (rowCountStatsList.isEmpty()) {
+            return null;
+        }
+
+        // each new record carries over the dml timestamp of its predecessor,
+        // so the latest one is all we need
+        String dmlTime =
+            rowCountStatsList.get(rowCountStatsList.size() - 1)
+            .getDmlTimestamp();
+        if (dmlTime == null) {
+            return null;
+        }
+        return Timestamp.valueOf(dmlTime);
+    }
+
     /**
      * Updates the current and deleted row counts for an abstract column set,
      * creating new row count stat records as needed.
@@ -1242,6 +1270,8 @@ public abstract class FarragoCatalogUtil
         List<RowCountStat> rowCounts,
         FarragoRepos repos)
     {
+        repos.getStatisticsCache().invalidate(table);
+
         List<FemRowCountStatistics> rowCountStatsList =
             table.getRowCountStats();
 
@@ -1319,6 +1349,8 @@ public abstract class FarragoCatalogUtil
         boolean updateRowCount,
         boolean updateAnalyzeRowCount)
     {
+        FarragoStatisticsCache.invalidateEverywhere(columnSet);
+
         if (updateAnalyzeRowCount) {
             columnSet.setAnalyzeTime(createTimestamp());
             columnSet.setLastAnalyzeRowCount(rowCount);
@@ -1534,6 +1566,8 @@ public abstract class FarragoCatalogUtil
         long rowsLastBar,
         List<FemColumnHistogramBar> bars)
     {
+        repos.getStatisticsCache().invalidate(column);
+
         FemColumnHistogram histogram =
             getHistogramForUpdate(repos, column, true);
 
@@ -1693,6 +1727,8 @@ public abstract class FarragoCatalogUtil
      */
     public static void resetRowCounts(FemAbstractColumnSet table)
     {
+        FarragoStatisticsCache.invalidateEverywhere(table);
+
         long zero = 0;
         table.setRowCount(zero);
         table.setDeletedRowCount(zero);
@@ -1888,6 +1924,8 @@ public abstract class FarragoCatalogUtil
         Timestamp upperBound = bounds.get(1);
         boolean onlyLabel = false;
 
+        repos.getStatisticsCache().invalidateAll();
+
         // If there are no bounds on both ends, then this is the only
         // label.  In that case, the candidates for removal are all stats
         // older the label.  So, set the upper bound to the label's
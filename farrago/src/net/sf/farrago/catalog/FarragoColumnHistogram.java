@@ -64,9 +64,10 @@ public class FarragoColumnHistogram
     private FemAbstractColumn column;
     private SargIntervalSequence sequence;
     private Timestamp labelTimestamp;
-    private FemColumnHistogram histogram;
+    private FarragoStatisticsCache cache;
+    private FarragoStatisticsCache.CachedHistogram histogram;
     private int barCount;
-    private List<FemColumnHistogramBar> bars;
+    private List<FarragoStatisticsCache.CachedHistogramBar> bars;
 
     Double selectivity;
     Double cardinality;
@@ -103,10 +104,33 @@ public class FarragoColumnHistogram
         FemAbstractColumn column,
         SargIntervalSequence sequence,
         Timestamp labelTimestamp)
+    {
+        this(column, sequence, labelTimestamp, null);
+    }
+
+    /**
+     * Initializes a column statistics reader which reads the histogram through
+     * a statistics cache. The statistics are not actually analyzed until the
+     * user calls {@link #evaluate()}.
+     *
+     * @param column column to analyze
+     * @param sequence optional predicate on the column
+     * @param labelTimestamp the creation timestamp of the label setting that
+     * determines which set of stats should be used; null if there is no label
+     * setting
+     * @param cache statistics cache, or null to read the histogram directly
+     * from the catalog
+     */
+    protected FarragoColumnHistogram(
+        FemAbstractColumn column,
+        SargIntervalSequence sequence,
+        Timestamp labelTimestamp,
+        FarragoStatisticsCache cache)
     {
         this.column = column;
         this.sequence = sequence;
         this.labelTimestamp = labelTimestamp;
+        this.cache = cache;
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -129,7 +153,15 @@ public class FarragoColumnHistogram
      */
     protected void evaluate()
     {
-        histogram = FarragoCatalogUtil.getHistogram(column, labelTimestamp);
+        if (cache != null) {
+            histogram = cache.getHistogram(column, labelTimestamp);
+        } else {
+            FemColumnHistogram femHistogram =
+                FarragoCatalogUtil.getHistogram(column, labelTimestamp);
+            histogram =
+                (femHistogram == null) ? null
+                : new FarragoStatisticsCache.CachedHistogram(femHistogram);
+        }
         if (histogram == null) {
             return;
         }
@@ -234,7 +266,7 @@ public class FarragoColumnHistogram
         // statistics it will be >= 1.0.
         Long histValues = histogram.getDistinctValueCount();
         Long sampleValues = 0L;
-        for (FemColumnHistogramBar bar : bars) {
+        for (FarragoStatisticsCache.CachedHistogramBar bar : bars) {
             sampleValues += bar.getValueCount();
         }
         assert (histValues >= sampleValues);
@@ -312,7 +344,7 @@ public class FarragoColumnHistogram
      */
     private class HistogramRange
     {
-        private List<FemColumnHistogramBar> bars;
+        private List<FarragoStatisticsCache.CachedHistogramBar> bars;
         private SargInterval interval;
         private int minBar;
 
@@ -328,7 +360,7 @@ public class FarragoColumnHistogram
          * @param minBar the first bar to search
          */
         protected HistogramRange(
-            List<FemColumnHistogramBar> bars,
+            List<FarragoStatisticsCache.CachedHistogramBar> bars,
             SargInterval interval,
             int minBar)
         {
@@ -416,7 +448,8 @@ public class FarragoColumnHistogram
                 // The end of the current bar can be anything up to the start
                 // of the next bar, inclusive. Here we skip past bars that are
                 // less than the search value.
-                FemColumnHistogramBar nextBar = bars.get(start + 1);
+                FarragoStatisticsCache.CachedHistogramBar nextBar =
+                    bars.get(start + 1);
                 int comparison =
                     compare(
                         nextBar.getStartingValue(),
@@ -456,7 +489,8 @@ public class FarragoColumnHistogram
             for (end = min; end < bars.size(); end++) {
                 // if the histogram bar starts starts after the point
                 // we know the bar does not contain the point
-                FemColumnHistogramBar bar = bars.get(end);
+                FarragoStatisticsCache.CachedHistogramBar bar =
+                    bars.get(end);
                 int comparison =
                     compare(
                         bar.getStartingValue(),
@@ -0,0 +1,420 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.catalog;
+
+import java.sql.*;
+
+import java.util.*;
+
+import net.sf.farrago.fem.sql2003.*;
+
+import org.eigenbase.sql.type.*;
+
+
+/**
+ * FarragoJoinHistogram estimates the selectivity of an equi-join between two
+ * columns by intersecting their equi-depth histograms.
+ *
+ * <p>The usual estimate for an equi-join assumes that the values of the
+ * column with fewer distinct values are contained in the other column, and
+ * that each value occurs equally often: the join returns one row in max(ndv1,
+ * ndv2) of the cross product. Histograms show where that is wrong: if the
+ * value ranges of the two columns only partly overlap, fewer rows join; if
+ * both columns have frequent values in common, many more do.
+ *
+ * <p>Each histogram is read as a set of frequent values, namely bars which
+ * contain at most one distinct value (a value spanning several bars starts a
+ * bar with a value count of zero), plus ranges between the starting values of
+ * consecutive bars, over which the rows and values of the bar are assumed to
+ * be spread uniformly. Since ranges must be interpolated, only columns of
+ * numeric and datetime types are supported. Rows with null values never join.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class FarragoJoinHistogram
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final FemAbstractColumn leftColumn;
+    private final FemAbstractColumn rightColumn;
+    private final SqlTypeName typeName;
+    private final Timestamp labelTimestamp;
+    private final FarragoStatisticsCache cache;
+
+    private Double selectivity;
+    private Double skewFactor;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Initializes a join histogram. The histograms of the columns are not
+     * actually read until the user calls {@link #evaluate()}.
+     *
+     * @param leftColumn column on the left of the equi-join
+     * @param rightColumn column on the right of the equi-join
+     * @param typeName type of the join key, which determines how the starting
+     * values of the histogram bars are interpreted
+     * @param labelTimestamp the creation timestamp of the label setting that
+     * determines which set of stats should be used; null if there is no label
+     * setting
+     * @param cache statistics cache to read the histograms through
+     */
+    public FarragoJoinHistogram(
+        FemAbstractColumn leftColumn,
+        FemAbstractColumn rightColumn,
+        SqlTypeName typeName,
+        Timestamp labelTimestamp,
+        FarragoStatisticsCache cache)
+    {
+        this.leftColumn = leftColumn;
+        this.rightColumn = rightColumn;
+        this.typeName = typeName;
+        this.labelTimestamp = labelTimestamp;
+        this.cache = cache;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the estimated selectivity of the equi-join, relative to the
+     * cross product of the two column sets.
+     *
+     * @return selectivity, or null if it could not be estimated
+     */
+    public Double getSelectivity()
+    {
+        return selectivity;
+    }
+
+    /**
+     * Returns the ratio of the selectivity estimated from the histograms to
+     * the selectivity 1 / max(ndv1, ndv2) estimated from the distinct value
+     * counts alone.
+     *
+     * @return skew factor, or null if the selectivity could not be estimated
+     */
+    public Double getSkewFactor()
+    {
+        return skewFactor;
+    }
+
+    /**
+     * Reads the histograms of the two columns and intersects them.
+     */
+    public void evaluate()
+    {
+        selectivity = null;
+        skewFactor = null;
+
+        // The estimate is kept with the histograms in the statistics cache,
+        // so that the optimizer, which asks for the rowcount of the same join
+        // many times while ordering joins, only computes it once for as long
+        // as the statistics of the two columns do not change.
+        FarragoStatisticsCache.CachedHistogram leftHistogram =
+            cache.getHistogram(leftColumn, labelTimestamp);
+        FarragoStatisticsCache.CachedHistogram rightHistogram =
+            cache.getHistogram(rightColumn, labelTimestamp);
+        if ((leftHistogram == null) || (rightHistogram == null)) {
+            return;
+        }
+        Double [] estimate =
+            leftHistogram.getJoinEstimate(rightHistogram, typeName);
+        if (estimate == null) {
+            estimate = new Double[2];
+            KeyDistribution left = readDistribution(leftHistogram);
+            KeyDistribution right =
+                (left == null) ? null : readDistribution(rightHistogram);
+            if (right != null) {
+                estimate[0] = estimateSelectivity(left, right);
+                estimate[1] =
+                    estimate[0]
+                    * Math.max(
+                        left.distinctValueCount,
+                        right.distinctValueCount);
+            }
+            leftHistogram.putJoinEstimate(rightHistogram, typeName, estimate);
+        }
+        selectivity = estimate[0];
+        skewFactor = estimate[1];
+    }
+
+    /**
+     * Reads the histogram of a column into a key distribution.
+     *
+     * @param histogram histogram of the column
+     *
+     * @return distribution, or null if the histogram is not usable
+     */
+    private KeyDistribution readDistribution(
+        FarragoStatisticsCache.CachedHistogram histogram)
+    {
+        if ((histogram.getDistinctValueCount() == null)
+            || (histogram.getDistinctValueCount() <= 0))
+        {
+            return null;
+        }
+        List<FarragoStatisticsCache.CachedHistogramBar> bars =
+            histogram.getBar();
+        int barCount = bars.size();
+        if (barCount == 0) {
+            return null;
+        }
+
+        // As in FarragoColumnHistogram, scale the sampled value counts up to
+        // the distinct value count of the whole column.
+        long sampleValues = 0;
+        for (FarragoStatisticsCache.CachedHistogramBar bar : bars) {
+            sampleValues += bar.getValueCount();
+        }
+        if (sampleValues == 0) {
+            return null;
+        }
+        double correction =
+            (double) histogram.getDistinctValueCount() / sampleValues;
+
+        Double [] starts = new Double[barCount];
+        for (int i = 0; i < barCount; i++) {
+            String value = bars.get(i).getStartingValue();
+            if (value != null) {
+                starts[i] = toDouble(value, typeName);
+                if (starts[i] == null) {
+                    return null;
+                }
+            }
+        }
+
+        KeyDistribution dist = new KeyDistribution();
+        dist.distinctValueCount = histogram.getDistinctValueCount();
+        for (int i = 0; i < barCount; i++) {
+            double rows =
+                (i == (barCount - 1)) ? histogram.getRowsLastBar()
+                : histogram.getRowsPerBar();
+            dist.totalRows += rows;
+            if ((starts[i] == null) || (rows == 0)) {
+                // nulls sort first, and never join
+                continue;
+            }
+            double lo = starts[i];
+            double hi;
+            if (i < (barCount - 1)) {
+                hi = starts[i + 1];
+            } else if ((i > 0) && (starts[i - 1] != null)) {
+                // the end of the last bar is unknown; assume it is as wide
+                // as the one before it
+                hi = lo + (lo - starts[i - 1]);
+            } else {
+                hi = lo;
+            }
+            long valueCount = bars.get(i).getValueCount();
+            if ((valueCount <= 1) || (hi <= lo)) {
+                Double frequency = dist.frequentValues.get(lo);
+                dist.frequentValues.put(
+                    lo,
+                    (frequency == null) ? rows : (frequency + rows));
+            } else {
+                dist.ranges.add(
+                    new KeyRange(lo, hi, rows, valueCount * correction));
+            }
+        }
+        if (dist.totalRows == 0) {
+            return null;
+        }
+        return dist;
+    }
+
+    /**
+     * Estimates the selectivity of an equi-join between two key
+     * distributions.
+     *
+     * @param left left distribution
+     * @param right right distribution
+     *
+     * @return selectivity relative to the cross product
+     */
+    private static double estimateSelectivity(
+        KeyDistribution left,
+        KeyDistribution right)
+    {
+        double joinRows = 0;
+
+        // frequent values joining frequent values or ranges
+        for (
+            Map.Entry<Double, Double> entry
+            : left.frequentValues.entrySet())
+        {
+            Double rightRows = right.frequentValues.get(entry.getKey());
+            if (rightRows != null) {
+                joinRows += entry.getValue() * rightRows;
+            }
+            joinRows +=
+                entry.getValue()
+                * right.getRowsPerValue(entry.getKey());
+        }
+        for (
+            Map.Entry<Double, Double> entry
+            : right.frequentValues.entrySet())
+        {
+            joinRows +=
+                entry.getValue()
+                * left.getRowsPerValue(entry.getKey());
+        }
+
+        // ranges joining ranges, over the part where they overlap; the ranges
+        // of each distribution are sorted and disjoint, so merge them
+        int iLeft = 0;
+        int iRight = 0;
+        while ((iLeft < left.ranges.size()) && (iRight < right.ranges.size())) {
+            KeyRange leftRange = left.ranges.get(iLeft);
+            KeyRange rightRange = right.ranges.get(iRight);
+            double overlap =
+                Math.min(leftRange.hi, rightRange.hi)
+                - Math.max(leftRange.lo, rightRange.lo);
+            if (overlap > 0) {
+                double leftFraction = overlap / (leftRange.hi - leftRange.lo);
+                double rightFraction =
+                    overlap / (rightRange.hi - rightRange.lo);
+                double values =
+                    Math.max(
+                        Math.max(
+                            leftRange.distinctValues * leftFraction,
+                            rightRange.distinctValues * rightFraction),
+                        1.0);
+                joinRows +=
+                    (leftRange.rows * leftFraction)
+                    * (rightRange.rows * rightFraction)
+                    / values;
+            }
+            if (leftRange.hi <= rightRange.hi) {
+                ++iLeft;
+            } else {
+                ++iRight;
+            }
+        }
+
+        return joinRows / (left.totalRows * right.totalRows);
+    }
+
+    /**
+     * Converts the starting value of a histogram bar to a number which
+     * preserves the order of values of its type.
+     *
+     * @param value starting value, as stored by ANALYZE
+     * @param typeName type of the column
+     *
+     * @return numeric value, or null if values of the type cannot be
+     * interpolated
+     */
+    private static Double toDouble(String value, SqlTypeName typeName)
+    {
+        try {
+            switch (typeName) {
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+            case BIGINT:
+            case DECIMAL:
+            case FLOAT:
+            case REAL:
+            case DOUBLE:
+                return Double.valueOf(value);
+            case DATE:
+                return (double) java.sql.Date.valueOf(value).getTime();
+            case TIME:
+                return (double) Time.valueOf(value).getTime();
+            case TIMESTAMP:
+                return (double) Timestamp.valueOf(value).getTime();
+            default:
+                return null;
+            }
+        } catch (IllegalArgumentException ex) {
+            // includes NumberFormatException
+            return null;
+        }
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * KeyDistribution is the distribution of the non-null values of a column,
+     * as read from its histogram. Rows are counted in histogram rows, which
+     * are sampled rows if the statistics were estimated.
+     */
+    private static class KeyDistribution
+    {
+        long distinctValueCount;
+        double totalRows;
+        final SortedMap<Double, Double> frequentValues =
+            new TreeMap<Double, Double>();
+        final List<KeyRange> ranges = new ArrayList<KeyRange>();
+
+        /**
+         * Returns the number of rows with a given value within the ranges of
+         * this distribution, assuming the value occurs there at all.
+         */
+        double getRowsPerValue(double value)
+        {
+            // binary search for the last range starting at or before the
+            // value; since the ranges are disjoint, only it can contain it
+            int lo = 0;
+            int hi = ranges.size() - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (ranges.get(mid).lo <= value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            if (hi < 0) {
+                return 0;
+            }
+            KeyRange range = ranges.get(hi);
+            if (value >= range.hi) {
+                return 0;
+            }
+            return range.rows / Math.max(range.distinctValues, 1.0);
+        }
+    }
+
+    /**
+     * KeyRange is a histogram bar whose rows and values are assumed to be
+     * spread uniformly over the range [lo, hi).
+     */
+    private static class KeyRange
+    {
+        final double lo;
+        final double hi;
+        final double rows;
+        final double distinctValues;
+
+        KeyRange(double lo, double hi, double rows, double distinctValues)
+        {
+            this.lo = lo;
+            this.hi = hi;
+            this.rows = rows;
+            this.distinctValues = distinctValues;
+        }
+    }
+}
+
+// End FarragoJoinHistogram.java
@@ -298,6 +298,7 @@ public class FarragoMdrReposImpl
             tracer.fine("Begin read-only repository transaction");
         }
         mdrRepository.beginTrans(writable);
+        getStatisticsCache().beginReposTxn();
     }
 
     // implement FarragoRepos
@@ -308,7 +309,11 @@ public class FarragoMdrReposImpl
         } else {
             tracer.fine("Commit repository transaction");
         }
-        mdrRepository.endTrans(rollback);
+        try {
+            mdrRepository.endTrans(rollback);
+        } finally {
+            getStatisticsCache().endReposTxn();
+        }
     }
 
     // implement FarragoRepos
@@ -350,6 +350,14 @@ public interface FarragoRepos
      */
     public FarragoSequenceAccessor getSequenceAccessor(String mofId);
 
+    /**
+     * Returns the cache of data statistics read from this repository, shared
+     * by all sessions.
+     *
+     * @return statistics cache
+     */
+    public FarragoStatisticsCache getStatisticsCache();
+
     /**
      * Returns the input string with property values substituted for variables
      * of the form <code>${VARNAME}</code>, such as that done by {@link
@@ -81,6 +81,8 @@ public abstract class FarragoReposImpl
 
     private final Map<String, FarragoSequenceAccessor> sequenceMap;
 
+    private final FarragoStatisticsCache statisticsCache;
+
     private final ReentrantReadWriteLock sxLock = new ReentrantReadWriteLock();
 
     private ThreadLocal<ReposCache> cache;
@@ -99,6 +101,7 @@ public abstract class FarragoReposImpl
     {
         owner.addAllocation(this);
         sequenceMap = new HashMap<String, FarragoSequenceAccessor>();
+        statisticsCache = new FarragoStatisticsCache();
         cache =
             new ThreadLocal<ReposCache>() {
                 @Override protected ReposCache initialValue()
@@ -538,6 +541,11 @@ public abstract class FarragoReposImpl
         }
     }
 
+    public FarragoStatisticsCache getStatisticsCache()
+    {
+        return statisticsCache;
+    }
+
     public String expandProperties(String value)
     {
         return FarragoProperties.instance().expandProperties(value);
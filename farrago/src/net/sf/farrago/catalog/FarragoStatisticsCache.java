@@ -0,0 +1,490 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.catalog;
+
+import java.sql.*;
+
+import java.util.*;
+
+import javax.jmi.reflect.*;
+
+import net.sf.farrago.fem.med.*;
+import net.sf.farrago.fem.sql2003.*;
+
+import org.eigenbase.sql.type.*;
+
+
+/**
+ * FarragoStatisticsCache keeps copies of the data statistics which the
+ * optimizer reads from the catalog each time it prepares a statement: the row
+ * counts of column sets and the histograms of their columns. There is one
+ * cache per repository, shared by all sessions, so that preparing a statement
+ * against tables whose statistics have not changed does not need to read them
+ * from the repository again.
+ *
+ * <p>Entries are keyed by the MOFID of the column set or column, and by the
+ * creation timestamp of the label setting the statistics were read for (null
+ * if there is no label setting).
+ *
+ * <p>The methods of {@link FarragoCatalogUtil} which modify statistics call
+ * {@link #invalidate} for the objects they modify. Until the repository
+ * transaction which modified them ends, other threads still see the old
+ * statistics, so an invalidated object is not cached again until then. A value
+ * read while an invalidation was in progress is not cached either.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class FarragoStatisticsCache
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Cached in place of a histogram for a column which has none.
+     */
+    private static final CachedHistogram NO_HISTOGRAM = new CachedHistogram();
+
+    /**
+     * Every cache created, so that statistics modified by the deprecated
+     * methods of {@link FarragoCatalogUtil}, which are not given a repository,
+     * can still be invalidated; see {@link #invalidateEverywhere}.
+     */
+    private static final Map<FarragoStatisticsCache, Boolean> instances =
+        Collections.synchronizedMap(
+            new WeakHashMap<FarragoStatisticsCache, Boolean>());
+
+    //~ Instance fields --------------------------------------------------------
+
+    /**
+     * Cached statistics, keyed by MOFID and then by label timestamp. Values
+     * are row count arrays for column sets and {@link CachedHistogram}s for
+     * columns.
+     */
+    private final Map<String, Map<Timestamp, Object>> map;
+
+    /**
+     * For each object invalidated by a repository transaction which has not
+     * yet ended, the number of such transactions, keyed by MOFID.
+     */
+    private final Map<String, Integer> pendingMap;
+
+    /**
+     * Number of repository transactions which have not yet ended and which
+     * have invalidated all statistics. While positive, nothing is cached.
+     */
+    private int pendingClearCount;
+
+    /**
+     * Incremented by every invalidation; a value read from the catalog is only
+     * cached if no invalidation happened while it was being read.
+     */
+    private long generation;
+
+    private final ThreadLocal<TxnState> txnState;
+
+    private int hitCount;
+    private int missCount;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates an empty cache.
+     */
+    public FarragoStatisticsCache()
+    {
+        map = new HashMap<String, Map<Timestamp, Object>>();
+        pendingMap = new HashMap<String, Integer>();
+        txnState =
+            new ThreadLocal<TxnState>() {
+                protected TxnState initialValue()
+                {
+                    return new TxnState();
+                }
+            };
+        instances.put(this, Boolean.TRUE);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Retrieves the current and deleted row counts of a column set, as {@link
+     * FarragoCatalogUtil#getRowCounts} does.
+     *
+     * @param table the column set
+     * @param labelTimestamp creation timestamp of the label setting that
+     * determines which row counts to retrieve; null if there is no label
+     * setting
+     *
+     * @return a new array containing the current row count and the deleted
+     * row count, either of which may be null
+     */
+    public Long [] getRowCounts(
+        FemAbstractColumnSet table,
+        Timestamp labelTimestamp)
+    {
+        String mofId = table.refMofId();
+        long startGeneration = getGeneration();
+        Long [] rowCounts = (Long []) get(mofId, labelTimestamp);
+        if (rowCounts == null) {
+            rowCounts = new Long[2];
+            FarragoCatalogUtil.getRowCounts(table, labelTimestamp, rowCounts);
+            put(mofId, labelTimestamp, rowCounts, startGeneration);
+        }
+        return rowCounts.clone();
+    }
+
+    /**
+     * Retrieves the histogram of a column, as {@link
+     * FarragoCatalogUtil#getHistogram} does.
+     *
+     * @param column the column
+     * @param labelTimestamp creation timestamp of the label setting; null if
+     * there is no label setting
+     *
+     * @return copy of the histogram, or null if the column has none
+     */
+    CachedHistogram getHistogram(
+        FemAbstractColumn column,
+        Timestamp labelTimestamp)
+    {
+        String mofId = column.refMofId();
+        long startGeneration = getGeneration();
+        CachedHistogram histogram =
+            (CachedHistogram) get(mofId, labelTimestamp);
+        if (histogram == null) {
+            FemColumnHistogram femHistogram =
+                FarragoCatalogUtil.getHistogram(column, labelTimestamp);
+            histogram =
+                (femHistogram == null) ? NO_HISTOGRAM
+                : new CachedHistogram(femHistogram);
+            put(mofId, labelTimestamp, histogram, startGeneration);
+        }
+        return (histogram == NO_HISTOGRAM) ? null : histogram;
+    }
+
+    /**
+     * Discards the cached statistics of an object whose statistics are about
+     * to be modified. If called within a repository transaction, the object's
+     * statistics are not cached again until the transaction has ended.
+     *
+     * @param obj column set or column
+     */
+    public void invalidate(RefBaseObject obj)
+    {
+        String mofId = obj.refMofId();
+        TxnState state = txnState.get();
+        synchronized (this) {
+            ++generation;
+            map.remove(mofId);
+            if ((state.depth > 0) && state.invalidated.add(mofId)) {
+                Integer count = pendingMap.get(mofId);
+                pendingMap.put(
+                    mofId,
+                    (count == null) ? 1 : (count + 1));
+            }
+        }
+    }
+
+    /**
+     * Calls {@link #invalidate} on every cache, for callers which modify
+     * statistics without knowing which repository the object belongs to. Since
+     * MOFIDs are unique, this only affects the cache of that repository.
+     *
+     * @param obj column set or column
+     */
+    static void invalidateEverywhere(RefBaseObject obj)
+    {
+        List<FarragoStatisticsCache> caches;
+        synchronized (instances) {
+            caches = new ArrayList<FarragoStatisticsCache>(instances.keySet());
+        }
+        for (FarragoStatisticsCache cache : caches) {
+            cache.invalidate(obj);
+        }
+    }
+
+    /**
+     * Discards all cached statistics, for example when statistics of many
+     * objects are about to be modified. If called within a repository
+     * transaction, nothing is cached until the transaction has ended.
+     */
+    public void invalidateAll()
+    {
+        TxnState state = txnState.get();
+        synchronized (this) {
+            ++generation;
+            map.clear();
+            if ((state.depth > 0) && !state.invalidatedAll) {
+                state.invalidatedAll = true;
+                ++pendingClearCount;
+            }
+        }
+    }
+
+    /**
+     * @return number of lookups answered from the cache
+     */
+    public synchronized int getHitCount()
+    {
+        return hitCount;
+    }
+
+    /**
+     * @return number of lookups which had to read the catalog
+     */
+    public synchronized int getMissCount()
+    {
+        return missCount;
+    }
+
+    /**
+     * Notifies the cache that the current thread has begun a repository
+     * transaction.
+     */
+    void beginReposTxn()
+    {
+        ++txnState.get().depth;
+    }
+
+    /**
+     * Notifies the cache that the current thread has ended a repository
+     * transaction. When the outermost transaction ends, the objects it
+     * invalidated may be cached again.
+     */
+    void endReposTxn()
+    {
+        TxnState state = txnState.get();
+        if (state.depth == 0) {
+            return;
+        }
+        if ((--state.depth > 0)
+            || (state.invalidated.isEmpty() && !state.invalidatedAll))
+        {
+            return;
+        }
+        synchronized (this) {
+            ++generation;
+            if (state.invalidatedAll) {
+                map.clear();
+                --pendingClearCount;
+            }
+            for (String mofId : state.invalidated) {
+                map.remove(mofId);
+                int count = pendingMap.get(mofId);
+                if (count == 1) {
+                    pendingMap.remove(mofId);
+                } else {
+                    pendingMap.put(mofId, count - 1);
+                }
+            }
+        }
+        state.invalidated.clear();
+        state.invalidatedAll = false;
+    }
+
+    private synchronized long getGeneration()
+    {
+        return generation;
+    }
+
+    private synchronized Object get(String mofId, Timestamp labelTimestamp)
+    {
+        Map<Timestamp, Object> labelMap = map.get(mofId);
+        Object value =
+            (labelMap == null) ? null : labelMap.get(labelTimestamp);
+        if (value == null) {
+            ++missCount;
+        } else {
+            ++hitCount;
+        }
+        return value;
+    }
+
+    private synchronized void put(
+        String mofId,
+        Timestamp labelTimestamp,
+        Object value,
+        long startGeneration)
+    {
+        if ((generation != startGeneration)
+            || (pendingClearCount > 0)
+            || pendingMap.containsKey(mofId))
+        {
+            return;
+        }
+        Map<Timestamp, Object> labelMap = map.get(mofId);
+        if (labelMap == null) {
+            labelMap = new HashMap<Timestamp, Object>();
+            map.put(mofId, labelMap);
+        }
+        labelMap.put(labelTimestamp, value);
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Repository transaction state of a thread.
+     */
+    private static class TxnState
+    {
+        int depth;
+        boolean invalidatedAll;
+        final Set<String> invalidated = new HashSet<String>();
+    }
+
+    /**
+     * CachedHistogram is a copy of a {@link FemColumnHistogram} and its bars,
+     * which can be read without accessing the repository.
+     */
+    static class CachedHistogram
+    {
+        private final Long distinctValueCount;
+        private final int barCount;
+        private final long rowsPerBar;
+        private final long rowsLastBar;
+        private final List<CachedHistogramBar> bars;
+
+        /**
+         * Join estimates computed by {@link FarragoJoinHistogram} from this
+         * histogram and another, keyed by the other histogram and then by the
+         * type of the join key. The estimates are discarded along with either
+         * histogram when its statistics are invalidated.
+         */
+        private final Map<CachedHistogram, Map<SqlTypeName, Double []>>
+            joinEstimates =
+                new WeakHashMap<CachedHistogram, Map<SqlTypeName, Double []>>();
+
+        private CachedHistogram()
+        {
+            distinctValueCount = null;
+            barCount = 0;
+            rowsPerBar = 0;
+            rowsLastBar = 0;
+            bars = Collections.emptyList();
+        }
+
+        CachedHistogram(FemColumnHistogram histogram)
+        {
+            distinctValueCount = histogram.getDistinctValueCount();
+            barCount = histogram.getBarCount();
+            rowsPerBar = histogram.getRowsPerBar();
+            rowsLastBar = histogram.getRowsLastBar();
+            List<CachedHistogramBar> list =
+                new ArrayList<CachedHistogramBar>(barCount);
+            for (FemColumnHistogramBar bar : histogram.getBar()) {
+                list.add(new CachedHistogramBar(bar));
+            }
+            bars = Collections.unmodifiableList(list);
+        }
+
+        Long getDistinctValueCount()
+        {
+            return distinctValueCount;
+        }
+
+        int getBarCount()
+        {
+            return barCount;
+        }
+
+        long getRowsPerBar()
+        {
+            return rowsPerBar;
+        }
+
+        long getRowsLastBar()
+        {
+            return rowsLastBar;
+        }
+
+        List<CachedHistogramBar> getBar()
+        {
+            return bars;
+        }
+
+        /**
+         * Returns a join estimate previously recorded by {@link
+         * #putJoinEstimate}.
+         *
+         * @param other histogram of the other join key
+         * @param typeName type of the join key
+         *
+         * @return selectivity and skew factor, either of which may be null, or
+         * null if no estimate was recorded
+         */
+        synchronized Double [] getJoinEstimate(
+            CachedHistogram other,
+            SqlTypeName typeName)
+        {
+            Map<SqlTypeName, Double []> typeMap = joinEstimates.get(other);
+            return (typeMap == null) ? null : typeMap.get(typeName);
+        }
+
+        /**
+         * Records a join estimate between this histogram and another.
+         *
+         * @param other histogram of the other join key
+         * @param typeName type of the join key
+         * @param estimate selectivity and skew factor
+         */
+        synchronized void putJoinEstimate(
+            CachedHistogram other,
+            SqlTypeName typeName,
+            Double [] estimate)
+        {
+            Map<SqlTypeName, Double []> typeMap = joinEstimates.get(other);
+            if (typeMap == null) {
+                typeMap =
+                    new EnumMap<SqlTypeName, Double []>(SqlTypeName.class);
+                joinEstimates.put(other, typeMap);
+            }
+            typeMap.put(typeName, estimate);
+        }
+    }
+
+    /**
+     * CachedHistogramBar is a copy of a {@link FemColumnHistogramBar}.
+     */
+    static class CachedHistogramBar
+    {
+        private final String startingValue;
+        private final long valueCount;
+
+        CachedHistogramBar(FemColumnHistogramBar bar)
+        {
+            startingValue = bar.getStartingValue();
+            valueCount = bar.getValueCount();
+        }
+
+        String getStartingValue()
+        {
+            return startingValue;
+        }
+
+        long getValueCount()
+        {
+            return valueCount;
+        }
+    }
+}
+
+// End FarragoStatisticsCache.java
@@ -34,7 +34,7 @@ import org.eigenbase.stat.*;
 
 /**
  * This class reads statistics for a Farrago table from data stored in the
- * catalog.
+ * catalog, through the repository's {@link FarragoStatisticsCache}.
  *
  * @author John Pham
  * @version $Id$
@@ -89,11 +89,10 @@ public class FarragoTableStatistics
     // implement RelStatSource
     public Double getRowCount()
     {
-        Long [] rowCounts = new Long[2];
-        FarragoCatalogUtil.getRowCounts(
-            table,
-            labelTimestamp,
-            rowCounts);
+        Long [] rowCounts =
+            repos.getStatisticsCache().getRowCounts(
+                table,
+                labelTimestamp);
         return (rowCounts[0] == null) ? null : Double.valueOf(rowCounts[0]);
     }
 
@@ -106,7 +105,11 @@ public class FarragoTableStatistics
         FemAbstractColumn column = (FemAbstractColumn) features.get(ordinal);
 
         FarragoColumnHistogram result =
-            new FarragoColumnHistogram(column, predicate, labelTimestamp);
+            new FarragoColumnHistogram(
+                column,
+                predicate,
+                labelTimestamp,
+                repos.getStatisticsCache());
         result.evaluate();
         return result;
     }
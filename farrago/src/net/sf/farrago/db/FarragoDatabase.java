@@ -38,6 +38,7 @@ import javax.security.auth.login.*;
 
 import net.sf.farrago.catalog.*;
 import net.sf.farrago.cwm.core.*;
+import net.sf.farrago.cwm.keysindexes.*;
 import net.sf.farrago.cwm.relational.*;
 import net.sf.farrago.ddl.*;
 import net.sf.farrago.defimpl.*;
@@ -48,6 +49,7 @@ import net.sf.farrago.fem.sql2003.*;
 import net.sf.farrago.fennel.*;
 import net.sf.farrago.ojrex.*;
 import net.sf.farrago.plugin.*;
+import net.sf.farrago.release.*;
 import net.sf.farrago.resource.*;
 import net.sf.farrago.session.*;
 import net.sf.farrago.util.*;
@@ -55,11 +57,13 @@ import net.sf.farrago.util.*;
 import org.eigenbase.enki.mdr.*;
 import org.eigenbase.jmi.*;
 import org.eigenbase.oj.rex.*;
+import org.eigenbase.oj.stmt.*;
 import org.eigenbase.rel.*;
 import org.eigenbase.reltype.*;
 import org.eigenbase.resource.*;
 import org.eigenbase.sql.*;
 import org.eigenbase.sql.fun.*;
+import org.eigenbase.sql.parser.*;
 import org.eigenbase.sql.util.SqlString;
 import org.eigenbase.sql.validate.*;
 import org.eigenbase.trace.*;
@@ -81,6 +85,33 @@ import org.eigenbase.util.property.*;
 public class FarragoDatabase
     extends FarragoDbSingleton
 {
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Victim policies which may be selected for the code cache via the
+     * codeCacheVictimPolicy system parameter, keyed by name.
+     */
+    private static final Map<String, FarragoCacheVictimPolicyFactory>
+        CODE_CACHE_VICTIM_POLICIES =
+            new LinkedHashMap<String, FarragoCacheVictimPolicyFactory>();
+
+    static {
+        CODE_CACHE_VICTIM_POLICIES.put("LRU", FarragoLruVictimPolicy.FACTORY);
+        CODE_CACHE_VICTIM_POLICIES.put(
+            "TINYLFU",
+            FarragoTinyLfuVictimPolicy.FACTORY);
+        CODE_CACHE_VICTIM_POLICIES.put(
+            "COST",
+            FarragoCostAwareVictimPolicy.FACTORY);
+    }
+
+    /**
+     * Name of the file in the catalog directory holding the key with which
+     * persistent code cache entries are signed.
+     */
+    private static final String PERSISTENT_CODE_CACHE_KEY_FILE =
+        "codeCache.key";
+
     //~ Instance fields --------------------------------------------------------
 
     private FarragoRepos systemRepos;
@@ -107,6 +138,18 @@ public class FarragoDatabase
      */
     private FarragoObjectCache codeCache;
 
+    /**
+     * Directory-backed store for prepared statements which survives restarts,
+     * or null if not configured.
+     */
+    private FarragoDbPersistentCodeCache persistentCodeCache;
+
+    /**
+     * Row counts observed when executing statements from the code cache.
+     */
+    private final FarragoDbCardinalityFeedback cardinalityFeedback =
+        new FarragoDbCardinalityFeedback();
+
     /**
      * File containing trace configuration.
      */
@@ -220,12 +263,37 @@ public class FarragoDatabase
                     tracer.config("Fennel support disabled");
                 }
 
+                // The code cache is shared by all sessions, so split it into
+                // segments to keep concurrent prepares from serializing on a
+                // single monitor.
                 long codeCacheMaxBytes = getCodeCacheMaxBytes(currentConfig);
                 codeCache =
-                    new FarragoObjectCache(
+                    new FarragoSegmentedObjectCache(
                         this,
                         codeCacheMaxBytes,
-                        new FarragoLruVictimPolicy());
+                        FarragoSegmentedObjectCache.chooseSegmentCount(
+                            codeCacheMaxBytes,
+                            Runtime.getRuntime().availableProcessors()),
+                        getCodeCacheVictimPolicyFactory(
+                            currentConfig.getCodeCacheVictimPolicy()));
+
+                String persistentCodeCacheDir =
+                    FarragoProperties.instance().codeCacheDir.get();
+                if (persistentCodeCacheDir != null) {
+                    FarragoReleaseProperties releaseProps =
+                        FarragoReleaseProperties.instance();
+                    persistentCodeCache =
+                        new FarragoDbPersistentCodeCache(
+                            new File(persistentCodeCacheDir),
+                            new File(
+                                FarragoProperties.instance().getCatalogDir(),
+                                PERSISTENT_CODE_CACHE_KEY_FILE),
+                            releaseProps.productName.get() + " "
+                            + releaseProps.getVersionString());
+                    tracer.config(
+                        "persistent code cache directory = "
+                        + persistentCodeCacheDir);
+                }
 
                 ojRexImplementorTable =
                     new FarragoOJRexImplementorTable(
@@ -315,6 +383,58 @@ public class FarragoDatabase
         long maxBytes = codeCache.getBytesMax();
         codeCache.setMaxBytes(0);
         codeCache.setMaxBytes(maxBytes);
+
+        if (persistentCodeCache != null) {
+            persistentCodeCache.clear();
+        }
+    }
+
+    /**
+     * Replaces the persistent code cache; for testing only.
+     *
+     * @param persistentCodeCache new persistent code cache, or null to
+     * disable persistence
+     *
+     * @return previous persistent code cache, or null
+     */
+    FarragoDbPersistentCodeCache setPersistentCodeCache(
+        FarragoDbPersistentCodeCache persistentCodeCache)
+    {
+        FarragoDbPersistentCodeCache old = this.persistentCodeCache;
+        this.persistentCodeCache = persistentCodeCache;
+        return old;
+    }
+
+    /**
+     * @return row counts observed when executing statements
+     */
+    FarragoDbCardinalityFeedback getCardinalityFeedback()
+    {
+        return cardinalityFeedback;
+    }
+
+    /**
+     * Returns the row counts to supply to the optimizer when preparing a
+     * statement, if its session has enabled cardinality feedback.
+     *
+     * @param stmt statement about to be prepared
+     *
+     * @return observed row counts, or null
+     */
+    private Map<String, Double> getObservedRowCounts(
+        FarragoSessionPreparingStmt stmt)
+    {
+        FarragoSessionVariables sessionVariables =
+            stmt.getSession().getSessionVariables();
+        if (!sessionVariables.containsVariable(
+                FarragoDefaultSessionPersonality.CARDINALITY_FEEDBACK_FACTOR)
+            || (sessionVariables.getInteger(
+                    FarragoDefaultSessionPersonality
+                    .CARDINALITY_FEEDBACK_FACTOR) <= 0))
+        {
+            return null;
+        }
+        return cardinalityFeedback.getObservedRowCounts();
     }
 
     /**
@@ -454,6 +574,7 @@ public class FarragoDatabase
                 }
                 closeAllocation();
             }
+            OJPreparingStmt.shutdownCompilerPool();
             assertNoFennelHandles();
         } catch (Throwable ex) {
             warnOnClose(ex, suppressExcns);
@@ -953,7 +1074,7 @@ public class FarragoDatabase
             stmtValidator.getSession().getPersonality().newPreparingStmt(
                 stmtContext,
                 stmtValidator);
-        return prepareStmtImpl(stmt, sqlNode, owner, analyzedSql);
+        return prepareStmtImpl(stmtContext, stmt, sqlNode, owner, analyzedSql);
     }
 
     /**
@@ -988,6 +1109,7 @@ public class FarragoDatabase
     }
 
     private FarragoSessionExecutableStmt prepareStmtImpl(
+        FarragoSessionStmtContext stmtContext,
         final FarragoSessionPreparingStmt stmt,
         final SqlNode sqlNode,
         FarragoAllocationOwner owner,
@@ -1007,6 +1129,7 @@ public class FarragoDatabase
             stmt.getSession().getSessionVariables().getBoolean(
                 FarragoDefaultSessionPersonality.CACHE_STATEMENTS);
         if (sqlNode.getKind() == SqlKind.EXPLAIN || !cacheStatements) {
+            stmt.setObservedRowCounts(getObservedRowCounts(stmt));
             FarragoSessionExecutableStmt executableStmt =
                 stmt.prepare(sqlNode, sqlNode);
             owner.addAllocation(executableStmt);
@@ -1068,13 +1191,35 @@ public class FarragoDatabase
             return null;
         }
 
-        String key = sql + ";label=";
-        FarragoDbSession session = (FarragoDbSession) stmt.getSession();
-        Long labelCsn = session.getSessionLabelCsn();
-        if (labelCsn != null) {
-            key += labelCsn;
+        // Optionally replace literals which don't influence planning with
+        // dynamic parameters, so that statements which differ only in those
+        // literals share a single cached implementation.
+        FarragoSessionVariables sessionVariables =
+            stmt.getSession().getSessionVariables();
+        if (validatedSqlNode.isA(SqlKind.QUERY)
+            && sessionVariables.containsVariable(
+                FarragoDefaultSessionPersonality.AUTO_PARAMETERIZE)
+            && sessionVariables.getBoolean(
+                FarragoDefaultSessionPersonality.AUTO_PARAMETERIZE))
+        {
+            SqlLiteralParameterizer parameterizer =
+                new SqlLiteralParameterizer(
+                    sqlValidator,
+                    new CatalogAccessPathInspector(stmt.getStmtValidator()));
+            SqlString parameterizedSql =
+                parameterizer.parameterize(validatedSqlNode, sqlDialect);
+            if (parameterizedSql != null) {
+                timingTracer.traceTime("end auto-parameterization");
+                return prepareParameterizedStmt(
+                    stmtContext,
+                    stmt,
+                    parameterizer,
+                    parameterizedSql,
+                    owner);
+            }
         }
-        final String stmtKey = key;
+
+        final String stmtKey = getCodeCacheKey(stmt, sql);
 
         FarragoObjectCache.Entry cacheEntry;
         FarragoObjectCache.CachedObjectFactory stmtFactory =
@@ -1086,8 +1231,21 @@ public class FarragoDatabase
                     timingTracer.traceTime("code cache miss");
 
                     assert (key.equals(stmtKey));
-                    FarragoSessionExecutableStmt executableStmt =
-                        stmt.prepare(validatedSqlNode, sqlNode);
+
+                    // If an earlier implementation got the row count badly
+                    // wrong, don't restore it; re-plan with the actual count.
+                    FarragoSessionExecutableStmt executableStmt = null;
+                    if (!cardinalityFeedback.isReplanPending(stmtKey)) {
+                        executableStmt = restorePersistedStmt(stmtKey, stmt);
+                    }
+                    if (executableStmt == null) {
+                        stmt.setObservedRowCounts(getObservedRowCounts(stmt));
+                        enableSnapshot(stmt);
+                        executableStmt =
+                            stmt.prepare(validatedSqlNode, sqlNode);
+                        persistStmt(stmtKey, stmt, executableStmt);
+                    }
+                    cardinalityFeedback.register(executableStmt, stmtKey);
                     long memUsage =
                         FarragoUtil.getStringMemoryUsage(sql.getSql())
                         + executableStmt.getMemoryUsage();
@@ -1107,25 +1265,275 @@ public class FarragoDatabase
                 }
             };
 
-        // sharing of executable statements depends on session personality;
-        // default for vanilla Farrago personality is that statements
-        // are sharable
-        final boolean sharable =
-            stmt.getSession().getPersonality().supportsFeature(
-                EigenbaseResource.instance().SharedStatementPlans);
-
         // prepare the statement, caching the results in codeCache
-        cacheEntry = codeCache.pin(stmtKey, stmtFactory, !sharable);
+        cacheEntry = codeCache.pin(stmtKey, stmtFactory, !isSharable(stmt));
         FarragoSessionExecutableStmt executableStmt =
             (FarragoSessionExecutableStmt) cacheEntry.getValue();
         owner.addAllocation(cacheEntry);
         return executableStmt;
     }
 
+    /**
+     * Prepares a query via the code cache, using an automatically
+     * parameterized form of its SQL as the cache key.  On a cache miss, the
+     * parameterized SQL is parsed, validated and implemented by a new
+     * preparing statement.
+     *
+     * @param stmtContext embracing stmt context
+     * @param stmt statement which validated the original query
+     * @param parameterizer parameterizer which rewrote the query
+     * @param parameterizedSql rewritten query
+     * @param owner the FarragoAllocationOwner which will be responsible for the
+     * returned stmt
+     *
+     * @return statement implementation, accepting the same dynamic parameters
+     * as the original query
+     */
+    private FarragoSessionExecutableStmt prepareParameterizedStmt(
+        final FarragoSessionStmtContext stmtContext,
+        final FarragoSessionPreparingStmt stmt,
+        SqlLiteralParameterizer parameterizer,
+        final SqlString parameterizedSql,
+        FarragoAllocationOwner owner)
+    {
+        final EigenbaseTimingTracer timingTracer =
+            stmt.getStmtValidator().getTimingTracer();
+        final FarragoRepos stmtRepos = stmt.getRepos();
+        final String stmtKey = getCodeCacheKey(stmt, parameterizedSql);
+
+        FarragoObjectCache.CachedObjectFactory stmtFactory =
+            new FarragoObjectCache.CachedObjectFactory() {
+                public void initializeEntry(
+                    Object key,
+                    FarragoObjectCache.UninitializedEntry entry)
+                {
+                    timingTracer.traceTime("code cache miss");
+
+                    assert (key.equals(stmtKey));
+                    FarragoSessionExecutableStmt executableStmt = null;
+                    if (!cardinalityFeedback.isReplanPending(stmtKey)) {
+                        executableStmt = restorePersistedStmt(stmtKey, stmt);
+                    }
+                    boolean mayCache = true;
+                    if (executableStmt == null) {
+                        FarragoSession session = stmt.getSession();
+                        FarragoSessionStmtValidator stmtValidator =
+                            stmt.getStmtValidator();
+                        FarragoSessionPreparingStmt paramStmt =
+                            session.getPersonality().newPreparingStmt(
+                                stmtContext,
+                                stmtValidator);
+                        FarragoSessionParser parser =
+                            session.getPersonality().newParser(session);
+                        SqlNode paramSqlNode =
+                            (SqlNode) parser.parseSqlText(
+                                stmtValidator,
+                                null,
+                                parameterizedSql.getSql(),
+                                true);
+                        SqlNode validatedParamSqlNode =
+                            paramStmt.getSqlValidator().validate(
+                                paramSqlNode);
+                        paramStmt.postValidate(validatedParamSqlNode);
+                        paramStmt.setObservedRowCounts(
+                            getObservedRowCounts(paramStmt));
+                        enableSnapshot(paramStmt);
+                        executableStmt =
+                            paramStmt.prepare(
+                                validatedParamSqlNode,
+                                paramSqlNode);
+                        persistStmt(stmtKey, paramStmt, executableStmt);
+                        mayCache = paramStmt.mayCacheImplementation();
+                    }
+                    cardinalityFeedback.register(executableStmt, stmtKey);
+                    long memUsage =
+                        FarragoUtil.getStringMemoryUsage(
+                            parameterizedSql.getSql())
+                        + executableStmt.getMemoryUsage();
+                    entry.initialize(
+                        executableStmt,
+                        memUsage,
+                        mayCache);
+                }
+
+                public boolean isStale(Object value)
+                {
+                    FarragoSessionExecutableStmt executableStmt =
+                        (FarragoSessionExecutableStmt) value;
+                    return isExecutableStmtStale(
+                        stmtRepos,
+                        executableStmt);
+                }
+            };
+
+        FarragoObjectCache.Entry cacheEntry =
+            codeCache.pin(stmtKey, stmtFactory, !isSharable(stmt));
+        owner.addAllocation(cacheEntry);
+
+        int [] paramOrdinals = new int[parameterizer.getOriginalParamCount()];
+        for (int i = 0; i < paramOrdinals.length; ++i) {
+            paramOrdinals[i] = parameterizer.getParamOrdinal(i);
+        }
+        List<SqlLiteral> literals = parameterizer.getLiterals();
+        int [] literalParamOrdinals = new int[literals.size()];
+        Object [] literalValues = new Object[literals.size()];
+        for (int i = 0; i < literalParamOrdinals.length; ++i) {
+            literalParamOrdinals[i] = parameterizer.getLiteralParamOrdinal(i);
+            literalValues[i] =
+                SqlLiteralParameterizer.getParamValue(literals.get(i));
+        }
+        return new FarragoDbParameterizedStmt(
+            (FarragoSessionExecutableStmt) cacheEntry.getValue(),
+            stmt.getSqlValidator().getTypeFactory(),
+            paramOrdinals,
+            literalParamOrdinals,
+            literalValues);
+    }
+
+    /**
+     * Attempts to restore a statement from the persistent code cache, checking
+     * that none of the catalog objects it depends on have been modified since
+     * it was persisted.
+     *
+     * @param key code cache key
+     * @param stmt statement which validated the query
+     *
+     * @return restored statement, or null if none is available
+     */
+    private FarragoSessionExecutableStmt restorePersistedStmt(
+        String key,
+        FarragoSessionPreparingStmt stmt)
+    {
+        if ((persistentCodeCache == null)
+            || !isSharable(stmt)
+            || !stmt.mayCacheImplementation())
+        {
+            return null;
+        }
+        Serializable snapshot =
+            persistentCodeCache.load(key, getPersistentContext(stmt));
+        if (snapshot == null) {
+            return null;
+        }
+        FarragoSessionExecutableStmt executableStmt;
+        try {
+            executableStmt = stmt.restoreExecutableStmt(snapshot);
+        } catch (RuntimeException ex) {
+            tracer.log(
+                Level.FINE,
+                "unable to restore persisted statement",
+                ex);
+            persistentCodeCache.remove(key);
+            return null;
+        }
+        if (isExecutableStmtStale(stmt.getRepos(), executableStmt)) {
+            executableStmt.closeAllocation();
+            persistentCodeCache.remove(key);
+            return null;
+        }
+        stmt.getStmtValidator().getTimingTracer().traceTime(
+            "persistent code cache hit");
+        return executableStmt;
+    }
+
+    /**
+     * Asks a statement about to be prepared to keep what {@link #persistStmt}
+     * needs, if the persistent code cache is enabled.
+     *
+     * @param stmt statement to be prepared
+     */
+    private void enableSnapshot(FarragoSessionPreparingStmt stmt)
+    {
+        if ((persistentCodeCache != null) && isSharable(stmt)) {
+            stmt.enableSnapshot();
+        }
+    }
+
+    /**
+     * Writes a newly prepared statement to the persistent code cache, if
+     * enabled and the statement is eligible.
+     *
+     * @param key code cache key
+     * @param stmt statement which prepared executableStmt
+     * @param executableStmt prepared statement
+     */
+    private void persistStmt(
+        String key,
+        FarragoSessionPreparingStmt stmt,
+        FarragoSessionExecutableStmt executableStmt)
+    {
+        if ((persistentCodeCache == null)
+            || !isSharable(stmt)
+            || !stmt.mayCacheImplementation())
+        {
+            return;
+        }
+        Serializable snapshot = stmt.snapshotExecutableStmt(executableStmt);
+        if (snapshot != null) {
+            persistentCodeCache.store(
+                key,
+                getPersistentContext(stmt),
+                snapshot);
+        }
+    }
+
+    /**
+     * Describes the environment in which a statement is prepared, so that
+     * persisted plans are not reused under a personality or configuration
+     * which would have produced a different plan.
+     */
+    private String getPersistentContext(FarragoSessionPreparingStmt stmt)
+    {
+        return stmt.getSession().getPersonality().getClass().getName()
+            + " "
+            + stmt.getRepos().getCurrentConfig().getCalcVirtualMachine();
+    }
+
+    /**
+     * Builds the code cache key for a statement.
+     *
+     * @param stmt preparing statement
+     * @param sql unparsed validated SQL of statement
+     *
+     * @return cache key
+     */
+    private String getCodeCacheKey(
+        FarragoSessionPreparingStmt stmt,
+        SqlString sql)
+    {
+        String key = sql + ";label=";
+        FarragoDbSession session = (FarragoDbSession) stmt.getSession();
+        Long labelCsn = session.getSessionLabelCsn();
+        if (labelCsn != null) {
+            key += labelCsn;
+        }
+        return key;
+    }
+
+    /**
+     * Determines whether executable statements prepared by a statement may be
+     * shared with other sessions.
+     *
+     * @param stmt preparing statement
+     *
+     * @return whether cached implementation may be shared
+     */
+    private boolean isSharable(FarragoSessionPreparingStmt stmt)
+    {
+        // sharing of executable statements depends on session personality;
+        // default for vanilla Farrago personality is that statements
+        // are sharable
+        return stmt.getSession().getPersonality().supportsFeature(
+            EigenbaseResource.instance().SharedStatementPlans);
+    }
+
     private boolean isExecutableStmtStale(
         FarragoRepos repos,
         FarragoSessionExecutableStmt stmt)
     {
+        if (cardinalityFeedback.isStale(stmt)) {
+            return true;
+        }
         for (String mofid : stmt.getReferencedObjectIds()) {
             RefBaseObject obj = repos.getMdrRepos().getByMofId(mofid);
             if (obj == null) {
@@ -1169,6 +1577,9 @@ public class FarragoDatabase
             // when this parameter changes, we need to clear the code cache,
             // since cached plans may be based on the old setting
             codeCache.setMaxBytes(0);
+            if (persistentCodeCache != null) {
+                persistentCodeCache.clear();
+            }
 
             // this makes sure that we reset the cache to the correct size
             // below
@@ -1179,6 +1590,20 @@ public class FarragoDatabase
             setCodeCacheSize = true;
         }
 
+        if (paramName.equals("codeCacheVictimPolicy")) {
+            // validate only; the code cache is shared by running statements,
+            // so the new policy takes effect the next time the database
+            // is started
+            String policyName = ddlStmt.getParamValue().toValue();
+            if (getCodeCacheVictimPolicyFactory(policyName) == null) {
+                throw FarragoResource.instance()
+                .ValidatorUnknownCacheVictimPolicy.ex(
+                    policyName,
+                    paramName,
+                    CODE_CACHE_VICTIM_POLICIES.keySet().toString());
+            }
+        }
+
         if (setCodeCacheSize) {
             codeCache.setMaxBytes(
                 getCodeCacheMaxBytes(systemRepos.getCurrentConfig()));
@@ -1234,6 +1659,24 @@ public class FarragoDatabase
         }
     }
 
+    /**
+     * Looks up the victim policy factory for a value of the
+     * codeCacheVictimPolicy system parameter.
+     *
+     * @param policyName policy name (case-insensitive), or null for the
+     * default
+     *
+     * @return factory, or null if policyName is not recognized
+     */
+    private static FarragoCacheVictimPolicyFactory
+    getCodeCacheVictimPolicyFactory(String policyName)
+    {
+        if (policyName == null) {
+            return FarragoLruVictimPolicy.FACTORY;
+        }
+        return CODE_CACHE_VICTIM_POLICIES.get(policyName.toUpperCase());
+    }
+
     private long getCodeCacheMaxBytes(FemFarragoConfig config)
     {
         long codeCacheMaxBytes = config.getCodeCacheMaxBytes();
@@ -1424,6 +1867,121 @@ public class FarragoDatabase
             userRepos = systemRepos;
         }
     }
+
+    /**
+     * Decides from the catalog which columns have access paths depending on
+     * the values they are compared with: columns which are keys of an
+     * unclustered index, or whose histogram is skewed. Auto-parameterization
+     * keeps the literals compared with them, so that index searches and
+     * selectivity estimates still see the values.
+     *
+     * <p>Clustered indexes are ignored: in a column store every column
+     * belongs to one, so they would keep every literal, and a row store's
+     * clustered index can be searched with a parameter as readily as with a
+     * literal. A histogram whose bars are uniform gives the same estimate
+     * for any value it contains, so only skewed histograms count.
+     */
+    static class CatalogAccessPathInspector
+        implements SqlLiteralParameterizer.AccessPathInspector
+    {
+        /**
+         * Ratio between the densest and sparsest histogram bars (in rows per
+         * distinct value) above which a histogram is considered skewed.
+         */
+        private static final double SKEW_RATIO = 2.0;
+
+        private final FarragoSessionStmtValidator stmtValidator;
+
+        CatalogAccessPathInspector(FarragoSessionStmtValidator stmtValidator)
+        {
+            this.stmtValidator = stmtValidator;
+        }
+
+        // implement AccessPathInspector
+        public boolean isAccessPathColumn(
+            String [] tableName,
+            String columnName)
+        {
+            CwmNamedColumnSet columnSet;
+            try {
+                columnSet =
+                    stmtValidator.findSchemaObject(
+                        new SqlIdentifier(tableName, SqlParserPos.ZERO),
+                        CwmNamedColumnSet.class);
+            } catch (EigenbaseException ex) {
+                return true;
+            }
+            if (columnSet instanceof CwmView) {
+                // the column may be an indexed column of an underlying table
+                return true;
+            }
+            FemAbstractColumn column = null;
+            for (Object feature : columnSet.getFeature()) {
+                if ((feature instanceof FemAbstractColumn)
+                    && ((FemAbstractColumn) feature).getName().equals(
+                        columnName))
+                {
+                    column = (FemAbstractColumn) feature;
+                }
+            }
+            if (column == null) {
+                return true;
+            }
+            if (isSkewed(FarragoCatalogUtil.getHistogram(column, null))) {
+                return true;
+            }
+            List<FemLocalIndex> indexes =
+                FarragoCatalogUtil.getUnclusteredIndexes(
+                    stmtValidator.getRepos(),
+                    columnSet);
+            for (FemLocalIndex index : indexes) {
+                for (CwmIndexedFeature feature : index.getIndexedFeature()) {
+                    if (feature.getFeature() == column) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Determines whether the selectivity estimated from a histogram for
+         * an equality predicate depends on the value compared with: true if
+         * some values span more than one bar, or if the bars' densities
+         * differ by more than {@link #SKEW_RATIO}.
+         *
+         * @param histogram histogram, or null
+         *
+         * @return whether the histogram is skewed; false if null
+         */
+        static boolean isSkewed(FemColumnHistogram histogram)
+        {
+            if (histogram == null) {
+                return false;
+            }
+            int barCount = histogram.getBarCount();
+            Long distinctValueCount = histogram.getDistinctValueCount();
+            if ((barCount == 0) || (distinctValueCount == null)) {
+                return false;
+            }
+            if (distinctValueCount < barCount) {
+                return true;
+            }
+            double minDensity = Double.MAX_VALUE;
+            double maxDensity = 0;
+            for (FemColumnHistogramBar bar : histogram.getBar()) {
+                long rows =
+                    (bar.getOrdinal() == (barCount - 1))
+                    ? histogram.getRowsLastBar()
+                    : histogram.getRowsPerBar();
+                double density =
+                    (double) rows / Math.max(bar.getValueCount(), 1);
+                minDensity = Math.min(minDensity, density);
+                maxDensity = Math.max(maxDensity, density);
+            }
+            return maxDensity > (minDensity * SKEW_RATIO);
+        }
+    }
 }
 
 // End FarragoDatabase.java
@@ -0,0 +1,235 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.db;
+
+import java.util.*;
+import java.util.logging.*;
+
+import net.sf.farrago.session.*;
+import net.sf.farrago.trace.*;
+
+
+/**
+ * FarragoDbCardinalityFeedback compares the number of rows statements actually
+ * return or modify with the optimizer's estimate, and remembers the actual
+ * count when the estimate was far off, so that the optimizer can use it for
+ * statements prepared afterwards.
+ *
+ * <p>The runtime only reports the row count of a whole statement, not of the
+ * individual streams of its plan. That count is also the row count of the part
+ * of the plan below any projections, sorts and table modifications, so it is
+ * recorded under the explain text of that part, its cardinality key (see
+ * {@link
+ * net.sf.farrago.query.FarragoRelMetadataProvider.ObservedRowCountProvider}).
+ * Any statement prepared later which contains an expression with the same text,
+ * be it the same statement or another one using it as a subquery or view, sees
+ * the observed count for that expression and for whatever the optimizer
+ * rewrites it into, such as the scan, filter or join which implements it.
+ *
+ * <p>When the error exceeds the factor set by the session, the cached
+ * implementation of the observed statement is also reported as stale, so that
+ * the next prepare of the same SQL plans it afresh. A statement whose row
+ * count depends on its parameters could otherwise be re-planned over and over,
+ * so each statement is re-planned at most {@link #MAX_REPLANS} times. Other
+ * cached statements which contain the same expression pick up the observation
+ * when they are next prepared.
+ *
+ * @author agent
+ * @version $Id$
+ */
+class FarragoDbCardinalityFeedback
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Logger tracer =
+        FarragoTrace.getClassTracer(FarragoDbCardinalityFeedback.class);
+
+    /**
+     * Maximum number of expressions for which observed row counts are kept,
+     * and of statements for which re-plans are counted; the least recently
+     * used are forgotten first.
+     */
+    private static final int MAX_OBSERVATIONS = 1000;
+
+    /**
+     * Maximum number of times feedback causes a statement to be re-planned.
+     */
+    private static final int MAX_REPLANS = 2;
+
+    //~ Instance fields --------------------------------------------------------
+
+    /**
+     * Code cache keys of the statements in the code cache, keyed by the
+     * statement.
+     */
+    private final Map<FarragoSessionExecutableStmt, String> stmtKeys =
+        new WeakHashMap<FarragoSessionExecutableStmt, String>();
+
+    /**
+     * Statements which must be re-planned.
+     */
+    private final Map<FarragoSessionExecutableStmt, Boolean> staleStmts =
+        new WeakHashMap<FarragoSessionExecutableStmt, Boolean>();
+
+    /**
+     * Code cache keys of the statements which have been marked stale but not
+     * yet prepared again.
+     */
+    private final Map<String, Boolean> pendingReplans = newLruMap();
+
+    /**
+     * Observed row counts, keyed by cardinality key.
+     */
+    private final Map<String, Double> rowCounts = newLruMap();
+
+    /**
+     * Number of times feedback has caused each statement to be re-planned,
+     * keyed by code cache key.
+     */
+    private final Map<String, Integer> replanCounts = newLruMap();
+
+    //~ Methods ----------------------------------------------------------------
+
+    private static <V> Map<String, V> newLruMap()
+    {
+        return new LinkedHashMap<String, V>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest)
+            {
+                return size() > MAX_OBSERVATIONS;
+            }
+        };
+    }
+
+    /**
+     * Records the code cache key of a statement which has just been prepared
+     * or restored into the code cache.
+     *
+     * @param stmt executable statement, as held by the code cache
+     * @param stmtKey code cache key
+     */
+    synchronized void register(
+        FarragoSessionExecutableStmt stmt,
+        String stmtKey)
+    {
+        stmtKeys.put(stmt, stmtKey);
+        pendingReplans.remove(stmtKey);
+    }
+
+    /**
+     * Determines whether the statement with a given code cache key is waiting
+     * to be re-planned, in which case an implementation persisted before it
+     * was marked stale must not be restored.
+     *
+     * @param stmtKey code cache key
+     *
+     * @return whether the statement must be re-planned
+     */
+    synchronized boolean isReplanPending(String stmtKey)
+    {
+        return pendingReplans.containsKey(stmtKey);
+    }
+
+    /**
+     * Returns the row counts observed so far, to be supplied to the optimizer
+     * when a statement is prepared.
+     *
+     * @return copy of the observed row counts keyed by cardinality key, or
+     * null if there are none
+     */
+    synchronized Map<String, Double> getObservedRowCounts()
+    {
+        if (rowCounts.isEmpty()) {
+            return null;
+        }
+        return new HashMap<String, Double>(rowCounts);
+    }
+
+    /**
+     * Determines whether a cached statement must be re-planned because its
+     * row count estimate was too far off.
+     *
+     * @param stmt executable statement, as held by the code cache
+     *
+     * @return whether the statement is stale
+     */
+    synchronized boolean isStale(FarragoSessionExecutableStmt stmt)
+    {
+        return staleStmts.containsKey(stmt);
+    }
+
+    /**
+     * Compares the number of rows a statement returned or modified with its
+     * estimate. If they differ by at least a given factor, records the
+     * observed count and, if the statement is from the code cache, marks it
+     * stale.
+     *
+     * @param stmt executable statement, as held by the code cache if it is
+     * cached
+     * @param rowCount number of rows the statement returned or modified
+     * @param errorFactor minimum ratio between the larger and the smaller of
+     * the estimated and the observed row count for the count to be recorded
+     */
+    synchronized void observe(
+        FarragoSessionExecutableStmt stmt,
+        long rowCount,
+        int errorFactor)
+    {
+        String cardinalityKey = stmt.getCardinalityKey();
+        Double estimatedRowCount = stmt.getEstimatedRowCount();
+        if ((cardinalityKey == null) || (estimatedRowCount == null)) {
+            return;
+        }
+        double estimate = Math.max(estimatedRowCount, 1.0);
+        double actual = Math.max(rowCount, 1.0);
+        double error = Math.max(estimate / actual, actual / estimate);
+        if (error < errorFactor) {
+            return;
+        }
+        rowCounts.put(cardinalityKey, (double) rowCount);
+        if (tracer.isLoggable(Level.FINE)) {
+            tracer.fine(
+                "estimated " + estimatedRowCount + " rows but observed "
+                + rowCount + " for " + cardinalityKey);
+        }
+
+        String stmtKey = stmtKeys.get(stmt);
+        if ((stmtKey == null) || staleStmts.containsKey(stmt)) {
+            // not from the code cache, or already waiting to be re-planned
+            return;
+        }
+        Integer replanCount = replanCounts.get(stmtKey);
+        if (replanCount == null) {
+            replanCount = 0;
+        }
+        if (replanCount >= MAX_REPLANS) {
+            return;
+        }
+        replanCounts.put(stmtKey, replanCount + 1);
+        staleStmts.put(stmt, Boolean.TRUE);
+        pendingReplans.put(stmtKey, Boolean.TRUE);
+        if (tracer.isLoggable(Level.FINE)) {
+            tracer.fine("re-planning " + stmtKey);
+        }
+    }
+}
+
+// End FarragoDbCardinalityFeedback.java
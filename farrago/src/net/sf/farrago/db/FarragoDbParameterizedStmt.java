@@ -0,0 +1,241 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.db;
+
+import java.sql.*;
+
+import java.util.*;
+
+import net.sf.farrago.session.*;
+import net.sf.farrago.util.*;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.relopt.*;
+import org.eigenbase.reltype.*;
+
+
+/**
+ * FarragoDbParameterizedStmt presents a cached statement which was prepared
+ * from an automatically parameterized form of the SQL submitted by the user
+ * (see {@link org.eigenbase.sql.validate.SqlLiteralParameterizer}). It hides
+ * the parameters which replaced literals, so that the statement has the same
+ * dynamic parameters as the original SQL, and supplies the literal values for
+ * them at execution time.
+ *
+ * <p>Unlike the underlying statement, instances are private to the statement
+ * context which prepared them.
+ *
+ * @author agent
+ * @version $Id$
+ */
+class FarragoDbParameterizedStmt
+    extends FarragoCompoundAllocation
+    implements FarragoSessionExecutableStmt
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final FarragoSessionExecutableStmt executableStmt;
+    private final RelDataType dynamicParamRowType;
+    private final int [] paramOrdinals;
+    private final int [] literalParamOrdinals;
+    private final Object [] literalValues;
+
+    /**
+     * Literal values after conversion to the types of the parameters which
+     * replaced them; computed on first execution.
+     */
+    private Object [] scrubbedLiteralValues;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FarragoDbParameterizedStmt.
+     *
+     * @param executableStmt statement prepared from parameterized SQL
+     * @param typeFactory factory for the user-visible parameter row type
+     * @param paramOrdinals for each dynamic parameter of the original SQL,
+     * the ordinal of the corresponding parameter of executableStmt
+     * @param literalParamOrdinals for each replaced literal, the ordinal of
+     * the corresponding parameter of executableStmt
+     * @param literalValues for each replaced literal, its value
+     */
+    FarragoDbParameterizedStmt(
+        FarragoSessionExecutableStmt executableStmt,
+        RelDataTypeFactory typeFactory,
+        int [] paramOrdinals,
+        int [] literalParamOrdinals,
+        Object [] literalValues)
+    {
+        assert (literalParamOrdinals.length == literalValues.length);
+        this.executableStmt = executableStmt;
+        this.paramOrdinals = paramOrdinals;
+        this.literalParamOrdinals = literalParamOrdinals;
+        this.literalValues = literalValues;
+
+        RelDataTypeField [] fields =
+            executableStmt.getDynamicParamRowType().getFields();
+        assert (fields.length
+            == (paramOrdinals.length + literalParamOrdinals.length));
+        RelDataType [] types = new RelDataType[paramOrdinals.length];
+        String [] names = new String[paramOrdinals.length];
+        for (int i = 0; i < paramOrdinals.length; ++i) {
+            types[i] = fields[paramOrdinals[i]].getType();
+            names[i] = "?" + i;
+        }
+        dynamicParamRowType = typeFactory.createStructType(types, names);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @return the statement prepared from the parameterized SQL, which is the
+     * one held by the code cache
+     */
+    FarragoSessionExecutableStmt getCachedStmt()
+    {
+        return executableStmt;
+    }
+
+    /**
+     * Builds the full array of dynamic parameter values expected by the
+     * underlying statement.
+     *
+     * @param values values of the user-visible parameters
+     * @param paramDefFactory factory for parameter definitions, used to
+     * convert literal values to parameter types
+     *
+     * @return values for all parameters of the underlying statement
+     */
+    Object [] bindDynamicParams(
+        Object [] values,
+        FarragoSessionStmtParamDefFactory paramDefFactory)
+    {
+        RelDataTypeField [] fields =
+            executableStmt.getDynamicParamRowType().getFields();
+        if (scrubbedLiteralValues == null) {
+            Object [] scrubbed = new Object[literalValues.length];
+            for (int i = 0; i < literalValues.length; ++i) {
+                RelDataTypeField field = fields[literalParamOrdinals[i]];
+                scrubbed[i] =
+                    paramDefFactory.newParamDef(
+                        field.getName(),
+                        field.getType()).scrubValue(literalValues[i]);
+            }
+            scrubbedLiteralValues = scrubbed;
+        }
+
+        Object [] allValues = new Object[fields.length];
+        for (int i = 0; i < paramOrdinals.length; ++i) {
+            allValues[paramOrdinals[i]] = values[i];
+        }
+        for (int i = 0; i < literalParamOrdinals.length; ++i) {
+            allValues[literalParamOrdinals[i]] = scrubbedLiteralValues[i];
+        }
+        return allValues;
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public ResultSet execute(FarragoSessionRuntimeContext runtimeContext)
+    {
+        return executableStmt.execute(runtimeContext);
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public RelDataType getRowType()
+    {
+        return executableStmt.getRowType();
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public List<List<String>> getFieldOrigins()
+    {
+        return executableStmt.getFieldOrigins();
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public RelDataType getDynamicParamRowType()
+    {
+        return dynamicParamRowType;
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public boolean isDml()
+    {
+        return executableStmt.isDml();
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public TableModificationRel.Operation getTableModOp()
+    {
+        return executableStmt.getTableModOp();
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public long getMemoryUsage()
+    {
+        return executableStmt.getMemoryUsage();
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public Set<String> getReferencedObjectIds()
+    {
+        return executableStmt.getReferencedObjectIds();
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public String getReferencedObjectModTime(String mofid)
+    {
+        return executableStmt.getReferencedObjectModTime(mofid);
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public TableAccessMap getTableAccessMap()
+    {
+        return executableStmt.getTableAccessMap();
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public Map<String, RelDataType> getResultSetTypeMap()
+    {
+        return executableStmt.getResultSetTypeMap();
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public Map<String, RelDataType> getIterCalcTypeMap()
+    {
+        return executableStmt.getIterCalcTypeMap();
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public Double getEstimatedRowCount()
+    {
+        return executableStmt.getEstimatedRowCount();
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public String getCardinalityKey()
+    {
+        return executableStmt.getCardinalityKey();
+    }
+}
+
+// End FarragoDbParameterizedStmt.java
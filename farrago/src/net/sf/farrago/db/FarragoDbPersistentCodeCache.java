@@ -0,0 +1,408 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.db;
+
+import java.io.*;
+
+import java.security.*;
+
+import java.util.*;
+import java.util.logging.*;
+
+import javax.crypto.*;
+import javax.crypto.spec.*;
+
+import net.sf.farrago.trace.*;
+
+
+/**
+ * FarragoDbPersistentCodeCache stores snapshots of prepared statements in a
+ * local directory so that the code cache can be repopulated lazily after a
+ * restart without re-planning or recompiling. Each entry lives in its own
+ * file, named after a digest of its code cache key.
+ *
+ * <p>The persistent cache is purely advisory: any failure to read or write an
+ * entry is traced and otherwise ignored, in which case the statement is simply
+ * prepared from scratch. Entries are not validated against the catalog here;
+ * the caller must check a restored statement before using it.
+ *
+ * <p>Entries contain generated bytecode which is loaded into the server, so
+ * anyone able to write an entry could run code in the server. To guard against
+ * this, the directory and the entries are created readable and writable only
+ * by their owner, and each entry is signed with an HMAC whose key is kept in
+ * a file readable only by its owner, outside the directory. Entries whose
+ * signature does not verify are discarded before they are deserialized.
+ *
+ * @author agent
+ * @version $Id$
+ */
+class FarragoDbPersistentCodeCache
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Logger tracer =
+        FarragoTrace.getClassTracer(FarragoDbPersistentCodeCache.class);
+
+    /**
+     * Version of the file format; bump this whenever the layout of entries or
+     * of the snapshots they contain changes incompatibly.
+     */
+    private static final int FORMAT_VERSION = 2;
+
+    private static final String FILE_SUFFIX = ".stmt";
+
+    private static final String MAC_ALGORITHM = "HmacSHA1";
+
+    private static final int KEY_LENGTH = 20;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final File dir;
+    private final String fingerprint;
+    private final SecretKey macKey;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a persistent code cache.
+     *
+     * @param dir directory in which to store entries; created if it does not
+     * exist
+     * @param keyFile file holding the key with which entries are signed;
+     * created if it does not exist. It must not be in a directory which is
+     * writable by anyone who should not be able to run code in the server.
+     * @param fingerprint identifies the code which created the entries (e.g.
+     * product version); entries with a different fingerprint are ignored
+     */
+    FarragoDbPersistentCodeCache(File dir, File keyFile, String fingerprint)
+    {
+        this.dir = dir;
+        this.fingerprint = fingerprint;
+        if (!dir.isDirectory()) {
+            if (dir.mkdirs()) {
+                restrictToOwner(dir);
+            } else {
+                tracer.warning(
+                    "unable to create persistent code cache directory "
+                    + dir);
+            }
+        }
+        this.macKey = loadKey(keyFile);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @return whether entries can be read and written; false if the signing
+     * key is unavailable
+     */
+    boolean isEnabled()
+    {
+        return macKey != null;
+    }
+
+    /**
+     * Reads an entry.
+     *
+     * @param key code cache key
+     * @param context identifies the session personality and configuration
+     * of the server which is preparing the statement
+     *
+     * @return statement snapshot, or null if there is no usable entry for the
+     * key
+     */
+    Serializable load(String key, String context)
+    {
+        if (macKey == null) {
+            return null;
+        }
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        ObjectInputStream in = null;
+        try {
+            byte [] bytes = readFile(file);
+            int macLength = newMac().getMacLength();
+            if (bytes.length < macLength) {
+                throw new IOException("truncated entry");
+            }
+            Mac mac = newMac();
+            mac.update(bytes, macLength, bytes.length - macLength);
+            byte [] expected = mac.doFinal();
+            if (!MessageDigest.isEqual(
+                    expected,
+                    Arrays.copyOfRange(bytes, 0, macLength)))
+            {
+                throw new IOException("signature mismatch");
+            }
+            in =
+                new ObjectInputStream(
+                    new ByteArrayInputStream(
+                        bytes,
+                        macLength,
+                        bytes.length - macLength));
+            if ((in.readInt() != FORMAT_VERSION)
+                || !fingerprint.equals(in.readUTF())
+                || !context.equals(in.readUTF())
+                || !key.equals(in.readObject()))
+            {
+                // Obsolete, or a digest collision; either way, leave it to
+                // be overwritten once the statement has been prepared.
+                return null;
+            }
+            return (Serializable) in.readObject();
+        } catch (Exception ex) {
+            tracer.log(
+                Level.FINE,
+                "discarding unreadable persistent code cache entry " + file,
+                ex);
+            file.delete();
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Writes an entry, replacing any existing entry for the same key.
+     *
+     * @param key code cache key
+     * @param context identifies the session personality and configuration
+     * of the server which prepared the statement
+     * @param snapshot statement snapshot
+     */
+    void store(String key, String context, Serializable snapshot)
+    {
+        if (macKey == null) {
+            return;
+        }
+        File file = getFile(key);
+        File tmpFile = null;
+        OutputStream out = null;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+            objectOut.writeInt(FORMAT_VERSION);
+            objectOut.writeUTF(fingerprint);
+            objectOut.writeUTF(context);
+            objectOut.writeObject(key);
+            objectOut.writeObject(snapshot);
+            objectOut.close();
+            byte [] payload = bytes.toByteArray();
+
+            // Write to a temporary file first so that concurrent readers
+            // (or a crash) never see a partial entry.
+            tmpFile = File.createTempFile("stmt", ".tmp", dir);
+            restrictToOwner(tmpFile);
+            out = new BufferedOutputStream(new FileOutputStream(tmpFile));
+            out.write(newMac().doFinal(payload));
+            out.write(payload);
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(file)) {
+                file.delete();
+                if (!tmpFile.renameTo(file)) {
+                    throw new IOException("unable to rename " + tmpFile);
+                }
+            }
+            tmpFile = null;
+        } catch (IOException ex) {
+            // NotSerializableException lands here too, for statements
+            // involving types which don't support serialization
+            tracer.log(
+                Level.FINE,
+                "unable to write persistent code cache entry " + file,
+                ex);
+        } finally {
+            close(out);
+            if (tmpFile != null) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Removes an entry, if it exists.
+     *
+     * @param key code cache key
+     */
+    void remove(String key)
+    {
+        getFile(key).delete();
+    }
+
+    /**
+     * Removes all entries; called when the in-memory code cache is flushed,
+     * or when a configuration change makes existing plans obsolete.
+     */
+    void clear()
+    {
+        File [] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(FILE_SUFFIX)) {
+                file.delete();
+            }
+        }
+    }
+
+    private Mac newMac()
+    {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(macKey);
+            return mac;
+        } catch (GeneralSecurityException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * Reads the signing key, generating it if the key file does not exist.
+     *
+     * @return key, or null if it can't be read or created
+     */
+    private static SecretKey loadKey(File keyFile)
+    {
+        try {
+            byte [] keyBytes;
+            if (keyFile.exists()) {
+                keyBytes = readKey(keyFile);
+            } else {
+                keyBytes = new byte[KEY_LENGTH];
+                new SecureRandom().nextBytes(keyBytes);
+                File tmpFile =
+                    File.createTempFile(
+                        "key",
+                        ".tmp",
+                        keyFile.getAbsoluteFile().getParentFile());
+                restrictToOwner(tmpFile);
+                OutputStream out = new FileOutputStream(tmpFile);
+                try {
+                    out.write(keyBytes);
+                } finally {
+                    out.close();
+                }
+                if (!tmpFile.renameTo(keyFile)) {
+                    tmpFile.delete();
+
+                    // another server may have created it concurrently; if
+                    // not, give up rather than retry forever
+                    if (!keyFile.exists()) {
+                        throw new IOException("unable to create " + keyFile);
+                    }
+                    keyBytes = readKey(keyFile);
+                }
+            }
+            return new SecretKeySpec(keyBytes, MAC_ALGORITHM);
+        } catch (IOException ex) {
+            tracer.log(
+                Level.WARNING,
+                "unable to read or create persistent code cache key "
+                + keyFile + "; statements will not be persisted",
+                ex);
+            return null;
+        }
+    }
+
+    private static byte [] readKey(File keyFile)
+        throws IOException
+    {
+        byte [] keyBytes = readFile(keyFile);
+        if (keyBytes.length != KEY_LENGTH) {
+            throw new IOException("invalid key file " + keyFile);
+        }
+        return keyBytes;
+    }
+
+    /**
+     * Makes a file or directory accessible only by its owner.
+     */
+    private static void restrictToOwner(File file)
+    {
+        boolean ok =
+            file.setReadable(false, false)
+            && file.setReadable(true, true)
+            && file.setWritable(false, false)
+            && file.setWritable(true, true);
+        if (file.isDirectory()) {
+            ok &= file.setExecutable(false, false)
+                && file.setExecutable(true, true);
+        }
+        if (!ok) {
+            tracer.warning("unable to restrict permissions on " + file);
+        }
+    }
+
+    private static byte [] readFile(File file)
+        throws IOException
+    {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            byte [] bytes = new byte[(int) file.length()];
+            in.readFully(bytes);
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    private File getFile(String key)
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new AssertionError(ex);
+        }
+        byte [] hash;
+        try {
+            hash = digest.digest(key.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException ex) {
+            throw new AssertionError(ex);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        sb.append(FILE_SUFFIX);
+        return new File(dir, sb.toString());
+    }
+
+    private static void close(Closeable stream)
+    {
+        if (stream == null) {
+            return;
+        }
+        try {
+            stream.close();
+        } catch (IOException ex) {
+            // ignore
+        }
+    }
+}
+
+// End FarragoDbPersistentCodeCache.java
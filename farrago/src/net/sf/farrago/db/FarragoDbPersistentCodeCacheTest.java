@@ -0,0 +1,358 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.db;
+
+import java.io.*;
+
+import java.sql.*;
+
+import java.util.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.jdbc.engine.*;
+import net.sf.farrago.test.*;
+
+
+/**
+ * FarragoDbPersistentCodeCacheTest tests {@link FarragoDbPersistentCodeCache}
+ * directly, and its use by {@link FarragoDatabase} to restore statements
+ * whose catalog dependencies have changed since they were persisted.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class FarragoDbPersistentCodeCacheTest
+    extends FarragoTestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final String KEY = "select * from t;label=null";
+
+    private static final String CONTEXT = "context";
+
+    //~ Instance fields --------------------------------------------------------
+
+    private File dir;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FarragoDbPersistentCodeCacheTest object.
+     *
+     * @param testName JUnit test name
+     *
+     * @throws Exception .
+     */
+    public FarragoDbPersistentCodeCacheTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement TestCase
+    public static Test suite()
+    {
+        return wrappedSuite(FarragoDbPersistentCodeCacheTest.class);
+    }
+
+    // implement TestCase
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        dir =
+            new File(
+                System.getProperty("java.io.tmpdir"),
+                "FarragoDbPersistentCodeCacheTest");
+        delete(dir);
+        assertTrue(dir.mkdirs());
+    }
+
+    // implement TestCase
+    protected void tearDown()
+        throws Exception
+    {
+        try {
+            delete(dir);
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    /**
+     * Tests that an entry reads back as stored, and only in the context and
+     * for the fingerprint it was stored with.
+     */
+    public void testRoundTrip()
+    {
+        FarragoDbPersistentCodeCache cache = newCache("v1");
+        assertTrue(cache.isEnabled());
+        assertNull(cache.load(KEY, CONTEXT));
+
+        cache.store(KEY, CONTEXT, "snapshot");
+        assertEquals("snapshot", cache.load(KEY, CONTEXT));
+        assertNull(cache.load("other key", CONTEXT));
+        assertNull(cache.load(KEY, "other context"));
+
+        // A new instance sharing the key file reads the same entry, but not
+        // if it was created by a different version.
+        assertEquals("snapshot", newCache("v1").load(KEY, CONTEXT));
+        assertNull(newCache("v2").load(KEY, CONTEXT));
+
+        // Mismatches leave the entry to be overwritten, rather than delete it.
+        assertEquals(1, getEntryFiles().length);
+
+        cache.store(KEY, CONTEXT, "snapshot2");
+        assertEquals("snapshot2", cache.load(KEY, CONTEXT));
+        assertEquals(1, getEntryFiles().length);
+    }
+
+    /**
+     * Tests that an entry which has been modified, or which was signed with a
+     * different key, is rejected and deleted.
+     */
+    public void testTamper()
+        throws Exception
+    {
+        FarragoDbPersistentCodeCache cache = newCache("v1");
+        cache.store(KEY, CONTEXT, "snapshot");
+        File [] files = getEntryFiles();
+        assertEquals(1, files.length);
+        File file = files[0];
+
+        // flip a bit in the last byte, which is part of the snapshot
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(raf.length() - 1);
+            int b = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(b ^ 1);
+        } finally {
+            raf.close();
+        }
+        assertNull(cache.load(KEY, CONTEXT));
+        assertFalse(file.exists());
+
+        // truncated entry
+        cache.store(KEY, CONTEXT, "snapshot");
+        raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(4);
+        } finally {
+            raf.close();
+        }
+        assertNull(cache.load(KEY, CONTEXT));
+        assertFalse(file.exists());
+
+        // entry signed by a server with a different key
+        cache.store(KEY, CONTEXT, "snapshot");
+        FarragoDbPersistentCodeCache otherCache =
+            new FarragoDbPersistentCodeCache(
+                dir,
+                new File(dir, "other.key"),
+                "v1");
+        assertTrue(otherCache.isEnabled());
+        assertNull(otherCache.load(KEY, CONTEXT));
+        assertFalse(file.exists());
+    }
+
+    /**
+     * Tests {@link FarragoDbPersistentCodeCache#remove} and {@link
+     * FarragoDbPersistentCodeCache#clear}.
+     */
+    public void testRemove()
+    {
+        FarragoDbPersistentCodeCache cache = newCache("v1");
+        cache.store(KEY, CONTEXT, "snapshot");
+        cache.store("other key", CONTEXT, "snapshot");
+        assertEquals(2, getEntryFiles().length);
+
+        cache.remove(KEY);
+        assertNull(cache.load(KEY, CONTEXT));
+        assertEquals("snapshot", cache.load("other key", CONTEXT));
+
+        cache.clear();
+        assertEquals(0, getEntryFiles().length);
+
+        // clear leaves the key alone
+        assertTrue(getKeyFile().exists());
+        cache.store(KEY, CONTEXT, "snapshot");
+        assertEquals("snapshot", newCache("v1").load(KEY, CONTEXT));
+    }
+
+    /**
+     * Tests that the cache disables itself, rather than fail or loop, if its
+     * key file cannot be read or created.
+     */
+    public void testBadKeyFile()
+        throws Exception
+    {
+        File missingDir = new File(dir, "missing");
+        FarragoDbPersistentCodeCache cache =
+            new FarragoDbPersistentCodeCache(
+                dir,
+                new File(missingDir, "cache.key"),
+                "v1");
+        assertFalse(cache.isEnabled());
+        cache.store(KEY, CONTEXT, "snapshot");
+        assertNull(cache.load(KEY, CONTEXT));
+        assertEquals(0, getEntryFiles().length);
+
+        // key file of the wrong length
+        Writer writer = new FileWriter(getKeyFile());
+        try {
+            writer.write("short");
+        } finally {
+            writer.close();
+        }
+        assertFalse(newCache("v1").isEnabled());
+    }
+
+    /**
+     * Tests that a persisted statement is restored while the objects it
+     * depends on are unchanged, and that it is discarded and replaced once
+     * one of them has been modified.
+     */
+    public void testStaleEntry()
+        throws Exception
+    {
+        FarragoDatabase db =
+            ((FarragoDbSession)
+                ((FarragoJdbcEngineConnection) connection).getSession())
+            .getDatabase();
+        FarragoDbPersistentCodeCache cache = newCache("v1");
+        FarragoDbPersistentCodeCache oldCache = null;
+        stmt.executeUpdate("create schema persistent_code_cache");
+        try {
+            stmt.executeUpdate(
+                "create view persistent_code_cache.v as"
+                + " select 1 as x from (values (0))");
+            String sql = "select x from persistent_code_cache.v";
+
+            oldCache = db.setPersistentCodeCache(cache);
+            assertEquals(1, getInt(sql));
+            File [] files = getEntryFiles();
+            assertEquals(1, files.length);
+            File file = files[0];
+            byte [] persisted = readFile(file);
+
+            // Unchanged: restored from the entry, which is not rewritten.
+            db.setPersistentCodeCache(null);
+            db.flushCodeCache();
+            db.setPersistentCodeCache(cache);
+            assertEquals(1, getInt(sql));
+            assertTrue(Arrays.equals(persisted, readFile(file)));
+
+            // Redefine the view without clearing the persistent cache, as a
+            // server which was shut down before the change would see it.
+            db.setPersistentCodeCache(null);
+            stmt.executeUpdate(
+                "create or replace view persistent_code_cache.v as"
+                + " select 2 as x from (values (0))");
+            db.flushCodeCache();
+            db.setPersistentCodeCache(cache);
+            assertEquals(2, getInt(sql));
+
+            // the stale entry has been replaced by the new plan
+            assertTrue(file.exists());
+            assertFalse(Arrays.equals(persisted, readFile(file)));
+            db.setPersistentCodeCache(null);
+            db.flushCodeCache();
+            db.setPersistentCodeCache(cache);
+            assertEquals(2, getInt(sql));
+        } finally {
+            db.setPersistentCodeCache(oldCache);
+            stmt.executeUpdate("drop schema persistent_code_cache cascade");
+        }
+    }
+
+    private int getInt(String sql)
+        throws SQLException
+    {
+        // Use a new statement each time, so that closing it unpins the
+        // in-memory cache entry before the next flush.
+        Statement queryStmt = connection.createStatement();
+        try {
+            ResultSet rs = queryStmt.executeQuery(sql);
+            assertTrue(rs.next());
+            int i = rs.getInt(1);
+            assertFalse(rs.next());
+            rs.close();
+            return i;
+        } finally {
+            queryStmt.close();
+        }
+    }
+
+    private FarragoDbPersistentCodeCache newCache(String fingerprint)
+    {
+        return new FarragoDbPersistentCodeCache(
+            dir,
+            getKeyFile(),
+            fingerprint);
+    }
+
+    private File getKeyFile()
+    {
+        return new File(dir, "cache.key");
+    }
+
+    private File [] getEntryFiles()
+    {
+        return dir.listFiles(
+            new FilenameFilter() {
+                public boolean accept(File parent, String name)
+                {
+                    return name.endsWith(".stmt");
+                }
+            });
+    }
+
+    private static byte [] readFile(File file)
+        throws IOException
+    {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            byte [] bytes = new byte[(int) file.length()];
+            in.readFully(bytes);
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void delete(File file)
+    {
+        File [] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
+
+// End FarragoDbPersistentCodeCacheTest.java
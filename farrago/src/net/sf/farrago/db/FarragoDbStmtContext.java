@@ -27,6 +27,7 @@ import java.sql.*;
 import java.util.*;
 import java.util.logging.*;
 
+import net.sf.farrago.defimpl.*;
 import net.sf.farrago.resource.*;
 import net.sf.farrago.session.*;
 import net.sf.farrago.util.*;
@@ -281,7 +282,14 @@ public class FarragoDbStmtContext
             params.isDml = isDml;
             params.resultSetTypeMap = executableStmt.getResultSetTypeMap();
             params.iterCalcTypeMap = executableStmt.getIterCalcTypeMap();
-            params.dynamicParamValues = dynamicParamValues;
+            if (executableStmt instanceof FarragoDbParameterizedStmt) {
+                // supply literals which were replaced with parameters
+                params.dynamicParamValues =
+                    ((FarragoDbParameterizedStmt) executableStmt)
+                    .bindDynamicParams(dynamicParamValues, paramDefFactory);
+            } else {
+                params.dynamicParamValues = dynamicParamValues;
+            }
 
             // REVIEW zfong 3/21/08 - Should this time be set to a non-zero
             // value even if this isn't an internal statement?  Currently,
@@ -344,6 +352,7 @@ public class FarragoDbStmtContext
                     executableStmt.getTableModOp());
                 updateCount = updateRowCounts(rowCounts, runningContext);
                 success = true;
+                observeRowCount(updateCount);
                 if (tracer.isLoggable(Level.FINE)) {
                     tracer.fine("Update count = " + updateCount);
                 }
@@ -451,6 +460,17 @@ public class FarragoDbStmtContext
             if (resultSet == null) {
                 return;
             }
+            if (resultSet instanceof TupleIterResultSet) {
+                TupleIterResultSet tupleIterResultSet =
+                    (TupleIterResultSet) resultSet;
+                if (tupleIterResultSet.isEndOfData()) {
+                    try {
+                        observeRowCount(tupleIterResultSet.getRow());
+                    } catch (SQLException ex) {
+                        throw Util.newInternal(ex);
+                    }
+                }
+            }
             try {
                 resultSet.close();
             } catch (Throwable ex) {
@@ -466,6 +486,43 @@ public class FarragoDbStmtContext
         }
     }
 
+    /**
+     * Reports the number of rows the current statement returned or modified
+     * to the cardinality feedback of the database, if the session has enabled
+     * it.
+     *
+     * @param rowCount number of rows
+     */
+    private void observeRowCount(long rowCount)
+    {
+        FarragoSessionVariables sessionVariables =
+            session.getSessionVariables();
+        if ((executableStmt == null)
+            || !sessionVariables.containsVariable(
+                FarragoDefaultSessionPersonality.CARDINALITY_FEEDBACK_FACTOR))
+        {
+            return;
+        }
+        int errorFactor =
+            sessionVariables.getInteger(
+                FarragoDefaultSessionPersonality.CARDINALITY_FEEDBACK_FACTOR);
+        if (errorFactor <= 0) {
+            return;
+        }
+
+        // feedback applies to the statement in the code cache
+        FarragoSessionExecutableStmt cachedStmt = executableStmt;
+        if (cachedStmt instanceof FarragoDbParameterizedStmt) {
+            cachedStmt =
+                ((FarragoDbParameterizedStmt) cachedStmt).getCachedStmt();
+        }
+        FarragoDatabase db = ((FarragoDbSession) session).getDatabase();
+        db.getCardinalityFeedback().observe(
+            cachedStmt,
+            rowCount,
+            errorFactor);
+    }
+
     // implement FarragoSessionStmtContext
     public void unprepare()
     {
@@ -65,6 +65,17 @@ public class FarragoDefaultPlanner
         // Yon Cassius has a lean and hungry look.
         ambitious = true;
 
+        // ...but he may be told to settle for what he has by a deadline.
+        FarragoSession session = stmt.getSession();
+        if (session != null) {
+            Integer timeLimit =
+                session.getSessionVariables().getInteger(
+                    FarragoDefaultSessionPersonality.OPTIMIZER_TIME_LIMIT);
+            if (timeLimit != null) {
+                setTimeLimit(timeLimit);
+            }
+        }
+
         // Create a new CallingConvention trait definition that will store
         // the graph of possible conversions and handle the creation of
         // converters.
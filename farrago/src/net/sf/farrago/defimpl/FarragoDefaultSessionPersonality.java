@@ -94,6 +94,14 @@ public class FarragoDefaultSessionPersonality
     public static final String CACHE_STATEMENTS = "cacheStatements";
     public static final String CACHE_STATEMENTS_DEFAULT = "true";
 
+    /**
+     * Whether queries should have literals replaced with dynamic parameters
+     * before code cache lookup, so that queries differing only in those
+     * literals can share a cached implementation
+     */
+    public static final String AUTO_PARAMETERIZE = "autoParameterize";
+    public static final String AUTO_PARAMETERIZE_DEFAULT = "false";
+
     /**
      * Whether DDL validation should be done at prepare time
      */
@@ -115,6 +123,44 @@ public class FarragoDefaultSessionPersonality
     public static final String DEGREE_OF_PARALLELISM = "degreeOfParallelism";
     public static final String DEGREE_OF_PARALLELISM_DEFAULT = "1";
 
+    /**
+     * Number of buffers used to prefetch query results from Fennel on a
+     * separate thread; a value of 0 or 1 (the default) disables prefetching.
+     * At most {@link #FENNEL_PREFETCH_DEPTH_MAX}.
+     */
+    public static final String FENNEL_PREFETCH_DEPTH = "fennelPrefetchDepth";
+    public static final String FENNEL_PREFETCH_DEPTH_DEFAULT = "0";
+    public static final int FENNEL_PREFETCH_DEPTH_MAX = 16;
+
+    /**
+     * Size in bytes of each prefetch buffer; values smaller than the cache
+     * page size (including the default of 0) mean the cache page size. At
+     * most {@link #FENNEL_PREFETCH_BUFFER_SIZE_MAX}, so that a session
+     * cannot allocate more than depth times that many bytes per stream.
+     */
+    public static final String FENNEL_PREFETCH_BUFFER_SIZE =
+        "fennelPrefetchBufferSize";
+    public static final String FENNEL_PREFETCH_BUFFER_SIZE_DEFAULT = "0";
+    public static final int FENNEL_PREFETCH_BUFFER_SIZE_MAX = 4 * 1024 * 1024;
+
+    /**
+     * Time limit in milliseconds for optimizing a statement with a cost-based
+     * planner, after which the planner returns the best plan it has found so
+     * far; 0 (the default) means no limit.
+     */
+    public static final String OPTIMIZER_TIME_LIMIT = "optimizerTimeLimit";
+    public static final String OPTIMIZER_TIME_LIMIT_DEFAULT = "0";
+
+    /**
+     * Factor by which the number of rows a cached statement actually returns
+     * or modifies must differ from the optimizer's estimate before the
+     * statement is re-planned using the observed row count; 0 (the default)
+     * disables cardinality feedback.
+     */
+    public static final String CARDINALITY_FEEDBACK_FACTOR =
+        "cardinalityFeedbackFactor";
+    public static final String CARDINALITY_FEEDBACK_FACTOR_DEFAULT = "0";
+
     /**
      * The label for the current session
      */
@@ -150,6 +196,9 @@ public class FarragoDefaultSessionPersonality
         paramValidator.registerBoolParam(
             CACHE_STATEMENTS,
             false);
+        paramValidator.registerBoolParam(
+            AUTO_PARAMETERIZE,
+            false);
         paramValidator.registerBoolParam(
             VALIDATE_DDL_ON_PREPARE,
             false);
@@ -162,6 +211,26 @@ public class FarragoDefaultSessionPersonality
             false,
             1,
             Integer.MAX_VALUE);
+        paramValidator.registerIntParam(
+            FENNEL_PREFETCH_DEPTH,
+            false,
+            0,
+            FENNEL_PREFETCH_DEPTH_MAX);
+        paramValidator.registerIntParam(
+            FENNEL_PREFETCH_BUFFER_SIZE,
+            false,
+            0,
+            FENNEL_PREFETCH_BUFFER_SIZE_MAX);
+        paramValidator.registerIntParam(
+            OPTIMIZER_TIME_LIMIT,
+            false,
+            0,
+            Integer.MAX_VALUE);
+        paramValidator.registerIntParam(
+            CARDINALITY_FEEDBACK_FACTOR,
+            false,
+            0,
+            Integer.MAX_VALUE);
         paramValidator.registerBoolParam(
             USE_ENKI_MASS_DELETION,
             false);
@@ -498,6 +567,9 @@ public class FarragoDefaultSessionPersonality
         variables.setDefault(
             CACHE_STATEMENTS,
             CACHE_STATEMENTS_DEFAULT);
+        variables.setDefault(
+            AUTO_PARAMETERIZE,
+            AUTO_PARAMETERIZE_DEFAULT);
         variables.setDefault(
             VALIDATE_DDL_ON_PREPARE,
             VALIDATE_DDL_ON_PREPARE_DEFAULT);
@@ -508,6 +580,18 @@ public class FarragoDefaultSessionPersonality
         variables.setDefault(
             DEGREE_OF_PARALLELISM,
             DEGREE_OF_PARALLELISM_DEFAULT);
+        variables.setDefault(
+            FENNEL_PREFETCH_DEPTH,
+            FENNEL_PREFETCH_DEPTH_DEFAULT);
+        variables.setDefault(
+            FENNEL_PREFETCH_BUFFER_SIZE,
+            FENNEL_PREFETCH_BUFFER_SIZE_DEFAULT);
+        variables.setDefault(
+            OPTIMIZER_TIME_LIMIT,
+            OPTIMIZER_TIME_LIMIT_DEFAULT);
+        variables.setDefault(
+            CARDINALITY_FEEDBACK_FACTOR,
+            CARDINALITY_FEEDBACK_FACTOR_DEFAULT);
         variables.setDefault(
             USE_ENKI_MASS_DELETION,
             USE_ENKI_MASS_DELETION_DEFAULT);
@@ -22,6 +22,8 @@
 */
 package net.sf.farrago.fennel;
 
+import java.nio.*;
+
 import java.sql.*;
 
 import java.util.*;
@@ -157,6 +159,25 @@ public class FennelStorage
         byte [] byteArray)
         throws SQLException;
 
+    /**
+     * Fetches a buffer of rows from a stream without copying them. The result
+     * is a direct ByteBuffer which is a view of the stream's output page; the
+     * page remains pinned until the next call on the same stream, at which
+     * point the previously returned bytes are consumed.
+     *
+     * @param hStream handle to stream
+     * @param cbPinned number of bytes returned by the previous call which are
+     * now to be released, or 0 if none are pinned
+     * @param cbLimit maximum number of bytes to return
+     *
+     * @return view of complete tuples, or null for end of stream
+     */
+    static native ByteBuffer tupleStreamFetchPinned(
+        long hStream,
+        int cbPinned,
+        int cbLimit)
+        throws SQLException;
+
     /**
      * Fetches a buffer of rows from a stream. Specifically, the stream must be
      * a JavaTransformExecStream. If unpositioned, this fetches the first rows.
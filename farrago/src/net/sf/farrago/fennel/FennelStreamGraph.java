@@ -22,6 +22,8 @@
 */
 package net.sf.farrago.fennel;
 
+import java.nio.*;
+
 import java.sql.*;
 
 import java.util.*;
@@ -62,6 +64,15 @@ public class FennelStreamGraph
         this.streamGraphHandle = streamGraphHandle.getLongHandle();
     }
 
+    /**
+     * Creates a stream graph which is not backed by Fennel, for subclasses
+     * which simulate streams in tests.
+     */
+    protected FennelStreamGraph()
+    {
+        this.fennelDbHandle = null;
+    }
+
     //~ Methods ----------------------------------------------------------------
 
     /**
@@ -219,6 +230,34 @@ public class FennelStreamGraph
         }
     }
 
+    /**
+     * Fetches a buffer of rows from a stream without copying them out of the
+     * stream's output page. If unpositioned, this fetches the first rows.
+     *
+     * @param streamHandle handle to stream from which to fetch
+     * @param cbPinned number of bytes returned by the previous call on the
+     * same stream, which are released by this call (0 if none)
+     * @param cbLimit maximum number of bytes to return
+     *
+     * @return direct buffer viewing complete tuples, valid until the next
+     * fetch on the same stream, or null for end of stream
+     */
+    public ByteBuffer fetchPinned(
+        FennelStreamHandle streamHandle,
+        int cbPinned,
+        int cbLimit)
+    {
+        traceStreamHandle("fetchPinned", streamHandle);
+        try {
+            return FennelStorage.tupleStreamFetchPinned(
+                streamHandle.getLongHandle(),
+                cbPinned,
+                cbLimit);
+        } catch (SQLException ex) {
+            throw fennelDbHandle.handleNativeException(ex);
+        }
+    }
+
     /**
      * Fetches a buffer of rows from a stream. If unpositioned, this fetches the
      * first rows.
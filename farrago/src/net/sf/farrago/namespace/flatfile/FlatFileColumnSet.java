@@ -56,6 +56,7 @@ class FlatFileColumnSet
 
     private static final String TIMESTAMP_PREFIX = "_";
     private static final String TIMESTAMP_FORMAT = "yyyy-MM-dd_HH_mm_ss";
+    private static final String LOG_PATH_SEPARATOR = "_";
 
     //~ Instance fields --------------------------------------------------------
 
@@ -64,6 +65,8 @@ class FlatFileColumnSet
     String logFilePath;
     FlatFileParams.SchemaType schemaType;
     long numRows;
+    List<FlatFileDataFile> dataFiles;
+    int [] partitionOrdinals;
 
     //~ Constructors -----------------------------------------------------------
 
@@ -74,6 +77,37 @@ class FlatFileColumnSet
         Properties tableProps,
         long numRows,
         FlatFileParams.SchemaType schemaType)
+    {
+        this(
+            localName,
+            rowType,
+            params,
+            tableProps,
+            numRows,
+            schemaType,
+            null,
+            null);
+    }
+
+    /**
+     * Creates a FlatFileColumnSet for a table which may read several data
+     * files.
+     *
+     * @param dataFiles data files matching the table's filename pattern, or
+     * null if the filename is not a pattern
+     * @param partitionOrdinals for each column of the table, the index of the
+     * partition directory whose value it holds, or -1 if the column is read
+     * from the data files; null if the filename is not a pattern
+     */
+    FlatFileColumnSet(
+        String [] localName,
+        RelDataType rowType,
+        FlatFileParams params,
+        Properties tableProps,
+        long numRows,
+        FlatFileParams.SchemaType schemaType,
+        List<FlatFileDataFile> dataFiles,
+        int [] partitionOrdinals)
     {
         super(
             localName, null, rowType, Collections.<RelDataTypeField>emptyList(),
@@ -89,6 +123,8 @@ class FlatFileColumnSet
             makeLogFilePath(
                 tableProps.getProperty(PROP_LOG_FILENAME, null));
         this.schemaType = schemaType;
+        this.dataFiles = dataFiles;
+        this.partitionOrdinals = partitionOrdinals;
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -108,6 +144,50 @@ class FlatFileColumnSet
         return logFilePath;
     }
 
+    /**
+     * Returns the log file path for one of the data files of a table whose
+     * filename is a pattern. The files are logged separately, so the name of
+     * each log file is always based upon the name of its data file.
+     *
+     * @param dataFile data file
+     *
+     * @return full path to the log file
+     */
+    public String getLogFilePath(FlatFileDataFile dataFile)
+    {
+        String root =
+            dataFile.getName().replace(
+                FlatFileDataFile.PATH_SEPARATOR,
+                LOG_PATH_SEPARATOR);
+        return params.getLogDirectory() + makeLogFileName(root);
+    }
+
+    /**
+     * @return data files matching the table's filename pattern, or null if
+     * the filename is not a pattern
+     */
+    public List<FlatFileDataFile> getDataFiles()
+    {
+        return dataFiles;
+    }
+
+    /**
+     * Returns the value of a partition column for a data file.
+     *
+     * @param dataFile data file
+     * @param iField 0-based ordinal of a column of the table
+     *
+     * @return value of the partition directory which the column holds, or
+     * null if the column is read from the data file
+     */
+    public String getPartitionValue(FlatFileDataFile dataFile, int iField)
+    {
+        if ((partitionOrdinals == null) || (partitionOrdinals[iField] < 0)) {
+            return null;
+        }
+        return dataFile.getPartitionValue(partitionOrdinals[iField]);
+    }
+
     // implement RelOptTable
     public double getRowCount()
     {
@@ -117,6 +197,27 @@ class FlatFileColumnSet
         return numRows;
     }
 
+    /**
+     * Estimates the number of rows in one of the data files of a table whose
+     * filename is a pattern, assuming that rows have the same average length
+     * in all the files.
+     *
+     * @param dataFile data file
+     *
+     * @return number of rows
+     */
+    public double getRowCount(FlatFileDataFile dataFile)
+    {
+        long totalLength = 0;
+        for (FlatFileDataFile file : dataFiles) {
+            totalLength += file.getLength();
+        }
+        if (totalLength == 0) {
+            return getRowCount() / dataFiles.size();
+        }
+        return getRowCount() * dataFile.getLength() / totalLength;
+    }
+
     // implement RelOptTable
     public RelNode toRel(
         RelOptCluster cluster,
@@ -131,6 +232,24 @@ class FlatFileColumnSet
         // In addition, if custom datetime formats are specified, they are
         // always implemented in a separate CalcRel (because the Fennel
         // calc only understands ISO formats).
+        //
+        // A table whose filename is a pattern is first represented by a
+        // logical scan of all its data files. FlatFilePartitionPruneRule
+        // removes the files excluded by filters on partition columns, then
+        // FlatFileMultiScanRule implements the scan of each remaining file
+        // in the same way as a single file table.
+        //
+        // The data files are listed when the table is prepared, so the plan
+        // must not be cached; files may be added or removed before the
+        // statement is next executed.
+        if (dataFiles != null) {
+            getPreparingStmt().disableStatementCaching();
+            return new FlatFileMultiScanRel(
+                this,
+                cluster,
+                connection,
+                dataFiles);
+        }
 
         FlatFileProgramWriter pw =
             new FlatFileProgramWriter(
@@ -154,6 +273,101 @@ class FlatFileColumnSet
         }
     }
 
+    /**
+     * Implements a scan of some of the data files of a table whose filename is
+     * a pattern as the union of a scan of each of them.
+     *
+     * @param cluster cluster
+     * @param connection connection
+     * @param files data files to scan
+     *
+     * @return relational expression returning the rows of the files
+     */
+    RelNode toRel(
+        RelOptCluster cluster,
+        RelOptConnection connection,
+        List<FlatFileDataFile> files)
+    {
+        if (files.isEmpty()) {
+            return new EmptyRel(cluster, rowType);
+        }
+        RelNode [] inputs = new RelNode[files.size()];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = newDataFileRel(cluster, connection, files.get(i));
+        }
+        if (inputs.length == 1) {
+            return inputs[0];
+        }
+        return new UnionRel(cluster, inputs, true);
+    }
+
+    /**
+     * Constructs a scan of one of the data files of a table whose filename is
+     * a pattern. The columns read from the file are converted as for a single
+     * file table, then the values of the partition columns are added as
+     * literals.
+     */
+    private RelNode newDataFileRel(
+        RelOptCluster cluster,
+        RelOptConnection connection,
+        FlatFileDataFile dataFile)
+    {
+        RexBuilder rexBuilder = cluster.getRexBuilder();
+        RelDataTypeField [] fields = rowType.getFields();
+        List<RelDataType> dataTypes = new ArrayList<RelDataType>();
+        List<String> dataNames = new ArrayList<String>();
+        for (int i = 0; i < fields.length; i++) {
+            if (partitionOrdinals[i] < 0) {
+                dataTypes.add(fields[i].getType());
+                dataNames.add(fields[i].getName());
+            }
+        }
+        RelDataType dataRowType =
+            cluster.getTypeFactory().createStructType(dataTypes, dataNames);
+
+        FlatFileProgramWriter pw =
+            new FlatFileProgramWriter(
+                rexBuilder,
+                getPreparingStmt(),
+                params,
+                dataRowType);
+        RexProgram program = pw.getProgram();
+        RelNode dataRel =
+            newCalcRel(
+                cluster,
+                new FlatFileFennelRel(
+                    this,
+                    cluster,
+                    connection,
+                    FlatFileParams.SchemaType.QUERY_TEXT,
+                    params,
+                    program.getInputRowType(),
+                    dataFile),
+                program);
+
+        RelDataTypeField [] dataFields = dataRel.getRowType().getFields();
+        List<RexNode> exprs = new ArrayList<RexNode>();
+        List<String> names = new ArrayList<String>();
+        int iDataField = 0;
+        for (int i = 0; i < fields.length; i++) {
+            String value = getPartitionValue(dataFile, i);
+            if (value == null) {
+                exprs.add(
+                    rexBuilder.makeInputRef(
+                        dataFields[iDataField].getType(),
+                        iDataField));
+                iDataField++;
+            } else {
+                exprs.add(
+                    rexBuilder.makeCast(
+                        fields[i].getType(),
+                        rexBuilder.makeLiteral(value)));
+            }
+            names.add(fields[i].getName());
+        }
+        return CalcRel.createProject(dataRel, exprs, names);
+    }
+
     /**
      * Constructs a new FlatFileFennelRel
      */
@@ -232,15 +446,27 @@ class FlatFileColumnSet
             if (dot > 0) {
                 root = root.substring(0, dot); // FILE
             }
-            SimpleDateFormat formatter = new SimpleDateFormat(TIMESTAMP_FORMAT);
-            String timeStamp = formatter.format(new java.util.Date());
-            name =
-                (root + TIMESTAMP_PREFIX + timeStamp
-                    + FlatFileParams.FILE_EXTENSION_PREFIX
-                    + FlatFileParams.LOG_FILE_EXTENSION);
+            name = makeLogFileName(root);
         }
         return params.getLogDirectory() + name;
     }
+
+    /**
+     * Constructs the name of a log file, by appending a timestamp and the log
+     * file extension to the name of its data file.
+     *
+     * @param root name of the data file, without extension
+     *
+     * @return name of the log file
+     */
+    private String makeLogFileName(String root)
+    {
+        SimpleDateFormat formatter = new SimpleDateFormat(TIMESTAMP_FORMAT);
+        String timeStamp = formatter.format(new java.util.Date());
+        return root + TIMESTAMP_PREFIX + timeStamp
+            + FlatFileParams.FILE_EXTENSION_PREFIX
+            + FlatFileParams.LOG_FILE_EXTENSION;
+    }
 }
 
 // End FlatFileColumnSet.java
@@ -0,0 +1,252 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.namespace.flatfile;
+
+import java.io.*;
+
+import java.util.*;
+import java.util.regex.*;
+
+
+/**
+ * FlatFileDataFile describes one of the data files of a table whose filename
+ * option is a pattern, such as <code>sales_2011-*</code> or
+ * <code>dt=*&#47;part-*</code>.
+ *
+ * <p>Patterns are relative to the server directory, and may contain the
+ * wildcards <code>*</code> and <code>?</code> in any of their <code>/</code>
+ * separated components. A directory named <code>key=value</code> on the path
+ * to a data file is a partition directory; its value is exposed to queries as
+ * the table column named <code>key</code>.
+ *
+ * @author agent
+ * @version $Id$
+ */
+class FlatFileDataFile
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    public static final String PATH_SEPARATOR = "/";
+    public static final String PARTITION_VALUE_SEPARATOR = "=";
+
+    private static final String WILDCARD_CHARS = "*?";
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final String name;
+    private final String path;
+    private final long length;
+    private final List<String> partitionKeys;
+    private final List<String> partitionValues;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a FlatFileDataFile.
+     *
+     * @param name path of the file relative to the server directory, without
+     * the data file extension
+     * @param path full path of the file
+     * @param length length of the file in bytes
+     */
+    FlatFileDataFile(String name, String path, long length)
+    {
+        this.name = name;
+        this.path = path;
+        this.length = length;
+        partitionKeys = new ArrayList<String>();
+        partitionValues = new ArrayList<String>();
+        String [] components = name.split(PATH_SEPARATOR);
+        for (int i = 0; i < (components.length - 1); i++) {
+            int sep = components[i].indexOf(PARTITION_VALUE_SEPARATOR);
+            if (sep > 0) {
+                partitionKeys.add(components[i].substring(0, sep));
+                partitionValues.add(components[i].substring(sep + 1));
+            }
+        }
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @return whether a filename option names several data files
+     */
+    static boolean isPattern(String filename)
+    {
+        for (int i = 0; i < filename.length(); i++) {
+            if (WILDCARD_CHARS.indexOf(filename.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lists the data files matching a pattern, ordered by name.
+     *
+     * @param directory server directory, empty or ending with a separator
+     * @param pattern filename pattern, without the data file extension
+     * @param extension data file extension
+     *
+     * @return matching data files
+     */
+    static List<FlatFileDataFile> list(
+        String directory,
+        String pattern,
+        String extension)
+    {
+        List<FlatFileDataFile> files = new ArrayList<FlatFileDataFile>();
+        File dir = new File(directory.equals("") ? "." : directory);
+        list(
+            directory,
+            dir,
+            "",
+            (pattern + extension).split(PATH_SEPARATOR),
+            0,
+            extension,
+            files);
+        return files;
+    }
+
+    private static void list(
+        String directory,
+        File dir,
+        String prefix,
+        String [] components,
+        int iComponent,
+        String extension,
+        List<FlatFileDataFile> files)
+    {
+        String component = components[iComponent];
+        boolean last = (iComponent == (components.length - 1));
+        List<String> names;
+        if (isPattern(component)) {
+            String [] dirNames = dir.list();
+            if (dirNames == null) {
+                return;
+            }
+            Arrays.sort(dirNames);
+            Pattern regex = compileGlob(component);
+            names = new ArrayList<String>();
+            for (String dirName : dirNames) {
+                if (regex.matcher(dirName).matches()) {
+                    names.add(dirName);
+                }
+            }
+        } else {
+            names = Collections.singletonList(component);
+        }
+        for (String fileName : names) {
+            File file = new File(dir, fileName);
+            String relativePath = prefix + fileName;
+            if (!last) {
+                if (file.isDirectory()) {
+                    list(
+                        directory,
+                        file,
+                        relativePath + PATH_SEPARATOR,
+                        components,
+                        iComponent + 1,
+                        extension,
+                        files);
+                }
+            } else if (file.isFile()) {
+                files.add(
+                    new FlatFileDataFile(
+                        relativePath.substring(
+                            0,
+                            relativePath.length() - extension.length()),
+                        directory + relativePath,
+                        file.length()));
+            }
+        }
+    }
+
+    /**
+     * Converts a filename component containing wildcards into a regular
+     * expression.
+     */
+    private static Pattern compileGlob(String glob)
+    {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                buf.append(".*");
+            } else if (c == '?') {
+                buf.append('.');
+            } else if (Character.isLetterOrDigit(c)) {
+                buf.append(c);
+            } else {
+                buf.append('\\').append(c);
+            }
+        }
+        return Pattern.compile(buf.toString());
+    }
+
+    /**
+     * @return path of the file relative to the server directory, without the
+     * data file extension
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return full path of the file
+     */
+    public String getPath()
+    {
+        return path;
+    }
+
+    /**
+     * @return length of the file in bytes
+     */
+    public long getLength()
+    {
+        return length;
+    }
+
+    /**
+     * @return keys of the partition directories on the path to the file, from
+     * the outermost directory inwards
+     */
+    public List<String> getPartitionKeys()
+    {
+        return partitionKeys;
+    }
+
+    /**
+     * @param i index of a partition directory, as in {@link
+     * #getPartitionKeys}
+     *
+     * @return value of the partition directory
+     */
+    public String getPartitionValue(int i)
+    {
+        return partitionValues.get(i);
+    }
+}
+
+// End FlatFileDataFile.java
@@ -145,10 +145,36 @@ class FlatFileDataServer
             filename = getTableName(localName);
         }
 
+        // A filename pattern names several data files with the same format.
+        // The first of them is sampled, and its control file describes the
+        // columns of all of them.
+        List<FlatFileDataFile> dataFiles = null;
+        String sampleFilename = filename;
+        if ((schemaType == FlatFileParams.SchemaType.QUERY)
+            && FlatFileDataFile.isPattern(filename))
+        {
+            dataFiles =
+                FlatFileDataFile.list(
+                    params.getDirectory(),
+                    filename,
+                    params.getFileExtenstion());
+            if (!dataFiles.isEmpty()) {
+                sampleFilename = dataFiles.get(0).getName();
+                checkPartitionKeys(dataFiles);
+            }
+        }
+
         String dataFilePath =
-            params.getDirectory() + filename
+            params.getDirectory() + sampleFilename
             + params.getFileExtenstion();
         File dataFile = new File(dataFilePath);
+        long dataLength = dataFile.length();
+        if (dataFiles != null) {
+            dataLength = 0;
+            for (FlatFileDataFile file : dataFiles) {
+                dataLength += file.getLength();
+            }
+        }
 
         // Estimate number of rows in a file
         long numRows = -1;
@@ -158,14 +184,14 @@ class FlatFileDataServer
                 {
                     this.getProperties().getProperty("NAME"),
                     FlatFileParams.SchemaType.QUERY.getSchemaName(),
-                    filename
+                    sampleFilename
                 };
                 if (params.getNumRowsScan() > 0) {
                     long avgRowSize = sampleAndCreateBcp(foreignName, null);
 
                     // Estimated number of rows == file length / avg row length
                     if (avgRowSize > 0) {
-                        numRows = dataFile.length() / avgRowSize;
+                        numRows = dataLength / avgRowSize;
                     }
                 }
             }
@@ -181,7 +207,7 @@ class FlatFileDataServer
                 return null;
             }
             String ctrlFilePath =
-                params.getDirectory() + filename
+                params.getDirectory() + sampleFilename
                 + params.getControlFileExtenstion();
             FlatFileBcpFile bcpFile =
                 new FlatFileBcpFile(ctrlFilePath, typeFactory);
@@ -190,19 +216,109 @@ class FlatFileDataServer
                     typeFactory,
                     schemaType,
                     localName,
-                    filename,
+                    sampleFilename,
                     bcpFile);
+            if ((rowType != null) && (dataFiles != null)) {
+                rowType =
+                    addPartitionColumns(typeFactory, rowType, dataFiles);
+            }
         }
         if (rowType == null) {
             return null;
         }
+        if (dataFiles == null) {
+            return new FlatFileColumnSet(
+                localName,
+                rowType,
+                params,
+                tableProps,
+                numRows,
+                schemaType);
+        }
+
+        // columns named after partition directories hold their values
+        RelDataTypeField [] fields = rowType.getFields();
+        int [] partitionOrdinals = new int[fields.length];
+        List<String> partitionKeys =
+            dataFiles.isEmpty() ? Collections.<String>emptyList()
+            : dataFiles.get(0).getPartitionKeys();
+        for (int i = 0; i < fields.length; i++) {
+            partitionOrdinals[i] = -1;
+            for (int j = 0; j < partitionKeys.size(); j++) {
+                if (partitionKeys.get(j).equalsIgnoreCase(
+                        fields[i].getName()))
+                {
+                    partitionOrdinals[i] = j;
+                }
+            }
+        }
         return new FlatFileColumnSet(
             localName,
             rowType,
             params,
             tableProps,
             numRows,
-            schemaType);
+            schemaType,
+            dataFiles,
+            partitionOrdinals);
+    }
+
+    /**
+     * Checks that all the data files of a table have the same partition
+     * directories.
+     *
+     * @param dataFiles data files
+     */
+    private void checkPartitionKeys(List<FlatFileDataFile> dataFiles)
+    {
+        FlatFileDataFile first = dataFiles.get(0);
+        for (FlatFileDataFile dataFile : dataFiles) {
+            if (!dataFile.getPartitionKeys().equals(
+                    first.getPartitionKeys()))
+            {
+                throw FarragoResource.instance().FlatFilePartitionMismatch.ex(
+                    first.getName(),
+                    dataFile.getName());
+            }
+        }
+    }
+
+    /**
+     * Adds a column for each partition directory which is not already a
+     * column of a derived row type. The column is named after the key of the
+     * directory, in upper case, and is wide enough for all its values.
+     */
+    private RelDataType addPartitionColumns(
+        FarragoTypeFactory typeFactory,
+        RelDataType rowType,
+        List<FlatFileDataFile> dataFiles)
+    {
+        List<RelDataType> fieldTypes = new ArrayList<RelDataType>();
+        List<String> fieldNames = new ArrayList<String>();
+        Set<String> upperNames = new HashSet<String>();
+        for (RelDataTypeField field : rowType.getFieldList()) {
+            fieldTypes.add(field.getType());
+            fieldNames.add(field.getName());
+            upperNames.add(field.getName().toUpperCase());
+        }
+        List<String> partitionKeys = dataFiles.get(0).getPartitionKeys();
+        for (int i = 0; i < partitionKeys.size(); i++) {
+            String name = partitionKeys.get(i).toUpperCase();
+            if (!upperNames.add(name)) {
+                continue;
+            }
+            int length = 1;
+            for (FlatFileDataFile dataFile : dataFiles) {
+                length =
+                    Math.max(length, dataFile.getPartitionValue(i).length());
+            }
+            RelDataType type =
+                typeFactory.createSqlType(SqlTypeName.VARCHAR, length);
+            type = typeFactory.createTypeWithNullability(type, true);
+            fieldTypes.add(FlatFileBcpFile.forceSingleByte(typeFactory, type));
+            fieldNames.add(name);
+        }
+        return typeFactory.createStructType(fieldTypes, fieldNames);
     }
 
     // implement FarragoMedDataServer
@@ -216,6 +332,9 @@ class FlatFileDataServer
     public void registerRules(RelOptPlanner planner)
     {
         super.registerRules(planner);
+        planner.addRule(FlatFilePartitionPruneRule.instance);
+        planner.addRule(FlatFilePartitionPruneRule.instanceFilterOnProject);
+        planner.addRule(FlatFileMultiScanRule.instance);
     }
 
     // implement FarragoAllocation
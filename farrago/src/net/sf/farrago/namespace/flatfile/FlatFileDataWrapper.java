@@ -165,6 +165,12 @@ public class FlatFileDataWrapper
         infoMap.addPropInfo(
             FlatFileParams.PROP_TIMESTAMP_FORMAT,
             false);
+        infoMap.addPropInfo(
+            FlatFileParams.PROP_PARALLELISM,
+            true,
+            new String[] {
+                Integer.toString(FlatFileParams.DEFAULT_PARALLELISM)
+            });
         return infoMap.toArray();
     }
 
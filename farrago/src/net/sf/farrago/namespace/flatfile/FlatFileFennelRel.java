@@ -22,6 +22,7 @@
 */
 package net.sf.farrago.namespace.flatfile;
 
+import java.util.Arrays;
 import java.util.Collections;
 
 import net.sf.farrago.catalog.*;
@@ -64,6 +65,7 @@ public class FlatFileFennelRel
     private FlatFileColumnSet columnSet;
     private FlatFileParams.SchemaType schemaType;
     FlatFileParams params;
+    private FlatFileDataFile dataFile;
 
     //~ Constructors -----------------------------------------------------------
 
@@ -115,6 +117,31 @@ public class FlatFileFennelRel
         this.rowType = rowType;
     }
 
+    /**
+     * Creates a FlatFileFennelRel which reads one of the data files of a table
+     * whose filename is a pattern.
+     *
+     * @param cluster Cluster
+     * @param columnSet Column set
+     * @param connection Connection
+     * @param schemaType Schema type
+     * @param params Parameters
+     * @param rowType Row type
+     * @param dataFile Data file to read, or null to read the table's file
+     */
+    protected FlatFileFennelRel(
+        FlatFileColumnSet columnSet,
+        RelOptCluster cluster,
+        RelOptConnection connection,
+        FlatFileParams.SchemaType schemaType,
+        FlatFileParams params,
+        RelDataType rowType,
+        FlatFileDataFile dataFile)
+    {
+        this(columnSet, cluster, connection, schemaType, params, rowType);
+        this.dataFile = dataFile;
+    }
+
     //~ Methods ----------------------------------------------------------------
 
     // implement FennelRel
@@ -131,9 +158,16 @@ public class FlatFileFennelRel
 
         FemFlatFileTupleStreamDef streamDef =
             repos.newFemFlatFileTupleStreamDef();
-        streamDef.setDataFilePath(columnSet.getFilePath());
-        if (params.getWithLogging()) {
-            streamDef.setErrorFilePath(columnSet.getLogFilePath());
+        if (dataFile == null) {
+            streamDef.setDataFilePath(columnSet.getFilePath());
+            if (params.getWithLogging()) {
+                streamDef.setErrorFilePath(columnSet.getLogFilePath());
+            }
+        } else {
+            streamDef.setDataFilePath(dataFile.getPath());
+            if (params.getWithLogging()) {
+                streamDef.setErrorFilePath(columnSet.getLogFilePath(dataFile));
+            }
         }
         streamDef.setFieldDelimiter(encodeChar(params.getFieldDelimiter()));
         streamDef.setRowDelimiter(encodeChar(params.getLineDelimiter()));
@@ -179,6 +213,11 @@ public class FlatFileFennelRel
         streamDef.setLenient(params.getLenient());
         streamDef.setTrim(params.getTrim());
         streamDef.setMapped(params.getMapped());
+
+        // only full scans are split between threads; samples and describes
+        // read a few rows from the start of the file
+        streamDef.setParallelism(
+            (numRowsScan == 0) ? params.getParallelism() : 1);
         java.util.List<FemColumnName> columnNames = streamDef.getColumn();
         for (int i = 0; i < rowType.getFieldCount(); i++) {
             FemColumnName name = repos.newFemColumnName();
@@ -213,6 +252,41 @@ public class FlatFileFennelRel
         return (c == 0) ? "" : Character.toString(c);
     }
 
+    // override TableAccessRelBase
+    public double getRows()
+    {
+        if (dataFile == null) {
+            return super.getRows();
+        }
+        return columnSet.getRowCount(dataFile);
+    }
+
+    // override TableAccessRelBase
+    public RelOptCost computeSelfCost(RelOptPlanner planner)
+    {
+        if (dataFile == null) {
+            return super.computeSelfCost(planner);
+        }
+        double dRows = getRows();
+        return planner.makeCost(dRows, dRows + 1, 0);
+    }
+
+    // override TableAccessRelBase
+    public void explain(RelOptPlanWriter pw)
+    {
+        if (dataFile == null) {
+            super.explain(pw);
+            return;
+        }
+        pw.explain(
+            this,
+            new String[] { "table", "file" },
+            new Object[] {
+                Arrays.asList(table.getQualifiedName()),
+                dataFile.getName()
+            });
+    }
+
     // implement FennelRel
     public RelFieldCollation [] getCollations()
     {
@@ -229,7 +303,8 @@ public class FlatFileFennelRel
                 connection,
                 schemaType,
                 params,
-                getRowType());
+                getRowType(),
+                dataFile);
         clone.inheritTraitsFrom(this);
         return clone;
     }
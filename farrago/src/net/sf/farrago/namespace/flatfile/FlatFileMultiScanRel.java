@@ -0,0 +1,119 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.namespace.flatfile;
+
+import java.util.*;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.relopt.*;
+
+
+/**
+ * FlatFileMultiScanRel is the logical scan of a table whose filename option
+ * is a pattern. It reads the given subset of the table's data files; {@link
+ * FlatFilePartitionPruneRule} narrows the subset, and {@link
+ * FlatFileMultiScanRule} implements the scan as the union of a scan of each
+ * file.
+ *
+ * @author agent
+ * @version $Id$
+ */
+class FlatFileMultiScanRel
+    extends TableAccessRelBase
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final FlatFileColumnSet columnSet;
+    private final List<FlatFileDataFile> dataFiles;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a FlatFileMultiScanRel.
+     *
+     * @param columnSet table to scan
+     * @param cluster cluster
+     * @param connection connection
+     * @param dataFiles data files to read
+     */
+    FlatFileMultiScanRel(
+        FlatFileColumnSet columnSet,
+        RelOptCluster cluster,
+        RelOptConnection connection,
+        List<FlatFileDataFile> dataFiles)
+    {
+        super(
+            cluster,
+            CallingConvention.NONE.singletonSet,
+            columnSet,
+            connection);
+        this.columnSet = columnSet;
+        this.dataFiles = dataFiles;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public FlatFileColumnSet getColumnSet()
+    {
+        return columnSet;
+    }
+
+    public List<FlatFileDataFile> getDataFiles()
+    {
+        return dataFiles;
+    }
+
+    // override TableAccessRelBase
+    public double getRows()
+    {
+        double rows = 0;
+        for (FlatFileDataFile dataFile : dataFiles) {
+            rows += columnSet.getRowCount(dataFile);
+        }
+        return rows;
+    }
+
+    // override TableAccessRelBase
+    public RelOptCost computeSelfCost(RelOptPlanner planner)
+    {
+        double dRows = getRows();
+        return planner.makeCost(dRows, dRows + 1, 0);
+    }
+
+    // override TableAccessRelBase
+    public void explain(RelOptPlanWriter pw)
+    {
+        List<String> fileNames = new ArrayList<String>();
+        for (FlatFileDataFile dataFile : dataFiles) {
+            fileNames.add(dataFile.getName());
+        }
+        pw.explain(
+            this,
+            new String[] { "table", "files" },
+            new Object[] {
+                Arrays.asList(table.getQualifiedName()),
+                fileNames
+            });
+    }
+}
+
+// End FlatFileMultiScanRel.java
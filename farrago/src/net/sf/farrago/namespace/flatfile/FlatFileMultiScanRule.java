@@ -0,0 +1,64 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.namespace.flatfile;
+
+import org.eigenbase.relopt.*;
+
+
+/**
+ * FlatFileMultiScanRule implements a {@link FlatFileMultiScanRel} as the union
+ * of a scan of each of its data files. The scans are independent streams, so
+ * the parallel executor may read several files at once.
+ *
+ * @author agent
+ * @version $Id$
+ */
+class FlatFileMultiScanRule
+    extends RelOptRule
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    public static final FlatFileMultiScanRule instance =
+        new FlatFileMultiScanRule();
+
+    //~ Constructors -----------------------------------------------------------
+
+    public FlatFileMultiScanRule()
+    {
+        super(new RelOptRuleOperand(FlatFileMultiScanRel.class, ANY));
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement RelOptRule
+    public void onMatch(RelOptRuleCall call)
+    {
+        FlatFileMultiScanRel scanRel = (FlatFileMultiScanRel) call.rels[0];
+        call.transformTo(
+            scanRel.getColumnSet().toRel(
+                scanRel.getCluster(),
+                scanRel.getConnection(),
+                scanRel.getDataFiles()));
+    }
+}
+
+// End FlatFileMultiScanRule.java
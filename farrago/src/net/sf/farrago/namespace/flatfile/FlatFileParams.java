@@ -73,6 +73,7 @@ class FlatFileParams
     public static final String PROP_LENIENT = "LENIENT";
     public static final String PROP_TRIM = "TRIM";
     public static final String PROP_MAPPED = "MAPPED";
+    public static final String PROP_PARALLELISM = "PARALLELISM";
 
     public static final String FILE_EXTENSION_PREFIX = ".";
     public static final String LOG_FILE_EXTENSION = "err";
@@ -89,6 +90,7 @@ class FlatFileParams
     protected static final boolean DEFAULT_LENIENT = true;
     protected static final boolean DEFAULT_TRIM = true;
     protected static final boolean DEFAULT_MAPPED = false;
+    protected static final int DEFAULT_PARALLELISM = 1;
 
     //~ Enums ------------------------------------------------------------------
 
@@ -170,6 +172,7 @@ class FlatFileParams
     private boolean withHeader, withLogging;
     private int numRowsScan;
     private boolean lenient, trim, mapped;
+    private int parallelism;
     private String dateFormat, timeFormat, timestampFormat;
 
     //~ Constructors -----------------------------------------------------------
@@ -260,6 +263,13 @@ class FlatFileParams
                 props,
                 PROP_MAPPED,
                 DEFAULT_MAPPED);
+        parallelism =
+            Math.max(
+                1,
+                getIntProperty(
+                    props,
+                    PROP_PARALLELISM,
+                    DEFAULT_PARALLELISM));
         dateFormat =
             decodeDatetimeFormat(
                 props.getProperty(PROP_DATE_FORMAT));
@@ -486,6 +496,15 @@ class FlatFileParams
         return mapped;
     }
 
+    /**
+     * Returns the number of threads used to parse a data file. A value of 1
+     * means that data files are read sequentially.
+     */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
     /**
      * Lookup the type of a schema based upon it's schema name. The queryDefault
      * parameter allows the type to default to QUERY when the schema name is
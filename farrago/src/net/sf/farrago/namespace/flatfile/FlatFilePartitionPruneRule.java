@@ -0,0 +1,352 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.namespace.flatfile;
+
+import java.math.*;
+
+import java.util.*;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.relopt.*;
+import org.eigenbase.reltype.*;
+import org.eigenbase.rex.*;
+import org.eigenbase.sql.*;
+import org.eigenbase.sql.fun.*;
+import org.eigenbase.sql.type.*;
+import org.eigenbase.util.*;
+
+
+/**
+ * FlatFilePartitionPruneRule removes from a {@link FlatFileMultiScanRel} the
+ * data files whose partition directories cannot satisfy the filter above it.
+ *
+ * <p>The rule evaluates each conjunct of the filter against the partition
+ * values of each file. It understands comparisons between a partition column
+ * and a literal, combined with AND, OR and NOT; anything else is assumed to
+ * be satisfiable. The filter itself is kept, since it may also refer to
+ * columns read from the files.
+ *
+ * <p>A projection may lie between the filter and the scan, since projections
+ * are usually pushed down to the scan before the rule is fired. Filter
+ * columns which the projection passes through unchanged are then mapped back
+ * to the columns of the scan.
+ *
+ * @author agent
+ * @version $Id$
+ */
+class FlatFilePartitionPruneRule
+    extends RelOptRule
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    public static final FlatFilePartitionPruneRule instance =
+        new FlatFilePartitionPruneRule(
+            new RelOptRuleOperand(
+                FilterRel.class,
+                new RelOptRuleOperand(FlatFileMultiScanRel.class, ANY)),
+            "filter");
+
+    public static final FlatFilePartitionPruneRule instanceFilterOnProject =
+        new FlatFilePartitionPruneRule(
+            new RelOptRuleOperand(
+                FilterRel.class,
+                new RelOptRuleOperand(
+                    ProjectRel.class,
+                    new RelOptRuleOperand(FlatFileMultiScanRel.class, ANY))),
+            "filter on proj");
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a FlatFilePartitionPruneRule.
+     *
+     * @param operand root operand; a FilterRel whose descendant is a
+     * FlatFileMultiScanRel, optionally through a ProjectRel
+     * @param id description of the rule
+     */
+    public FlatFilePartitionPruneRule(RelOptRuleOperand operand, String id)
+    {
+        super(operand, "FlatFilePartitionPruneRule: " + id);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement RelOptRule
+    public void onMatch(RelOptRuleCall call)
+    {
+        FilterRel filterRel = (FilterRel) call.rels[0];
+        ProjectRel projectRel = null;
+        if (call.rels.length == 3) {
+            projectRel = (ProjectRel) call.rels[1];
+        }
+        FlatFileMultiScanRel scanRel =
+            (FlatFileMultiScanRel) call.rels[call.rels.length - 1];
+        FlatFileColumnSet columnSet = scanRel.getColumnSet();
+
+        // map the columns seen by the filter to the columns of the scan
+        int [] columnMap =
+            new int[filterRel.getChild().getRowType().getFieldCount()];
+        for (int i = 0; i < columnMap.length; i++) {
+            columnMap[i] = i;
+            if (projectRel != null) {
+                RexNode exp = projectRel.getProjectExps()[i];
+                columnMap[i] =
+                    (exp instanceof RexInputRef)
+                    ? ((RexInputRef) exp).getIndex() : -1;
+            }
+        }
+
+        List<RexNode> conjuncts = new ArrayList<RexNode>();
+        RelOptUtil.decomposeConjunction(filterRel.getCondition(), conjuncts);
+
+        List<FlatFileDataFile> dataFiles = new ArrayList<FlatFileDataFile>();
+        for (FlatFileDataFile dataFile : scanRel.getDataFiles()) {
+            boolean satisfiable = true;
+            for (RexNode conjunct : conjuncts) {
+                if (evaluate(conjunct, columnSet, columnMap, dataFile)
+                    == Boolean.FALSE)
+                {
+                    satisfiable = false;
+                    break;
+                }
+            }
+            if (satisfiable) {
+                dataFiles.add(dataFile);
+            }
+        }
+        if (dataFiles.size() == scanRel.getDataFiles().size()) {
+            return;
+        }
+
+        if (dataFiles.isEmpty()) {
+            call.transformTo(
+                new EmptyRel(
+                    filterRel.getCluster(),
+                    filterRel.getRowType()));
+            return;
+        }
+        RelNode rel =
+            new FlatFileMultiScanRel(
+                columnSet,
+                scanRel.getCluster(),
+                scanRel.getConnection(),
+                dataFiles);
+        if (projectRel != null) {
+            rel =
+                new ProjectRel(
+                    projectRel.getCluster(),
+                    rel,
+                    projectRel.getProjectExps(),
+                    projectRel.getRowType(),
+                    projectRel.getFlags(),
+                    projectRel.getCollationList());
+        }
+        call.transformTo(CalcRel.createFilter(rel, filterRel.getCondition()));
+    }
+
+    /**
+     * Evaluates a condition for the rows of a data file.
+     *
+     * @param node condition
+     * @param columnSet table
+     * @param columnMap for each column referenced by the condition, the
+     * ordinal of the table column it holds, or -1 if it is computed
+     * @param dataFile data file
+     *
+     * @return value of the condition, or null if it is unknown or depends on
+     * the contents of the file
+     */
+    private static Boolean evaluate(
+        RexNode node,
+        FlatFileColumnSet columnSet,
+        int [] columnMap,
+        FlatFileDataFile dataFile)
+    {
+        if (!(node instanceof RexCall)) {
+            return null;
+        }
+        RexCall call = (RexCall) node;
+        SqlOperator op = call.getOperator();
+        RexNode [] operands = call.getOperands();
+        if (op == SqlStdOperatorTable.andOperator) {
+            Boolean result = Boolean.TRUE;
+            for (RexNode operand : operands) {
+                Boolean value =
+                    evaluate(operand, columnSet, columnMap, dataFile);
+                if (value == Boolean.FALSE) {
+                    return Boolean.FALSE;
+                }
+                if (value == null) {
+                    result = null;
+                }
+            }
+            return result;
+        }
+        if (op == SqlStdOperatorTable.orOperator) {
+            Boolean result = Boolean.FALSE;
+            for (RexNode operand : operands) {
+                Boolean value =
+                    evaluate(operand, columnSet, columnMap, dataFile);
+                if (value == Boolean.TRUE) {
+                    return Boolean.TRUE;
+                }
+                if (value == null) {
+                    result = null;
+                }
+            }
+            return result;
+        }
+        if (op == SqlStdOperatorTable.notOperator) {
+            Boolean value =
+                evaluate(operands[0], columnSet, columnMap, dataFile);
+            return (value == null) ? null : Boolean.valueOf(!value);
+        }
+        if (operands.length != 2) {
+            return null;
+        }
+
+        Integer c =
+            compare(operands[0], operands[1], columnSet, columnMap, dataFile);
+        if (c == null) {
+            c = compare(
+                operands[1],
+                operands[0],
+                columnSet,
+                columnMap,
+                dataFile);
+            if (c == null) {
+                return null;
+            }
+            c = -c;
+        }
+        if (op == SqlStdOperatorTable.equalsOperator) {
+            return c == 0;
+        } else if (op == SqlStdOperatorTable.notEqualsOperator) {
+            return c != 0;
+        } else if (op == SqlStdOperatorTable.lessThanOperator) {
+            return c < 0;
+        } else if (op == SqlStdOperatorTable.lessThanOrEqualOperator) {
+            return c <= 0;
+        } else if (op == SqlStdOperatorTable.greaterThanOperator) {
+            return c > 0;
+        } else if (op == SqlStdOperatorTable.greaterThanOrEqualOperator) {
+            return c >= 0;
+        }
+        return null;
+    }
+
+    /**
+     * Compares the value of a partition column with a literal.
+     *
+     * @param columnNode reference to a partition column, possibly cast from
+     * a character type
+     * @param literalNode literal, possibly cast
+     * @param columnSet table
+     * @param columnMap maps column references to table columns, as for
+     * {@link #evaluate}
+     * @param dataFile data file which supplies the value of the column
+     *
+     * @return negative, zero or positive as the column value is less than,
+     * equal to or greater than the literal, or null if they can't be compared
+     */
+    private static Integer compare(
+        RexNode columnNode,
+        RexNode literalNode,
+        FlatFileColumnSet columnSet,
+        int [] columnMap,
+        FlatFileDataFile dataFile)
+    {
+        RelDataType type = columnNode.getType();
+        RexNode refNode = columnNode;
+        if (isCast(refNode)) {
+            // a cast from the text of the directory name is evaluated as for
+            // the column itself, but a cast from another type would first
+            // convert the text into that type
+            refNode = ((RexCall) refNode).getOperands()[0];
+            if (!SqlTypeUtil.inCharFamily(refNode.getType())) {
+                return null;
+            }
+        }
+        if (!(refNode instanceof RexInputRef)) {
+            return null;
+        }
+        int iField = columnMap[((RexInputRef) refNode).getIndex()];
+        if (iField < 0) {
+            return null;
+        }
+        String value = columnSet.getPartitionValue(dataFile, iField);
+        if (value == null) {
+            return null;
+        }
+
+        if (isCast(literalNode)) {
+            literalNode = ((RexCall) literalNode).getOperands()[0];
+        }
+        if (!(literalNode instanceof RexLiteral)) {
+            return null;
+        }
+        Comparable literalValue = ((RexLiteral) literalNode).getValue();
+        if (literalValue == null) {
+            return null;
+        }
+
+        if (SqlTypeUtil.inCharFamily(type)
+            && (literalValue instanceof NlsString))
+        {
+            // strings which differ only in trailing spaces are equal
+            return Integer.signum(
+                trimTrailingSpaces(value).compareTo(
+                    trimTrailingSpaces(
+                        ((NlsString) literalValue).getValue())));
+        }
+        if (SqlTypeUtil.isNumeric(type)
+            && (literalValue instanceof BigDecimal))
+        {
+            try {
+                return new BigDecimal(value.trim()).compareTo(
+                    (BigDecimal) literalValue);
+            } catch (NumberFormatException ex) {
+                // the scan will fail to convert the value instead
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isCast(RexNode node)
+    {
+        return (node instanceof RexCall)
+            && (((RexCall) node).getOperator()
+                == SqlStdOperatorTable.castFunc);
+    }
+
+    private static String trimTrailingSpaces(String s)
+    {
+        int end = s.length();
+        while ((end > 0) && (s.charAt(end - 1) == ' ')) {
+            end--;
+        }
+        return s.substring(0, end);
+    }
+}
+
+// End FlatFilePartitionPruneRule.java
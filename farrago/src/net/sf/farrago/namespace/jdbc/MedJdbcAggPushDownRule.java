@@ -22,6 +22,7 @@
 package net.sf.farrago.namespace.jdbc;
 
 import org.eigenbase.rel.*;
+import org.eigenbase.rel.metadata.*;
 import org.eigenbase.relopt.*;
 import org.eigenbase.sql.*;
 import org.eigenbase.sql.parser.*;
@@ -127,7 +128,8 @@ public class MedJdbcAggPushDownRule
                 queryRel.getConnection(),
                 queryRel.getDialect(),
                 selectWithAgg,
-                uniqueKeys);
+                uniqueKeys,
+                RelMetadataQuery.getRowCount(aggRel));
         call.transformTo(rel);
     }
 }
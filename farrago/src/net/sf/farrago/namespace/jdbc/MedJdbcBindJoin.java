@@ -0,0 +1,149 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.namespace.jdbc;
+
+import java.sql.*;
+
+
+/**
+ * MedJdbcBindJoin describes a join between local rows and a query against a
+ * JDBC server which is executed by looking up batches of join keys, rather
+ * than by reading the whole foreign query result. It is created by code
+ * generated by {@link MedJdbcBindJoinRel} and passed to {@link
+ * MedJdbcDataServer#getRuntimeSupport}, which executes it with a {@link
+ * MedJdbcBindJoinScan}.
+ *
+ * <p>The lookup query has a dynamic parameter for each key column of each of
+ * the <code>batchSize</code> keys in a batch, in that order.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class MedJdbcBindJoin
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final ResultSet leftResultSet;
+    private final int [] leftKeys;
+    private final int [] rightKeys;
+    private final int rightColumnCount;
+    private final boolean outer;
+    private final String sql;
+    private final int batchSize;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a MedJdbcBindJoin.
+     *
+     * @param leftResultSet local rows
+     * @param leftKeys 0-based ordinals of the key columns in the local rows
+     * @param rightKeys 0-based ordinals of the key columns in the rows returned
+     * by the lookup query
+     * @param rightColumnCount number of columns returned by the lookup query
+     * @param outer whether local rows without a match are returned, with
+     * nulls for the foreign columns
+     * @param sql lookup query
+     * @param batchSize number of keys looked up by each execution of the
+     * lookup query
+     */
+    public MedJdbcBindJoin(
+        ResultSet leftResultSet,
+        int [] leftKeys,
+        int [] rightKeys,
+        int rightColumnCount,
+        boolean outer,
+        String sql,
+        int batchSize)
+    {
+        assert (leftKeys.length == rightKeys.length);
+        assert (batchSize > 0);
+        this.leftResultSet = leftResultSet;
+        this.leftKeys = leftKeys;
+        this.rightKeys = rightKeys;
+        this.rightColumnCount = rightColumnCount;
+        this.outer = outer;
+        this.sql = sql;
+        this.batchSize = batchSize;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @return local rows
+     */
+    public ResultSet getLeftResultSet()
+    {
+        return leftResultSet;
+    }
+
+    /**
+     * @return 0-based ordinals of the key columns in the local rows
+     */
+    public int [] getLeftKeys()
+    {
+        return leftKeys;
+    }
+
+    /**
+     * @return 0-based ordinals of the key columns in the rows returned by the
+     * lookup query
+     */
+    public int [] getRightKeys()
+    {
+        return rightKeys;
+    }
+
+    /**
+     * @return number of columns returned by the lookup query
+     */
+    public int getRightColumnCount()
+    {
+        return rightColumnCount;
+    }
+
+    /**
+     * @return whether local rows without a match are returned
+     */
+    public boolean isOuter()
+    {
+        return outer;
+    }
+
+    /**
+     * @return lookup query
+     */
+    public String getSql()
+    {
+        return sql;
+    }
+
+    /**
+     * @return number of keys looked up by each execution of the lookup query
+     */
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+}
+
+// End MedJdbcBindJoin.java
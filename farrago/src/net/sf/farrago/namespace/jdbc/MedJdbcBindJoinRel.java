@@ -0,0 +1,361 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.namespace.jdbc;
+
+import java.util.*;
+
+import net.sf.farrago.query.*;
+import net.sf.farrago.runtime.*;
+
+import openjava.mop.*;
+
+import openjava.ptree.*;
+
+import org.eigenbase.oj.rel.*;
+import org.eigenbase.oj.stmt.*;
+import org.eigenbase.oj.util.*;
+import org.eigenbase.rel.*;
+import org.eigenbase.rel.metadata.*;
+import org.eigenbase.relopt.*;
+import org.eigenbase.reltype.*;
+import org.eigenbase.runtime.*;
+import org.eigenbase.sql.*;
+import org.eigenbase.sql.fun.*;
+import org.eigenbase.sql.parser.*;
+import org.eigenbase.sql.util.*;
+import org.eigenbase.util.*;
+
+
+/**
+ * MedJdbcBindJoinRel joins local rows with the result of a query against a
+ * JDBC server by looking up the join keys of the local rows in batches,
+ * instead of reading the whole foreign query result. See {@link
+ * MedJdbcBindJoinRule} for when it is used, and {@link MedJdbcBindJoinScan}
+ * for how it is executed.
+ *
+ * <p>Its input is the local side of the join, in the iterator calling
+ * convention; its output, in the ResultSet calling convention, has the row
+ * type of the join it replaces: the local columns followed by the foreign
+ * ones.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class MedJdbcBindJoinRel
+    extends SingleRel
+    implements ResultSetRel
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final MedJdbcQueryRel queryRel;
+    private final int [] leftKeys;
+    private final int [] rightKeys;
+    private final JoinRelType joinType;
+    private final int batchSize;
+    private final SqlString lookupSql;
+
+    /**
+     * Estimated number of rows returned by the join.
+     */
+    final Double rowCount;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a MedJdbcBindJoinRel.
+     *
+     * @param cluster cluster
+     * @param child local side of the join
+     * @param queryRel foreign side of the join
+     * @param leftKeys 0-based ordinals of the key columns in the local rows
+     * @param rightKeys 0-based ordinals of the key columns in the rows returned
+     * by queryRel
+     * @param joinType join type; INNER or LEFT
+     * @param rowType row type of the join
+     * @param batchSize number of keys looked up by each remote query
+     * @param rowCount estimated number of rows returned by the join
+     */
+    public MedJdbcBindJoinRel(
+        RelOptCluster cluster,
+        RelNode child,
+        MedJdbcQueryRel queryRel,
+        int [] leftKeys,
+        int [] rightKeys,
+        JoinRelType joinType,
+        RelDataType rowType,
+        int batchSize,
+        Double rowCount)
+    {
+        super(
+            cluster,
+            CallingConvention.RESULT_SET.singletonSet,
+            child);
+        assert (leftKeys.length == rightKeys.length);
+        assert (leftKeys.length > 0);
+        assert ((joinType == JoinRelType.INNER)
+            || (joinType == JoinRelType.LEFT));
+        this.queryRel = queryRel;
+        this.leftKeys = leftKeys;
+        this.rightKeys = rightKeys;
+        this.joinType = joinType;
+        this.rowType = rowType;
+        this.batchSize = batchSize;
+        this.rowCount = rowCount;
+        this.lookupSql =
+            MedJdbcNameDirectory.normalizeQueryString(
+                createLookupSelect(queryRel, rightKeys, batchSize)
+                .toSqlString(queryRel.getDialect()));
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Creates the query which looks up a batch of keys:
+     *
+     * <blockquote><code>SELECT * FROM (<i>query</i>) WHERE k IN (?, ?,
+     * ...)</code></blockquote>
+     *
+     * or, for a compound key,
+     *
+     * <blockquote><code>SELECT * FROM (<i>query</i>) WHERE (k1 = ? AND k2 = ?)
+     * OR (k1 = ? AND k2 = ?) ...</code></blockquote>
+     *
+     * @param queryRel foreign query
+     * @param keys 0-based ordinals of the key columns in the rows returned by
+     * queryRel
+     * @param batchSize number of keys looked up at once
+     *
+     * @return lookup query
+     */
+    static SqlSelect createLookupSelect(
+        MedJdbcQueryRel queryRel,
+        int [] keys,
+        int batchSize)
+    {
+        java.util.List<RelDataTypeField> fields =
+            queryRel.getRowType().getFieldList();
+        SqlIdentifier [] keyIds = new SqlIdentifier[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keyIds[i] =
+                new SqlIdentifier(
+                    fields.get(keys[i]).getName(),
+                    SqlParserPos.ZERO);
+        }
+
+        int iParam = 0;
+        SqlNode condition = null;
+        if (keys.length == 1) {
+            SqlNodeList values = new SqlNodeList(SqlParserPos.ZERO);
+            for (int i = 0; i < batchSize; i++) {
+                values.add(new SqlDynamicParam(iParam++, SqlParserPos.ZERO));
+            }
+            condition =
+                SqlStdOperatorTable.inOperator.createCall(
+                    SqlParserPos.ZERO,
+                    keyIds[0],
+                    values);
+        } else {
+            for (int i = 0; i < batchSize; i++) {
+                SqlNode keyCondition = null;
+                for (SqlIdentifier keyId : keyIds) {
+                    SqlNode equals =
+                        SqlStdOperatorTable.equalsOperator.createCall(
+                            SqlParserPos.ZERO,
+                            keyId,
+                            new SqlDynamicParam(iParam++, SqlParserPos.ZERO));
+                    keyCondition =
+                        (keyCondition == null) ? equals
+                        : SqlStdOperatorTable.andOperator.createCall(
+                            SqlParserPos.ZERO,
+                            keyCondition,
+                            equals);
+                }
+                condition =
+                    (condition == null) ? keyCondition
+                    : SqlStdOperatorTable.orOperator.createCall(
+                        SqlParserPos.ZERO,
+                        condition,
+                        keyCondition);
+            }
+        }
+
+        return SqlStdOperatorTable.selectOperator.createCall(
+            null,
+            new SqlNodeList(
+                Collections.singletonList(
+                    new SqlIdentifier("*", SqlParserPos.ZERO)),
+                SqlParserPos.ZERO),
+            queryRel.getSql(),
+            condition,
+            null,
+            null,
+            null,
+            null,
+            SqlParserPos.ZERO);
+    }
+
+    // implement RelNode
+    public MedJdbcBindJoinRel clone()
+    {
+        MedJdbcBindJoinRel clone =
+            new MedJdbcBindJoinRel(
+                getCluster(),
+                getChild(),
+                queryRel,
+                leftKeys,
+                rightKeys,
+                joinType,
+                rowType,
+                batchSize,
+                rowCount);
+        clone.inheritTraitsFrom(this);
+        return clone;
+    }
+
+    // implement RelNode
+    public RelOptCost computeSelfCost(RelOptPlanner planner)
+    {
+        // Like JdbcQuery, only count the rows we receive; but the lookups
+        // return at most the rows which join.
+        double rows = RelMetadataQuery.getRowCount(this) / 2;
+        return planner.makeCost(rows, 0, 0);
+    }
+
+    // override RelNode
+    public void explain(RelOptPlanWriter pw)
+    {
+        boolean omitServerMofId = false;
+        switch (pw.getDetailLevel()) {
+        case NO_ATTRIBUTES:
+        case EXPPLAN_ATTRIBUTES:
+            omitServerMofId = true;
+            break;
+        }
+        if (omitServerMofId) {
+            pw.explain(
+                this,
+                new String[] {
+                    "child", "foreignSql", "leftKeys", "rightKeys",
+                    "joinType"
+                },
+                new Object[] {
+                    lookupSql, Arrays.toString(leftKeys),
+                    Arrays.toString(rightKeys), joinType
+                });
+            return;
+        }
+
+        // as for MedJdbcQueryRel, include the server MOFID in digests
+        pw.explain(
+            this,
+            new String[] {
+                "child", "foreignSql", "leftKeys", "rightKeys", "joinType",
+                "serverMofId"
+            },
+            new Object[] {
+                lookupSql, Arrays.toString(leftKeys),
+                Arrays.toString(rightKeys), joinType,
+                queryRel.getServer().getServerMofId()
+            });
+    }
+
+    // implement JavaRel
+    public ParseTree implement(JavaRelImplementor implementor)
+    {
+        FarragoPreparingStmt preparingStmt =
+            ((FarragoRelImplementor) implementor).getPreparingStmt();
+        Variable connectionVariable =
+            new Variable(OJPreparingStmt.connectionVariable);
+
+        // Present the local rows as a ResultSet, the same way as the inputs
+        // to a UDX.
+        Expression childExp =
+            implementor.visitJavaChild(this, 0, (JavaRel) getChild());
+        OJClass childRowClass =
+            OJUtil.typeToOJClass(
+                getChild().getRowType(),
+                implementor.getTypeFactory());
+        String resultSetName = "ResultSet:" + getChild().getId();
+        preparingStmt.mapResultSetType(
+            resultSetName,
+            getChild().getRowType());
+        ExpressionList resultSetParams = new ExpressionList();
+        resultSetParams.add(childExp);
+        resultSetParams.add(new ClassLiteral(childRowClass));
+        resultSetParams.add(
+            new MethodCall(
+                connectionVariable,
+                "getRowTypeForResultSet",
+                new ExpressionList(Literal.makeLiteral(resultSetName))));
+        resultSetParams.add(Literal.constantNull());
+        Expression leftResultSetExp =
+            new AllocationExpression(
+                OJUtil.typeNameForClass(FarragoTupleIterResultSet.class),
+                resultSetParams);
+
+        ExpressionList bindJoinParams = new ExpressionList();
+        bindJoinParams.add(leftResultSetExp);
+        bindJoinParams.add(makeIntArray(leftKeys));
+        bindJoinParams.add(makeIntArray(rightKeys));
+        bindJoinParams.add(
+            Literal.makeLiteral(queryRel.getRowType().getFieldCount()));
+        bindJoinParams.add(Literal.makeLiteral(joinType == JoinRelType.LEFT));
+        bindJoinParams.add(Literal.makeLiteral(lookupSql.getSql()));
+        bindJoinParams.add(Literal.makeLiteral(batchSize));
+        Expression bindJoinExp =
+            new AllocationExpression(
+                OJClass.forClass(MedJdbcBindJoin.class),
+                bindJoinParams);
+
+        return new CastExpression(
+            OJClass.forClass(ResultSetProvider.class),
+            new MethodCall(
+                connectionVariable,
+                "getDataServerRuntimeSupport",
+                new ExpressionList(
+                    Literal.makeLiteral(
+                        queryRel.getServer().getServerMofId()),
+                    bindJoinExp)));
+    }
+
+    private static Expression makeIntArray(int [] values)
+    {
+        ExpressionList list = new ExpressionList();
+        for (int value : values) {
+            list.add(Literal.makeLiteral(value));
+        }
+        return new ArrayAllocationExpression(
+            OJSystem.INT,
+            new ExpressionList(null),
+            new ArrayInitializer(list));
+    }
+
+    /**
+     * @return the foreign side of the join
+     */
+    public MedJdbcQueryRel getQueryRel()
+    {
+        return queryRel;
+    }
+}
+
+// End MedJdbcBindJoinRel.java
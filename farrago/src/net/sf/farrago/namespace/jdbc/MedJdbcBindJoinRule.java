@@ -0,0 +1,219 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.namespace.jdbc;
+
+import java.util.*;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.rel.metadata.*;
+import org.eigenbase.relopt.*;
+import org.eigenbase.reltype.*;
+import org.eigenbase.rex.*;
+import org.eigenbase.sql.type.*;
+import org.eigenbase.util.*;
+
+
+/**
+ * MedJdbcBindJoinRule converts a join between a local input and a query
+ * against a JDBC server into a {@link MedJdbcBindJoinRel}, which looks up the
+ * join keys of the local rows in the remote query instead of reading all of
+ * its rows.
+ *
+ * <p>The rule only fires when the lookups are expected to be cheaper than
+ * reading the remote query: the local input must have at most {@link
+ * MedJdbcDataServer#getBindJoinMaxKeys} distinct keys, and no more than
+ * {@link #MAX_KEY_RATIO} times as many as there are remote rows. It applies to
+ * inner and left outer equi-joins whose keys are both exact numeric or both
+ * character strings, since other types may not compare the same way remotely.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class MedJdbcBindJoinRule
+    extends RelOptRule
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    public static final MedJdbcBindJoinRule instance =
+        new MedJdbcBindJoinRule();
+
+    /**
+     * Largest ratio between the number of distinct local keys and the number
+     * of remote rows for which lookups are preferred to reading the remote
+     * query.
+     */
+    public static final double MAX_KEY_RATIO = 0.1;
+
+    //~ Constructors -----------------------------------------------------------
+
+    public MedJdbcBindJoinRule()
+    {
+        super(
+            new RelOptRuleOperand(
+                JoinRel.class,
+                new RelOptRuleOperand(RelNode.class, ANY),
+                new RelOptRuleOperand(MedJdbcQueryRel.class, ANY)));
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement RelOptRule
+    public CallingConvention getOutConvention()
+    {
+        return CallingConvention.RESULT_SET;
+    }
+
+    // implement RelOptRule
+    public void onMatch(RelOptRuleCall call)
+    {
+        JoinRel joinRel = (JoinRel) call.rels[0];
+        RelNode leftRel = call.rels[1];
+        MedJdbcQueryRel rightRel = (MedJdbcQueryRel) call.rels[2];
+
+        if (leftRel instanceof MedJdbcQueryRel) {
+            // leave joins which can be pushed down entirely to
+            // MedJdbcJoinPushDownRule
+            MedJdbcDataServer leftServer = ((MedJdbcQueryRel) leftRel).server;
+            if ((leftServer.testQueryCombination(rightRel.server) != null)
+                || (rightRel.server.testQueryCombination(leftServer) != null))
+            {
+                return;
+            }
+        }
+        if (!joinRel.getVariablesStopped().isEmpty()) {
+            return;
+        }
+        if (!joinRel.getSystemFieldList().isEmpty()) {
+            return;
+        }
+        JoinRelType joinType = joinRel.getJoinType();
+        if ((joinType != JoinRelType.INNER) && (joinType != JoinRelType.LEFT)) {
+            return;
+        }
+        int maxKeys = rightRel.server.getBindJoinMaxKeys();
+        if (maxKeys <= 0) {
+            return;
+        }
+
+        List<Integer> leftKeys = new ArrayList<Integer>();
+        List<Integer> rightKeys = new ArrayList<Integer>();
+        RexNode residual =
+            RelOptUtil.splitJoinCondition(
+                leftRel,
+                rightRel,
+                joinRel.getCondition(),
+                leftKeys,
+                rightKeys);
+        if (leftKeys.isEmpty()) {
+            return;
+        }
+        if (!residual.isAlwaysTrue() && (joinType != JoinRelType.INNER)) {
+            // a remaining condition would decide which rows are padded with
+            // nulls, so it can't be applied after the join
+            return;
+        }
+        for (int i = 0; i < leftKeys.size(); i++) {
+            RelDataType leftType =
+                leftRel.getRowType().getFields()[leftKeys.get(i)].getType();
+            RelDataType rightType =
+                rightRel.getRowType().getFields()[rightKeys.get(i)].getType();
+            boolean comparable =
+                (SqlTypeUtil.isExactNumeric(leftType)
+                    && SqlTypeUtil.isExactNumeric(rightType))
+                || (SqlTypeUtil.inCharFamily(leftType)
+                    && SqlTypeUtil.inCharFamily(rightType));
+            if (!comparable) {
+                return;
+            }
+        }
+
+        // only look up keys when there are few of them compared to the rows
+        // we would otherwise read
+        Double rightRowCount = RelMetadataQuery.getRowCount(rightRel);
+        if (rightRowCount == null) {
+            return;
+        }
+        Double keyCount =
+            RelMetadataQuery.getDistinctRowCount(
+                leftRel,
+                Util.bitSetOf(leftKeys),
+                null);
+        if (keyCount == null) {
+            keyCount = RelMetadataQuery.getRowCount(leftRel);
+            if (keyCount == null) {
+                return;
+            }
+        }
+        if ((keyCount > maxKeys)
+            || (keyCount > (rightRowCount * MAX_KEY_RATIO)))
+        {
+            return;
+        }
+
+        int [] leftKeyArray = toIntArray(leftKeys);
+        int [] rightKeyArray = toIntArray(rightKeys);
+        int batchSize = rightRel.server.getBindJoinBatchSize();
+        if (!rightRel.server.isRemoteSqlValid(
+                MedJdbcBindJoinRel.createLookupSelect(
+                    rightRel,
+                    rightKeyArray,
+                    batchSize)))
+        {
+            return;
+        }
+
+        RelNode iterLeft =
+            convert(
+                leftRel,
+                leftRel.getTraits().plus(CallingConvention.ITERATOR));
+        if (iterLeft == null) {
+            return;
+        }
+
+        RelNode rel =
+            new MedJdbcBindJoinRel(
+                joinRel.getCluster(),
+                iterLeft,
+                rightRel,
+                leftKeyArray,
+                rightKeyArray,
+                joinType,
+                joinRel.getRowType(),
+                batchSize,
+                RelMetadataQuery.getRowCount(joinRel));
+        if (!residual.isAlwaysTrue()) {
+            rel = CalcRel.createFilter(rel, residual);
+        }
+        call.transformTo(rel);
+    }
+
+    private static int [] toIntArray(List<Integer> list)
+    {
+        int [] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
+
+// End MedJdbcBindJoinRule.java
@@ -0,0 +1,350 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.namespace.jdbc;
+
+import java.math.*;
+
+import java.sql.*;
+
+import java.util.*;
+
+import net.sf.farrago.util.*;
+
+import org.eigenbase.runtime.*;
+
+
+/**
+ * MedJdbcBindJoinScan executes a {@link MedJdbcBindJoin}. It reads local rows
+ * until it has collected a batch of distinct non-null keys, looks them up with
+ * one execution of the lookup query, and joins the buffered local rows with
+ * the foreign rows in memory. Rows are returned in the order of the local
+ * rows.
+ *
+ * <p>A partial last batch is padded by repeating its last key, so that the
+ * same prepared statement serves every batch.
+ *
+ * <p>Keys are compared by value: numbers regardless of their Java class and
+ * scale, and strings ignoring trailing spaces. String keys are also bound
+ * without their trailing spaces, since a local CHAR(n) key is padded to n
+ * characters, and a foreign DBMS which compares without padding would not
+ * match it against a shorter value.
+ *
+ * @author agent
+ * @version $Id$
+ */
+class MedJdbcBindJoinScan
+    implements FarragoAllocation,
+        ResultSetProvider
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Limits the number of local rows buffered for a batch, as a multiple of
+     * the batch size, in case keys repeat many times.
+     */
+    private static final int MAX_ROWS_PER_KEY = 16;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final MedJdbcBindJoin bindJoin;
+    private final FarragoStatementAllocation stmtAlloc;
+    private ResultSet resultSet;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a MedJdbcBindJoinScan.
+     *
+     * @param bindJoin join to execute
+     * @param stmtAlloc allocation holding the lookup query, prepared; it is
+     * closed together with this scan
+     */
+    MedJdbcBindJoinScan(
+        MedJdbcBindJoin bindJoin,
+        FarragoStatementAllocation stmtAlloc)
+    {
+        this.bindJoin = bindJoin;
+        this.stmtAlloc = stmtAlloc;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement ResultSetProvider
+    public ResultSet getResultSet()
+        throws SQLException
+    {
+        if (resultSet == null) {
+            resultSet =
+                new IteratorResultSet(
+                    new BindJoinIterator(),
+                    new MedJdbcPartitionedScan.ArrayColumnGetter());
+        }
+        return resultSet;
+    }
+
+    // implement FarragoAllocation
+    public void closeAllocation()
+    {
+        stmtAlloc.closeAllocation();
+    }
+
+    /**
+     * Extracts the key of a row.
+     *
+     * @param row row
+     * @param keys 0-based ordinals of the key columns
+     *
+     * @return key values, normalized for comparison, or null if any of them
+     * is null
+     */
+    private static List<Object> makeKey(Object [] row, int [] keys)
+    {
+        List<Object> key = new ArrayList<Object>(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            Object value = row[keys[i]];
+            if (value == null) {
+                return null;
+            }
+            key.add(normalize(value));
+        }
+        return key;
+    }
+
+    /**
+     * Converts a local key value into the value to bind in the lookup query.
+     *
+     * @param value key value
+     *
+     * @return value with trailing spaces removed if it is a string
+     */
+    private static Object toBindValue(Object value)
+    {
+        if (!(value instanceof String)) {
+            return value;
+        }
+        String s = (String) normalize(value);
+        if ((s.length() == 0) && (((String) value).length() > 0)) {
+            // keep one space rather than binding an empty string, which some
+            // DBMSs treat as null
+            return " ";
+        }
+        return s;
+    }
+
+    private static Object normalize(Object value)
+    {
+        if (value instanceof Number) {
+            BigDecimal decimal =
+                (value instanceof BigDecimal) ? (BigDecimal) value
+                : new BigDecimal(value.toString());
+            if (decimal.signum() == 0) {
+                return BigDecimal.ZERO;
+            }
+            return decimal.stripTrailingZeros();
+        }
+        if (value instanceof String) {
+            String s = (String) value;
+            int n = s.length();
+            while ((n > 0) && (s.charAt(n - 1) == ' ')) {
+                --n;
+            }
+            return s.substring(0, n);
+        }
+        return value;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Iterator over the joined rows, which fetches a batch whenever the rows
+     * of the previous batch have been consumed.
+     */
+    private class BindJoinIterator
+        implements Iterator<Object>
+    {
+        private final ResultSet leftResultSet;
+        private final int leftColumnCount;
+        private final LinkedList<Object []> pending;
+        private boolean leftDone;
+
+        BindJoinIterator()
+            throws SQLException
+        {
+            leftResultSet = bindJoin.getLeftResultSet();
+            leftColumnCount = leftResultSet.getMetaData().getColumnCount();
+            pending = new LinkedList<Object []>();
+        }
+
+        // implement Iterator
+        public boolean hasNext()
+        {
+            while (pending.isEmpty()) {
+                if (leftDone) {
+                    return false;
+                }
+                try {
+                    fetchBatch();
+                } catch (SQLException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+            return true;
+        }
+
+        // implement Iterator
+        public Object next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return pending.removeFirst();
+        }
+
+        // implement Iterator
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        private void fetchBatch()
+            throws SQLException
+        {
+            int batchSize = bindJoin.getBatchSize();
+            int maxRows = batchSize * MAX_ROWS_PER_KEY;
+            List<Object []> leftRows = new ArrayList<Object []>();
+            Map<List<Object>, Object []> keys =
+                new LinkedHashMap<List<Object>, Object []>();
+            while ((keys.size() < batchSize) && (leftRows.size() < maxRows)) {
+                if (!leftResultSet.next()) {
+                    leftDone = true;
+                    break;
+                }
+                Object [] row = new Object[leftColumnCount];
+                for (int i = 0; i < leftColumnCount; i++) {
+                    row[i] = leftResultSet.getObject(i + 1);
+                }
+                leftRows.add(row);
+                List<Object> key = makeKey(row, bindJoin.getLeftKeys());
+                if ((key != null) && !keys.containsKey(key)) {
+                    keys.put(key, row);
+                }
+            }
+
+            Map<List<Object>, List<Object []>> matches = lookup(keys);
+            int rightColumnCount = bindJoin.getRightColumnCount();
+            for (Object [] leftRow : leftRows) {
+                List<Object> key = makeKey(leftRow, bindJoin.getLeftKeys());
+                List<Object []> rightRows =
+                    (key == null) ? null : matches.get(key);
+                if (rightRows != null) {
+                    for (Object [] rightRow : rightRows) {
+                        pending.add(join(leftRow, rightRow));
+                    }
+                } else if (bindJoin.isOuter()) {
+                    pending.add(
+                        join(leftRow, new Object[rightColumnCount]));
+                }
+            }
+        }
+
+        /**
+         * Executes the lookup query for a batch of keys.
+         *
+         * @param keys distinct keys, each mapped to a local row which has it
+         *
+         * @return foreign rows, grouped by key
+         */
+        private Map<List<Object>, List<Object []>> lookup(
+            Map<List<Object>, Object []> keys)
+            throws SQLException
+        {
+            Map<List<Object>, List<Object []>> matches =
+                new HashMap<List<Object>, List<Object []>>();
+            if (keys.isEmpty()) {
+                return matches;
+            }
+
+            int [] leftKeys = bindJoin.getLeftKeys();
+            PreparedStatement stmt =
+                (PreparedStatement) stmtAlloc.getStatement();
+            List<Object []> keyRows = new ArrayList<Object []>(keys.values());
+            int iParam = 0;
+            for (int i = 0; i < bindJoin.getBatchSize(); i++) {
+                Object [] keyRow =
+                    keyRows.get(Math.min(i, keyRows.size() - 1));
+                for (int j = 0; j < leftKeys.length; j++) {
+                    stmt.setObject(++iParam, toBindValue(keyRow[leftKeys[j]]));
+                }
+            }
+
+            ResultSet rightResultSet = stmt.executeQuery();
+            try {
+                ResultSetMetaData metaData = rightResultSet.getMetaData();
+                int nColumns = metaData.getColumnCount();
+                int [] columnTypes = new int[nColumns];
+                for (int i = 0; i < nColumns; i++) {
+                    columnTypes[i] = metaData.getColumnType(i + 1);
+                }
+                while (rightResultSet.next()) {
+                    Object [] row = new Object[nColumns];
+                    for (int i = 0; i < nColumns; i++) {
+                        row[i] =
+                            MedJdbcPartitionedScan.getColumn(
+                                rightResultSet,
+                                i + 1,
+                                columnTypes[i]);
+                    }
+                    List<Object> key = makeKey(row, bindJoin.getRightKeys());
+                    if ((key == null) || !keys.containsKey(key)) {
+                        // the remote DBMS compares differently; the local
+                        // join semantics win
+                        continue;
+                    }
+                    List<Object []> rows = matches.get(key);
+                    if (rows == null) {
+                        rows = new ArrayList<Object []>();
+                        matches.put(key, rows);
+                    }
+                    rows.add(row);
+                }
+            } finally {
+                rightResultSet.close();
+            }
+            return matches;
+        }
+
+        private Object [] join(Object [] leftRow, Object [] rightRow)
+        {
+            Object [] row = new Object[leftRow.length + rightRow.length];
+            System.arraycopy(leftRow, 0, row, 0, leftRow.length);
+            System.arraycopy(
+                rightRow,
+                0,
+                row,
+                leftRow.length,
+                rightRow.length);
+            return row;
+        }
+    }
+}
+
+// End MedJdbcBindJoinScan.java
@@ -56,6 +56,20 @@ public class MedJdbcColumnSet
     RelDataType srcRowType;
     RelDataType currRowType;
 
+    /**
+     * Name of the foreign column on which scans are split into concurrent
+     * range queries, or null if scans are not split.
+     */
+    String partitionColumn;
+
+    /**
+     * Maximum number of concurrent range queries per scan.
+     */
+    int partitionCount = MedJdbcDataServer.DEFAULT_PARTITION_COUNT;
+
+    private MedJdbcTableStatistics statistics;
+    private boolean statisticsRead;
+
     //~ Constructors -----------------------------------------------------------
 
     public MedJdbcColumnSet(
@@ -85,10 +99,51 @@ public class MedJdbcColumnSet
     // implement RelOptTable
     public double getRowCount()
     {
-        // TODO:  use getStatistics?
+        MedJdbcTableStatistics stats = getRemoteStatistics();
+        if ((stats != null) && (stats.getRowCount() != null)) {
+            return stats.getRowCount();
+        }
         return super.getRowCount();
     }
 
+    /**
+     * Returns the statistics reported by the foreign server for this table.
+     * They are read at most once per column set, i.e. once per statement.
+     *
+     * @return statistics, or null if not available
+     */
+    MedJdbcTableStatistics getRemoteStatistics()
+    {
+        if (!statisticsRead) {
+            statisticsRead = true;
+            if ((directory != null)
+                && (directory.server != null)
+                && (getForeignName() != null))
+            {
+                statistics =
+                    directory.server.getTableStatistics(getForeignName());
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Returns the name of a column of this table on the foreign server.
+     *
+     * @param ordinal 0-based ordinal of the column
+     *
+     * @return column name, or null if not known
+     */
+    String getForeignColumnName(int ordinal)
+    {
+        if ((srcRowType == null)
+            || (ordinal >= srcRowType.getFieldCount()))
+        {
+            return null;
+        }
+        return srcRowType.getFieldList().get(ordinal).getName();
+    }
+
     /**
      * @return the directory from which this columnset originates
      */
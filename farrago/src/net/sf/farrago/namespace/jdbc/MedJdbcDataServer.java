@@ -27,6 +27,7 @@ import java.lang.reflect.*;
 import java.sql.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 import java.util.regex.*;
 
@@ -100,6 +101,19 @@ import org.eigenbase.util.*;
  * #closeAllocation()} is invoked.</li>
  * </ol>
  *
+ * <p>A foreign table with the {@link #PROP_PARTITION_COLUMN PARTITION_COLUMN}
+ * and {@link #PROP_PARTITION_COUNT PARTITION_COUNT} options is scanned by
+ * several concurrent range queries, each over its own pooled connection (see
+ * {@link MedJdbcPartitionedQuery}). At most {@link
+ * #PROP_MAX_PARTITION_THREADS MAX_PARTITION_THREADS} partitions are read per
+ * scan, and the range of the partition column is cached for {@link
+ * #PROP_PARTITION_RANGE_TTL PARTITION_RANGE_TTL} seconds. Because each
+ * partition is read in its own remote transaction, the partitions do not
+ * form a consistent snapshot of the table: rows which are inserted, deleted or
+ * updated during the scan may be seen by some partitions and not others, or
+ * seen twice if their partition key changes. Only partition tables which are
+ * not modified while they are read.
+ *
  * @author John V. Sichi
  * @version $Id$
  */
@@ -149,6 +163,17 @@ public class MedJdbcDataServer
         "DISABLE_CONNECTION_POOL";
     public static final String PROP_ASSUME_PUSHDOWN_VALID =
         "ASSUME_PUSHDOWN_VALID";
+    public static final String PROP_PARTITION_COLUMN = "PARTITION_COLUMN";
+    public static final String PROP_PARTITION_COUNT = "PARTITION_COUNT";
+    public static final String PROP_MAX_PARTITION_THREADS =
+        "MAX_PARTITION_THREADS";
+    public static final String PROP_PARTITION_RANGE_TTL =
+        "PARTITION_RANGE_TTL";
+    public static final String PROP_STATISTICS_TTL = "STATISTICS_TTL";
+    public static final String PROP_STATISTICS_PROBE = "STATISTICS_PROBE";
+    public static final String PROP_BIND_JOIN_MAX_KEYS = "BIND_JOIN_MAX_KEYS";
+    public static final String PROP_BIND_JOIN_BATCH_SIZE =
+        "BIND_JOIN_BATCH_SIZE";
 
     // REVIEW jvs 19-June-2006:  What are these doing here?
     public static final String PROP_VERSION = "VERSION";
@@ -169,6 +194,13 @@ public class MedJdbcDataServer
         PROP_VALIDATION_TIMING_ON_BORROW;
     public static final boolean DEFAULT_DISABLE_CONNECTION_POOL = false;
     public static final boolean DEFAULT_ASSUME_PUSHDOWN_VALID = false;
+    public static final int DEFAULT_PARTITION_COUNT = 1;
+    public static final int DEFAULT_MAX_PARTITION_THREADS = 4;
+    public static final int DEFAULT_PARTITION_RANGE_TTL = 60;
+    public static final int DEFAULT_STATISTICS_TTL = 3600;
+    public static final boolean DEFAULT_STATISTICS_PROBE = false;
+    public static final int DEFAULT_BIND_JOIN_MAX_KEYS = 10000;
+    public static final int DEFAULT_BIND_JOIN_BATCH_SIZE = 100;
 
     private static final Logger logger =
         FarragoTrace.getClassTracer(MedJdbcDataServer.class);
@@ -225,6 +257,51 @@ public class MedJdbcDataServer
     protected Pattern disabledPushdownPattern;
     private int fetchSize;
     private boolean autocommit;
+
+    /**
+     * Largest number of partitions, and so of concurrent queries and
+     * connections, into which one scan of a foreign table is split.
+     */
+    private int maxPartitionThreads;
+
+    /**
+     * How long the range of a partition column is cached, in milliseconds.
+     */
+    private long partitionRangeTtlMillis;
+
+    /**
+     * Threads on which partitioned scans read their partitions; created on
+     * first use.
+     */
+    private ExecutorService partitionExecutor;
+
+    /**
+     * Ranges of partition columns, keyed by the query which reads them.
+     */
+    private final Map<String, MedJdbcPartitionedScan.Range>
+        partitionRangeCache =
+            new HashMap<String, MedJdbcPartitionedScan.Range>();
+
+    /**
+     * How long statistics of foreign tables are cached, in milliseconds; if
+     * not positive, statistics are not read at all.
+     */
+    private long statisticsTtlMillis;
+    private boolean statisticsProbe;
+
+    /**
+     * Largest estimated number of distinct local join keys for which a bind
+     * join is used; if not positive, bind joins are disabled.
+     */
+    private int bindJoinMaxKeys;
+    private int bindJoinBatchSize;
+
+    /**
+     * Statistics of foreign tables, keyed by foreign qualified name. Column
+     * sets are created anew for each statement, so the cache lives here.
+     */
+    private final Map<List<String>, MedJdbcTableStatistics> statisticsCache =
+        new HashMap<List<String>, MedJdbcTableStatistics>();
     protected HashMap<String, Map<String, String>> schemaMaps;
     protected HashMap<String, Map<String, Source>> tableMaps;
     protected Map<String, List<WildcardMapping>> tablePrefixMaps;
@@ -391,6 +468,41 @@ public class MedJdbcDataServer
         fetchSize = getIntProperty(props, PROP_FETCH_SIZE, DEFAULT_FETCH_SIZE);
         autocommit =
             getBooleanProperty(props, PROP_AUTOCOMMIT, DEFAULT_AUTOCOMMIT);
+        maxPartitionThreads =
+            getIntProperty(
+                props,
+                PROP_MAX_PARTITION_THREADS,
+                DEFAULT_MAX_PARTITION_THREADS);
+        partitionRangeTtlMillis =
+            1000L
+            * getIntProperty(
+                props,
+                PROP_PARTITION_RANGE_TTL,
+                DEFAULT_PARTITION_RANGE_TTL);
+        statisticsTtlMillis =
+            1000L
+            * getIntProperty(
+                props,
+                PROP_STATISTICS_TTL,
+                DEFAULT_STATISTICS_TTL);
+        statisticsProbe =
+            getBooleanProperty(
+                props,
+                PROP_STATISTICS_PROBE,
+                DEFAULT_STATISTICS_PROBE);
+        bindJoinMaxKeys =
+            getIntProperty(
+                props,
+                PROP_BIND_JOIN_MAX_KEYS,
+                DEFAULT_BIND_JOIN_MAX_KEYS);
+        bindJoinBatchSize =
+            getIntProperty(
+                props,
+                PROP_BIND_JOIN_BATCH_SIZE,
+                DEFAULT_BIND_JOIN_BATCH_SIZE);
+        if (bindJoinBatchSize < 1) {
+            bindJoinBatchSize = DEFAULT_BIND_JOIN_BATCH_SIZE;
+        }
 
         if (!disableConnectionPool) {
             maxIdleConnections =
@@ -676,7 +788,7 @@ public class MedJdbcDataServer
      *
      * @return a connection from the datasource
      */
-    private Connection newConnection()
+    Connection newConnection()
         throws SQLException
     {
         if (disableConnectionPool) {
@@ -824,6 +936,12 @@ public class MedJdbcDataServer
         props.remove(PROP_MIN_EVICTION_IDLE_MILLIS);
         props.remove(PROP_VALIDATION_TIMING);
         props.remove(PROP_DISABLE_CONNECTION_POOL);
+        props.remove(PROP_MAX_PARTITION_THREADS);
+        props.remove(PROP_PARTITION_RANGE_TTL);
+        props.remove(PROP_STATISTICS_TTL);
+        props.remove(PROP_STATISTICS_PROBE);
+        props.remove(PROP_BIND_JOIN_MAX_KEYS);
+        props.remove(PROP_BIND_JOIN_BATCH_SIZE);
     }
 
     // implement FarragoMedDataServer
@@ -885,10 +1003,192 @@ public class MedJdbcDataServer
         return directory;
     }
 
+    /**
+     * Returns the statistics of a foreign table, reading them from the remote
+     * DBMS if they are not cached or have expired.
+     *
+     * <p>The cache is only locked to look up and store statistics, not while
+     * they are read, so that a slow remote DBMS does not hold up statements
+     * on other tables. Statements which miss the cache for the same table at
+     * the same time may each read its statistics; the last one read wins.
+     *
+     * @param foreignName qualified name of the table on the foreign server
+     *
+     * @return statistics, or null if reading statistics is disabled
+     */
+    MedJdbcTableStatistics getTableStatistics(String [] foreignName)
+    {
+        if (statisticsTtlMillis <= 0) {
+            return null;
+        }
+        List<String> key = Arrays.asList(foreignName);
+        long now = System.currentTimeMillis();
+        MedJdbcTableStatistics stats;
+        synchronized (statisticsCache) {
+            stats = statisticsCache.get(key);
+        }
+        if ((stats != null) && !stats.isExpired(now)) {
+            return stats;
+        }
+        try {
+            stats =
+                MedJdbcTableStatistics.read(
+                    this,
+                    foreignName,
+                    statisticsProbe,
+                    now + statisticsTtlMillis);
+        } catch (SQLException ex) {
+            // Statistics are only an optimization; remember the failure
+            // so that we don't keep asking until they expire.
+            logger.log(
+                Level.FINE,
+                "could not read statistics for " + key,
+                ex);
+            stats =
+                MedJdbcTableStatistics.createEmpty(
+                    now + statisticsTtlMillis);
+        }
+        synchronized (statisticsCache) {
+            statisticsCache.put(key, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * @return the largest estimated number of distinct local join keys for
+     * which a bind join is used, or a non-positive number if bind joins are
+     * disabled
+     */
+    int getBindJoinMaxKeys()
+    {
+        return bindJoinMaxKeys;
+    }
+
+    /**
+     * @return the number of keys looked up by each execution of the lookup
+     * query of a bind join
+     */
+    int getBindJoinBatchSize()
+    {
+        return bindJoinBatchSize;
+    }
+
+    /**
+     * @return the fetch size to set on runtime statements, or {@link
+     * #DEFAULT_FETCH_SIZE} to leave the driver's default
+     */
+    int getFetchSize()
+    {
+        return fetchSize;
+    }
+
+    /**
+     * @return the largest number of partitions into which one scan is split
+     */
+    int getMaxPartitionThreads()
+    {
+        return maxPartitionThreads;
+    }
+
+    /**
+     * Returns the threads on which partitioned scans read their partitions.
+     * Idle threads are kept for reuse by later scans. The pool is not bounded,
+     * since a partition may only finish once the consumer of another scan in
+     * the same statement has read its rows; each scan is bounded by {@link
+     * #getMaxPartitionThreads} instead.
+     *
+     * @return executor
+     */
+    synchronized ExecutorService getPartitionExecutor()
+    {
+        if (partitionExecutor == null) {
+            partitionExecutor =
+                Executors.newCachedThreadPool(
+                    new ThreadFactory() {
+                        private int nThreads;
+
+                        public synchronized Thread newThread(Runnable r)
+                        {
+                            Thread thread =
+                                new Thread(
+                                    r,
+                                    "MedJdbcPartitionedScan-" + (++nThreads));
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return partitionExecutor;
+    }
+
+    /**
+     * Returns the cached range of a partition column.
+     *
+     * @param rangeSql query which reads the range
+     *
+     * @return range, or null if it is not cached or has expired
+     */
+    MedJdbcPartitionedScan.Range getCachedPartitionRange(String rangeSql)
+    {
+        synchronized (partitionRangeCache) {
+            MedJdbcPartitionedScan.Range range =
+                partitionRangeCache.get(rangeSql);
+            if ((range == null)
+                || (range.getExpiry() <= System.currentTimeMillis()))
+            {
+                return null;
+            }
+            return range;
+        }
+    }
+
+    /**
+     * Caches the range of a partition column, if caching is enabled.
+     *
+     * @param rangeSql query which read the range
+     * @param range range
+     */
+    void cachePartitionRange(
+        String rangeSql,
+        MedJdbcPartitionedScan.Range range)
+    {
+        if (partitionRangeTtlMillis <= 0) {
+            return;
+        }
+        synchronized (partitionRangeCache) {
+            partitionRangeCache.put(rangeSql, range);
+        }
+    }
+
+    /**
+     * @return the time at which a range read now expires, in milliseconds
+     */
+    long getPartitionRangeExpiry()
+    {
+        return System.currentTimeMillis() + partitionRangeTtlMillis;
+    }
+
     // implement FarragoMedDataServer
     public Object getRuntimeSupport(Object param)
         throws SQLException
     {
+        if (param instanceof MedJdbcPartitionedQuery) {
+            MedJdbcPartitionedQuery partitionedQuery =
+                (MedJdbcPartitionedQuery) param;
+            if (!disableConnectionPool && (maxPartitionThreads > 1)) {
+                return new MedJdbcPartitionedScan(this, partitionedQuery);
+            }
+
+            // Without a pool, all queries share one connection, so they
+            // can't run concurrently; and with at most one partition, there
+            // is nothing to split.
+            param = partitionedQuery.getSql();
+        }
+
+        if (param instanceof MedJdbcBindJoin) {
+            return newBindJoinScan((MedJdbcBindJoin) param);
+        }
+
         String sql = (String) param;
 
         FarragoStatementAllocation stmtAlloc;
@@ -926,6 +1226,45 @@ public class MedJdbcDataServer
         }
     }
 
+    private MedJdbcBindJoinScan newBindJoinScan(MedJdbcBindJoin bindJoin)
+        throws SQLException
+    {
+        Connection conn;
+        if (disableConnectionPool) {
+            conn = getConnection();
+        } else {
+            conn = newConnection();
+        }
+        PreparedStatement stmt;
+        try {
+            stmt = conn.prepareStatement(bindJoin.getSql());
+        } catch (SQLException ex) {
+            if (!disableConnectionPool) {
+                conn.close();
+            }
+            throw ex;
+        }
+        FarragoStatementAllocation stmtAlloc;
+        if (disableConnectionPool) {
+            stmtAlloc = new FarragoStatementAllocation(stmt);
+        } else {
+            stmtAlloc = new FarragoStatementAllocation(conn, stmt);
+        }
+        try {
+            if (fetchSize != DEFAULT_FETCH_SIZE) {
+                stmt.setFetchSize(fetchSize);
+            }
+            MedJdbcBindJoinScan scan =
+                new MedJdbcBindJoinScan(bindJoin, stmtAlloc);
+            stmtAlloc = null;
+            return scan;
+        } finally {
+            if (stmtAlloc != null) {
+                stmtAlloc.closeAllocation();
+            }
+        }
+    }
+
     // implement FarragoMedDataServer
     public void registerRelMetadataProviders(ChainedRelMetadataProvider chain)
     {
@@ -1041,6 +1380,7 @@ public class MedJdbcDataServer
         pushdownRuleList.add(r4);
         pushdownRuleList.add(MedJdbcAggPushDownRule.instance);
         pushdownRuleList.add(MedJdbcJoinPushDownRule.instance);
+        pushdownRuleList.add(MedJdbcBindJoinRule.instance);
 
         // add the non-disabled pushdown rules
         for (RelOptRule rule : pushdownRuleList) {
@@ -1067,6 +1407,14 @@ public class MedJdbcDataServer
     {
         closeConnection();
 
+        synchronized (this) {
+            if (partitionExecutor != null) {
+                // Scans have been closed by now, so their partitions are done.
+                partitionExecutor.shutdown();
+                partitionExecutor = null;
+            }
+        }
+
         if (connectionPool != null) {
             try {
                 dataSource = null;
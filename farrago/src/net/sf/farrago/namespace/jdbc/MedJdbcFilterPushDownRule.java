@@ -22,6 +22,7 @@
 package net.sf.farrago.namespace.jdbc;
 
 import org.eigenbase.rel.*;
+import org.eigenbase.rel.metadata.*;
 import org.eigenbase.relopt.*;
 import org.eigenbase.reltype.*;
 import org.eigenbase.rex.*;
@@ -107,7 +108,8 @@ public class MedJdbcFilterPushDownRule
                 queryRel.getConnection(),
                 queryRel.getDialect(),
                 selectWithFilter,
-                null);
+                null,
+                RelMetadataQuery.getRowCount(filterRel));
         call.transformTo(rel);
     }
 }
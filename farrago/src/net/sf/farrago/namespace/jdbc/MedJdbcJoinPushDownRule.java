@@ -22,6 +22,7 @@
 package net.sf.farrago.namespace.jdbc;
 
 import org.eigenbase.rel.*;
+import org.eigenbase.rel.metadata.*;
 import org.eigenbase.relopt.*;
 import org.eigenbase.reltype.*;
 import org.eigenbase.rex.*;
@@ -160,7 +161,9 @@ public class MedJdbcJoinPushDownRule
                 ? leftRel.getConnection() : rightRel.getConnection(),
                 (combinedServer == leftRel.server)
                 ? leftRel.getDialect() : rightRel.getDialect(),
-                selectWithJoin);
+                selectWithJoin,
+                null,
+                RelMetadataQuery.getRowCount(joinRel));
         call.transformTo(rel);
     }
 
@@ -23,6 +23,8 @@ package net.sf.farrago.namespace.jdbc;
 
 import org.eigenbase.rel.metadata.*;
 import org.eigenbase.relopt.*;
+import org.eigenbase.rex.*;
+import org.eigenbase.util.*;
 
 import net.sf.farrago.namespace.impl.*;
 
@@ -46,6 +48,15 @@ public class MedJdbcMetadataProvider
         args.add((Class) BitSet.class);
         args.add((Class) Boolean.TYPE);
         mapParameterTypes("areColumnsUnique", args);
+
+        mapParameterTypes(
+            "getPopulationSize",
+            Collections.singletonList((Class) BitSet.class));
+
+        args = new ArrayList<Class>();
+        args.add((Class) BitSet.class);
+        args.add((Class) RexNode.class);
+        mapParameterTypes("getDistinctRowCount", args);
     }
 
     public Boolean canRestart(MedJdbcQueryRel rel)
@@ -58,6 +69,12 @@ public class MedJdbcMetadataProvider
         return false;
     }
 
+    public Boolean canRestart(MedJdbcBindJoinRel rel)
+    {
+        // The local rows are read once, so this can't restart either.
+        return false;
+    }
+
     public Set<BitSet> getUniqueKeys(MedJdbcQueryRel rel)
     {
         return rel.uniqueKeys;
@@ -72,6 +89,70 @@ public class MedJdbcMetadataProvider
         return MedAbstractColumnMetadata.areColumnsUniqueForKeys(
             uniqueColSets, columns);
     }
+
+    public Double getRowCount(MedJdbcQueryRel rel)
+    {
+        if (rel.rowCount != null) {
+            return rel.rowCount;
+        }
+        if (rel.columnSet == null) {
+            return null;
+        }
+
+        // Either the plain table query, or one created without an estimate;
+        // the table's row count is an upper bound in either case.
+        return rel.columnSet.getRowCount();
+    }
+
+    public Double getRowCount(MedJdbcBindJoinRel rel)
+    {
+        return rel.rowCount;
+    }
+
+    public Double getPopulationSize(MedJdbcQueryRel rel, BitSet groupKey)
+    {
+        MedJdbcColumnSet columnSet = rel.columnSet;
+        if ((columnSet == null) || (rel.getSql() != columnSet.select)) {
+            // only the plain table query has the table's columns
+            return null;
+        }
+        MedJdbcTableStatistics stats = columnSet.getRemoteStatistics();
+        if (stats == null) {
+            return null;
+        }
+        double rowCount = columnSet.getRowCount();
+        if (RelMdUtil.areColumnsDefinitelyUnique(rel, groupKey)) {
+            return rowCount;
+        }
+        double population = 1.0;
+        for (int col : Util.toIter(groupKey)) {
+            String columnName = columnSet.getForeignColumnName(col);
+            if (columnName == null) {
+                return null;
+            }
+            Double cardinality = stats.getColumnCardinality(columnName);
+            if (cardinality == null) {
+                return null;
+            }
+            population *= cardinality;
+        }
+        return RelMdUtil.numDistinctVals(population, rowCount);
+    }
+
+    public Double getDistinctRowCount(
+        MedJdbcQueryRel rel,
+        BitSet groupKey,
+        RexNode predicate)
+    {
+        Double population = getPopulationSize(rel, groupKey);
+        if ((population == null) || (predicate == null)) {
+            return population;
+        }
+        double selectivity = RelMdUtil.guessSelectivity(predicate);
+        return RelMdUtil.numDistinctVals(
+            population,
+            rel.columnSet.getRowCount() * selectivity);
+    }
 }
 
 // End MedJdbcMetadataProvider.java
@@ -382,15 +382,27 @@ public class MedJdbcNameDirectory
         RelDataType srcRowType,
         Properties foreignTableProps)
     {
-        return new MedJdbcColumnSet(
-            this,
-            foreignName,
-            localName,
-            select,
-            dialect,
-            rowType,
-            origRowType,
-            srcRowType);
+        MedJdbcColumnSet columnSet =
+            new MedJdbcColumnSet(
+                this,
+                foreignName,
+                localName,
+                select,
+                dialect,
+                rowType,
+                origRowType,
+                srcRowType);
+        if (foreignTableProps != null) {
+            columnSet.partitionColumn =
+                foreignTableProps.getProperty(
+                    MedJdbcDataServer.PROP_PARTITION_COLUMN);
+            columnSet.partitionCount =
+                getIntProperty(
+                    foreignTableProps,
+                    MedJdbcDataServer.PROP_PARTITION_COUNT,
+                    MedJdbcDataServer.DEFAULT_PARTITION_COUNT);
+        }
+        return columnSet;
     }
 
     /**
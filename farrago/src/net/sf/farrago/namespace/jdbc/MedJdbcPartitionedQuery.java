@@ -0,0 +1,174 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.namespace.jdbc;
+
+import java.math.*;
+
+
+/**
+ * MedJdbcPartitionedQuery describes a query against a foreign table which can
+ * be split into several queries over ranges of a numeric partition column, to
+ * be executed concurrently by {@link MedJdbcPartitionedScan}. It is created
+ * by generated code and passed to {@link
+ * MedJdbcDataServer#getRuntimeSupport}.
+ *
+ * <p>The range of the partition column is read when the statement executes,
+ * and cached by the server for later executions. The range is split into
+ * partitions of equal width; the first partition also returns the rows where
+ * the partition column is null. Each partition is read with one of three
+ * queries with dynamic parameters for its bounds:
+ *
+ * <ul>
+ * <li>the first: <code>... AND (c &lt; ? OR c IS NULL)</code></li>
+ * <li>the middle ones: <code>... AND (c &gt;= ? AND c &lt; ?)</code></li>
+ * <li>the last: <code>... AND c &gt;= ?</code></li>
+ * </ul>
+ *
+ * <p>Since the first and last partitions are unbounded below and above, rows
+ * outside a stale cached range are still read; they just unbalance the
+ * partitions.
+ *
+ * <p>Each partition is read over its own connection, and so in its own
+ * transaction on the foreign server. The partitions are therefore not a
+ * consistent snapshot of the table if it is modified while it is read.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class MedJdbcPartitionedQuery
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final String sql;
+    private final String rangeSql;
+    private final String firstSql;
+    private final String middleSql;
+    private final String lastSql;
+    private final int partitionCount;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a MedJdbcPartitionedQuery.
+     *
+     * @param sql query which reads all partitions at once
+     * @param rangeSql query which returns the minimum and maximum values of
+     * the partition column
+     * @param firstSql query which reads the first partition
+     * @param middleSql query which reads a partition other than the first and
+     * last
+     * @param lastSql query which reads the last partition
+     * @param partitionCount maximum number of partitions, as given by the
+     * foreign table
+     */
+    public MedJdbcPartitionedQuery(
+        String sql,
+        String rangeSql,
+        String firstSql,
+        String middleSql,
+        String lastSql,
+        int partitionCount)
+    {
+        assert (partitionCount > 1);
+        this.sql = sql;
+        this.rangeSql = rangeSql;
+        this.firstSql = firstSql;
+        this.middleSql = middleSql;
+        this.lastSql = lastSql;
+        this.partitionCount = partitionCount;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @return query which reads all partitions at once
+     */
+    public String getSql()
+    {
+        return sql;
+    }
+
+    /**
+     * @return query which returns the minimum and maximum values of the
+     * partition column
+     */
+    public String getRangeSql()
+    {
+        return rangeSql;
+    }
+
+    /**
+     * Returns the query which reads a partition.
+     *
+     * @param partition 0-based partition number
+     * @param nPartitions number of partitions
+     *
+     * @return query, with as many dynamic parameters as the partition has
+     * bounds
+     */
+    public String getPartitionSql(int partition, int nPartitions)
+    {
+        assert (nPartitions > 1);
+        if (partition == 0) {
+            return firstSql;
+        } else if (partition == (nPartitions - 1)) {
+            return lastSql;
+        } else {
+            return middleSql;
+        }
+    }
+
+    /**
+     * Splits the range of the partition column into partitions of equal
+     * width, but no more partitions than there are integers in the range.
+     *
+     * @param min minimum value of the partition column, rounded down
+     * @param max maximum value of the partition column, rounded up
+     * @param maxPartitions maximum number of partitions allowed by the
+     * server; caps the partition count of the foreign table
+     *
+     * @return boundaries between consecutive partitions; one less than the
+     * number of partitions
+     */
+    public BigInteger [] computeBounds(
+        BigInteger min,
+        BigInteger max,
+        int maxPartitions)
+    {
+        assert (min.compareTo(max) <= 0);
+        assert (maxPartitions > 1);
+        BigInteger width = max.subtract(min).add(BigInteger.ONE);
+        int nPartitions =
+            BigInteger.valueOf(Math.min(partitionCount, maxPartitions)).min(
+                width).intValue();
+        BigInteger [] bounds = new BigInteger[nPartitions - 1];
+        for (int i = 1; i < nPartitions; i++) {
+            bounds[i - 1] =
+                min.add(
+                    width.multiply(BigInteger.valueOf(i)).divide(
+                        BigInteger.valueOf(nPartitions)));
+        }
+        return bounds;
+    }
+}
+
+// End MedJdbcPartitionedQuery.java
@@ -0,0 +1,478 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.namespace.jdbc;
+
+import java.math.*;
+
+import java.sql.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.sf.farrago.util.*;
+
+import org.eigenbase.runtime.*;
+
+
+/**
+ * MedJdbcPartitionedScan executes a {@link MedJdbcPartitionedQuery}: it reads
+ * the range of the partition column, or takes it from the server's cache, then
+ * runs one query per partition, each over its own pooled connection and on a
+ * thread of the server's partition executor, and returns the rows of all
+ * partitions, in no particular order, as a single ResultSet.
+ *
+ * <p>If the range cannot be split, because the table is empty or the
+ * partition column is not numeric, the unpartitioned query is executed
+ * instead.
+ *
+ * <p>The partitions are read in separate remote transactions, so they are not
+ * a consistent snapshot of a table which is modified during the scan.
+ *
+ * @author agent
+ * @version $Id$
+ */
+class MedJdbcPartitionedScan
+    implements FarragoAllocation,
+        ResultSetProvider
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Number of rows which may be queued for the consumer.
+     */
+    private static final int QUEUE_CAPACITY = 4096;
+
+    /**
+     * How long a partition task waits for room in the queue before checking
+     * whether the scan has been closed.
+     */
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    /**
+     * Queued by a partition task after its last row.
+     */
+    private static final Object END_OF_PARTITION = new Object();
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final MedJdbcDataServer server;
+    private final MedJdbcPartitionedQuery query;
+    private final List<FarragoStatementAllocation> allocations;
+    private final List<Future<?>> futures;
+    private final BlockingQueue<Object> queue;
+    private volatile boolean closed;
+    private ResultSet resultSet;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a MedJdbcPartitionedScan.
+     *
+     * @param server server to read from
+     * @param query query to execute
+     */
+    MedJdbcPartitionedScan(
+        MedJdbcDataServer server,
+        MedJdbcPartitionedQuery query)
+    {
+        this.server = server;
+        this.query = query;
+        this.allocations = new ArrayList<FarragoStatementAllocation>();
+        this.futures = new ArrayList<Future<?>>();
+        this.queue = new ArrayBlockingQueue<Object>(QUEUE_CAPACITY);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement ResultSetProvider
+    public ResultSet getResultSet()
+        throws SQLException
+    {
+        if (resultSet != null) {
+            return resultSet;
+        }
+
+        Range range = server.getCachedPartitionRange(query.getRangeSql());
+        if (range == null) {
+            range = readRange();
+            server.cachePartitionRange(query.getRangeSql(), range);
+        }
+        if (range.min == null) {
+            FarragoStatementAllocation stmtAlloc =
+                newAllocation(query.getSql());
+            stmtAlloc.setSql(query.getSql());
+            resultSet = stmtAlloc.getResultSet();
+            return resultSet;
+        }
+
+        BigInteger [] bounds =
+            query.computeBounds(
+                range.min,
+                range.max,
+                server.getMaxPartitionThreads());
+        int nPartitions = bounds.length + 1;
+        for (int i = 0; i < nPartitions; i++) {
+            FarragoStatementAllocation stmtAlloc =
+                newAllocation(query.getPartitionSql(i, nPartitions));
+            PreparedStatement stmt =
+                (PreparedStatement) stmtAlloc.getStatement();
+            int iParam = 0;
+            if (i > 0) {
+                stmt.setBigDecimal(++iParam, new BigDecimal(bounds[i - 1]));
+            }
+            if (i < (nPartitions - 1)) {
+                stmt.setBigDecimal(++iParam, new BigDecimal(bounds[i]));
+            }
+        }
+        ExecutorService executor = server.getPartitionExecutor();
+        for (final FarragoStatementAllocation stmtAlloc : allocations) {
+            futures.add(
+                executor.submit(
+                    new Runnable() {
+                        public void run()
+                        {
+                            readPartition(stmtAlloc);
+                        }
+                    }));
+        }
+
+        resultSet =
+            new IteratorResultSet(
+                new PartitionIterator(nPartitions),
+                new ArrayColumnGetter());
+        return resultSet;
+    }
+
+    // implement FarragoAllocation
+    public void closeAllocation()
+    {
+        closed = true;
+        for (int i = 0; i < futures.size(); i++) {
+            if (!futures.get(i).isDone()) {
+                try {
+                    allocations.get(i).getStatement().cancel();
+                } catch (SQLException ex) {
+                    // not all drivers support cancel; the partition stops
+                    // after the current row anyway
+                }
+            }
+        }
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    // readPartition never throws
+                    break;
+                }
+            }
+        }
+        futures.clear();
+        queue.clear();
+        for (FarragoStatementAllocation stmtAlloc : allocations) {
+            stmtAlloc.closeAllocation();
+        }
+        allocations.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads the range of the partition column from the foreign server.
+     *
+     * @return range, with null bounds if it can't be split
+     */
+    private Range readRange()
+        throws SQLException
+    {
+        long expiry = server.getPartitionRangeExpiry();
+        Range unsplittable = new Range(null, null, expiry);
+        Connection conn = server.newConnection();
+        FarragoStatementAllocation stmtAlloc =
+            new FarragoStatementAllocation(conn, conn.createStatement());
+        try {
+            stmtAlloc.setSql(query.getRangeSql());
+            ResultSet rangeResultSet = stmtAlloc.getResultSet();
+            if (!rangeResultSet.next()) {
+                return unsplittable;
+            }
+            Object min = rangeResultSet.getObject(1);
+            Object max = rangeResultSet.getObject(2);
+            if (!(min instanceof Number) || !(max instanceof Number)) {
+                return unsplittable;
+            }
+            BigInteger minValue =
+                new BigDecimal(min.toString()).setScale(
+                    0,
+                    RoundingMode.FLOOR).toBigInteger();
+            BigInteger maxValue =
+                new BigDecimal(max.toString()).setScale(
+                    0,
+                    RoundingMode.CEILING).toBigInteger();
+            if (minValue.equals(maxValue)) {
+                return unsplittable;
+            }
+            return new Range(minValue, maxValue, expiry);
+        } catch (NumberFormatException ex) {
+            // NaN or infinite floating point values
+            return unsplittable;
+        } finally {
+            stmtAlloc.closeAllocation();
+        }
+    }
+
+    /**
+     * Prepares a statement over a new connection from the pool. The statement
+     * is closed and the connection returned to the pool when this scan is
+     * closed.
+     *
+     * @param sql query to prepare
+     *
+     * @return allocation holding the statement
+     */
+    private FarragoStatementAllocation newAllocation(String sql)
+        throws SQLException
+    {
+        Connection conn = server.newConnection();
+        PreparedStatement stmt;
+        try {
+            stmt = conn.prepareStatement(sql);
+        } catch (SQLException ex) {
+            conn.close();
+            throw ex;
+        }
+        FarragoStatementAllocation stmtAlloc =
+            new FarragoStatementAllocation(conn, stmt);
+        allocations.add(stmtAlloc);
+        if (server.getFetchSize() != MedJdbcDataServer.DEFAULT_FETCH_SIZE) {
+            stmt.setFetchSize(server.getFetchSize());
+        }
+        return stmtAlloc;
+    }
+
+    /**
+     * Executes the query for a partition and queues its rows. This is the
+     * task run for each partition; it never throws, but queues the exception
+     * instead.
+     *
+     * @param stmtAlloc allocation holding the prepared statement
+     */
+    private void readPartition(FarragoStatementAllocation stmtAlloc)
+    {
+        if (closed) {
+            return;
+        }
+        try {
+            ResultSet partitionResultSet =
+                ((PreparedStatement) stmtAlloc.getStatement()).executeQuery();
+            stmtAlloc.setResultSet(partitionResultSet);
+            ResultSetMetaData metaData = partitionResultSet.getMetaData();
+            int nColumns = metaData.getColumnCount();
+            int [] columnTypes = new int[nColumns];
+            for (int i = 0; i < nColumns; i++) {
+                columnTypes[i] = metaData.getColumnType(i + 1);
+            }
+            while (!closed && partitionResultSet.next()) {
+                Object [] row = new Object[nColumns];
+                for (int i = 0; i < nColumns; i++) {
+                    row[i] =
+                        getColumn(partitionResultSet, i + 1, columnTypes[i]);
+                }
+                put(row);
+            }
+            put(END_OF_PARTITION);
+        } catch (Throwable ex) {
+            if (!closed) {
+                try {
+                    put(ex);
+                } catch (InterruptedException ex2) {
+                    // give up; the scan is being closed
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a column value in the representation which {@link
+     * ResultSetToFarragoIteratorConverter} asks the driver for, since some
+     * drivers return their own classes from {@link ResultSet#getObject} for
+     * datetime values.
+     */
+    static Object getColumn(
+        ResultSet resultSet,
+        int column,
+        int columnType)
+        throws SQLException
+    {
+        switch (columnType) {
+        case Types.CHAR:
+        case Types.VARCHAR:
+        case Types.LONGVARCHAR:
+            return resultSet.getString(column);
+        case Types.DATE:
+            return resultSet.getDate(column);
+        case Types.TIME:
+            return resultSet.getTime(column);
+        case Types.TIMESTAMP:
+            return resultSet.getTimestamp(column);
+        default:
+            return resultSet.getObject(column);
+        }
+    }
+
+    private void put(Object obj)
+        throws InterruptedException
+    {
+        while (!closed) {
+            if (queue.offer(obj, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Range of a partition column, as cached by {@link MedJdbcDataServer}.
+     */
+    static class Range
+    {
+        /**
+         * Minimum value rounded down, or null if the range can't be split.
+         */
+        final BigInteger min;
+
+        /**
+         * Maximum value rounded up, or null if the range can't be split.
+         */
+        final BigInteger max;
+
+        private final long expiry;
+
+        Range(BigInteger min, BigInteger max, long expiry)
+        {
+            this.min = min;
+            this.max = max;
+            this.expiry = expiry;
+        }
+
+        /**
+         * @return time at which this range should be read again, in
+         * milliseconds
+         */
+        long getExpiry()
+        {
+            return expiry;
+        }
+    }
+
+    /**
+     * Iterator over the rows queued by the partition tasks. It ends once
+     * every partition has ended, and rethrows the first exception queued by a
+     * partition.
+     */
+    private class PartitionIterator
+        implements Iterator<Object>
+    {
+        private final int nPartitions;
+        private int nEnded;
+        private Object next;
+
+        PartitionIterator(int nPartitions)
+        {
+            this.nPartitions = nPartitions;
+        }
+
+        // implement Iterator
+        public boolean hasNext()
+        {
+            while (next == null) {
+                if (nEnded == nPartitions) {
+                    return false;
+                }
+                Object obj;
+                try {
+                    obj = queue.take();
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+                if (obj == END_OF_PARTITION) {
+                    ++nEnded;
+                } else if (obj instanceof RuntimeException) {
+                    throw (RuntimeException) obj;
+                } else if (obj instanceof Error) {
+                    throw (Error) obj;
+                } else if (obj instanceof Throwable) {
+                    throw new RuntimeException((Throwable) obj);
+                } else {
+                    next = obj;
+                }
+            }
+            return true;
+        }
+
+        // implement Iterator
+        public Object next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Object obj = next;
+            next = null;
+            return obj;
+        }
+
+        // implement Iterator
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Retrieves columns from rows held as arrays, such as those queued by the
+     * partition tasks.
+     */
+    static class ArrayColumnGetter
+        implements AbstractIterResultSet.ColumnGetter
+    {
+        // implement ColumnGetter
+        public String [] getColumnNames()
+        {
+            // columns are only accessed by ordinal
+            return null;
+        }
+
+        // implement ColumnGetter
+        public Object get(Object o, int columnIndex)
+        {
+            return ((Object []) o)[columnIndex - 1];
+        }
+    }
+}
+
+// End MedJdbcPartitionedScan.java
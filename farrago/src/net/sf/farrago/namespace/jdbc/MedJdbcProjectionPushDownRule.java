@@ -22,6 +22,7 @@
 package net.sf.farrago.namespace.jdbc;
 
 import org.eigenbase.rel.*;
+import org.eigenbase.rel.metadata.*;
 import org.eigenbase.relopt.*;
 import org.eigenbase.reltype.*;
 import org.eigenbase.rex.*;
@@ -117,7 +118,8 @@ public class MedJdbcProjectionPushDownRule
                 queryRel.getConnection(),
                 queryRel.getDialect(),
                 selectWithProj,
-                null);
+                null,
+                RelMetadataQuery.getRowCount(projRel));
         call.transformTo(rel);
     }
 }
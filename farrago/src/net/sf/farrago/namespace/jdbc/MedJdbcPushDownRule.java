@@ -26,6 +26,7 @@ import java.sql.*;
 import java.util.*;
 
 import org.eigenbase.rel.*;
+import org.eigenbase.rel.metadata.*;
 import org.eigenbase.rel.rules.*;
 import org.eigenbase.relopt.*;
 import org.eigenbase.reltype.*;
@@ -311,7 +312,10 @@ class MedJdbcPushDownRule
                 rt,
                 queryRel.getConnection(),
                 queryRel.getDialect(),
-                selectWithFilter);
+                selectWithFilter,
+                null,
+                RelMetadataQuery.getRowCount(
+                    (filterRel == null) ? queryRel : filterRel));
 
         if (newTopProject != null) {
             rel =
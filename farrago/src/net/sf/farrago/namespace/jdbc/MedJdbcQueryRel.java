@@ -33,7 +33,10 @@ import org.eigenbase.oj.stmt.*;
 import org.eigenbase.rel.jdbc.*;
 import org.eigenbase.relopt.*;
 import org.eigenbase.reltype.*;
+import org.eigenbase.runtime.*;
 import org.eigenbase.sql.*;
+import org.eigenbase.sql.fun.*;
+import org.eigenbase.sql.parser.*;
 import org.eigenbase.sql.util.SqlString;
 import org.eigenbase.util.*;
 
@@ -54,6 +57,12 @@ public class MedJdbcQueryRel
     MedJdbcColumnSet columnSet;
     Set<BitSet> uniqueKeys;
 
+    /**
+     * Estimated number of rows returned by the query, or null to derive it
+     * from the column set.
+     */
+    Double rowCount;
+
     //~ Constructors -----------------------------------------------------------
 
     public MedJdbcQueryRel(
@@ -79,6 +88,41 @@ public class MedJdbcQueryRel
         SqlDialect dialect,
         SqlSelect sql,
         Set<BitSet> uniqueKeys)
+    {
+        this(
+            server, columnSet, cluster, rowType, connection, dialect,
+            sql, uniqueKeys, null);
+    }
+
+    /**
+     * Creates a MedJdbcQueryRel.
+     *
+     * <p>Pushdown rules should pass the row count of the expression which the
+     * new query replaces, so that the optimizer can compare the cost of
+     * executing it remotely with the cost of executing it locally.
+     *
+     * @param server server to execute the query on
+     * @param columnSet column set accessed by the query, or null if it
+     * accesses more than one
+     * @param cluster cluster
+     * @param rowType row type of the query
+     * @param connection connection
+     * @param dialect dialect of SQL understood by the server
+     * @param sql query
+     * @param uniqueKeys unique keys of the query result, or null if unknown
+     * @param rowCount estimated number of rows returned by the query, or null
+     * to derive it from the column set
+     */
+    public MedJdbcQueryRel(
+        MedJdbcDataServer server,
+        MedJdbcColumnSet columnSet,
+        RelOptCluster cluster,
+        RelDataType rowType,
+        RelOptConnection connection,
+        SqlDialect dialect,
+        SqlSelect sql,
+        Set<BitSet> uniqueKeys,
+        Double rowCount)
     {
         super(
             cluster,
@@ -90,6 +134,7 @@ public class MedJdbcQueryRel
         this.server = server;
         this.columnSet = columnSet;
         this.uniqueKeys = uniqueKeys;
+        this.rowCount = rowCount;
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -102,17 +147,189 @@ public class MedJdbcQueryRel
 
         SqlString sql = MedJdbcNameDirectory.normalizeQueryString(queryString);
 
-        Expression allocExpression =
-            new CastExpression(
-                OJClass.forClass(FarragoStatementAllocation.class),
-                new MethodCall(
-                    connectionVariable,
-                    "getDataServerRuntimeSupport",
-                    new ExpressionList(
-                        Literal.makeLiteral(
-                            server.getServerMofId()),
-                        Literal.makeLiteral(sql.getSql()))));
-        return allocExpression;
+        Expression paramExpression = implementPartitionedQuery(sql);
+        if (paramExpression == null) {
+            Expression allocExpression =
+                new CastExpression(
+                    OJClass.forClass(FarragoStatementAllocation.class),
+                    new MethodCall(
+                        connectionVariable,
+                        "getDataServerRuntimeSupport",
+                        new ExpressionList(
+                            Literal.makeLiteral(
+                                server.getServerMofId()),
+                            Literal.makeLiteral(sql.getSql()))));
+            return allocExpression;
+        }
+
+        // the server may return either a MedJdbcPartitionedScan or, if it
+        // can't run the partitions concurrently, a FarragoStatementAllocation
+        return new CastExpression(
+            OJClass.forClass(ResultSetProvider.class),
+            new MethodCall(
+                connectionVariable,
+                "getDataServerRuntimeSupport",
+                new ExpressionList(
+                    Literal.makeLiteral(server.getServerMofId()),
+                    paramExpression)));
+    }
+
+    /**
+     * Generates the construction of a {@link MedJdbcPartitionedQuery} if the
+     * foreign table has a partition column and this query can be split on it.
+     * The range conditions are added to the innermost query, which reads
+     * directly from the foreign table; the queries wrapped around it by
+     * filter and projection pushdown are unchanged.
+     *
+     * @param sql normalized query text
+     *
+     * @return expression constructing the partitioned query, or null if this
+     * query can't be split
+     */
+    private Expression implementPartitionedQuery(SqlString sql)
+    {
+        if ((columnSet == null)
+            || (columnSet.partitionColumn == null)
+            || (columnSet.partitionCount <= 1))
+        {
+            return null;
+        }
+        SqlSelect tableSelect = findTableSelect(getSql());
+        if (tableSelect == null) {
+            return null;
+        }
+        SqlDialect dialect = getDialect();
+        SqlIdentifier column =
+            new SqlIdentifier(columnSet.partitionColumn, SqlParserPos.ZERO);
+
+        SqlNodeList rangeList = new SqlNodeList(SqlParserPos.ZERO);
+        rangeList.add(
+            SqlStdOperatorTable.minOperator.createCall(
+                SqlParserPos.ZERO,
+                column));
+        rangeList.add(
+            SqlStdOperatorTable.maxOperator.createCall(
+                SqlParserPos.ZERO,
+                column));
+        SqlSelect rangeSelect =
+            SqlStdOperatorTable.selectOperator.createCall(
+                null,
+                rangeList,
+                tableSelect.getFrom(),
+                tableSelect.getWhere(),
+                null,
+                null,
+                null,
+                null,
+                SqlParserPos.ZERO);
+
+        SqlNode firstCondition =
+            SqlStdOperatorTable.orOperator.createCall(
+                SqlParserPos.ZERO,
+                SqlStdOperatorTable.lessThanOperator.createCall(
+                    SqlParserPos.ZERO,
+                    column,
+                    new SqlDynamicParam(0, SqlParserPos.ZERO)),
+                SqlStdOperatorTable.isNullOperator.createCall(
+                    SqlParserPos.ZERO,
+                    column));
+        SqlNode middleCondition =
+            SqlStdOperatorTable.andOperator.createCall(
+                SqlParserPos.ZERO,
+                SqlStdOperatorTable.greaterThanOrEqualOperator.createCall(
+                    SqlParserPos.ZERO,
+                    column,
+                    new SqlDynamicParam(0, SqlParserPos.ZERO)),
+                SqlStdOperatorTable.lessThanOperator.createCall(
+                    SqlParserPos.ZERO,
+                    column,
+                    new SqlDynamicParam(1, SqlParserPos.ZERO)));
+        SqlNode lastCondition =
+            SqlStdOperatorTable.greaterThanOrEqualOperator.createCall(
+                SqlParserPos.ZERO,
+                column,
+                new SqlDynamicParam(0, SqlParserPos.ZERO));
+
+        ExpressionList args = new ExpressionList();
+        args.add(Literal.makeLiteral(sql.getSql()));
+        args.add(Literal.makeLiteral(toNormalizedSql(rangeSelect, dialect)));
+        for (SqlNode condition
+            : new SqlNode[] { firstCondition, middleCondition, lastCondition })
+        {
+            args.add(
+                Literal.makeLiteral(
+                    toNormalizedSql(
+                        addPartitionCondition(getSql(), condition),
+                        dialect)));
+        }
+        args.add(Literal.makeLiteral(columnSet.partitionCount));
+        return new AllocationExpression(
+            OJClass.forClass(MedJdbcPartitionedQuery.class),
+            args);
+    }
+
+    /**
+     * Finds the query which reads directly from the foreign table, following
+     * the chain of subqueries created by filter and projection pushdown.
+     *
+     * @param select outermost query
+     *
+     * @return innermost query, or null if the chain contains anything (such
+     * as aggregation, a join or ordering) which would not allow the rows to
+     * be split by a condition on the innermost query
+     */
+    private static SqlSelect findTableSelect(SqlSelect select)
+    {
+        while (true) {
+            if (select.isDistinct()
+                || (select.getGroup() != null)
+                || (select.getHaving() != null)
+                || select.hasOrderBy())
+            {
+                return null;
+            }
+            SqlNode from = select.getFrom();
+            if (from instanceof SqlIdentifier) {
+                return select;
+            }
+            if (!(from instanceof SqlSelect)) {
+                return null;
+            }
+            select = (SqlSelect) from;
+        }
+    }
+
+    /**
+     * Copies a query, adding a condition to the WHERE clause of its innermost
+     * query.
+     *
+     * @param select outermost query
+     * @param condition condition to add
+     *
+     * @return modified copy of the query
+     */
+    private static SqlSelect addPartitionCondition(
+        SqlSelect select,
+        SqlNode condition)
+    {
+        SqlSelect copy = (SqlSelect) select.clone(SqlParserPos.ZERO);
+        SqlSelect tableSelect = findTableSelect(copy);
+        SqlNode where = tableSelect.getWhere();
+        if (where != null) {
+            condition =
+                SqlStdOperatorTable.andOperator.createCall(
+                    SqlParserPos.ZERO,
+                    where,
+                    condition);
+        }
+        tableSelect.setOperand(SqlSelect.WHERE_OPERAND, condition);
+        return copy;
+    }
+
+    private static String toNormalizedSql(SqlNode node, SqlDialect dialect)
+    {
+        return MedJdbcNameDirectory.normalizeQueryString(
+            node.toSqlString(dialect)).getSql();
     }
 
     // override JdbcQuery
@@ -127,7 +344,8 @@ public class MedJdbcQueryRel
                 getConnection(),
                 getDialect(),
                 getSql(),
-                uniqueKeys);
+                uniqueKeys,
+                rowCount);
         clone.inheritTraitsFrom(this);
         return clone;
     }
@@ -0,0 +1,274 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.namespace.jdbc;
+
+import java.sql.*;
+
+import java.util.*;
+
+import org.eigenbase.sql.*;
+import org.eigenbase.sql.fun.*;
+import org.eigenbase.sql.parser.*;
+
+
+/**
+ * MedJdbcTableStatistics holds the statistics of a foreign table as reported
+ * by the remote DBMS: the number of rows, and the number of distinct values
+ * of each column which is the only column of an index.
+ *
+ * <p>Statistics are read from {@link DatabaseMetaData#getIndexInfo}, asking
+ * for approximate values so that drivers may answer from the remote catalog
+ * rather than by scanning the table. If the driver reports no row count and
+ * probing is enabled, the row count is read with <code>SELECT COUNT(*)</code>
+ * instead.
+ *
+ * <p>Statistics are immutable, and are cached by {@link MedJdbcDataServer}
+ * until they expire.
+ *
+ * @author agent
+ * @version $Id$
+ */
+class MedJdbcTableStatistics
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final Double rowCount;
+    private final Map<String, Double> columnCardinalities;
+    private final long expiryTime;
+
+    //~ Constructors -----------------------------------------------------------
+
+    private MedJdbcTableStatistics(
+        Double rowCount,
+        Map<String, Double> columnCardinalities,
+        long expiryTime)
+    {
+        this.rowCount = rowCount;
+        this.columnCardinalities = columnCardinalities;
+        this.expiryTime = expiryTime;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Creates statistics which know nothing about a table; used to avoid
+     * asking the remote DBMS again before the statistics expire if reading
+     * them failed.
+     *
+     * @param expiryTime time after which the statistics should be read again,
+     * as returned by {@link System#currentTimeMillis}
+     *
+     * @return empty statistics
+     */
+    static MedJdbcTableStatistics createEmpty(long expiryTime)
+    {
+        return new MedJdbcTableStatistics(
+            null,
+            Collections.<String, Double>emptyMap(),
+            expiryTime);
+    }
+
+    /**
+     * Reads the statistics of a foreign table.
+     *
+     * @param server server on which the table resides
+     * @param foreignName qualified name of the table on the foreign server;
+     * the table name is last, preceded by the schema name and catalog name if
+     * known
+     * @param probe whether to count the rows of the table if the driver does
+     * not report a row count
+     * @param expiryTime time after which the statistics should be read again,
+     * as returned by {@link System#currentTimeMillis}
+     *
+     * @return statistics
+     *
+     * @throws SQLException if the remote DBMS reports an error
+     */
+    static MedJdbcTableStatistics read(
+        MedJdbcDataServer server,
+        String [] foreignName,
+        boolean probe,
+        long expiryTime)
+        throws SQLException
+    {
+        int n = foreignName.length;
+        String tableName = foreignName[n - 1];
+        String schemaName = (n >= 2) ? foreignName[n - 2] : server.schemaName;
+        String catalogName =
+            (n >= 3) ? foreignName[n - 3] : server.catalogName;
+
+        Double rowCount = null;
+        Map<String, Double> columnCardinalities =
+            new HashMap<String, Double>();
+
+        // column names of each index, and the number of distinct keys in it
+        Map<String, List<String>> indexColumns =
+            new HashMap<String, List<String>>();
+        Map<String, Double> indexCardinalities = new HashMap<String, Double>();
+        Set<String> uniqueIndexes = new HashSet<String>();
+
+        ResultSet resultSet =
+            server.getDatabaseMetaData().getIndexInfo(
+                catalogName,
+                schemaName,
+                tableName,
+                false,
+                true);
+        if (resultSet != null) {
+            try {
+                while (resultSet.next()) {
+                    boolean nonUnique = resultSet.getBoolean(4);
+                    String indexName = resultSet.getString(6);
+                    short type = resultSet.getShort(7);
+                    String columnName = resultSet.getString(9);
+                    long cardinality = resultSet.getLong(11);
+                    boolean known = !resultSet.wasNull() && (cardinality > 0);
+                    if (type == DatabaseMetaData.tableIndexStatistic) {
+                        if (known) {
+                            rowCount = (double) cardinality;
+                        }
+                        continue;
+                    }
+                    if ((indexName == null) || (columnName == null)) {
+                        continue;
+                    }
+                    List<String> columns = indexColumns.get(indexName);
+                    if (columns == null) {
+                        columns = new ArrayList<String>();
+                        indexColumns.put(indexName, columns);
+                    }
+                    columns.add(columnName);
+                    if (known) {
+                        indexCardinalities.put(
+                            indexName,
+                            (double) cardinality);
+                    }
+                    if (!nonUnique) {
+                        uniqueIndexes.add(indexName);
+                    }
+                }
+            } finally {
+                resultSet.close();
+            }
+        }
+
+        if ((rowCount == null) && probe) {
+            rowCount = countRows(server, foreignName);
+        }
+
+        for (Map.Entry<String, List<String>> entry : indexColumns.entrySet()) {
+            if (entry.getValue().size() != 1) {
+                // the cardinality of a compound index does not tell us
+                // anything about its individual columns
+                continue;
+            }
+            String indexName = entry.getKey();
+            Double cardinality = indexCardinalities.get(indexName);
+            if (uniqueIndexes.contains(indexName) && (rowCount != null)) {
+                cardinality = rowCount;
+            }
+            if (cardinality != null) {
+                columnCardinalities.put(entry.getValue().get(0), cardinality);
+            }
+        }
+
+        return new MedJdbcTableStatistics(
+            rowCount,
+            columnCardinalities,
+            expiryTime);
+    }
+
+    private static Double countRows(
+        MedJdbcDataServer server,
+        String [] foreignName)
+        throws SQLException
+    {
+        SqlNodeList selectList = new SqlNodeList(SqlParserPos.ZERO);
+        selectList.add(
+            SqlStdOperatorTable.countOperator.createCall(
+                SqlParserPos.ZERO,
+                new SqlIdentifier("*", SqlParserPos.ZERO)));
+        SqlSelect select =
+            SqlStdOperatorTable.selectOperator.createCall(
+                null,
+                selectList,
+                new SqlIdentifier(foreignName, SqlParserPos.ZERO),
+                null,
+                null,
+                null,
+                null,
+                null,
+                SqlParserPos.ZERO);
+        SqlDialect dialect = SqlDialect.create(server.getDatabaseMetaData());
+        String sql =
+            MedJdbcNameDirectory.normalizeQueryString(
+                select.toSqlString(dialect)).getSql();
+
+        Statement stmt = server.getConnection().createStatement();
+        try {
+            ResultSet resultSet = stmt.executeQuery(sql);
+            if (!resultSet.next()) {
+                return null;
+            }
+            long count = resultSet.getLong(1);
+            if (resultSet.wasNull()) {
+                return null;
+            }
+            return (double) count;
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * @param now current time, as returned by {@link
+     * System#currentTimeMillis}
+     *
+     * @return whether these statistics should be read again
+     */
+    boolean isExpired(long now)
+    {
+        return now >= expiryTime;
+    }
+
+    /**
+     * @return number of rows in the table, or null if unknown
+     */
+    Double getRowCount()
+    {
+        return rowCount;
+    }
+
+    /**
+     * Returns the number of distinct values of a column.
+     *
+     * @param columnName name of the column on the foreign server
+     *
+     * @return number of distinct values, or null if unknown
+     */
+    Double getColumnCardinality(String columnName)
+    {
+        return columnCardinalities.get(columnName);
+    }
+}
+
+// End MedJdbcTableStatistics.java
@@ -117,6 +117,15 @@ class FarragoExecutableFennelStmt
         return referencedObjectTimestampMap.get(mofid);
     }
 
+    /**
+     * @return name of the stream from which results are fetched, or null if
+     * results are produced by Java code
+     */
+    String getStreamName()
+    {
+        return streamName;
+    }
+
     // implement FarragoSessionExecutableStmt
     public ResultSet execute(FarragoSessionRuntimeContext runtimeContext)
     {
@@ -114,6 +114,38 @@ class FarragoExecutableJavaStmt
 
     //~ Methods ----------------------------------------------------------------
 
+    /**
+     * @return class of rows returned by the generated iterator
+     */
+    Class getRowClass()
+    {
+        return rowClass;
+    }
+
+    /**
+     * @return generated method which returns the statement's iterator
+     */
+    Method getStmtMethod()
+    {
+        return stmtMethod;
+    }
+
+    /**
+     * @return definitions of generated FarragoTransforms
+     */
+    List<FarragoTransformDef> getTransformDefs()
+    {
+        return transformDefs;
+    }
+
+    /**
+     * @return total size of the generated bytecode
+     */
+    int getTotalByteCodeSize()
+    {
+        return totalByteCodeSize;
+    }
+
     // implement FarragoSessionExecutableStmt
     public ResultSet execute(FarragoSessionRuntimeContext runtimeContext)
     {
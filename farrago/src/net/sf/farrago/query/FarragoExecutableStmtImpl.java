@@ -56,6 +56,8 @@ abstract class FarragoExecutableStmtImpl
     private final TableModificationRel.Operation tableModOp;
     private final RelDataType dynamicParamRowType;
     private final TableAccessMap tableAccessMap;
+    private String cardinalityKey;
+    private Double estimatedRowCount;
 
     //~ Constructors -----------------------------------------------------------
 
@@ -120,6 +122,24 @@ abstract class FarragoExecutableStmtImpl
     {
         return Collections.EMPTY_MAP;
     }
+
+    // implement FarragoSessionExecutableStmt
+    public Double getEstimatedRowCount()
+    {
+        return estimatedRowCount;
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public String getCardinalityKey()
+    {
+        return cardinalityKey;
+    }
+
+    void setEstimatedRowCount(String cardinalityKey, Double estimatedRowCount)
+    {
+        this.cardinalityKey = cardinalityKey;
+        this.estimatedRowCount = estimatedRowCount;
+    }
 }
 
 // End FarragoExecutableStmtImpl.java
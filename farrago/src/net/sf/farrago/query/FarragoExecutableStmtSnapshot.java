@@ -0,0 +1,368 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.query;
+
+import java.io.*;
+
+import java.lang.reflect.*;
+
+import java.net.*;
+
+import java.util.*;
+
+import net.sf.farrago.session.*;
+
+import org.eigenbase.javac.*;
+import org.eigenbase.rel.*;
+import org.eigenbase.relopt.*;
+import org.eigenbase.reltype.*;
+import org.eigenbase.util.*;
+
+
+/**
+ * FarragoExecutableStmtSnapshot captures everything needed to reconstruct a
+ * {@link FarragoExecutableFennelStmt} or {@link FarragoExecutableJavaStmt}
+ * without re-planning or recompiling it: row types, the Fennel XMI plan, the
+ * catalog modification times the plan depends on, and the bytecode of any
+ * generated classes. Snapshots are written to disk by the persistent code
+ * cache so that prepared statements survive a restart.
+ *
+ * <p>Types are serialized as-is and re-canonicalized through the restoring
+ * statement's type factory. Statements whose types cannot be serialized (for
+ * example, those involving user-defined types) are simply not persisted.
+ *
+ * @author agent
+ * @version $Id$
+ */
+class FarragoExecutableStmtSnapshot
+    implements Serializable
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final long serialVersionUID = 1L;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private RelDataType rowType;
+    private ArrayList<ArrayList<String>> fieldOrigins;
+    private RelDataType dynamicParamRowType;
+    private String xmiFennelPlan;
+    private String streamName;
+    private boolean isDml;
+    private TableModificationRel.Operation tableModOp;
+    private HashMap<String, String> referencedObjectTimestampMap;
+    private HashMap<List<String>, TableAccessMap.Mode> tableAccessMap;
+    private HashMap<String, RelDataType> resultSetTypeMap;
+    private String cardinalityKey;
+    private Double estimatedRowCount;
+
+    // the remaining fields are only set for statements containing Java
+
+    private boolean containsJava;
+    private HashMap<String, RelDataType> iterCalcTypeMap;
+    private LinkedHashMap<String, byte []> byteCodes;
+    private String [] jarUrls;
+    private String rowClassName;
+    private String stmtClassName;
+    private String stmtMethodName;
+    private String [] stmtMethodParamTypeNames;
+    private String [] transformClassNames;
+    private String [] transformStreamNames;
+    private int totalByteCodeSize;
+
+    //~ Constructors -----------------------------------------------------------
+
+    private FarragoExecutableStmtSnapshot()
+    {
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Creates a snapshot of an executable statement.
+     *
+     * @param executableStmt statement to capture
+     * @param javaCompiler compiler which generated the statement's classes, or
+     * null if it contains no Java
+     * @param jarUrls URLs of jars referenced by the statement's generated code
+     *
+     * @return snapshot, or null if the statement cannot be persisted
+     */
+    static FarragoExecutableStmtSnapshot create(
+        FarragoSessionExecutableStmt executableStmt,
+        JavaCompiler javaCompiler,
+        Collection<URL> jarUrls)
+    {
+        if (!(executableStmt instanceof FarragoExecutableFennelStmt)) {
+            // EXPLAIN PLAN is never cached
+            return null;
+        }
+        FarragoExecutableFennelStmt fennelStmt =
+            (FarragoExecutableFennelStmt) executableStmt;
+
+        FarragoExecutableStmtSnapshot snapshot =
+            new FarragoExecutableStmtSnapshot();
+        snapshot.rowType = fennelStmt.getRowType();
+        snapshot.dynamicParamRowType = fennelStmt.getDynamicParamRowType();
+        snapshot.xmiFennelPlan = fennelStmt.xmiFennelPlan;
+        snapshot.streamName = fennelStmt.getStreamName();
+        snapshot.isDml = fennelStmt.isDml();
+        snapshot.tableModOp = fennelStmt.getTableModOp();
+        snapshot.cardinalityKey = fennelStmt.getCardinalityKey();
+        snapshot.estimatedRowCount = fennelStmt.getEstimatedRowCount();
+
+        List<List<String>> origins = fennelStmt.getFieldOrigins();
+        if (origins != null) {
+            snapshot.fieldOrigins = new ArrayList<ArrayList<String>>();
+            for (List<String> origin : origins) {
+                snapshot.fieldOrigins.add(
+                    (origin == null) ? null : new ArrayList<String>(origin));
+            }
+        }
+
+        snapshot.referencedObjectTimestampMap = new HashMap<String, String>();
+        for (String mofid : fennelStmt.getReferencedObjectIds()) {
+            snapshot.referencedObjectTimestampMap.put(
+                mofid,
+                fennelStmt.getReferencedObjectModTime(mofid));
+        }
+
+        snapshot.tableAccessMap =
+            new HashMap<List<String>, TableAccessMap.Mode>();
+        TableAccessMap accessMap = fennelStmt.getTableAccessMap();
+        for (List<String> table : accessMap.getTablesAccessed()) {
+            snapshot.tableAccessMap.put(
+                new ArrayList<String>(table),
+                accessMap.getTableAccessMode(table));
+        }
+
+        snapshot.resultSetTypeMap =
+            copyTypeMap(fennelStmt.getResultSetTypeMap());
+
+        if (!(fennelStmt instanceof FarragoExecutableJavaStmt)) {
+            return snapshot;
+        }
+
+        FarragoExecutableJavaStmt javaStmt =
+            (FarragoExecutableJavaStmt) fennelStmt;
+        if (javaCompiler == null) {
+            return null;
+        }
+        Map<String, byte []> generated = javaCompiler.getByteCodes();
+        if (generated == null) {
+            return null;
+        }
+        snapshot.containsJava = true;
+        snapshot.byteCodes = new LinkedHashMap<String, byte []>(generated);
+        snapshot.iterCalcTypeMap = copyTypeMap(javaStmt.getIterCalcTypeMap());
+        snapshot.jarUrls = new String[jarUrls.size()];
+        int i = 0;
+        for (URL url : jarUrls) {
+            snapshot.jarUrls[i++] = url.toExternalForm();
+        }
+        snapshot.rowClassName = javaStmt.getRowClass().getName();
+        Method stmtMethod = javaStmt.getStmtMethod();
+        snapshot.stmtClassName = stmtMethod.getDeclaringClass().getName();
+        snapshot.stmtMethodName = stmtMethod.getName();
+        Class [] paramTypes = stmtMethod.getParameterTypes();
+        snapshot.stmtMethodParamTypeNames = new String[paramTypes.length];
+        for (i = 0; i < paramTypes.length; ++i) {
+            snapshot.stmtMethodParamTypeNames[i] = paramTypes[i].getName();
+        }
+        List<FarragoTransformDef> transformDefs = javaStmt.getTransformDefs();
+        snapshot.transformClassNames = new String[transformDefs.size()];
+        snapshot.transformStreamNames = new String[transformDefs.size()];
+        i = 0;
+        for (FarragoTransformDef transformDef : transformDefs) {
+            snapshot.transformClassNames[i] = transformDef.getClassName();
+            snapshot.transformStreamNames[i] = transformDef.getStreamName();
+            ++i;
+        }
+        snapshot.totalByteCodeSize = javaStmt.getTotalByteCodeSize();
+        return snapshot;
+    }
+
+    /**
+     * Reconstructs the executable statement captured by this snapshot.
+     *
+     * @param typeFactory factory with which to canonicalize types
+     * @param parentClassLoader class loader for classes referenced by
+     * generated code
+     *
+     * @return restored statement
+     */
+    FarragoSessionExecutableStmt restore(
+        RelDataTypeFactory typeFactory,
+        ClassLoader parentClassLoader)
+    {
+        List<List<String>> origins = null;
+        if (fieldOrigins != null) {
+            origins = new ArrayList<List<String>>(fieldOrigins);
+        }
+        Map<String, RelDataType> resultSetTypes =
+            canonizeTypeMap(typeFactory, resultSetTypeMap);
+
+        if (!containsJava) {
+            FarragoExecutableStmtImpl fennelStmt =
+                new FarragoExecutableFennelStmt(
+                    canonizeType(typeFactory, rowType),
+                    origins,
+                    canonizeType(typeFactory, dynamicParamRowType),
+                    xmiFennelPlan,
+                    streamName,
+                    isDml,
+                    tableModOp,
+                    referencedObjectTimestampMap,
+                    new TableAccessMap(tableAccessMap),
+                    resultSetTypes);
+            fennelStmt.setEstimatedRowCount(cardinalityKey, estimatedRowCount);
+            return fennelStmt;
+        }
+
+        try {
+            URL [] urls = new URL[jarUrls.length];
+            for (int i = 0; i < urls.length; ++i) {
+                urls[i] = new URL(jarUrls[i]);
+            }
+            ClassLoader classLoader =
+                new ByteCodeClassLoader(
+                    URLClassLoader.newInstance(urls, parentClassLoader),
+                    byteCodes);
+            Class rowClass = Class.forName(rowClassName, true, classLoader);
+            Class stmtClass = Class.forName(stmtClassName, true, classLoader);
+            Class [] paramTypes = new Class[stmtMethodParamTypeNames.length];
+            for (int i = 0; i < paramTypes.length; ++i) {
+                paramTypes[i] =
+                    Class.forName(
+                        stmtMethodParamTypeNames[i],
+                        false,
+                        classLoader);
+            }
+            Method stmtMethod =
+                stmtClass.getMethod(stmtMethodName, paramTypes);
+            List<FarragoTransformDef> transformDefs =
+                new ArrayList<FarragoTransformDef>();
+            for (int i = 0; i < transformClassNames.length; ++i) {
+                transformDefs.add(
+                    new FarragoTransformDef(
+                        Class.forName(
+                            transformClassNames[i],
+                            true,
+                            classLoader),
+                        transformStreamNames[i]));
+            }
+            FarragoExecutableStmtImpl javaStmt =
+                new FarragoExecutableJavaStmt(
+                    null,
+                    rowClass,
+                    classLoader,
+                    canonizeType(typeFactory, rowType),
+                    origins,
+                    canonizeType(typeFactory, dynamicParamRowType),
+                    stmtMethod,
+                    transformDefs,
+                    xmiFennelPlan,
+                    isDml,
+                    tableModOp,
+                    referencedObjectTimestampMap,
+                    new TableAccessMap(tableAccessMap),
+                    resultSetTypes,
+                    canonizeTypeMap(typeFactory, iterCalcTypeMap),
+                    totalByteCodeSize);
+            javaStmt.setEstimatedRowCount(cardinalityKey, estimatedRowCount);
+            return javaStmt;
+        } catch (MalformedURLException ex) {
+            throw Util.newInternal(ex);
+        } catch (ClassNotFoundException ex) {
+            throw Util.newInternal(ex);
+        } catch (NoSuchMethodException ex) {
+            throw Util.newInternal(ex);
+        }
+    }
+
+    private static RelDataType canonizeType(
+        RelDataTypeFactory typeFactory,
+        RelDataType type)
+    {
+        if (type == null) {
+            return null;
+        }
+        return typeFactory.copyType(type);
+    }
+
+    private static HashMap<String, RelDataType> copyTypeMap(
+        Map<String, RelDataType> typeMap)
+    {
+        if (typeMap == null) {
+            return null;
+        }
+        return new HashMap<String, RelDataType>(typeMap);
+    }
+
+    private static Map<String, RelDataType> canonizeTypeMap(
+        RelDataTypeFactory typeFactory,
+        Map<String, RelDataType> typeMap)
+    {
+        if (typeMap == null) {
+            return null;
+        }
+        Map<String, RelDataType> result = new HashMap<String, RelDataType>();
+        for (Map.Entry<String, RelDataType> entry : typeMap.entrySet()) {
+            result.put(
+                entry.getKey(),
+                canonizeType(typeFactory, entry.getValue()));
+        }
+        return result;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Class loader which defines classes from previously generated bytecode.
+     */
+    private static class ByteCodeClassLoader
+        extends ClassLoader
+    {
+        private final Map<String, byte []> byteCodes;
+
+        ByteCodeClassLoader(
+            ClassLoader parent,
+            Map<String, byte []> byteCodes)
+        {
+            super(parent);
+            this.byteCodes = byteCodes;
+        }
+
+        // override ClassLoader
+        protected Class findClass(String name)
+            throws ClassNotFoundException
+        {
+            byte [] bytes = byteCodes.get(name);
+            if (bytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
+
+// End FarragoExecutableStmtSnapshot.java
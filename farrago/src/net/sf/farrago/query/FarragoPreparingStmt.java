@@ -123,6 +123,29 @@ public class FarragoPreparingStmt
     private final Map<String, RelDataType> resultSetTypeMap;
     private final Map<String, RelDataType> iterCalcTypeMap;
     private boolean cachingDisabled;
+    private boolean snapshotEnabled;
+
+    /**
+     * Row counts observed when earlier statements were executed, or null; see
+     * {@link #setObservedRowCounts}.
+     */
+    private Map<String, Double> observedRowCounts;
+    private FarragoRelMetadataProvider.ObservedRowCountProvider
+        observedRowCountProvider;
+
+    /**
+     * Key under which the row count of this statement is observed, or null;
+     * see {@link
+     * FarragoRelMetadataProvider.ObservedRowCountProvider#getCardinalityKey}.
+     */
+    private String cardinalityKey;
+
+    /**
+     * Optimizer's estimate of the row count of the plan root, or null if the
+     * plan was not optimized.
+     */
+    private Double estimatedRowCount;
+
     private FarragoPreparingStmt parentStmt;
     private final FarragoSessionStmtContext rootStmtContext;
 
@@ -226,6 +249,37 @@ public class FarragoPreparingStmt
         cachingDisabled = true;
     }
 
+    // implement FarragoSessionPreparingStmt
+    public void enableSnapshot()
+    {
+        snapshotEnabled = true;
+    }
+
+    // implement FarragoSessionPreparingStmt
+    public Serializable snapshotExecutableStmt(
+        FarragoSessionExecutableStmt executableStmt)
+    {
+        return FarragoExecutableStmtSnapshot.create(
+            executableStmt,
+            containsJava ? javaCompiler : null,
+            jarUrlSet);
+    }
+
+    // implement FarragoSessionPreparingStmt
+    public FarragoSessionExecutableStmt restoreExecutableStmt(
+        Serializable snapshot)
+    {
+        return ((FarragoExecutableStmtSnapshot) snapshot).restore(
+            getFarragoTypeFactory(),
+            getSession().getPluginClassLoader());
+    }
+
+    // implement FarragoSessionPreparingStmt
+    public void setObservedRowCounts(Map<String, Double> rowCounts)
+    {
+        observedRowCounts = rowCounts;
+    }
+
     // implement FarragoSessionPreparingStmt
     public FarragoSessionStmtContext getRootStmtContext()
     {
@@ -476,6 +530,10 @@ public class FarragoPreparingStmt
                 urls,
                 getSession().getPluginClassLoader());
         javaCompiler.getArgs().setClassLoader(urlClassLoader);
+
+        // keeping a copy of the bytecode doubles the memory used by the
+        // generated classes, so only do so if it is to be persisted
+        javaCompiler.getArgs().setRetainByteCodes(snapshotEnabled);
     }
 
     private void definePackageName()
@@ -551,7 +609,7 @@ public class FarragoPreparingStmt
     protected FarragoSessionExecutableStmt implement(
         PreparedResult preparedResult)
     {
-        FarragoSessionExecutableStmt executableStmt;
+        FarragoExecutableStmtImpl executableStmt;
         if (preparedResult instanceof PreparedExecution) {
             PreparedExecution preparedExecution =
                 (PreparedExecution) preparedResult;
@@ -663,6 +721,9 @@ public class FarragoPreparingStmt
                         tableAccessMap,
                         resultSetTypeMap);
             }
+            executableStmt.setEstimatedRowCount(
+                cardinalityKey,
+                estimatedRowCount);
         } else {
             assert (preparedResult instanceof PreparedExplanation);
             executableStmt =
@@ -876,9 +937,20 @@ public class FarragoPreparingStmt
         // expression metadata query providers to use during optimization.
         finalizeRelMetadata(rootRel);
 
+        // Remember which part of the plan determines the row count of the
+        // statement, so that its actual row count can be fed back, and apply
+        // what was observed for parts of this plan before.
+        cardinalityKey =
+            FarragoRelMetadataProvider.ObservedRowCountProvider
+            .getCardinalityKey(rootRel);
+        if (observedRowCountProvider != null) {
+            observedRowCountProvider.markObserved(rootRel);
+        }
+
         RelTraitSet desiredTraits = getDesiredRootTraitSet(rootRel);
 
         rootRel = super.optimize(rowType, rootRel);
+        estimatedRowCount = RelMetadataQuery.getRowCount(rootRel);
         if (dumpPlan) {
             planDumpTracer.fine(
                 RelOptUtil.dumpPlan(
@@ -966,6 +1038,17 @@ public class FarragoPreparingStmt
             new ChainedRelMetadataProvider();
         plannerChain.addProvider(cacheProvider);
         planner.registerMetadataProviders(plannerChain);
+
+        // Row counts observed at runtime override everything, including the
+        // planner.  The provider listens to the planner to follow the
+        // expressions it has counts for through their rewrites.
+        if ((observedRowCounts != null) && !observedRowCounts.isEmpty()) {
+            observedRowCountProvider =
+                new FarragoRelMetadataProvider.ObservedRowCountProvider(
+                    observedRowCounts);
+            plannerChain.addProvider(observedRowCountProvider);
+            planner.addListener(observedRowCountProvider);
+        }
         rootRel.getCluster().setMetadataProvider(plannerChain);
 
         // Remind ourselves that we're done setting this guy up,
@@ -1042,6 +1125,29 @@ public class FarragoPreparingStmt
         return relNode;
     }
 
+    /**
+     * Returns a relational expression for a query which is stored in the
+     * catalog other than as the body of a view, such as the defining query of
+     * a materialized aggregate. The query is expanded like a view body and
+     * flattened, but not cast to any declared row type.
+     *
+     * @param queryString Query text, validated and fully qualified
+     *
+     * @return Relational expression
+     */
+    public RelNode expandStoredQuery(String queryString)
+    {
+        // expandView leaves the depth incremented if it fails, and the caller
+        // may want to carry on
+        int savedExpansionDepth = expansionDepth;
+        try {
+            RelNode rel = expandView(null, queryString);
+            return flattenTypes(rel, false);
+        } finally {
+            expansionDepth = savedExpansionDepth;
+        }
+    }
+
     RexNode expandInvocationExpression(
         SqlNode sqlExpr,
         FarragoRoutineInvocation invocation)
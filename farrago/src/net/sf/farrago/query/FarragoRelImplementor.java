@@ -356,8 +356,19 @@ public class FarragoRelImplementor
 
     public void compileTransforms(String pkgName)
     {
+        // Transforms don't refer to each other, so they can be compiled
+        // concurrently.
+        List<String> classNames = new ArrayList<String>();
+        List<String> sources = new ArrayList<String>();
         for (FarragoTransformDef t : transformDefs) {
-            t.compile(preparingStmt, pkgName);
+            classNames.add(t.getSimpleClassName());
+            sources.add(t.generateSource(pkgName));
+        }
+        List<Class> classes =
+            preparingStmt.compileClasses(pkgName, classNames, sources);
+        for (int i = 0; i < transformDefs.size(); ++i) {
+            FarragoTransformDef t = transformDefs.get(i);
+            t.setObjectCode(classes.get(i));
             transformMap.put(t.getClassName(), t);
         }
         if (tracer.isLoggable(Level.FINER)) {
@@ -35,6 +35,7 @@ import org.eigenbase.rel.metadata.*;
 import org.eigenbase.relopt.*;
 import org.eigenbase.rex.*;
 import org.eigenbase.stat.*;
+import org.eigenbase.util.*;
 
 
 /**
@@ -267,6 +268,189 @@ public class FarragoRelMetadataProvider
         }
         return true;
     }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * ObservedRowCountProvider supplies row counts which were observed when
+     * earlier statements were executed, for the relational expressions they
+     * apply to, and should be chained ahead of all other providers so that
+     * those counts override any estimate.
+     *
+     * <p>The runtime only reports the number of rows a whole statement returns
+     * or modifies. That is also the row count of the part of its plan below
+     * any projections, sorts and table modifications, which {@link
+     * #getCardinalityKey} identifies by its explain text before optimization;
+     * the observation is recorded under that text. When a later statement is
+     * prepared, {@link #markObserved} looks for subtrees of its unoptimized
+     * plan with the same text, which may be the whole statement or, for
+     * instance, a subquery or view which another statement had returned on
+     * its own. As the planner rewrites such an expression, this provider
+     * follows the rule productions which replace it, so that the scans,
+     * filters and joins standing for it in the plan being optimized, for
+     * example the factors considered by join ordering, report the observed
+     * row count.
+     */
+    public static class ObservedRowCountProvider
+        implements RelMetadataProvider,
+            RelOptListener
+    {
+        private final Map<String, Double> observedRowCounts;
+
+        private final Map<RelNode, Double> rowCounts =
+            new IdentityHashMap<RelNode, Double>();
+
+        /**
+         * Creates a provider.
+         *
+         * @param observedRowCounts observed row counts, keyed by {@link
+         * #getCardinalityKey}
+         */
+        public ObservedRowCountProvider(Map<String, Double> observedRowCounts)
+        {
+            this.observedRowCounts = observedRowCounts;
+        }
+
+        /**
+         * Returns the key under which the row count of a statement is
+         * observed: the explain text of the part of its unoptimized plan which
+         * determines how many rows it returns or modifies.
+         *
+         * @param rootRel root of the unoptimized plan
+         *
+         * @return key, or null if the row count depends on the values of
+         * dynamic parameters
+         */
+        public static String getCardinalityKey(RelNode rootRel)
+        {
+            RelNode rel = rootRel;
+            while (preservesRowCount(rel)) {
+                rel = rel.getInputs()[0];
+            }
+            if (containsDynamicParam(rel)) {
+                return null;
+            }
+            return RelOptUtil.toString(rel);
+        }
+
+        /**
+         * Finds the subtrees of an unoptimized plan whose row counts have been
+         * observed, and starts reporting those counts for them and for the
+         * relational expressions above them which return as many rows.
+         *
+         * @param rel root of the unoptimized plan
+         *
+         * @return observed row count of rel, or null
+         */
+        public Double markObserved(RelNode rel)
+        {
+            Double rowCount = null;
+            for (RelNode input : rel.getInputs()) {
+                Double inputRowCount = markObserved(input);
+                if (preservesRowCount(rel)) {
+                    rowCount = inputRowCount;
+                }
+            }
+            if ((rowCount == null) && !containsDynamicParam(rel)) {
+                rowCount = observedRowCounts.get(RelOptUtil.toString(rel));
+            }
+            if (rowCount != null) {
+                rowCounts.put(rel, rowCount);
+            }
+            return rowCount;
+        }
+
+        private static boolean preservesRowCount(RelNode rel)
+        {
+            if ((rel instanceof ProjectRelBase)
+                || (rel instanceof SortRel)
+                || (rel instanceof TableModificationRelBase))
+            {
+                return true;
+            }
+            return (rel instanceof CalcRelBase)
+                && (((CalcRelBase) rel).getProgram().getCondition() == null);
+        }
+
+        private static boolean containsDynamicParam(RelNode rel)
+        {
+            RexVisitor<Void> finder =
+                new RexVisitorImpl<Void>(true) {
+                    public Void visitDynamicParam(
+                        RexDynamicParam dynamicParam)
+                    {
+                        throw new Util.FoundOne(dynamicParam);
+                    }
+                };
+            try {
+                checkDynamicParams(rel, finder);
+                return false;
+            } catch (Util.FoundOne e) {
+                return true;
+            }
+        }
+
+        private static void checkDynamicParams(
+            RelNode rel,
+            RexVisitor<Void> finder)
+        {
+            for (RexNode exp : rel.getChildExps()) {
+                exp.accept(finder);
+            }
+            for (RelNode input : rel.getInputs()) {
+                checkDynamicParams(input, finder);
+            }
+        }
+
+        // implement RelMetadataProvider
+        public Object getRelMetadata(
+            RelNode rel,
+            String metadataQueryName,
+            Object [] args)
+        {
+            if (!metadataQueryName.equals("getRowCount")) {
+                return null;
+            }
+            return rowCounts.get(rel);
+        }
+
+        // implement RelOptListener
+        public void ruleProductionSucceeded(
+            RelOptListener.RuleProductionEvent event)
+        {
+            if (event.isBefore()) {
+                return;
+            }
+
+            // The production is equivalent to the expression the rule
+            // matched, so returns the same number of rows.
+            Double rowCount = rowCounts.get(event.getRuleCall().rels[0]);
+            if (rowCount != null) {
+                rowCounts.put(event.getRel(), rowCount);
+            }
+        }
+
+        // implement RelOptListener
+        public void relEquivalenceFound(
+            RelOptListener.RelEquivalenceEvent event)
+        {
+        }
+
+        // implement RelOptListener
+        public void ruleAttempted(RelOptListener.RuleAttemptedEvent event)
+        {
+        }
+
+        // implement RelOptListener
+        public void relDiscarded(RelOptListener.RelDiscardedEvent event)
+        {
+        }
+
+        // implement RelOptListener
+        public void relChosen(RelOptListener.RelChosenEvent event)
+        {
+        }
+    }
 }
 
 // End FarragoRelMetadataProvider.java
@@ -70,6 +70,20 @@ public class FarragoTransformDef
         this.sourceCode = sourceCode;
     }
 
+    /**
+     * Creates a definition for a transform whose class has already been
+     * compiled and loaded, for example when restoring a persisted statement.
+     *
+     * @param objectCode transform class
+     * @param streamName name of the peer JavaTransformExecStream
+     */
+    FarragoTransformDef(Class objectCode, String streamName)
+    {
+        this.objectCode = objectCode;
+        this.className = objectCode.getName();
+        this.streamName = streamName;
+    }
+
     //~ Methods ----------------------------------------------------------------
 
     public String toString()
@@ -102,7 +116,22 @@ public class FarragoTransformDef
         relNode = null;
     }
 
-    void compile(FarragoPreparingStmt stmt, String pkgName)
+    /**
+     * @return simple name of the generated transform class
+     */
+    String getSimpleClassName()
+    {
+        return sourceCode.getName();
+    }
+
+    /**
+     * Generates the source code of the transform class.
+     *
+     * @param pkgName package in which to place the class
+     *
+     * @return source code of a compilation unit
+     */
+    String generateSource(String pkgName)
     {
         if (tracer.isLoggable(Level.FINEST)) {
             tracer.finest("compiling " + this);
@@ -112,11 +141,17 @@ public class FarragoTransformDef
                 pkgName,
                 new String[0],
                 new ClassDeclarationList(sourceCode));
-        objectCode =
-            stmt.compileClass(
-                pkgName,
-                sourceCode.getName(),
-                compUnit.toString());
+        return compUnit.toString();
+    }
+
+    /**
+     * Records the class compiled from {@link #generateSource}.
+     *
+     * @param objectCode compiled transform class
+     */
+    void setObjectCode(Class objectCode)
+    {
+        this.objectCode = objectCode;
         className = objectCode.getName();
     }
 
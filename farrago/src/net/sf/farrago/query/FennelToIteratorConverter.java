@@ -263,6 +263,10 @@ public class FennelToIteratorConverter
         // code with help from the tuple accessor
         RelDataTypeField [] fields = rowType.getFields();
         Variable varPrevEndOffset = null;
+
+        // whether any field is unmarshalled as a pointer into byteArray; if
+        // none is, the reader can work on a direct view of the Fennel page
+        boolean needByteArray = false;
         assert (fields.length == tupleAccessor.getAttrAccessor().size());
         int i = -1;
         for (
@@ -353,6 +357,7 @@ public class FennelToIteratorConverter
                                 expStartOffset,
                                 varEndOffset))));
                 varPrevEndOffset = varEndOffset;
+                needByteArray = true;
             } else {
                 // fixed-width CHARACTER or BINARY
                 Expression expStartOffset =
@@ -380,6 +385,7 @@ public class FennelToIteratorConverter
                                 new FieldAccess("byteArray"),
                                 expStartOffset,
                                 expEndOffset))));
+                needByteArray = true;
             }
         }
 
@@ -453,9 +459,12 @@ public class FennelToIteratorConverter
         MemberDeclarationList memberDeclList = new MemberDeclarationList();
         memberDeclList.add(rowVarDecl);
         memberDeclList.add(methodDecl);
+        Class readerClass =
+            needByteArray ? FennelTupleReader.class
+                : FennelDirectTupleReader.class;
         Expression newTupleReaderExp =
             new AllocationExpression(
-                OJUtil.typeNameForClass(FennelTupleReader.class),
+                OJUtil.typeNameForClass(readerClass),
                 new ExpressionList(),
                 memberDeclList);
 
@@ -33,6 +33,7 @@ import java.util.logging.*;
 import javax.jmi.reflect.*;
 
 import net.sf.farrago.catalog.*;
+import net.sf.farrago.defimpl.*;
 import net.sf.farrago.fem.fennel.*;
 import net.sf.farrago.fem.med.*;
 import net.sf.farrago.fennel.*;
@@ -100,6 +101,13 @@ public class FarragoRuntimeContext
     private final Map<String, FarragoTransform> transformMap =
         new HashMap<String, FarragoTransform>();
 
+    /**
+     * Serializes calls into {@link #streamGraph} made by {@link
+     * FennelPrefetchTupleIter} fetch threads, since Fennel does not support
+     * concurrent fetches within a graph.
+     */
+    private final Object streamGraphFetchLock = new Object();
+
     protected final Object [] dynamicParamValues;
     protected FennelStreamGraph streamGraph;
 
@@ -571,6 +579,24 @@ public class FarragoRuntimeContext
         transformMap.put(key, xform);
     }
 
+    /**
+     * @return whether any FarragoTransforms have been registered, in which
+     * case fetching from the stream graph may call back into Java code
+     */
+    boolean hasFarragoTransforms()
+    {
+        return !transformMap.isEmpty();
+    }
+
+    /**
+     * @return lock which must be held while fetching from the stream graph on
+     * any thread other than the one executing the statement
+     */
+    Object getStreamGraphFetchLock()
+    {
+        return streamGraphFetchLock;
+    }
+
     public FarragoTransform findFarragoTransform(String key)
     {
         if (transformMap.containsKey(key)) {
@@ -700,13 +726,48 @@ public class FarragoRuntimeContext
         txn.beginReadTxn();
         try {
             FennelStreamHandle streamHandle = getStreamHandle(streamName, true);
-            final FennelTupleIter iter =
-                new FennelTupleIter(
-                    tupleReader,
-                    streamGraph,
-                    streamHandle,
-                    repos.getCurrentConfig().getFennelConfig()
-                         .getCachePageSize());
+            int bufferSize =
+                repos.getCurrentConfig().getFennelConfig().getCachePageSize();
+            int prefetchDepth =
+                getIntegerSessionVariable(
+                    FarragoDefaultSessionPersonality.FENNEL_PREFETCH_DEPTH);
+            final FennelAbstractTupleIter iter;
+            if (prefetchDepth > 1) {
+                // fetch on a separate thread so that Fennel execution
+                // overlaps with our own processing; this takes precedence
+                // over pinned access, since a pinned page is only valid
+                // until the next fetch
+                bufferSize =
+                    Math.max(
+                        bufferSize,
+                        getIntegerSessionVariable(
+                            FarragoDefaultSessionPersonality
+                            .FENNEL_PREFETCH_BUFFER_SIZE));
+                iter =
+                    new FennelPrefetchTupleIter(
+                        tupleReader,
+                        this,
+                        streamGraph,
+                        streamHandle,
+                        bufferSize,
+                        prefetchDepth);
+            } else if (tupleReader instanceof FennelDirectTupleReader) {
+                // reader doesn't need a byte array, so unmarshal straight
+                // from the Fennel page instead of copying it across JNI
+                iter =
+                    new FennelPinnedTupleIter(
+                        (FennelDirectTupleReader) tupleReader,
+                        streamGraph,
+                        streamHandle,
+                        bufferSize);
+            } else {
+                iter =
+                    new FennelTupleIter(
+                        tupleReader,
+                        streamGraph,
+                        streamHandle,
+                        bufferSize);
+            }
             registerJavaStream(streamId, iter);
             return iter;
         } finally {
@@ -714,6 +775,25 @@ public class FarragoRuntimeContext
         }
     }
 
+    /**
+     * Reads an integer session variable, treating a missing or null value as
+     * 0 (the variable may not be defined by every session personality).
+     *
+     * @param name name of session variable
+     *
+     * @return value of variable, or 0
+     */
+    private int getIntegerSessionVariable(String name)
+    {
+        if ((sessionVariables == null)
+            || !sessionVariables.containsVariable(name))
+        {
+            return 0;
+        }
+        Integer value = sessionVariables.getInteger(name);
+        return (value == null) ? 0 : value;
+    }
+
     /**
      * Creates a FennelTupleIter for executing a plan represented as XML. This
      * iterator is used during execution in Fennel's JavaTransformExecStream
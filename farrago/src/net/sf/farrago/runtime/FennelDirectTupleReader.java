@@ -0,0 +1,42 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.runtime;
+
+/**
+ * FennelDirectTupleReader is a {@link FennelTupleReader} which unmarshals
+ * every field through the ByteBuffer arguments and never dereferences the
+ * byteArray argument. Such a reader can be fed directly from a view of a
+ * Fennel output page (see {@link FennelPinnedTupleIter}), in which case
+ * byteArray is null.
+ *
+ * <p>FennelToIteratorConverter generates implementations of this interface
+ * when a row type contains no variable-width or character fields.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public interface FennelDirectTupleReader
+    extends FennelTupleReader
+{
+}
+
+// End FennelDirectTupleReader.java
@@ -0,0 +1,140 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.runtime;
+
+import java.nio.*;
+
+import net.sf.farrago.fennel.*;
+
+
+/**
+ * FennelPinnedTupleIter implements the {@link org.eigenbase.runtime.TupleIter}
+ * interface by unmarshalling tuples directly from a Fennel ExecStream's output
+ * page, without copying them into a Java byte array first.
+ *
+ * <p>Each call to {@link #populateBuffer()} obtains a direct ByteBuffer which
+ * views the bytes available from the stream; Fennel keeps the page pinned
+ * until the next fetch, at which point the previous bytes are consumed. Since
+ * no byte array backs the buffer, the tuple reader must be a {@link
+ * FennelDirectTupleReader}.
+ *
+ * <p>Like {@link FennelTupleIter}, the implementation of {@link
+ * #populateBuffer()} blocks.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class FennelPinnedTupleIter
+    extends FennelAbstractTupleIter
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final ByteBuffer emptyBuffer = ByteBuffer.allocate(0);
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final FennelStreamGraph streamGraph;
+    private final FennelStreamHandle streamHandle;
+    private final int bufferSize;
+
+    /**
+     * Number of bytes handed out by the last fetch which are still pinned in
+     * Fennel.
+     */
+    private int cbPinned;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FennelPinnedTupleIter object.
+     *
+     * @param tupleReader FennelDirectTupleReader to use to interpret Fennel
+     * data
+     * @param streamGraph underlying FennelStreamGraph
+     * @param streamHandle handle to underlying Fennel ExecStream that this
+     * TupleIter reads from
+     * @param bufferSize maximum number of bytes viewed by each fetch
+     */
+    public FennelPinnedTupleIter(
+        FennelDirectTupleReader tupleReader,
+        FennelStreamGraph streamGraph,
+        FennelStreamHandle streamHandle,
+        int bufferSize)
+    {
+        super(tupleReader);
+        this.streamGraph = streamGraph;
+        this.streamHandle = streamHandle;
+        this.bufferSize = bufferSize;
+
+        // there is never a backing array; tupleReader ignores it
+        bufferAsArray = null;
+        byteBuffer = emptyBuffer;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // override FennelAbstractTupleIter
+    public void restart()
+    {
+        super.restart();
+
+        // restarting the stream discards its output, pinned or not
+        cbPinned = 0;
+        byteBuffer = emptyBuffer;
+        streamGraph.restart(streamHandle);
+    }
+
+    // implement TupleIter
+    public void closeAllocation()
+    {
+        // The view is only valid while the stream graph is open, so drop it
+        // now; Fennel releases the page when the graph is closed.
+        cbPinned = 0;
+        byteBuffer = emptyBuffer;
+    }
+
+    /**
+     * Blocking implementation of {@link
+     * FennelAbstractTupleIter#populateBuffer()} which replaces {@link
+     * FennelAbstractTupleIter#byteBuffer} with a view of the next batch of
+     * tuples.
+     *
+     * @return number of bytes viewed by {@link
+     * FennelAbstractTupleIter#byteBuffer} or 0 for end of stream.
+     */
+    protected int populateBuffer()
+    {
+        ByteBuffer pinned =
+            streamGraph.fetchPinned(streamHandle, cbPinned, bufferSize);
+        if (pinned == null) {
+            cbPinned = 0;
+            byteBuffer = emptyBuffer;
+            return 0;
+        }
+        pinned.order(ByteOrder.nativeOrder());
+        byteBuffer = pinned;
+        cbPinned = pinned.capacity();
+        return cbPinned;
+    }
+}
+
+// End FennelPinnedTupleIter.java
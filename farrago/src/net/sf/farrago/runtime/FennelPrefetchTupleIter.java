@@ -0,0 +1,388 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.runtime;
+
+import java.nio.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+
+import net.sf.farrago.catalog.*;
+import net.sf.farrago.fennel.*;
+import net.sf.farrago.trace.*;
+
+import org.eigenbase.util.*;
+
+
+/**
+ * FennelPrefetchTupleIter implements the {@link
+ * org.eigenbase.runtime.TupleIter} interface by reading tuples from a Fennel
+ * ExecStream on a separate fetch thread, so that Fennel execution overlaps with
+ * the Java-side work done by the consumer (unmarshalling, calculators, JDBC
+ * marshalling).
+ *
+ * <p>The iterator owns a fixed number of buffers. The fetch thread fills free
+ * buffers and queues them; {@link #populateBuffer()} hands the oldest filled
+ * buffer to the consumer and returns the previous one to the fetch thread. With
+ * a depth of N buffers, Fennel can therefore run up to N - 1 buffers ahead of
+ * the consumer.
+ *
+ * <p>The fetch thread is started lazily on the first call to {@link
+ * #populateBuffer()}, and exits after it has queued end of stream, underflow or
+ * an error; the next call after an underflow starts a new one. Since the fetch
+ * thread calls into the stream graph, it must be stopped before the graph is
+ * closed: the iterator registers itself with its runtime context for that
+ * reason.
+ *
+ * <p>Fennel does not allow concurrent calls into one stream graph, so every
+ * fetch and restart holds the runtime context's {@link
+ * FarragoRuntimeContext#getStreamGraphFetchLock fetch lock}; several
+ * prefetching iterators over one graph therefore take turns. If the graph
+ * contains FarragoTransforms, which Fennel calls back into while fetching,
+ * the iterator fetches synchronously on the consumer thread instead: a
+ * transform reading from a Java iterator fed by the consumer could otherwise
+ * deadlock, waiting for the consumer while the consumer waits for the fetch
+ * thread.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class FennelPrefetchTupleIter
+    extends FennelAbstractTupleIter
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Logger tracer =
+        FarragoTrace.getRuntimeContextTracer();
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final FarragoRuntimeContext runtimeContext;
+    private final FennelStreamGraph streamGraph;
+    private final FennelStreamHandle streamHandle;
+
+    /**
+     * All buffers, wherever they currently are.
+     */
+    private final List<Batch> batches;
+
+    /**
+     * Buffers available to the fetch thread.
+     */
+    private final BlockingQueue<Batch> freeQueue;
+
+    /**
+     * Buffers filled by the fetch thread, in fetch order. Its capacity is the
+     * total number of buffers, so the fetch thread never blocks on it.
+     */
+    private final BlockingQueue<Batch> filledQueue;
+
+    /**
+     * Buffer currently being read by the consumer, or null.
+     */
+    private Batch currentBatch;
+
+    private Thread fetchThread;
+    private volatile boolean stopFetching;
+
+    /**
+     * Whether to fetch on a separate thread; decided on the first fetch, once
+     * all transforms have been registered.
+     */
+    private Boolean prefetch;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FennelPrefetchTupleIter object.
+     *
+     * @param tupleReader FennelTupleReader to use to interpret Fennel data
+     * @param runtimeContext runtime context which will close this iterator
+     * before closing the stream graph
+     * @param streamGraph underlying FennelStreamGraph
+     * @param streamHandle handle to underlying Fennel ExecStream that this
+     * TupleIter reads from
+     * @param bufferSize number of bytes in each buffer used for fetching from
+     * Fennel
+     * @param depth number of buffers; must be at least 2
+     */
+    public FennelPrefetchTupleIter(
+        FennelTupleReader tupleReader,
+        FarragoRuntimeContext runtimeContext,
+        FennelStreamGraph streamGraph,
+        FennelStreamHandle streamHandle,
+        int bufferSize,
+        int depth)
+    {
+        super(tupleReader);
+        assert (depth >= 2) : depth;
+        this.runtimeContext = runtimeContext;
+        this.streamGraph = streamGraph;
+        this.streamHandle = streamHandle;
+
+        batches = new ArrayList<Batch>(depth);
+        freeQueue = new ArrayBlockingQueue<Batch>(depth);
+        filledQueue = new ArrayBlockingQueue<Batch>(depth);
+        for (int i = 0; i < depth; ++i) {
+            Batch batch = new Batch(bufferSize);
+            batches.add(batch);
+            freeQueue.add(batch);
+        }
+        resetByteBuffer();
+
+        runtimeContext.addAllocation(this);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // override FennelAbstractTupleIter
+    public void restart()
+    {
+        super.restart();
+        stopFetchThread();
+        resetByteBuffer();
+        synchronized (runtimeContext.getStreamGraphFetchLock()) {
+            streamGraph.restart(streamHandle);
+        }
+    }
+
+    // implement TupleIter
+    public void closeAllocation()
+    {
+        // NOTE: this is called both by the runtime context (before it closes
+        // the stream graph) and by whoever owns the iterator, in either order
+        stopFetchThread();
+    }
+
+    /**
+     * Hands the next buffer filled by the fetch thread to the consumer,
+     * waiting for one if necessary.
+     *
+     * @return number of bytes in {@link #byteBuffer}; 0 for end of stream,
+     * less than 0 if no data is currently available
+     */
+    protected int populateBuffer()
+    {
+        if (currentBatch != null) {
+            // the consumer is done with it; give it back to the fetch thread
+            freeQueue.add(currentBatch);
+            currentBatch = null;
+        }
+        if (prefetch == null) {
+            prefetch = !runtimeContext.hasFarragoTransforms();
+            if (!prefetch) {
+                tracer.fine(
+                    "stream graph contains Java transforms; not prefetching");
+            }
+        }
+        if (!prefetch) {
+            return fetchSynchronously();
+        }
+        if (fetchThread == null) {
+            startFetchThread();
+        }
+
+        Batch batch;
+        try {
+            batch = filledQueue.take();
+        } catch (InterruptedException ex) {
+            throw Util.newInternal(ex);
+        }
+
+        if ((batch.cb > 0) && (batch.error == null)) {
+            currentBatch = batch;
+            bufferAsArray = batch.bytes;
+            byteBuffer = batch.byteBuffer;
+            byteBuffer.clear();
+            return batch.cb;
+        }
+
+        // This was the last thing the fetch thread queued before exiting.
+        joinFetchThread();
+        freeQueue.add(batch);
+        Throwable error = batch.error;
+        batch.error = null;
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        } else if (error != null) {
+            throw Util.newInternal(error);
+        }
+        return batch.cb;
+    }
+
+    /**
+     * Fetches into the first buffer on the consumer thread, for graphs which
+     * must not be fetched from on another thread.
+     *
+     * @return number of bytes fetched
+     */
+    private int fetchSynchronously()
+    {
+        Batch batch = batches.get(0);
+        int cb;
+        synchronized (runtimeContext.getStreamGraphFetchLock()) {
+            cb = streamGraph.fetch(streamHandle, batch.bytes);
+        }
+        bufferAsArray = batch.bytes;
+        byteBuffer = batch.byteBuffer;
+        byteBuffer.clear();
+        return cb;
+    }
+
+    private void resetByteBuffer()
+    {
+        bufferAsArray = batches.get(0).bytes;
+        byteBuffer = ByteBuffer.wrap(bufferAsArray);
+        byteBuffer.order(ByteOrder.nativeOrder());
+        byteBuffer.clear();
+        byteBuffer.limit(0);
+    }
+
+    private void startFetchThread()
+    {
+        stopFetching = false;
+        fetchThread =
+            new Thread("FennelPrefetchTupleIter") {
+                public void run()
+                {
+                    fetchWithReposSession();
+                }
+            };
+        fetchThread.setDaemon(true);
+        fetchThread.start();
+    }
+
+    /**
+     * Stops the fetch thread if it is running, discarding any data it has
+     * prefetched, and returns all buffers to the free queue.
+     */
+    private void stopFetchThread()
+    {
+        if (fetchThread == null) {
+            return;
+        }
+        tracer.fine("stopping prefetch");
+
+        // If the fetch thread is waiting for a free buffer, handing back
+        // everything the consumer holds wakes it up; otherwise it is inside
+        // Fennel, and notices the flag once the current fetch returns.
+        stopFetching = true;
+        if (currentBatch != null) {
+            freeQueue.add(currentBatch);
+            currentBatch = null;
+        }
+        filledQueue.drainTo(freeQueue);
+        joinFetchThread();
+
+        filledQueue.clear();
+        freeQueue.clear();
+        freeQueue.addAll(batches);
+        for (Batch batch : batches) {
+            batch.error = null;
+        }
+    }
+
+    private void joinFetchThread()
+    {
+        try {
+            fetchThread.join();
+        } catch (InterruptedException ex) {
+            throw Util.newInternal(ex);
+        }
+        fetchThread = null;
+    }
+
+    private void fetchWithReposSession()
+    {
+        // Fennel may call back into Java code which accesses the metadata
+        // repository (e.g. a pull source); as in FarragoJavaUdxIterator, the
+        // session is lightweight, so no problem if a txn is never started
+        FarragoRepos repos =
+            (runtimeContext.getSession() != null)
+            ? runtimeContext.getSession().getRepos()
+            : runtimeContext.getRepos();
+        repos.beginReposSession();
+        try {
+            fetch();
+        } finally {
+            repos.endReposSession();
+        }
+    }
+
+    /**
+     * Body of the fetch thread: fills free buffers until end of stream,
+     * underflow, an error, or a request to stop.
+     */
+    private void fetch()
+    {
+        for (;;) {
+            Batch batch;
+            try {
+                batch = freeQueue.take();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            if (stopFetching) {
+                return;
+            }
+            try {
+                synchronized (runtimeContext.getStreamGraphFetchLock()) {
+                    batch.cb = streamGraph.fetch(streamHandle, batch.bytes);
+                }
+            } catch (Throwable ex) {
+                tracer.log(Level.FINE, "prefetch failed", ex);
+                batch.cb = 0;
+                batch.error = ex;
+            }
+            filledQueue.add(batch);
+            if ((batch.cb <= 0) || (batch.error != null)) {
+                return;
+            }
+        }
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Batch is one of the buffers circulating between the fetch thread and the
+     * consumer, together with the outcome of the fetch which filled it.
+     */
+    private static class Batch
+    {
+        final byte [] bytes;
+        final ByteBuffer byteBuffer;
+        int cb;
+        Throwable error;
+
+        Batch(int bufferSize)
+        {
+            bytes = new byte[bufferSize];
+            byteBuffer = ByteBuffer.wrap(bytes);
+            byteBuffer.order(ByteOrder.nativeOrder());
+        }
+    }
+}
+
+// End FennelPrefetchTupleIter.java
@@ -68,6 +68,18 @@ public abstract class FarragoAbstractServer
 
     protected long connectionTimeoutMillis;
 
+    /**
+     * Target size in bytes of each batch of result rows sent to a client, or 0
+     * to let the network layer use its default number of rows per batch.
+     */
+    protected int rowPacketBytes;
+
+    /**
+     * Deflate level (0-9) for compressing batches of result rows sent to a
+     * client, or -1 to use the network layer's default.
+     */
+    protected int compressionLevel;
+
     protected ListeningProtocol protocol;
 
     private ListeningProtocol defaultProtocol = ListeningProtocol.HTTP;
@@ -124,6 +136,16 @@ public abstract class FarragoAbstractServer
                 ? FarragoCatalogInit.DEFAULT_CONNECTION_TIMEOUT_MILLIS
                 : longObjValue.longValue());
 
+        Integer intObjValue = config.getServerRowPacketBytes();
+        rowPacketBytes = (intObjValue == null) ? 0 : intObjValue.intValue();
+
+        intObjValue = config.getServerCompressionLevel();
+        compressionLevel = (intObjValue == null) ? -1 : intObjValue.intValue();
+        if ((compressionLevel < -1) || (compressionLevel > 9)) {
+            throw new IllegalArgumentException(
+                "serverCompressionLevel must be between 0 and 9; was "
+                + compressionLevel);
+        }
 
         if (defaultProtocol == ListeningProtocol.HTTP) {
             if (rmiRegistryPort <= 0) {
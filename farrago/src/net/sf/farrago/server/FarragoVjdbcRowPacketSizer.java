@@ -0,0 +1,296 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.server;
+
+import java.lang.reflect.*;
+
+import java.sql.*;
+
+import java.util.*;
+
+
+/**
+ * FarragoVjdbcRowPacketSizer adapts the number of rows VJDBC sends per row
+ * packet to the width of the rows being sent, so that each packet carries
+ * roughly a configured number of bytes: narrow result sets are sent in a few
+ * large packets instead of many round trips, while wide ones don't produce
+ * packets too big to buffer.
+ *
+ * <p>VJDBC asks its connection configuration for the packet size just after
+ * the query has returned its result set, on the same thread, but without
+ * telling it which result set that is. So the sizer wraps the JDBC connection
+ * it serves, together with the statements and result sets obtained from it:
+ * whenever a statement returns a result set, the sizer estimates the row width
+ * from its metadata and records it against the result set, which it notes as
+ * pending on the current thread. {@link #getRowPacketSize} consumes the
+ * pending result set, and closing the result set forgets it, so no width
+ * outlives the result set it was computed for.
+ *
+ * <p>Proxies implement all of the public interfaces of the objects they wrap,
+ * so callers can still use driver-specific interfaces, and navigating back
+ * from a result set to its statement, or from a statement to its connection,
+ * returns the proxies rather than the objects they wrap.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class FarragoVjdbcRowPacketSizer
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Width assumed for a column of a type with no better estimate.
+     */
+    private static final int DEFAULT_COLUMN_WIDTH = 16;
+
+    /**
+     * Upper bound on the width assumed for a variable-width column; most
+     * values are much shorter than the declared precision.
+     */
+    private static final int MAX_COLUMN_WIDTH = 1024;
+
+    /**
+     * Upper bound on rows per packet, whatever the row width.
+     */
+    private static final int MAX_ROWS_PER_PACKET = 100000;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final int rowPacketBytes;
+
+    /**
+     * Estimated row width of each open result set returned through a wrapped
+     * connection, keyed by the proxy handed out for it.
+     */
+    private final Map<ResultSet, Integer> rowWidths =
+        Collections.synchronizedMap(new WeakHashMap<ResultSet, Integer>());
+
+    /**
+     * Result set most recently returned on each thread and not yet sized by
+     * {@link #getRowPacketSize}.
+     */
+    private final ThreadLocal<ResultSet> pendingResultSet =
+        new ThreadLocal<ResultSet>();
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FarragoVjdbcRowPacketSizer.
+     *
+     * @param rowPacketBytes target number of bytes per row packet
+     */
+    public FarragoVjdbcRowPacketSizer(int rowPacketBytes)
+    {
+        assert (rowPacketBytes > 0);
+        this.rowPacketBytes = rowPacketBytes;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Wraps a connection so that the widths of the result sets returned by
+     * its statements are recorded.
+     *
+     * @param connection connection to wrap
+     *
+     * @return wrapped connection
+     */
+    public Connection wrapConnection(Connection connection)
+    {
+        return (Connection) wrap(connection, null);
+    }
+
+    /**
+     * Computes the number of rows to send per packet for the result set most
+     * recently returned on the current thread, and clears it.
+     *
+     * @param defaultRowPacketSize number of rows to use if no result set has
+     * been returned on the current thread since the last call
+     *
+     * @return number of rows per packet
+     */
+    public int getRowPacketSize(int defaultRowPacketSize)
+    {
+        ResultSet resultSet = pendingResultSet.get();
+        pendingResultSet.remove();
+        Integer rowWidth =
+            (resultSet == null) ? null : rowWidths.get(resultSet);
+        if (rowWidth == null) {
+            return defaultRowPacketSize;
+        }
+        int rows = rowPacketBytes / rowWidth;
+        return Math.max(1, Math.min(rows, MAX_ROWS_PER_PACKET));
+    }
+
+    /**
+     * Estimates the average number of bytes a row occupies in a row packet.
+     *
+     * @param metaData metadata of the result set
+     *
+     * @return estimated row width in bytes, at least 1
+     */
+    public static int estimateRowWidth(ResultSetMetaData metaData)
+        throws SQLException
+    {
+        int rowWidth = 0;
+        int n = metaData.getColumnCount();
+        for (int i = 1; i <= n; ++i) {
+            rowWidth += estimateColumnWidth(metaData, i);
+        }
+        return Math.max(1, rowWidth);
+    }
+
+    private static int estimateColumnWidth(
+        ResultSetMetaData metaData,
+        int column)
+        throws SQLException
+    {
+        switch (metaData.getColumnType(column)) {
+        case Types.BIT:
+        case Types.BOOLEAN:
+        case Types.TINYINT:
+            return 1;
+        case Types.SMALLINT:
+            return 2;
+        case Types.INTEGER:
+        case Types.REAL:
+            return 4;
+        case Types.BIGINT:
+        case Types.DOUBLE:
+        case Types.FLOAT:
+        case Types.DATE:
+        case Types.TIME:
+        case Types.TIMESTAMP:
+            return 8;
+        case Types.CHAR:
+        case Types.VARCHAR:
+        case Types.BINARY:
+        case Types.VARBINARY:
+            int precision = metaData.getPrecision(column);
+            if (precision <= 0) {
+                return DEFAULT_COLUMN_WIDTH;
+            }
+            return Math.min(precision, MAX_COLUMN_WIDTH);
+        default:
+            return DEFAULT_COLUMN_WIDTH;
+        }
+    }
+
+    /**
+     * Wraps a connection, statement or result set in a proxy which implements
+     * all of its public interfaces.
+     *
+     * @param obj object to wrap
+     * @param parent proxy for the connection or statement from which obj was
+     * obtained, or null for a connection
+     *
+     * @return proxy
+     */
+    private Object wrap(Object obj, Object parent)
+    {
+        Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+        for (Class<?> c = obj.getClass(); c != null; c = c.getSuperclass()) {
+            for (Class<?> iface : c.getInterfaces()) {
+                if (Modifier.isPublic(iface.getModifiers())) {
+                    interfaces.add(iface);
+                }
+            }
+        }
+        return Proxy.newProxyInstance(
+            obj.getClass().getClassLoader(),
+            interfaces.toArray(new Class[interfaces.size()]),
+            new Handler(obj, parent));
+    }
+
+    private void forget(ResultSet resultSet)
+    {
+        rowWidths.remove(resultSet);
+        if (pendingResultSet.get() == resultSet) {
+            pendingResultSet.remove();
+        }
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Handler for proxies of connections, statements and result sets: wraps
+     * statements created by a connection and result sets returned by a
+     * statement, recording the row width of the latter; and forgets a result
+     * set's width when it is closed.
+     */
+    private class Handler
+        implements InvocationHandler
+    {
+        private final Object target;
+        private final Object parent;
+
+        Handler(Object target, Object parent)
+        {
+            this.target = target;
+            this.parent = parent;
+        }
+
+        // implement InvocationHandler
+        public Object invoke(Object proxy, Method method, Object [] args)
+            throws Throwable
+        {
+            if ((parent != null)
+                && (args == null)
+                && (method.getName().equals("getConnection")
+                    || method.getName().equals("getStatement"))
+                && method.getReturnType().isInstance(parent))
+            {
+                return parent;
+            }
+            if ((target instanceof ResultSet)
+                && method.getName().equals("close")
+                && (args == null))
+            {
+                forget((ResultSet) proxy);
+            }
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+            if ((result instanceof Statement)
+                && (target instanceof Connection))
+            {
+                return wrap(result, proxy);
+            }
+            if ((result instanceof ResultSet)
+                && (target instanceof Statement))
+            {
+                ResultSet resultSet = (ResultSet) wrap(result, proxy);
+                rowWidths.put(
+                    resultSet,
+                    estimateRowWidth(((ResultSet) result).getMetaData()));
+                pendingResultSet.set(resultSet);
+                return resultSet;
+            }
+            return result;
+        }
+    }
+}
+
+// End FarragoVjdbcRowPacketSizer.java
@@ -95,6 +95,9 @@ public class FarragoVjdbcServer
         configFarrago.setUrl(jdbcDriver.getBaseUrl());
         configFarrago.setConnectionPooling(false);
         configFarrago.setPrefetchResultSetMetaData(true);
+        if (compressionLevel != -1) {
+            configFarrago.setCompressionModeAsInt(compressionLevel);
+        }
         vjdbcConfig.addConnection(configFarrago);
 
         if (protocol == ListeningProtocol.HTTP) {
@@ -160,6 +163,20 @@ public class FarragoVjdbcServer
     private class FarragoConnectionConfiguration
         extends ConnectionConfiguration
     {
+        private final FarragoVjdbcRowPacketSizer rowPacketSizer =
+            (rowPacketBytes > 0)
+            ? new FarragoVjdbcRowPacketSizer(rowPacketBytes) : null;
+
+        // override ConnectionConfiguration
+        public int getRowPacketSize()
+        {
+            int rowPacketSize = super.getRowPacketSize();
+            if (rowPacketSizer == null) {
+                return rowPacketSize;
+            }
+            return rowPacketSizer.getRowPacketSize(rowPacketSize);
+        }
+
         public Connection create(Properties props)
             throws SQLException
         {
@@ -172,7 +189,12 @@ public class FarragoVjdbcServer
                 // overwritten here. Otherwise this is a potential security
                 // hole!
                 props.setProperty("remoteProtocol", protocol.toString());
-                return jdbcDriver.connect(jdbcDriver.getBaseUrl(), props);
+                Connection connection =
+                    jdbcDriver.connect(jdbcDriver.getBaseUrl(), props);
+                if (rowPacketSizer != null) {
+                    connection = rowPacketSizer.wrapConnection(connection);
+                }
+                return connection;
             } catch (Throwable t) {
                 throw SQLExceptionHelper.wrap(t);
             }
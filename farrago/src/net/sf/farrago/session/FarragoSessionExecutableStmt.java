@@ -128,6 +128,20 @@ public interface FarragoSessionExecutableStmt
      * Map from IterCalcRel tag to row type.
      */
     public Map<String, RelDataType> getIterCalcTypeMap();
+
+    /**
+     * @return the optimizer's estimate of the number of rows this statement
+     * returns (for a query) or modifies (for DML), or null if not available
+     */
+    public Double getEstimatedRowCount();
+
+    /**
+     * @return key identifying the part of this statement's plan whose row
+     * count is the number of rows the statement returns or modifies, under
+     * which that count is observed when the statement is executed; null if
+     * not available
+     */
+    public String getCardinalityKey();
 }
 
 // End FarragoSessionExecutableStmt.java
@@ -22,6 +22,10 @@
 */
 package net.sf.farrago.session;
 
+import java.io.*;
+
+import java.util.*;
+
 import net.sf.farrago.catalog.*;
 import net.sf.farrago.fennel.*;
 import net.sf.farrago.type.*;
@@ -128,6 +132,53 @@ public interface FarragoSessionPreparingStmt
      */
     public void disableStatementCaching();
 
+    /**
+     * Requests that the executable statement produced by this preparing
+     * statement may be captured by {@link #snapshotExecutableStmt}. Must be
+     * called before the statement is prepared; otherwise generated bytecode
+     * is not kept, and no snapshot can be taken.
+     */
+    public void enableSnapshot();
+
+    /**
+     * Captures an executable statement produced by this preparing statement
+     * in a form which can be written to disk and restored via {@link
+     * #restoreExecutableStmt} after the database has been restarted. Called
+     * after the statement has been prepared.
+     *
+     * @param executableStmt statement returned by {@link #prepare}
+     *
+     * @return serializable snapshot of the statement, or null if the
+     * statement cannot be persisted, or {@link #enableSnapshot} was not called
+     */
+    public Serializable snapshotExecutableStmt(
+        FarragoSessionExecutableStmt executableStmt);
+
+    /**
+     * Reconstructs an executable statement from a snapshot previously created
+     * by {@link #snapshotExecutableStmt}, without re-planning or recompiling
+     * it. The caller is responsible for checking that the objects referenced
+     * by the statement have not been modified since the snapshot was taken.
+     *
+     * @param snapshot statement snapshot
+     *
+     * @return restored statement
+     */
+    public FarragoSessionExecutableStmt restoreExecutableStmt(
+        Serializable snapshot);
+
+    /**
+     * Tells this statement how many rows earlier statements actually returned
+     * or modified, so that the optimizer can use those counts instead of its
+     * own estimates wherever the same expressions occur in this statement.
+     * Must be called before {@link #prepare}.
+     *
+     * @param rowCounts observed row counts, keyed by {@link
+     * FarragoSessionExecutableStmt#getCardinalityKey}, or null to use the
+     * estimates
+     */
+    public void setObservedRowCounts(Map<String, Double> rowCounts);
+
     /**
      * @return generic stmt validator
      */
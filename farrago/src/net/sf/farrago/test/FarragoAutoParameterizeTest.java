@@ -0,0 +1,192 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.test;
+
+import java.sql.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.db.*;
+import net.sf.farrago.util.*;
+
+
+/**
+ * FarragoAutoParameterizeTest tests which literals the autoParameterize
+ * session variable replaces, given the indexes and statistics in the
+ * catalog. A query whose literal is replaced shares its cached plan with a
+ * query which differs only in that literal, so the code cache does not grow
+ * when the second is executed.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class FarragoAutoParameterizeTest
+    extends FarragoTestCase
+{
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FarragoAutoParameterizeTest object.
+     *
+     * @param testName JUnit test name
+     *
+     * @throws Exception .
+     */
+    public FarragoAutoParameterizeTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement TestCase
+    public static Test suite()
+    {
+        return wrappedSuite(FarragoAutoParameterizeTest.class);
+    }
+
+    // implement TestCase
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        stmt.executeUpdate("create schema autoparam");
+        stmt.executeUpdate(
+            "create table autoparam.t("
+            + "id int not null primary key, plain int, indexed int,"
+            + " skewed int, uniform int, analyzed_indexed int)");
+        stmt.executeUpdate(
+            "create index t_indexed on autoparam.t(indexed)");
+        stmt.executeUpdate(
+            "create index t_analyzed_indexed"
+            + " on autoparam.t(analyzed_indexed)");
+
+        // 1000 rows in 100 histogram bars; 10 distinct values mean each
+        // value spans several bars, whereas 1000 are spread evenly
+        stmt.execute(
+            "call sys_boot.mgmt.stat_set_row_count("
+            + "'LOCALDB', 'AUTOPARAM', 'T', 1000)");
+        setHistogram("SKEWED", 10);
+        setHistogram("UNIFORM", 1000);
+        setHistogram("ANALYZED_INDEXED", 1000);
+        setHistogram("ID", 1000);
+
+        stmt.execute("alter session set \"autoParameterize\" = true");
+    }
+
+    // implement TestCase
+    protected void tearDown()
+        throws Exception
+    {
+        try {
+            stmt.execute("alter session set \"autoParameterize\" = false");
+            stmt.executeUpdate("drop schema autoparam cascade");
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    /**
+     * Tests that literals compared with columns without access paths are
+     * replaced.
+     */
+    public void testReplaced()
+        throws Exception
+    {
+        assertShared(true, "plain");
+        assertShared(true, "uniform");
+
+        // analyzed, and the key of the clustered index, but neither matters
+        assertShared(true, "id");
+    }
+
+    /**
+     * Tests that literals compared with columns having an unclustered index
+     * or a skewed histogram are retained.
+     */
+    public void testRetained()
+        throws Exception
+    {
+        assertShared(false, "indexed");
+        assertShared(false, "skewed");
+        assertShared(false, "analyzed_indexed");
+    }
+
+    /**
+     * Tests that a literal is retained if its column is referenced by another
+     * conjunct, however the references are qualified.
+     */
+    public void testSameColumnRetained()
+        throws Exception
+    {
+        assertShared(true, "t.plain");
+        assertShared(false, "t.plain > 0 and plain");
+    }
+
+    private void setHistogram(String columnName, int distinctValues)
+        throws SQLException
+    {
+        stmt.execute(
+            "call sys_boot.mgmt.stat_set_column_histogram("
+            + "'LOCALDB', 'AUTOPARAM', 'T', '" + columnName + "', "
+            + distinctValues + ", 100, " + distinctValues
+            + ", 0, '0123456789')");
+    }
+
+    /**
+     * Executes two queries which differ only in the literal compared with a
+     * column, and asserts whether they share a cached plan.
+     *
+     * @param expected whether the plan should be shared
+     * @param condition condition to be completed with "= literal"
+     */
+    private void assertShared(boolean expected, String condition)
+        throws SQLException
+    {
+        FarragoObjectCache codeCache =
+            ((FarragoDbSession) getSession()).getDatabase().getCodeCache();
+        String sql = "select id from autoparam.t where " + condition + " = ";
+        executeQuery(sql + "1");
+        long bytesCached = codeCache.getBytesCached();
+        executeQuery(sql + "2");
+        assertEquals(
+            condition,
+            expected,
+            bytesCached == codeCache.getBytesCached());
+    }
+
+    private void executeQuery(String sql)
+        throws SQLException
+    {
+        resultSet = stmt.executeQuery(sql);
+        try {
+            while (resultSet.next()) {
+            }
+        } finally {
+            resultSet.close();
+            resultSet = null;
+        }
+    }
+}
+
+// End FarragoAutoParameterizeTest.java
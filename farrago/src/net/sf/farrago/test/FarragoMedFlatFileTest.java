@@ -0,0 +1,163 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.test;
+
+import java.io.*;
+
+import java.sql.*;
+
+import junit.framework.*;
+
+
+/**
+ * FarragoMedFlatFileTest tests flat file tables whose data files change
+ * between statements, which unit SQL scripts cannot do. It writes the data
+ * files to a temporary directory.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class FarragoMedFlatFileTest
+    extends FarragoTestCase
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private File dir;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FarragoMedFlatFileTest object.
+     *
+     * @param testName JUnit test name
+     *
+     * @throws Exception .
+     */
+    public FarragoMedFlatFileTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement TestCase
+    public static Test suite()
+    {
+        return wrappedSuite(FarragoMedFlatFileTest.class);
+    }
+
+    // implement TestCase
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        dir =
+            new File(
+                System.getProperty("java.io.tmpdir"),
+                "FarragoMedFlatFileTest");
+        delete(dir);
+        writeDataFile("p=1/data.txt", "1\n");
+
+        stmt.executeUpdate(
+            "create server med_flatfile foreign data wrapper sys_file_wrapper"
+            + " options(directory '" + dir.getAbsolutePath() + "/',"
+            + " file_extension 'txt', with_header 'no')");
+        stmt.executeUpdate("create schema med_flatfile");
+        stmt.executeUpdate(
+            "create foreign table med_flatfile.t(x int, p varchar(10))"
+            + " server med_flatfile options(filename 'p=*/data')");
+    }
+
+    // implement TestCase
+    protected void tearDown()
+        throws Exception
+    {
+        try {
+            stmt.executeUpdate("drop schema med_flatfile cascade");
+            stmt.executeUpdate("drop server med_flatfile cascade");
+            delete(dir);
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    /**
+     * Tests that a statement on a table whose filename is a pattern reads
+     * files added since the same statement was last executed. Its data files
+     * are listed when it is prepared, so its plan must not be cached.
+     */
+    public void testPatternNotCached()
+        throws Exception
+    {
+        String sql = "select count(*) from med_flatfile.t";
+        assertEquals(1, getCount(sql));
+
+        writeDataFile("p=2/data.txt", "2\n3\n");
+        assertEquals(3, getCount(sql));
+
+        String filterSql = "select count(*) from med_flatfile.t where p = '2'";
+        assertEquals(2, getCount(filterSql));
+
+        assertTrue(new File(dir, "p=2/data.txt").delete());
+        assertEquals(0, getCount(filterSql));
+    }
+
+    private long getCount(String sql)
+        throws SQLException
+    {
+        resultSet = stmt.executeQuery(sql);
+        try {
+            assertTrue(resultSet.next());
+            return resultSet.getLong(1);
+        } finally {
+            resultSet.close();
+            resultSet = null;
+        }
+    }
+
+    private void writeDataFile(String name, String contents)
+        throws IOException
+    {
+        File file = new File(dir, name);
+        file.getParentFile().mkdirs();
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write(contents);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void delete(File file)
+    {
+        File [] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
+
+// End FarragoMedFlatFileTest.java
@@ -0,0 +1,287 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.test;
+
+import java.sql.*;
+
+import java.util.*;
+import java.util.regex.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.jdbc.engine.*;
+
+
+/**
+ * FarragoMedJdbcTest tests how the optimizer uses the statistics which
+ * {@link net.sf.farrago.namespace.jdbc.MedJdbcDataServer} reads from foreign
+ * servers, and the bind joins which it chooses from them. It uses servers
+ * which loop back to the default catalog.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class FarragoMedJdbcTest
+    extends FarragoTestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Pattern JDBC_ROW_COUNT =
+        Pattern.compile(
+            "MedJdbcQueryRel\\(.*?\\): rowcount = ([^,]*),",
+            Pattern.DOTALL);
+
+    private static final String BIND_JOIN = "MedJdbcBindJoinRel";
+
+    /**
+     * Number of rows in the table read through the loopback servers; enough
+     * for a bind join to be chosen for the few keys of the local table.
+     */
+    private static final int BIG_ROW_COUNT = 50;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FarragoMedJdbcTest object.
+     *
+     * @param testName JUnit test name
+     *
+     * @throws Exception .
+     */
+    public FarragoMedJdbcTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement TestCase
+    public static Test suite()
+    {
+        return wrappedSuite(FarragoMedJdbcTest.class);
+    }
+
+    // implement TestCase
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        createLoopbackServer("med_jdbc_stats", "statistics_probe 'true'");
+        createLoopbackServer("med_jdbc_nostats", "statistics_ttl '0'");
+        createLoopbackServer(
+            "med_jdbc_nobind",
+            "statistics_probe 'true', bind_join_max_keys '0'");
+
+        stmt.executeUpdate("create schema med_jdbc");
+        stmt.executeUpdate(
+            "create table med_jdbc.big("
+            + "k varchar(10) not null primary key, v int)");
+        StringBuilder buf =
+            new StringBuilder("insert into med_jdbc.big values");
+        for (int i = 0; i < BIG_ROW_COUNT; i++) {
+            buf.append((i == 0) ? " " : ", ");
+            buf.append("('K").append(i).append("', ").append(i).append(")");
+        }
+        stmt.executeUpdate(buf.toString());
+
+        // CHAR keys are padded locally, but not in the foreign table
+        stmt.executeUpdate(
+            "create table med_jdbc.small("
+            + "k char(5) not null primary key, w int)");
+        stmt.executeUpdate(
+            "insert into med_jdbc.small values"
+            + " ('K1', 1), ('K7', 7), ('X', 0)");
+        FarragoStatsUtil.setTableRowCount(
+            ((FarragoJdbcEngineConnection) connection).getSession(),
+            "",
+            "MED_JDBC",
+            "SMALL",
+            3);
+    }
+
+    // implement TestCase
+    protected void tearDown()
+        throws Exception
+    {
+        try {
+            stmt.executeUpdate("drop server med_jdbc_stats cascade");
+            stmt.executeUpdate("drop server med_jdbc_nostats cascade");
+            stmt.executeUpdate("drop server med_jdbc_nobind cascade");
+            stmt.executeUpdate("drop schema med_jdbc cascade");
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    /**
+     * Tests that the row count of a foreign table comes from the foreign
+     * server, and that the default estimate is used when statistics are
+     * disabled.
+     */
+    public void testRowCount()
+        throws Exception
+    {
+        resultSet = stmt.executeQuery("select count(*) from sales.emps");
+        assertTrue(resultSet.next());
+        double rowCount = resultSet.getLong(1);
+        resultSet.close();
+        resultSet = null;
+
+        assertEquals(
+            rowCount,
+            getJdbcRowCount("select * from med_jdbc_stats.sales.emps"),
+            0.0);
+
+        // the second statement is planned from cached statistics
+        assertEquals(
+            rowCount,
+            getJdbcRowCount("select * from med_jdbc_stats.sales.emps"),
+            0.0);
+
+        assertEquals(
+            100.0,
+            getJdbcRowCount("select * from med_jdbc_nostats.sales.emps"),
+            0.0);
+    }
+
+    /**
+     * Tests that a pushed-down filter reports fewer rows than its table.
+     */
+    public void testFilterRowCount()
+        throws Exception
+    {
+        double tableRowCount =
+            getJdbcRowCount("select * from med_jdbc_stats.sales.emps");
+        double filteredRowCount =
+            getJdbcRowCount(
+                "select * from med_jdbc_stats.sales.emps where deptno = 20");
+        assertTrue(
+            filteredRowCount + " < " + tableRowCount,
+            filteredRowCount < tableRowCount);
+    }
+
+    /**
+     * Tests an inner bind join whose local keys are CHAR and so padded with
+     * spaces, while the foreign keys are VARCHAR.
+     */
+    public void testBindJoin()
+        throws Exception
+    {
+        String sql =
+            "select cast(s.w as varchar(10)) || ':' || cast(b.v as varchar(10))"
+            + " from med_jdbc.small s, med_jdbc_stats.med_jdbc.big b"
+            + " where s.k = b.k";
+        String plan = explain(sql);
+        assertTrue(plan, plan.contains(BIND_JOIN));
+        resultSet = stmt.executeQuery(sql);
+        compareResultSet(new HashSet<String>(Arrays.asList("1:1", "7:7")));
+    }
+
+    /**
+     * Tests a left outer bind join, which pads local rows without a match.
+     */
+    public void testBindJoinOuter()
+        throws Exception
+    {
+        String sql =
+            "select cast(s.w as varchar(10)) || ':'"
+            + " || coalesce(cast(b.v as varchar(10)), '-')"
+            + " from med_jdbc.small s"
+            + " left outer join med_jdbc_stats.med_jdbc.big b"
+            + " on s.k = b.k";
+        String plan = explain(sql);
+        assertTrue(plan, plan.contains(BIND_JOIN));
+        resultSet = stmt.executeQuery(sql);
+        compareResultSet(
+            new HashSet<String>(Arrays.asList("1:1", "7:7", "0:-")));
+    }
+
+    /**
+     * Tests that no bind join is used when the server disables them, and
+     * that the join returns the same rows.
+     */
+    public void testBindJoinDisabled()
+        throws Exception
+    {
+        String sql =
+            "select cast(s.w as varchar(10)) || ':' || cast(b.v as varchar(10))"
+            + " from med_jdbc.small s, med_jdbc_nobind.med_jdbc.big b"
+            + " where s.k = b.k";
+        String plan = explain(sql);
+        assertFalse(plan, plan.contains(BIND_JOIN));
+        resultSet = stmt.executeQuery(sql);
+        compareResultSet(new HashSet<String>(Arrays.asList("1:1", "7:7")));
+    }
+
+    private void createLoopbackServer(String name, String option)
+        throws SQLException
+    {
+        stmt.executeUpdate(
+            "create server " + name
+            + " foreign data wrapper sys_jdbc options(driver_class"
+            + " 'net.sf.farrago.jdbc.engine.FarragoJdbcEngineDriver',"
+            + " url 'jdbc:farrago:', user_name 'sa', " + option + ")");
+    }
+
+    /**
+     * Returns the row count which the optimizer estimates for the query sent
+     * to the foreign server.
+     *
+     * @param sql query on a foreign table
+     *
+     * @return estimated row count of the MedJdbcQueryRel in its plan
+     */
+    private double getJdbcRowCount(String sql)
+        throws SQLException
+    {
+        String plan = explain("including all attributes ", sql);
+        Matcher matcher = JDBC_ROW_COUNT.matcher(plan);
+        assertTrue(plan, matcher.find());
+        return Double.parseDouble(matcher.group(1));
+    }
+
+    private String explain(String sql)
+        throws SQLException
+    {
+        return explain("", sql);
+    }
+
+    private String explain(String options, String sql)
+        throws SQLException
+    {
+        StringBuilder buf = new StringBuilder();
+        resultSet =
+            stmt.executeQuery("explain plan " + options + "for " + sql);
+        try {
+            while (resultSet.next()) {
+                buf.append(resultSet.getString(1)).append('\n');
+            }
+        } finally {
+            resultSet.close();
+            resultSet = null;
+        }
+        return buf.toString();
+    }
+}
+
+// End FarragoMedJdbcTest.java
@@ -50,7 +50,6 @@ import org.eigenbase.util.*;
  * <li>test explicit discard
  * <li>test that discardAll forces new creations subsequently
  * <li>test with non-uniform numbers of tires
- * <li>test other victimization policies once they exist
  * </ul>
  *
  * @author John Sichi
@@ -424,12 +423,148 @@ public class FarragoObjectCacheTest
         runMultipleThreads(false);
     }
 
+    /**
+     * Tests a multi-threaded scenario with objects pinned exclusively in a
+     * segmented cache.
+     */
+    public void testMultipleThreadsExclusiveSegmented()
+    {
+        runMultipleThreads(true, 4);
+    }
+
+    /**
+     * Tests a multi-threaded scenario with objects pinned as shared in a
+     * segmented cache.
+     */
+    public void testMultipleThreadsSharedSegmented()
+    {
+        runMultipleThreads(false, 4);
+    }
+
+    /**
+     * Tests that a segmented cache routes pins, unpins and victimization
+     * through its segments while preserving sharing semantics.
+     */
+    public void testOneThreadSharedSegmented()
+    {
+        agency = new RentalCarAgency(false, MAX_TIRES, 4);
+        RentalCarAgreement a1 = agency.rentCar("Economy 4-door");
+        RentalCarAgreement a2 = agency.rentCar("Economy 4-door");
+        RentalCarAgreement a3 = agency.rentCar("Compact 2-door");
+
+        // same description shares the same car; a different one doesn't
+        assertSame(a1.getCar(), a2.getCar());
+        assertNotSame(a1.getCar(), a3.getCar());
+        assertEquals(2, nCarsCreated.get());
+        assertTrue(agency.getTiresInFleet() > 0);
+
+        agency.returnCar(a1);
+        agency.returnCar(a2);
+        agency.returnCar(a3);
+        assertEquals(0, nCarsDestroyed.get());
+
+        // Let tearDown take care of cleanup verification.
+    }
+
+    /**
+     * Tests a multi-threaded scenario with objects pinned as shared, using
+     * the TinyLFU victimization policy.
+     */
+    public void testMultipleThreadsSharedTinyLfu()
+    {
+        runMultipleThreads(false, 0, FarragoTinyLfuVictimPolicy.FACTORY);
+    }
+
+    /**
+     * Tests a multi-threaded scenario with objects pinned exclusively, using
+     * the cost-aware victimization policy in a segmented cache.
+     */
+    public void testMultipleThreadsExclusiveCostAwareSegmented()
+    {
+        runMultipleThreads(true, 4, FarragoCostAwareVictimPolicy.FACTORY);
+    }
+
+    /**
+     * Tests that the TinyLFU policy keeps a frequently rented car in the
+     * fleet while a stream of one-off rentals churns through the rest of it
+     * (whereas LRU would have recycled it).
+     */
+    public void testOneThreadTinyLfuScanResistance()
+    {
+        agency =
+            new RentalCarAgency(
+                false,
+                40,
+                0,
+                FarragoTinyLfuVictimPolicy.FACTORY);
+        RentalCar favorite = rentAndReturn("Commuter 4-door");
+        for (int i = 0; i < 5; ++i) {
+            assertSame(favorite, rentAndReturn("Commuter 4-door"));
+        }
+        for (int i = 0; i < 100; ++i) {
+            rentAndReturn("Convertible" + i);
+        }
+        assertSame(favorite, rentAndReturn("Commuter 4-door"));
+        assertTrue(agency.getTiresInFleet() <= 40);
+
+        // Let tearDown take care of cleanup verification.
+    }
+
+    /**
+     * Tests that the cost-aware policy keeps a car which was expensive to
+     * build in the fleet while cheap one-off rentals churn through the rest
+     * of it.
+     */
+    public void testOneThreadCostAwareVictimization()
+    {
+        agency =
+            new RentalCarAgency(
+                false,
+                40,
+                0,
+                FarragoCostAwareVictimPolicy.FACTORY);
+        RentalCar limo = rentAndReturn("Custom Limousine");
+        for (int i = 0; i < 100; ++i) {
+            rentAndReturn("Convertible" + i);
+        }
+        assertSame(limo, rentAndReturn("Custom Limousine"));
+        assertTrue(agency.getTiresInFleet() <= 40);
+
+        // Let tearDown take care of cleanup verification.
+    }
+
+    private RentalCar rentAndReturn(String description)
+    {
+        RentalCarAgreement agreement = agency.rentCar(description);
+        RentalCar car = agreement.getCar();
+        car.drive(10);
+        agency.returnCar(agreement);
+        return car;
+    }
+
     private void runMultipleThreads(boolean exclusive)
+    {
+        runMultipleThreads(exclusive, 0);
+    }
+
+    private void runMultipleThreads(boolean exclusive, int nSegments)
+    {
+        runMultipleThreads(
+            exclusive,
+            nSegments,
+            FarragoLruVictimPolicy.FACTORY);
+    }
+
+    private void runMultipleThreads(
+        boolean exclusive,
+        int nSegments,
+        FarragoCacheVictimPolicyFactory policyFactory)
     {
         // Start a new agency with specified sharing mode.  Use a low limit for
         // number of tires in order to test cache victimization.  7 car
         // descriptions times 4 tires is 28 tires, so set limit to 25.
-        agency = new RentalCarAgency(exclusive, 25);
+        agency =
+            new RentalCarAgency(exclusive, 25, nSegments, policyFactory);
 
         List<String> carDescriptions =
             Arrays.asList(
@@ -595,6 +730,21 @@ public class FarragoObjectCacheTest
             }
         }
 
+        /**
+         * Applies custom work to this car, if its description calls for it.
+         * This takes a while, making the car expensive to replace.
+         */
+        public void customize()
+        {
+            if (description.indexOf("Custom") > -1) {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException ex) {
+                    throw Util.newInternal(ex);
+                }
+            }
+        }
+
         /**
          * @return whether this car is absolutely too old to be in service as a
          * rental car any more
@@ -671,14 +821,61 @@ public class FarragoObjectCacheTest
          * any one time
          */
         RentalCarAgency(boolean exclusiveRentals, long maxTires)
+        {
+            this(exclusiveRentals, maxTires, 0);
+        }
+
+        /**
+         * Creates a new agency whose fleet is divided among several lots.
+         *
+         * @param exclusiveRentals as for the two-argument constructor
+         * @param maxTires maximum number of tires which can exist in fleet at
+         * any one time
+         * @param nLots number of segments in the fleet cache, or 0 for an
+         * unsegmented cache
+         */
+        RentalCarAgency(boolean exclusiveRentals, long maxTires, int nLots)
+        {
+            this(
+                exclusiveRentals,
+                maxTires,
+                nLots,
+                FarragoLruVictimPolicy.FACTORY);
+        }
+
+        /**
+         * Creates a new agency which uses a particular policy to decide which
+         * cars to recycle.
+         *
+         * @param exclusiveRentals as for the two-argument constructor
+         * @param maxTires maximum number of tires which can exist in fleet at
+         * any one time
+         * @param nLots number of segments in the fleet cache, or 0 for an
+         * unsegmented cache
+         * @param policyFactory factory for victimization policies
+         */
+        RentalCarAgency(
+            boolean exclusiveRentals,
+            long maxTires,
+            int nLots,
+            FarragoCacheVictimPolicyFactory policyFactory)
         {
             this.exclusiveRentals = exclusiveRentals;
             owner = new FarragoCompoundAllocation();
-            fleet =
-                new FarragoObjectCache(
-                    owner,
-                    maxTires,
-                    new FarragoLruVictimPolicy());
+            if (nLots == 0) {
+                fleet =
+                    new FarragoObjectCache(
+                        owner,
+                        maxTires,
+                        policyFactory.newVictimPolicy());
+            } else {
+                fleet =
+                    new FarragoSegmentedObjectCache(
+                        owner,
+                        maxTires,
+                        nLots,
+                        policyFactory);
+            }
             assertEquals(maxTires, fleet.getBytesMax());
         }
 
@@ -721,6 +918,7 @@ public class FarragoObjectCacheTest
             String description = (String) key;
             RentalCar car = new RentalCar(description);
             car.assureQuality();
+            car.customize();
 
             // for now, all cars have four tires; "smoking" cars
             // can never be shared or even reused
@@ -21,8 +21,14 @@
 */
 package net.sf.farrago.test;
 
+import java.sql.*;
+
+import java.util.*;
+
+import net.sf.farrago.db.*;
 import net.sf.farrago.jdbc.*;
 import net.sf.farrago.jdbc.client.*;
+import net.sf.farrago.jdbc.engine.*;
 import net.sf.farrago.server.*;
 
 
@@ -74,6 +80,64 @@ public class FarragoVjdbcServerTest
         // Bascially this is a bad method name since either it returns the
         // original exception or creates a whole new one and discards the old.
     }
+
+    /**
+     * Tests that {@link FarragoVjdbcRowPacketSizer} sizes row packets by the
+     * width of the result set most recently returned through a wrapped
+     * connection, forgets that width once used, and wraps consistently,
+     * without getting in the way of the results themselves.
+     */
+    public void testRowPacketSizer()
+        throws Exception
+    {
+        FarragoJdbcEngineDriver engineDriver = new FarragoJdbcEngineDriver();
+        Properties props = new Properties();
+        props.setProperty("user", "sa");
+        FarragoVjdbcRowPacketSizer sizer = new FarragoVjdbcRowPacketSizer(700);
+        Connection connection =
+            sizer.wrapConnection(
+                engineDriver.connect(engineDriver.getBaseUrl(), props));
+        try {
+            // proxies keep the driver's own interfaces
+            assertTrue(connection instanceof FarragoConnection);
+
+            // INTEGER plus CHAR(3) is estimated at 4 + 3 bytes per row
+            Statement stmt = connection.createStatement();
+            assertSame(connection, stmt.getConnection());
+            ResultSet resultSet =
+                stmt.executeQuery("values (1, 'abc'), (2, 'def')");
+            assertSame(stmt, resultSet.getStatement());
+            assertEquals(100, sizer.getRowPacketSize(200));
+
+            // the width is consumed by the first request
+            assertEquals(200, sizer.getRowPacketSize(200));
+            int rowCount = 0;
+            while (resultSet.next()) {
+                ++rowCount;
+            }
+            assertEquals(2, rowCount);
+            resultSet.close();
+
+            // a wide row still gets at least one row per packet
+            PreparedStatement pstmt =
+                connection.prepareStatement(
+                    "values cast(? as varchar(1000))");
+            pstmt.setString(1, "x");
+            resultSet = pstmt.executeQuery();
+            assertEquals(1, sizer.getRowPacketSize(200));
+            assertTrue(resultSet.next());
+            assertEquals("x", resultSet.getString(1));
+            resultSet.close();
+
+            // a result set closed before the request is forgotten
+            resultSet = stmt.executeQuery("values 1");
+            resultSet.close();
+            assertEquals(200, sizer.getRowPacketSize(200));
+        } finally {
+            connection.close();
+        }
+        FarragoDbSingleton.shutdown();
+    }
 }
 
 // End FarragoVjdbcServerTest.java
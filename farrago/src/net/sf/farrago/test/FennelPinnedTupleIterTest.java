@@ -0,0 +1,201 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.test;
+
+import java.nio.*;
+
+import java.util.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.fennel.*;
+import net.sf.farrago.runtime.*;
+
+import org.eigenbase.runtime.*;
+
+
+/**
+ * Unit test for {@link FennelPinnedTupleIter}, reading from a simulated
+ * stream whose output spans several pages.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class FennelPinnedTupleIterTest
+    extends TestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Size of each tuple: a single 8-byte value, which is aligned whatever
+     * the native tuple alignment.
+     */
+    private static final int TUPLE_SIZE = 8;
+
+    private static final int PAGE_SIZE = 64;
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Tests that every tuple is read from a stream which returns several
+     * pages, including a partial last page, and that each fetch releases the
+     * bytes of the previous one.
+     */
+    public void testMultiPage()
+    {
+        // 2.5 pages
+        MockStreamGraph streamGraph = new MockStreamGraph(20);
+        FennelPinnedTupleIter iter = newIter(streamGraph);
+        assertTuples(20, iter);
+        assertEquals(4, streamGraph.fetchCount);
+        iter.closeAllocation();
+    }
+
+    /**
+     * Tests that restarting the iterator part way through a page, and after
+     * reaching the end of the stream, restarts the stream and reads it again
+     * from the beginning.
+     */
+    public void testRestart()
+    {
+        MockStreamGraph streamGraph = new MockStreamGraph(20);
+        FennelPinnedTupleIter iter = newIter(streamGraph);
+
+        // stop in the middle of the second page
+        for (int i = 0; i < 11; ++i) {
+            assertEquals(Long.valueOf(i), iter.fetchNext());
+        }
+        iter.restart();
+        assertEquals(1, streamGraph.restartCount);
+        assertTuples(20, iter);
+
+        iter.restart();
+        assertEquals(2, streamGraph.restartCount);
+        assertTuples(20, iter);
+        iter.closeAllocation();
+    }
+
+    /**
+     * Tests an empty stream.
+     */
+    public void testEmpty()
+    {
+        MockStreamGraph streamGraph = new MockStreamGraph(0);
+        FennelPinnedTupleIter iter = newIter(streamGraph);
+        assertTuples(0, iter);
+        iter.restart();
+        assertTuples(0, iter);
+        iter.closeAllocation();
+    }
+
+    private static FennelPinnedTupleIter newIter(MockStreamGraph streamGraph)
+    {
+        return new FennelPinnedTupleIter(
+            new LongTupleReader(),
+            streamGraph,
+            null,
+            PAGE_SIZE);
+    }
+
+    private static void assertTuples(int expectedCount, TupleIter iter)
+    {
+        for (int i = 0; i < expectedCount; ++i) {
+            assertEquals(Long.valueOf(i), iter.fetchNext());
+        }
+        assertEquals(TupleIter.NoDataReason.END_OF_DATA, iter.fetchNext());
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Reads tuples consisting of a single long.
+     */
+    private static class LongTupleReader
+        implements FennelDirectTupleReader
+    {
+        // implement FennelTupleReader
+        public Object unmarshalTuple(
+            ByteBuffer byteBuffer,
+            byte [] byteArray,
+            ByteBuffer sliceBuffer)
+        {
+            assertNull(byteArray);
+            assertTrue(byteBuffer.isDirect());
+            return sliceBuffer.getLong();
+        }
+    }
+
+    /**
+     * Simulates a stream producing a sequence of longs, one per tuple, and
+     * checks that the iterator reports the bytes it has consumed as Fennel
+     * expects: on each fetch, the number returned by the previous fetch, or
+     * 0 after a restart.
+     */
+    private static class MockStreamGraph
+        extends FennelStreamGraph
+    {
+        private final int tupleCount;
+        private int nextTuple;
+        private int cbOutstanding;
+        int fetchCount;
+        int restartCount;
+
+        MockStreamGraph(int tupleCount)
+        {
+            this.tupleCount = tupleCount;
+        }
+
+        // override FennelStreamGraph
+        public ByteBuffer fetchPinned(
+            FennelStreamHandle streamHandle,
+            int cbPinned,
+            int cbLimit)
+        {
+            ++fetchCount;
+            assertEquals(cbOutstanding, cbPinned);
+            assertEquals(PAGE_SIZE, cbLimit);
+            if (nextTuple == tupleCount) {
+                cbOutstanding = 0;
+                return null;
+            }
+            int n = Math.min(cbLimit / TUPLE_SIZE, tupleCount - nextTuple);
+            ByteBuffer page = ByteBuffer.allocateDirect(n * TUPLE_SIZE);
+            page.order(ByteOrder.nativeOrder());
+            for (int i = 0; i < n; ++i) {
+                page.putLong(nextTuple++);
+            }
+            page.flip();
+            cbOutstanding = n * TUPLE_SIZE;
+            return page;
+        }
+
+        // override FennelStreamGraph
+        public void restart(FennelStreamHandle streamHandle)
+        {
+            ++restartCount;
+            nextTuple = 0;
+            cbOutstanding = 0;
+        }
+    }
+}
+
+// End FennelPinnedTupleIterTest.java
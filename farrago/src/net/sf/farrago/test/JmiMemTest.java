@@ -591,6 +591,11 @@ public class JmiMemTest
             throw new UnsupportedOperationException();
         }
 
+        public FarragoStatisticsCache getStatisticsCache()
+        {
+            throw new UnsupportedOperationException();
+        }
+
         public String expandProperties(String value)
         {
             throw new UnsupportedOperationException();
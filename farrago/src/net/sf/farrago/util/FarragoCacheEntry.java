@@ -47,6 +47,13 @@ public class FarragoCacheEntry
     boolean isReusable;
     boolean isInitialized;
 
+    /**
+     * Time in nanoseconds spent constructing the value (i.e. in the
+     * factory's initializeEntry call); 0 until initialized.  Volatile since
+     * victim policies read it while holding only the cache map's monitor.
+     */
+    volatile long initializationNanos;
+
     /**
      * The cache this entry is associated with
      */
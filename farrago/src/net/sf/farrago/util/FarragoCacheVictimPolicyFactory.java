@@ -0,0 +1,43 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.util;
+
+/**
+ * FarragoCacheVictimPolicyFactory creates instances of a {@link
+ * FarragoCacheVictimPolicy}. Since a victim policy keeps per-cache state, a
+ * cache which is split into several independently victimized parts (such as
+ * {@link FarragoSegmentedObjectCache}) needs one policy instance per part.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public interface FarragoCacheVictimPolicyFactory
+{
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @return a new victim policy with no registered entries
+     */
+    public FarragoCacheVictimPolicy newVictimPolicy();
+}
+
+// End FarragoCacheVictimPolicyFactory.java
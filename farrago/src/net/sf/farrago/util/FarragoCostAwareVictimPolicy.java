@@ -0,0 +1,250 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.util;
+
+import java.util.*;
+
+
+/**
+ * FarragoCostAwareVictimPolicy implements a cost-aware caching policy for the
+ * FarragoObjectCache, based on the GreedyDual-Size-Frequency algorithm. Each
+ * entry is assigned a priority
+ *
+ * <blockquote><code>
+ * priority = inflation + hits * constructionCost / memoryUsage
+ * </code></blockquote>
+ *
+ * where constructionCost is the time which was spent building the entry's
+ * value (for the code cache, that is the time to optimize the statement and
+ * compile the generated Java code), and inflation is the priority of the
+ * most recent victim at the time the entry was last accessed. Entries with
+ * the lowest priority are victimized first, so cheap-to-rebuild, bulky or
+ * rarely used entries go before expensive, compact or popular ones. Rising
+ * inflation ages out entries which were once popular but are no longer
+ * being accessed.
+ *
+ * <p>Entries which have not yet been initialized have no known cost, and so
+ * are treated as having zero cost until they are.
+ *
+ * <p>This class assumes that synchronization is handled by its caller.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class FarragoCostAwareVictimPolicy
+    implements FarragoCacheVictimPolicy
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Factory for cost-aware policies, for use with caches which need one
+     * policy instance per segment.
+     */
+    public static final FarragoCacheVictimPolicyFactory FACTORY =
+        new FarragoCacheVictimPolicyFactory() {
+            public FarragoCacheVictimPolicy newVictimPolicy()
+            {
+                return new FarragoCostAwareVictimPolicy();
+            }
+        };
+
+    //~ Instance fields --------------------------------------------------------
+
+    /**
+     * Entries currently in the cache, in LRU order (used to break ties).
+     */
+    private final LinkedHashSet<CostAwareEntry> entries;
+
+    /**
+     * Priority of the most recently victimized entry.
+     */
+    private double inflation;
+
+    //~ Constructors -----------------------------------------------------------
+
+    public FarragoCostAwareVictimPolicy()
+    {
+        entries = new LinkedHashSet<CostAwareEntry>();
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement FarragoCacheVictimPolicy
+    public FarragoCacheEntry newEntry(FarragoObjectCache parentCache)
+    {
+        return new CostAwareEntry(parentCache);
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public void registerEntry(FarragoCacheEntry entry)
+    {
+        CostAwareEntry costAwareEntry = (CostAwareEntry) entry;
+        costAwareEntry.hits = 1;
+        costAwareEntry.baseline = inflation;
+        entries.add(costAwareEntry);
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public void unregisterEntry(Iterator victimRange)
+    {
+        victimRange.remove();
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public void unregisterEntry(FarragoCacheEntry entry)
+    {
+        boolean rc = entries.remove(entry);
+        assert (rc);
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public void accessEntry(FarragoCacheEntry entry)
+    {
+        CostAwareEntry costAwareEntry = (CostAwareEntry) entry;
+        boolean rc = entries.remove(costAwareEntry);
+        assert (rc);
+        ++costAwareEntry.hits;
+        costAwareEntry.baseline = inflation;
+        entries.add(costAwareEntry);
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public Iterator<FarragoCacheEntry> getVictimIterator()
+    {
+        // Priorities are computed here rather than on access, since an entry's
+        // cost and size are only known once it has been initialized, which
+        // happens after it has been registered.
+        List<CostAwareEntry> candidates =
+            new ArrayList<CostAwareEntry>(entries);
+        for (CostAwareEntry entry : candidates) {
+            entry.priority = computePriority(entry);
+        }
+
+        // NOTE: Collections.sort is stable, so LRU order is preserved among
+        // entries with equal priorities
+        Collections.sort(
+            candidates,
+            new Comparator<CostAwareEntry>() {
+                public int compare(CostAwareEntry e1, CostAwareEntry e2)
+                {
+                    return Double.compare(e1.priority, e2.priority);
+                }
+            });
+        return new VictimIterator(candidates.iterator());
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public void clearCache()
+    {
+        entries.clear();
+        inflation = 0;
+    }
+
+    /**
+     * Computes the current priority of an entry.
+     *
+     * @param entry cache entry
+     *
+     * @return priority; entries with lower priority are victimized first
+     */
+    static double computePriority(CostAwareEntry entry)
+    {
+        if (!entry.isInitialized()) {
+            return entry.baseline;
+        }
+        long memoryUsage = Math.max(entry.memoryUsage.get(), 1);
+        return entry.baseline
+            + ((double) entry.hits * entry.initializationNanos / memoryUsage);
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Cache entry which tracks the information needed to compute its
+     * priority.
+     */
+    static class CostAwareEntry
+        extends FarragoCacheEntry
+    {
+        /**
+         * Number of times this entry has been requested while cached.
+         */
+        long hits;
+
+        /**
+         * Inflation value as of the most recent request.
+         */
+        double baseline;
+
+        /**
+         * Priority as of the most recent call to getVictimIterator.
+         */
+        double priority;
+
+        CostAwareEntry(FarragoObjectCache parentCache)
+        {
+            super(parentCache);
+        }
+    }
+
+    /**
+     * Iterator over a snapshot of victim candidates; removal unregisters the
+     * current entry and raises the inflation value to its priority.
+     */
+    private class VictimIterator
+        implements Iterator<FarragoCacheEntry>
+    {
+        private final Iterator<CostAwareEntry> snapshotIter;
+        private CostAwareEntry current;
+
+        VictimIterator(Iterator<CostAwareEntry> snapshotIter)
+        {
+            this.snapshotIter = snapshotIter;
+        }
+
+        // implement Iterator
+        public boolean hasNext()
+        {
+            return snapshotIter.hasNext();
+        }
+
+        // implement Iterator
+        public FarragoCacheEntry next()
+        {
+            current = snapshotIter.next();
+            return current;
+        }
+
+        // implement Iterator
+        public void remove()
+        {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+            unregisterEntry(current);
+            inflation = Math.max(inflation, current.priority);
+            current = null;
+        }
+    }
+}
+
+// End FarragoCostAwareVictimPolicy.java
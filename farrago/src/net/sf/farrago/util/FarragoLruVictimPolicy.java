@@ -37,6 +37,20 @@ import java.util.*;
 public class FarragoLruVictimPolicy
     implements FarragoCacheVictimPolicy
 {
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Factory for LRU policies, for use with caches which need one policy
+     * instance per segment.
+     */
+    public static final FarragoCacheVictimPolicyFactory FACTORY =
+        new FarragoCacheVictimPolicyFactory() {
+            public FarragoCacheVictimPolicy newVictimPolicy()
+            {
+                return new FarragoLruVictimPolicy();
+            }
+        };
+
     //~ Instance fields --------------------------------------------------------
 
     /**
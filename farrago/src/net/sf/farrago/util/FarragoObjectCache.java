@@ -97,6 +97,22 @@ public class FarragoObjectCache
         this.victimPolicy = victimPolicy;
     }
 
+    /**
+     * Creates a cache which holds no entries itself. This is for use by
+     * subclasses which override all public methods to delegate to other
+     * caches, such as {@link FarragoSegmentedObjectCache}.
+     *
+     * @param owner FarragoAllocationOwner for this cache
+     * @param bytesMax maximum number of bytes to cache
+     */
+    protected FarragoObjectCache(
+        FarragoAllocationOwner owner,
+        long bytesMax)
+    {
+        owner.addAllocation(this);
+        this.bytesMax = bytesMax;
+    }
+
     //~ Methods ----------------------------------------------------------------
 
     /**
@@ -181,9 +197,15 @@ public class FarragoObjectCache
                             // lock sequence entry-then-map.  That's why
                             // we don't allow locking of entries when a
                             // lock on the map is held.
+                            long startNanos = System.nanoTime();
                             factory.initializeEntry(key, entry);
                             assert (entry.isInitialized());
 
+                            // remember what this entry cost to build, for
+                            // the benefit of cost-aware victim policies
+                            entry.initializationNanos =
+                                System.nanoTime() - startNanos;
+
                             // TODO jvs 10-Jun-2007:  assert that
                             // new value is not stale-on-arrival?  Maybe
                             // only when trace is on?
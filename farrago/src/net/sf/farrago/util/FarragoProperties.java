@@ -76,6 +76,24 @@ public class FarragoProperties
     public final StringProperty catalogDir =
         new StringProperty(this, "net.sf.farrago.catalog", null);
 
+    /**
+     * The optional string property "net.sf.farrago.codeCacheDir" is the path
+     * to a directory in which prepared statements are persisted so that the
+     * code cache can be repopulated after a restart without re-planning. If
+     * not set, prepared statements are not persisted.
+     *
+     * <p>Persisted statements contain generated code which is loaded into the
+     * server. The directory is created accessible only by the server's user,
+     * and each entry is signed with a key kept in the file "codeCache.key" in
+     * the catalog directory (see {@link #getCatalogDir}); entries which fail
+     * verification are discarded. Do not point this at a directory, or keep
+     * the catalog in a directory, which other users can write. Entries are
+     * discarded when the code cache is flushed or when calcVirtualMachine is
+     * changed.
+     */
+    public final StringProperty codeCacheDir =
+        new StringProperty(this, "net.sf.farrago.codeCacheDir", null);
+
     /**
      * The optional string property
      * "net.sf.farrago.defaultSessionFactoryLibraryName" is the name of the
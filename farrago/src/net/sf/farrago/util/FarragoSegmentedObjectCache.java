@@ -0,0 +1,236 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.util;
+
+import java.util.*;
+
+
+/**
+ * FarragoSegmentedObjectCache is a {@link FarragoObjectCache} which splits its
+ * keyspace into a fixed number of independent segments, each of which is an
+ * ordinary FarragoObjectCache with its own lock, victim policy and share of the
+ * memory limit.
+ *
+ * <p>A key always maps to the same segment, so pin, exclusive and reusable
+ * semantics are exactly as for an unsegmented cache. The difference is that
+ * callers working on keys in different segments never contend for the same
+ * monitor, and victimization only considers entries within the segment which
+ * went over its limit. The price is that the memory limit is enforced per
+ * segment, so a single entry larger than a segment's share cannot stay cached
+ * once unpinned; choose the segment count with that in mind (see {@link
+ * #chooseSegmentCount}).
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class FarragoSegmentedObjectCache
+    extends FarragoObjectCache
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Smallest memory limit {@link #chooseSegmentCount} will give a segment.
+     */
+    public static final long MIN_SEGMENT_BYTES = 512 * 1024;
+
+    /**
+     * Largest number of segments {@link #chooseSegmentCount} will choose.
+     */
+    public static final int MAX_SEGMENTS = 64;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final FarragoObjectCache [] segments;
+    private final int segmentMask;
+
+    /**
+     * Owner of the segments, so that they are closed along with this cache.
+     */
+    private final FarragoCompoundAllocation segmentOwner;
+
+    private long bytesMax;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates an empty segmented cache.
+     *
+     * @param owner FarragoAllocationOwner for this cache, to make sure
+     * everything gets discarded eventually
+     * @param bytesMax maximum number of bytes to cache, divided evenly among
+     * segments
+     * @param nSegments number of segments; must be a power of two
+     * @param victimPolicyFactory creates the victimization policy for each
+     * segment
+     */
+    public FarragoSegmentedObjectCache(
+        FarragoAllocationOwner owner,
+        long bytesMax,
+        int nSegments,
+        FarragoCacheVictimPolicyFactory victimPolicyFactory)
+    {
+        super(owner, bytesMax);
+        assert (nSegments > 0) && ((nSegments & (nSegments - 1)) == 0)
+            : nSegments;
+        this.bytesMax = bytesMax;
+        segmentMask = nSegments - 1;
+        segmentOwner = new FarragoCompoundAllocation();
+        segments = new FarragoObjectCache[nSegments];
+        for (int i = 0; i < nSegments; ++i) {
+            segments[i] =
+                new FarragoObjectCache(
+                    segmentOwner,
+                    getSegmentBytesMax(bytesMax, nSegments),
+                    victimPolicyFactory.newVictimPolicy());
+        }
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Chooses a segment count for a cache: roughly one segment per processor
+     * (times a small factor to reduce collisions), but never so many that a
+     * segment's share of the memory limit drops below {@link
+     * #MIN_SEGMENT_BYTES}.
+     *
+     * @param bytesMax memory limit for the whole cache
+     * @param nProcessors number of processors which may access the cache
+     *
+     * @return power of two between 1 and {@link #MAX_SEGMENTS}
+     */
+    public static int chooseSegmentCount(long bytesMax, int nProcessors)
+    {
+        long limit = Math.min(4L * nProcessors, MAX_SEGMENTS);
+        limit = Math.min(limit, bytesMax / MIN_SEGMENT_BYTES);
+        int nSegments = 1;
+        while ((nSegments * 2) <= limit) {
+            nSegments *= 2;
+        }
+        return nSegments;
+    }
+
+    private static long getSegmentBytesMax(long bytesMax, int nSegments)
+    {
+        if (bytesMax == Long.MAX_VALUE) {
+            // unlimited stays unlimited
+            return bytesMax;
+        }
+        return bytesMax / nSegments;
+    }
+
+    /**
+     * @return number of segments in this cache
+     */
+    public int getSegmentCount()
+    {
+        return segments.length;
+    }
+
+    private FarragoObjectCache getSegment(Object key)
+    {
+        // spread the hash bits, since keys such as SQL strings often differ
+        // only in their high-order hash bits
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        h ^= (h >>> 8);
+        return segments[h & segmentMask];
+    }
+
+    // override FarragoObjectCache
+    public Entry pin(
+        Object key,
+        CachedObjectFactory factory,
+        boolean exclusive)
+    {
+        return getSegment(key).pin(key, factory, exclusive);
+    }
+
+    // override FarragoObjectCache
+    public void unpin(Entry pinnedEntry)
+    {
+        // route to the segment which created the entry
+        ((FarragoCacheEntry) pinnedEntry).parentCache.unpin(pinnedEntry);
+    }
+
+    // override FarragoObjectCache
+    public void tryUnpin(String key)
+    {
+        getSegment(key).tryUnpin(key);
+    }
+
+    // override FarragoObjectCache
+    public void discard(Object key)
+    {
+        getSegment(key).discard(key);
+    }
+
+    // override FarragoObjectCache
+    public void discardAll()
+    {
+        for (FarragoObjectCache segment : segments) {
+            segment.discardAll();
+        }
+    }
+
+    // override FarragoObjectCache
+    public void setMaxBytes(long bytesMaxNew)
+    {
+        bytesMax = bytesMaxNew;
+        long segmentBytesMax =
+            getSegmentBytesMax(bytesMaxNew, segments.length);
+        for (FarragoObjectCache segment : segments) {
+            segment.setMaxBytes(segmentBytesMax);
+        }
+    }
+
+    // override FarragoObjectCache
+    public long getBytesMax()
+    {
+        return bytesMax;
+    }
+
+    // override FarragoObjectCache
+    public long getBytesCached()
+    {
+        long bytesCached = 0;
+        for (FarragoObjectCache segment : segments) {
+            bytesCached += segment.getBytesCached();
+        }
+        return bytesCached;
+    }
+
+    // override FarragoObjectCache
+    public void dumpCache()
+    {
+        for (FarragoObjectCache segment : segments) {
+            segment.dumpCache();
+        }
+    }
+
+    // override FarragoObjectCache
+    public void closeAllocation()
+    {
+        segmentOwner.closeAllocation();
+    }
+}
+
+// End FarragoSegmentedObjectCache.java
@@ -0,0 +1,371 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.util;
+
+import java.util.*;
+
+
+/**
+ * FarragoTinyLfuVictimPolicy implements a frequency-aware caching policy for
+ * the FarragoObjectCache, modeled on W-TinyLFU. It is intended for caches
+ * such as the code cache, where a burst of one-off requests (e.g. ad hoc SQL)
+ * would otherwise flush out entries which are requested over and over (e.g.
+ * recurring reports).
+ *
+ * <p>Every key which is requested from the cache, whether it is found or not,
+ * is counted in a small approximate frequency sketch (a count-min sketch with
+ * 4-bit counters). The counters are periodically halved so that the history
+ * ages, which lets the policy adapt when the workload changes.
+ *
+ * <p>Resident entries are kept in two LRU segments. New entries start out in
+ * the probationary segment, and are promoted to the protected segment when
+ * they are accessed again while still cached. Entries for keys which the
+ * sketch already knows to be popular (typically a hot entry which was
+ * discarded earlier and is now being rebuilt) are admitted directly into the
+ * protected segment. The protected segment is limited to a fixed percentage
+ * of the entries; when it overflows, its least recently used entries are
+ * demoted back to probation.
+ *
+ * <p>Victims are chosen from the probationary segment first, in order of
+ * increasing estimated frequency (LRU order among entries with the same
+ * frequency), and only then from the protected segment in LRU order. Hence a
+ * stream of entries which are only ever used once evict each other rather
+ * than the frequently used ones.
+ *
+ * <p>This class assumes that synchronization is handled by its caller.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class FarragoTinyLfuVictimPolicy
+    implements FarragoCacheVictimPolicy
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Default number of counters in each row of the frequency sketch.
+     */
+    public static final int DEFAULT_SKETCH_WIDTH = 4096;
+
+    /**
+     * Default percentage of entries which may reside in the protected segment.
+     */
+    public static final int DEFAULT_PROTECTED_PERCENTAGE = 80;
+
+    /**
+     * Estimated frequency at or above which a newly registered entry is
+     * admitted directly into the protected segment.
+     */
+    static final int HOT_FREQUENCY = 3;
+
+    /**
+     * Factory for TinyLFU policies with default settings, for use with caches
+     * which need one policy instance per segment.
+     */
+    public static final FarragoCacheVictimPolicyFactory FACTORY =
+        new FarragoCacheVictimPolicyFactory() {
+            public FarragoCacheVictimPolicy newVictimPolicy()
+            {
+                return new FarragoTinyLfuVictimPolicy();
+            }
+        };
+
+    //~ Instance fields --------------------------------------------------------
+
+    /**
+     * Entries which have not yet proven themselves, in LRU order.
+     */
+    private final LinkedHashSet<FarragoCacheEntry> probation;
+
+    /**
+     * Entries which have been accessed at least twice, in LRU order.
+     */
+    private final LinkedHashSet<FarragoCacheEntry> protectedSegment;
+
+    private final FrequencySketch sketch;
+
+    private final int protectedPercentage;
+
+    //~ Constructors -----------------------------------------------------------
+
+    public FarragoTinyLfuVictimPolicy()
+    {
+        this(DEFAULT_SKETCH_WIDTH, DEFAULT_PROTECTED_PERCENTAGE);
+    }
+
+    /**
+     * Creates a new FarragoTinyLfuVictimPolicy.
+     *
+     * @param sketchWidth number of counters in each row of the frequency
+     * sketch; rounded up to a power of 2
+     * @param protectedPercentage percentage of entries which may reside in
+     * the protected segment, between 0 and 100
+     */
+    public FarragoTinyLfuVictimPolicy(int sketchWidth, int protectedPercentage)
+    {
+        assert (protectedPercentage >= 0) && (protectedPercentage <= 100);
+        probation = new LinkedHashSet<FarragoCacheEntry>();
+        protectedSegment = new LinkedHashSet<FarragoCacheEntry>();
+        sketch = new FrequencySketch(sketchWidth);
+        this.protectedPercentage = protectedPercentage;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement FarragoCacheVictimPolicy
+    public FarragoCacheEntry newEntry(FarragoObjectCache parentCache)
+    {
+        return new FarragoCacheEntry(parentCache);
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public void registerEntry(FarragoCacheEntry entry)
+    {
+        // a miss counts as a request for the key, too
+        sketch.increment(entry.getKey());
+        if (sketch.frequency(entry.getKey()) >= HOT_FREQUENCY) {
+            protectedSegment.add(entry);
+            demoteOverflow();
+        } else {
+            probation.add(entry);
+        }
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public void unregisterEntry(Iterator victimRange)
+    {
+        victimRange.remove();
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public void unregisterEntry(FarragoCacheEntry entry)
+    {
+        boolean rc = probation.remove(entry) || protectedSegment.remove(entry);
+        assert (rc);
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public void accessEntry(FarragoCacheEntry entry)
+    {
+        sketch.increment(entry.getKey());
+        if (probation.remove(entry)) {
+            protectedSegment.add(entry);
+            demoteOverflow();
+        } else {
+            // move the entry to the most recently used end
+            boolean rc = protectedSegment.remove(entry);
+            assert (rc);
+            protectedSegment.add(entry);
+        }
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public Iterator<FarragoCacheEntry> getVictimIterator()
+    {
+        // Order probationary entries by estimated frequency.  This is only
+        // done when the cache is overdrawn, so the sort cost is paid once
+        // per discard pass rather than once per access.
+        List<FarragoCacheEntry> candidates =
+            new ArrayList<FarragoCacheEntry>(probation);
+        final Map<FarragoCacheEntry, Integer> frequencies =
+            new IdentityHashMap<FarragoCacheEntry, Integer>();
+        for (FarragoCacheEntry entry : candidates) {
+            frequencies.put(entry, sketch.frequency(entry.getKey()));
+        }
+
+        // NOTE: Collections.sort is stable, so LRU order is preserved among
+        // entries with equal frequencies
+        Collections.sort(
+            candidates,
+            new Comparator<FarragoCacheEntry>() {
+                public int compare(
+                    FarragoCacheEntry e1,
+                    FarragoCacheEntry e2)
+                {
+                    return frequencies.get(e1) - frequencies.get(e2);
+                }
+            });
+        candidates.addAll(protectedSegment);
+        return new VictimIterator(candidates.iterator());
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public void clearCache()
+    {
+        probation.clear();
+        protectedSegment.clear();
+
+        // NOTE: the frequency history is deliberately retained; it describes
+        // the workload, not the cache contents
+    }
+
+    /**
+     * Returns the estimated number of recent requests for a key.
+     *
+     * @param key cache key
+     *
+     * @return estimated frequency, between 0 and 15
+     */
+    public int getFrequency(Object key)
+    {
+        return sketch.frequency(key);
+    }
+
+    /**
+     * Moves least recently used entries from the protected segment to
+     * probation until the protected segment is back within its limit.
+     */
+    private void demoteOverflow()
+    {
+        int nEntries = probation.size() + protectedSegment.size();
+        int protectedMax =
+            (int) (((long) nEntries * protectedPercentage + 99) / 100);
+        Iterator<FarragoCacheEntry> iter = protectedSegment.iterator();
+        while ((protectedSegment.size() > protectedMax) && iter.hasNext()) {
+            FarragoCacheEntry entry = iter.next();
+            iter.remove();
+            probation.add(entry);
+        }
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Iterator over a snapshot of victim candidates; removal takes the
+     * current entry out of whichever segment it resides in.
+     */
+    private class VictimIterator
+        implements Iterator<FarragoCacheEntry>
+    {
+        private final Iterator<FarragoCacheEntry> snapshotIter;
+        private FarragoCacheEntry current;
+
+        VictimIterator(Iterator<FarragoCacheEntry> snapshotIter)
+        {
+            this.snapshotIter = snapshotIter;
+        }
+
+        // implement Iterator
+        public boolean hasNext()
+        {
+            return snapshotIter.hasNext();
+        }
+
+        // implement Iterator
+        public FarragoCacheEntry next()
+        {
+            current = snapshotIter.next();
+            return current;
+        }
+
+        // implement Iterator
+        public void remove()
+        {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+            unregisterEntry(current);
+            current = null;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters, used to estimate how often each key
+     * has been requested recently. After a number of increments proportional
+     * to the width, all counters are halved.
+     */
+    static class FrequencySketch
+    {
+        private static final int DEPTH = 4;
+
+        private static final int MAX_COUNT = 15;
+
+        private static final int [] SEEDS =
+        { 0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F };
+
+        private final byte [][] table;
+        private final int mask;
+        private final int sampleSize;
+        private int nIncrements;
+
+        FrequencySketch(int width)
+        {
+            int n = 16;
+            while (n < width) {
+                n <<= 1;
+            }
+            table = new byte[DEPTH][n];
+            mask = n - 1;
+            sampleSize = 10 * n;
+        }
+
+        void increment(Object key)
+        {
+            int hash = spread(key);
+            boolean added = false;
+            for (int i = 0; i < DEPTH; ++i) {
+                int index = indexOf(hash, i);
+                if (table[i][index] < MAX_COUNT) {
+                    ++table[i][index];
+                    added = true;
+                }
+            }
+            if (added && (++nIncrements >= sampleSize)) {
+                reset();
+            }
+        }
+
+        int frequency(Object key)
+        {
+            int hash = spread(key);
+            int min = MAX_COUNT;
+            for (int i = 0; i < DEPTH; ++i) {
+                min = Math.min(min, table[i][indexOf(hash, i)]);
+            }
+            return min;
+        }
+
+        private void reset()
+        {
+            for (byte [] row : table) {
+                for (int j = 0; j < row.length; ++j) {
+                    row[j] >>= 1;
+                }
+            }
+            nIncrements /= 2;
+        }
+
+        private int indexOf(int hash, int row)
+        {
+            int h = (hash + SEEDS[row]) * SEEDS[row];
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private static int spread(Object key)
+        {
+            int h = (key == null) ? 0 : key.hashCode();
+            return h ^ (h >>> 16);
+        }
+    }
+}
+
+// End FarragoTinyLfuVictimPolicy.java
@@ -29,6 +29,7 @@ import java.nio.*;
 import java.security.*;
 
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 import org.codehaus.janino.*;
 import org.codehaus.janino.util.*;
@@ -55,6 +56,18 @@ public class JaninoCompiler
     // REVIEW jvs 28-June-2004:  pool this instance?  Is it thread-safe?
     private AccountingClassLoader classLoader;
 
+    /**
+     * Bytecode of every class generated by this compiler, across all calls to
+     * {@link #compile}, and by compilers forked from it; null unless {@link
+     * JavaCompilerArgs#getRetainByteCodes} was set before the first call.
+     */
+    private Map<String, byte []> byteCodes;
+
+    /**
+     * Total length of generated bytecode; shared with forked compilers.
+     */
+    private AtomicInteger totalByteCodeSize = new AtomicInteger();
+
     //~ Constructors -----------------------------------------------------------
 
     public JaninoCompiler()
@@ -84,6 +97,7 @@ public class JaninoCompiler
         if (classLoader != null) {
             parentClassLoader = classLoader;
         }
+        initByteCodes();
 
         Map<String, byte[]> sourceMap = new HashMap<String, byte[]>();
         sourceMap.put(
@@ -95,7 +109,9 @@ public class JaninoCompiler
             new AccountingClassLoader(
                 parentClassLoader,
                 sourceFinder,
-                null);
+                null,
+                byteCodes,
+                totalByteCodeSize);
         try {
             classLoader.loadClass(args.fullClassName);
         } catch (ClassNotFoundException ex) {
@@ -118,7 +134,50 @@ public class JaninoCompiler
     // implement JavaCompiler
     public int getTotalByteCodeSize()
     {
-        return classLoader.getTotalByteCodeSize();
+        return totalByteCodeSize.get();
+    }
+
+    // implement JavaCompiler
+    public Map<String, byte []> getByteCodes()
+    {
+        if (byteCodes == null) {
+            return null;
+        }
+        return Collections.unmodifiableMap(byteCodes);
+    }
+
+    // implement JavaCompiler
+    public JavaCompiler forkCompiler()
+    {
+        initByteCodes();
+        JaninoCompiler fork = createFork();
+        fork.byteCodes = byteCodes;
+        fork.totalByteCodeSize = totalByteCodeSize;
+        fork.args.setRetainByteCodes(args.getRetainByteCodes());
+        fork.args.setClassLoader(
+            (classLoader != null) ? classLoader : args.getClassLoader());
+        return fork;
+    }
+
+    private void initByteCodes()
+    {
+        if (args.getRetainByteCodes() && (byteCodes == null)) {
+            byteCodes =
+                Collections.synchronizedMap(
+                    new LinkedHashMap<String, byte []>());
+        }
+    }
+
+    /**
+     * Creates a new, empty compiler of the same kind as this one, on behalf of
+     * {@link #forkCompiler}. Subclasses which change how classes are compiled
+     * should override this.
+     *
+     * @return new compiler
+     */
+    protected JaninoCompiler createFork()
+    {
+        return new JaninoCompiler();
     }
 
     //~ Inner Classes ----------------------------------------------------------
@@ -159,27 +218,27 @@ public class JaninoCompiler
 
     /**
      * Refinement of JavaSourceClassLoader which keeps track of the total
-     * bytecode length of the classes it has compiled.
+     * length of the classes it has compiled, and optionally of their bytecode.
      */
     private static class AccountingClassLoader
         extends JavaSourceClassLoader
     {
-        private int nBytes;
+        private final Map<String, byte []> byteCodes;
+        private final AtomicInteger nBytes;
 
         public AccountingClassLoader(
             ClassLoader parentClassLoader,
             ResourceFinder sourceFinder,
-            String optionalCharacterEncoding)
+            String optionalCharacterEncoding,
+            Map<String, byte []> byteCodes,
+            AtomicInteger nBytes)
         {
             super(
                 parentClassLoader,
                 sourceFinder,
                 optionalCharacterEncoding);
-        }
-
-        int getTotalByteCodeSize()
-        {
-            return nBytes;
+            this.byteCodes = byteCodes;
+            this.nBytes = nBytes;
         }
 
         // override JavaSourceClassLoader
@@ -195,9 +254,13 @@ public class JaninoCompiler
             // to bytecode even before all of the classes have actually
             // been loaded.  So we intercept their sizes here just
             // after they've been compiled.
-            for (Object obj : map.values()) {
-                byte [] bytes = (byte []) obj;
-                nBytes += bytes.length;
+            for (Object obj : map.entrySet()) {
+                Map.Entry entry = (Map.Entry) obj;
+                byte [] bytes = (byte []) entry.getValue();
+                nBytes.addAndGet(bytes.length);
+                if (byteCodes != null) {
+                    byteCodes.put((String) entry.getKey(), bytes);
+                }
             }
             return map;
         }
@@ -22,6 +22,9 @@
 */
 package org.eigenbase.javac;
 
+import java.util.*;
+
+
 /**
  * The interface <code>JavaCompiler</code> represents an interface to invoke a
  * regular Java compiler. Classes implementing this interface should accept the
@@ -38,6 +41,29 @@ public interface JavaCompiler
     public ClassLoader getClassLoader();
 
     public int getTotalByteCodeSize();
+
+    /**
+     * Returns the bytecode of all classes generated so far, keyed by fully
+     * qualified class name, so that they can be reloaded later without
+     * recompilation.
+     *
+     * @return map from class name to bytecode, or null if this compiler does
+     * not retain bytecode, or was not asked to via {@link
+     * JavaCompilerArgs#setRetainByteCodes}
+     */
+    public Map<String, byte []> getByteCodes();
+
+    /**
+     * Creates a compiler for a class which does not depend on any other class
+     * still to be compiled, so that several such classes can be compiled
+     * concurrently. Generated code sees all classes compiled by this compiler
+     * so far, and bytecode generated by the fork is reported by this
+     * compiler's {@link #getByteCodes}.
+     *
+     * @return new compiler, or null if this compiler cannot compile classes
+     * independently
+     */
+    public JavaCompiler forkCompiler();
 }
 
 // End JavaCompiler.java
@@ -47,6 +47,8 @@ public class JavaCompilerArgs
 
     ClassLoader classLoader;
 
+    boolean retainByteCodes;
+
     //~ Constructors -----------------------------------------------------------
 
     public JavaCompilerArgs()
@@ -183,6 +185,27 @@ public class JavaCompilerArgs
     {
         return classLoader;
     }
+
+    /**
+     * Sets whether the compiler should keep a copy of the bytecode it
+     * generates, for {@link JavaCompiler#getByteCodes}. Off by default, since
+     * the copy lives as long as the generated classes.
+     *
+     * @param retainByteCodes whether to keep generated bytecode
+     */
+    public void setRetainByteCodes(boolean retainByteCodes)
+    {
+        this.retainByteCodes = retainByteCodes;
+    }
+
+    /**
+     * @return whether the compiler should keep a copy of the bytecode it
+     * generates
+     */
+    public boolean getRetainByteCodes()
+    {
+        return retainByteCodes;
+    }
 }
 
 // End JavaCompilerArgs.java
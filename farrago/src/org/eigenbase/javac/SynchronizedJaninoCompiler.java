@@ -40,6 +40,14 @@ public class SynchronizedJaninoCompiler extends JaninoCompiler
             super.compile();
         }
     }
+
+    // override JaninoCompiler
+    public JavaCompiler forkCompiler()
+    {
+        // Forks would all wait for the same lock, so there is nothing to
+        // gain from compiling on other threads.
+        return null;
+    }
 }
 
 // End SynchronizedJaninoCompiler.java
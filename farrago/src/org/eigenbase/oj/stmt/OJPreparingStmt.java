@@ -27,6 +27,7 @@ import java.io.*;
 import java.lang.reflect.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 import openjava.mop.*;
@@ -62,6 +63,12 @@ public abstract class OJPreparingStmt
     public static final String connectionVariable = "connection";
     private static final Logger tracer = EigenbaseTrace.getStatementTracer();
 
+    /**
+     * Shared pool on which independent generated classes are compiled; see
+     * {@link #compileClasses}. Created on first use.
+     */
+    private static ExecutorService compilerPool;
+
     //~ Instance fields --------------------------------------------------------
 
     protected String queryString = null;
@@ -842,7 +849,109 @@ public abstract class OJPreparingStmt
         String className,
         String source)
     {
-        JavaCompilerArgs args = javaCompiler.getArgs();
+        String fullClassName =
+            prepareCompilation(javaCompiler, packageName, className, source);
+        return compilePreparedClass(javaCompiler, fullClassName);
+    }
+
+    /**
+     * Compiles several classes in the given package. The classes must not
+     * refer to each other, although they may refer to classes already compiled
+     * by this statement; this allows them to be compiled concurrently, each
+     * loaded by its own child of the statement's class loader.
+     *
+     * @param packageName package name, if null the class names must be fully
+     * qualified
+     * @param classNames simple class names unless packageName is null
+     * @param sources source code for each class
+     *
+     * @return compiled classes, in the same order as classNames
+     */
+    public java.util.List<Class> compileClasses(
+        String packageName,
+        java.util.List<String> classNames,
+        java.util.List<String> sources)
+    {
+        assert classNames.size() == sources.size();
+        java.util.List<Class> classes = new ArrayList<Class>();
+        ExecutorService pool = null;
+        java.util.List<JavaCompiler> compilers = new ArrayList<JavaCompiler>();
+        if (classNames.size() > 1) {
+            pool = getCompilerPool();
+            for (int i = 0; (pool != null) && (i < classNames.size()); ++i) {
+                JavaCompiler compiler = javaCompiler.forkCompiler();
+                if (compiler == null) {
+                    // this compiler can only compile one class at a time
+                    pool = null;
+                }
+                compilers.add(compiler);
+            }
+        }
+        if (pool == null) {
+            for (int i = 0; i < classNames.size(); ++i) {
+                classes.add(
+                    compileClass(
+                        packageName,
+                        classNames.get(i),
+                        sources.get(i)));
+            }
+            return classes;
+        }
+
+        // Source generation and tracing happen on this thread; only
+        // compilation itself is handed off to the pool.
+        java.util.List<Future<Class>> futures = new ArrayList<Future<Class>>();
+        for (int i = 0; i < classNames.size(); ++i) {
+            final JavaCompiler compiler = compilers.get(i);
+            final String fullClassName =
+                prepareCompilation(
+                    compiler,
+                    packageName,
+                    classNames.get(i),
+                    sources.get(i));
+            futures.add(
+                pool.submit(
+                    new Callable<Class>() {
+                        public Class call()
+                        {
+                            return compilePreparedClass(
+                                compiler,
+                                fullClassName);
+                        }
+                    }));
+        }
+        for (Future<Class> future : futures) {
+            try {
+                classes.add(future.get());
+            } catch (InterruptedException e) {
+                throw Util.newInternal(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw Util.newInternal(cause);
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Sets up a compiler to compile a class, writing its source to a file if
+     * required.
+     *
+     * @return fully qualified class name
+     */
+    private String prepareCompilation(
+        JavaCompiler compiler,
+        String packageName,
+        String className,
+        String source)
+    {
+        JavaCompilerArgs args = compiler.getArgs();
         args.clear();
         String initialArgs =
             SaffronProperties.instance().javaCompilerArgs.get();
@@ -861,10 +970,10 @@ public abstract class OJPreparingStmt
         File javaFile = new File(javaRoot, javaFileName);
 
         boolean writeJavaFile = shouldAlwaysWriteJavaFile();
-        javaCompiler.getArgs().setDestdir(javaRoot.getAbsolutePath());
-        javaCompiler.getArgs().setFullClassName(fullClassName);
-        if (javaCompiler.getArgs().supportsSetSource()) {
-            javaCompiler.getArgs().setSource(
+        args.setDestdir(javaRoot.getAbsolutePath());
+        args.setFullClassName(fullClassName);
+        if (args.supportsSetSource()) {
+            args.setSource(
                 source,
                 javaFile.toString());
         } else {
@@ -894,18 +1003,74 @@ public abstract class OJPreparingStmt
         }
 
         EigenbaseTrace.getDynamicHandler().get().apply(javaFile, source);
+        return fullClassName;
+    }
 
-        javaCompiler.compile();
+    private static Class compilePreparedClass(
+        JavaCompiler compiler,
+        String fullClassName)
+    {
+        compiler.compile();
         try {
             return Class.forName(
                 fullClassName,
                 true,
-                javaCompiler.getClassLoader());
+                compiler.getClassLoader());
         } catch (ClassNotFoundException e) {
             throw Util.newInternal(e);
         }
     }
 
+    /**
+     * Returns the pool used to compile independent classes concurrently,
+     * creating it if necessary.
+     *
+     * @return compiler pool, or null if concurrent compilation is disabled
+     */
+    private static synchronized ExecutorService getCompilerPool()
+    {
+        if (compilerPool == null) {
+            int nThreads =
+                SaffronProperties.instance().javaCompilerThreads.get();
+            if (nThreads <= 0) {
+                nThreads = Runtime.getRuntime().availableProcessors();
+            }
+            if (nThreads <= 1) {
+                return null;
+            }
+            compilerPool =
+                Executors.newFixedThreadPool(
+                    nThreads,
+                    new ThreadFactory() {
+                        private int nThreadsCreated;
+
+                        public synchronized Thread newThread(Runnable r)
+                        {
+                            Thread thread =
+                                new Thread(
+                                    r,
+                                    "Java compiler " + (++nThreadsCreated));
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return compilerPool;
+    }
+
+    /**
+     * Stops the threads used to compile classes concurrently. Call this when
+     * no more statements will be prepared, for example when the database is
+     * shut down; the pool is recreated if needed afterwards.
+     */
+    public static synchronized void shutdownCompilerPool()
+    {
+        if (compilerPool != null) {
+            compilerPool.shutdown();
+            compilerPool = null;
+        }
+    }
+
     //~ Inner Classes ----------------------------------------------------------
 
     /**
@@ -109,6 +109,18 @@ public class TableAccessMap
         accessMap.put(table, mode);
     }
 
+    /**
+     * Constructs a TableAccessMap from a copy of an existing mapping, for
+     * example one previously obtained via {@link #getTablesAccessed} and
+     * {@link #getTableAccessMode}.
+     *
+     * @param accessMap map from fully qualified table name to access mode
+     */
+    public TableAccessMap(Map<List<String>, Mode> accessMap)
+    {
+        this.accessMap = new HashMap<List<String>, Mode>(accessMap);
+    }
+
     //~ Methods ----------------------------------------------------------------
 
     /**
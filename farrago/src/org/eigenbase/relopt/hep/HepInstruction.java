@@ -23,6 +23,7 @@ package org.eigenbase.relopt.hep;
 
 import java.util.*;
 
+import org.eigenbase.rel.*;
 import org.eigenbase.relopt.*;
 
 
@@ -185,6 +186,27 @@ abstract class HepInstruction
         }
     }
 
+    static class SubprogramForInputs
+        extends HepInstruction
+    {
+        /**
+         * Class of relational expression whose inputs are rewritten.
+         */
+        Class<? extends RelNode> relClass;
+
+        HepProgram subprogram;
+
+        void initialize(boolean clearCache)
+        {
+            subprogram.initialize(clearCache);
+        }
+
+        void execute(HepPlanner planner)
+        {
+            planner.executeInstruction(this);
+        }
+    }
+
     static class BeginGroup
         extends HepInstruction
     {
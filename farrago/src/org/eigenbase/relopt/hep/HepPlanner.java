@@ -75,6 +75,20 @@ public class HepPlanner
      */
     private DirectedGraph<HepRelVertex, DefaultEdge> graph;
 
+    /**
+     * Vertex whose descendants are the only candidates for rule matches while
+     * a {@link HepInstruction.SubprogramForInputs} instruction is executing,
+     * or null to match anywhere in the graph.
+     */
+    private HepRelVertex scopeRoot;
+
+    /**
+     * Vertices which have lost parents since the last garbage collection, and
+     * so may now be garbage; see {@link #collectScopedGarbage}.
+     */
+    private final Set<HepRelVertex> garbageCandidates =
+        new LinkedHashSet<HepRelVertex>();
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -172,7 +186,9 @@ public class HepPlanner
         for (HepInstruction instruction : currentProgram.instructions) {
             instruction.execute(this);
             int delta = nTransformations - nTransformationsLastGC;
-            if (delta > graphSizeLastGC) {
+            if (scopeRoot != null) {
+                collectScopedGarbage();
+            } else if (delta > graphSizeLastGC) {
                 // The number of transformations performed since the last
                 // garbage collection is greater than the number of vertices in
                 // the graph at that time.  That means there should be a
@@ -306,22 +322,123 @@ public class HepPlanner
                 instruction.ruleSet.add(rule);
             }
         }
+        mergeEquivalentVertices();
         applyRules(instruction.ruleSet, true);
     }
 
+    /**
+     * Merges vertices which have become equivalent as a result of the rules
+     * applied so far, so that the CommonRelSubExprRules see every common
+     * subexpression. Equivalent expressions are only recognized as they are
+     * added to the graph; subtrees such as the inputs of several UNION
+     * branches usually become identical later, once filters and projects have
+     * been pushed into them.
+     *
+     * <p>The graph is walked bottom-up, so that once the children of two
+     * vertices have been merged, their digests refer to the same child
+     * vertices and the vertices themselves can be compared by digest.
+     */
+    private void mergeEquivalentVertices()
+    {
+        if (noDAG) {
+            return;
+        }
+        List<HepRelVertex> list = new ArrayList<HepRelVertex>();
+        addDescendantsPostOrder(root, new HashSet<HepRelVertex>(), list);
+        Map<String, HepRelVertex> mapDigestToMergedVertex =
+            new HashMap<String, HepRelVertex>();
+        int nMerged = 0;
+        for (HepRelVertex vertex : list) {
+            String digest = vertex.getCurrentRel().recomputeDigest();
+            HepRelVertex equivVertex = mapDigestToMergedVertex.get(digest);
+            if (equivVertex == null) {
+                mapDigestToMergedVertex.put(digest, vertex);
+                vertex.recomputeDigest();
+                continue;
+            }
+            contractVertices(
+                equivVertex,
+                vertex,
+                Graphs.predecessorListOf(graph, vertex));
+            ++nMerged;
+        }
+        if (nMerged > 0) {
+            tracer.finer("Merged " + nMerged + " equivalent vertices");
+            nTransformations += nMerged;
+            collectGarbage();
+        }
+    }
+
     void executeInstruction(
         HepInstruction.Subprogram instruction)
     {
         tracer.finest("Entering subprogram");
+        executeSubprogramUntilFixpoint(instruction.subprogram);
+        tracer.finest("Leaving subprogram");
+    }
+
+    void executeInstruction(
+        HepInstruction.SubprogramForInputs instruction)
+    {
+        assert (scopeRoot == null) : "nested SubprogramForInputs";
+        tracer.finest("Entering subprogram for inputs");
+
+        // Find the parents of the subtrees first, top-down, since rewriting
+        // one subtree may change the rest of the graph.
+        collectGarbage();
+        List<HepRelVertex> parents = new ArrayList<HepRelVertex>();
+        Iterator<HepRelVertex> iter =
+            new DepthFirstIterator<HepRelVertex, DefaultEdge>(
+                graph,
+                root);
+        while (iter.hasNext()) {
+            HepRelVertex vertex = iter.next();
+            if (instruction.relClass.isInstance(vertex.getCurrentRel())) {
+                parents.add(vertex);
+            }
+        }
+
+        try {
+            for (HepRelVertex parent : parents) {
+                // Skip a parent which was discarded while rewriting an
+                // enclosing subtree.
+                collectScopedGarbage();
+                if (!graph.containsVertex(parent)
+                    || !instruction.relClass.isInstance(
+                        parent.getCurrentRel()))
+                {
+                    continue;
+                }
+                int nInputs = parent.getCurrentRel().getInputs().length;
+                for (int i = 0; i < nInputs; ++i) {
+                    // Re-read the input each time: rewriting an earlier
+                    // input may have replaced a vertex it shares with this
+                    // one.
+                    scopeRoot =
+                        (HepRelVertex) parent.getCurrentRel().getInputs()[i];
+                    executeSubprogramUntilFixpoint(instruction.subprogram);
+                }
+            }
+        } finally {
+            scopeRoot = null;
+        }
+
+        // The scoped collections only see garbage produced by contraction;
+        // sweep the whole graph once to be sure nothing else was left.
+        collectGarbage();
+        tracer.finest("Leaving subprogram for inputs");
+    }
+
+    private void executeSubprogramUntilFixpoint(HepProgram subprogram)
+    {
         for (;;) {
             int nTransformationsBefore = nTransformations;
-            executeProgram(instruction.subprogram);
+            executeProgram(subprogram);
             if (nTransformations == nTransformationsBefore) {
                 // Nothing happened this time around.
                 break;
             }
         }
-        tracer.finest("Leaving subprogram");
     }
 
     void executeInstruction(
@@ -363,7 +480,7 @@ public class HepPlanner
 
         boolean fixpoint;
         do {
-            Iterator<HepRelVertex> iter = getGraphIterator(root);
+            Iterator<HepRelVertex> iter = getGraphIterator(getMatchRoot());
             fixpoint = true;
             while (iter.hasNext()) {
                 HepRelVertex vertex = iter.next();
@@ -376,7 +493,7 @@ public class HepPlanner
                             return;
                         }
                         if (fullRestartAfterTransformation) {
-                            iter = getGraphIterator(root);
+                            iter = getGraphIterator(getMatchRoot());
                         } else {
                             // To the extent possible, pick up where we left
                             // off; have to create a new iterator because old
@@ -394,6 +511,17 @@ public class HepPlanner
         } while (!fixpoint);
     }
 
+    /**
+     * Returns the vertex below which rules are currently matched: the root of
+     * the subtree being rewritten by a {@link
+     * HepInstruction.SubprogramForInputs} instruction, if any, or else the
+     * root of the whole graph.
+     */
+    private HepRelVertex getMatchRoot()
+    {
+        return (scopeRoot == null) ? root : scopeRoot;
+    }
+
     private Iterator<HepRelVertex> getGraphIterator(HepRelVertex start)
     {
         // Make sure there's no garbage, because topological sort
@@ -404,7 +532,13 @@ public class HepPlanner
         // of FRG-215, which is still under investigation.  Once we
         // figure that one out, move down to location below for
         // better optimizer performance.
-        collectGarbage();
+        if (scopeRoot != null) {
+            // A walk of the whole graph per transformation is exactly the
+            // cost which scoping is meant to avoid.
+            collectScopedGarbage();
+        } else {
+            collectGarbage();
+        }
 
         if (currentProgram.matchOrder == HepMatchOrder.ARBITRARY) {
             return new DepthFirstIterator<HepRelVertex, DefaultEdge>(
@@ -412,6 +546,22 @@ public class HepPlanner
                 start);
         }
 
+        if (scopeRoot != null) {
+            // Walk only the subtree being rewritten.  A post-order walk
+            // visits every descendant before its ancestors; reversed, every
+            // ancestor before its descendants.
+            assert (start == scopeRoot);
+            List<HepRelVertex> list = new ArrayList<HepRelVertex>();
+            addDescendantsPostOrder(
+                start,
+                new HashSet<HepRelVertex>(),
+                list);
+            if (currentProgram.matchOrder == HepMatchOrder.TOP_DOWN) {
+                Collections.reverse(list);
+            }
+            return list.iterator();
+        }
+
         assert (start == root);
 
         // see above
@@ -437,6 +587,20 @@ public class HepPlanner
         return list.iterator();
     }
 
+    private void addDescendantsPostOrder(
+        HepRelVertex vertex,
+        Set<HepRelVertex> visited,
+        List<HepRelVertex> list)
+    {
+        if (!visited.add(vertex)) {
+            return;
+        }
+        for (HepRelVertex child : Graphs.successorListOf(graph, vertex)) {
+            addDescendantsPostOrder(child, visited, list);
+        }
+        list.add(vertex);
+    }
+
     private HepRelVertex applyRule(
         RelOptRule rule,
         HepRelVertex vertex,
@@ -808,10 +972,14 @@ public class HepPlanner
         // NOTE:  we don't actually do graph.removeVertex(discardedVertex),
         // because it might still be reachable from preservedVertex.
         // Leave that job for garbage collection.
+        garbageCandidates.add(discardedVertex);
 
         if (discardedVertex == root) {
             root = preservedVertex;
         }
+        if (discardedVertex == scopeRoot) {
+            scopeRoot = preservedVertex;
+        }
     }
 
     private void updateVertex(HepRelVertex vertex, RelNode rel)
@@ -835,7 +1003,8 @@ public class HepPlanner
             // REVIEW jvs 5-Apr-2006:  Could this lead us to
             // miss common subexpressions?  When called from
             // addRelToGraph, we'll check after this method returns,
-            // but what about the other callers?
+            // but what about the other callers?  (Those are caught by
+            // mergeEquivalentVertices before CommonRelSubExprRules fire.)
         }
         if (rel != vertex.getCurrentRel()) {
             vertex.replaceRel(rel);
@@ -889,6 +1058,7 @@ public class HepPlanner
             rootSet.add(iter.next());
         }
 
+        garbageCandidates.clear();
         if (rootSet.size() == graph.vertexSet().size()) {
             // Everything is reachable:  no garbage to collect.
             return;
@@ -916,6 +1086,46 @@ public class HepPlanner
         }
     }
 
+    /**
+     * Removes the garbage produced by contracting vertices, without walking
+     * the whole graph. Since the graph is acyclic, a vertex is garbage if it
+     * is not the root and has no parents, and removing it may make garbage of
+     * its children in turn; the only vertices which lose parents are those
+     * discarded by {@link #contractVertices}, so they are where the search
+     * starts. The cost is proportional to the amount of garbage rather than to
+     * the size of the graph, which matters while a {@link
+     * HepInstruction.SubprogramForInputs} instruction is rewriting one small
+     * subtree of a large graph.
+     */
+    private void collectScopedGarbage()
+    {
+        if (garbageCandidates.isEmpty()) {
+            return;
+        }
+        tracer.finest("collecting scoped garbage");
+
+        List<HepRelVertex> pending =
+            new ArrayList<HepRelVertex>(garbageCandidates);
+        garbageCandidates.clear();
+        while (!pending.isEmpty()) {
+            HepRelVertex vertex = pending.remove(pending.size() - 1);
+            if ((vertex == root)
+                || !graph.containsVertex(vertex)
+                || (graph.inDegreeOf(vertex) > 0))
+            {
+                continue;
+            }
+            pending.addAll(Graphs.successorListOf(graph, vertex));
+            RelNode rel = vertex.getCurrentRel();
+            notifyDiscard(rel);
+            String digest = rel.toString();
+            if (mapDigestToVertex.get(digest) == vertex) {
+                mapDigestToVertex.remove(digest);
+            }
+            graph.removeVertex(vertex);
+        }
+    }
+
     private void assertNoCycles()
     {
         // Verify that the graph is acyclic.
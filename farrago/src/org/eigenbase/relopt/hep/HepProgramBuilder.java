@@ -23,6 +23,7 @@ package org.eigenbase.relopt.hep;
 
 import java.util.*;
 
+import org.eigenbase.rel.*;
 import org.eigenbase.rel.convert.*;
 import org.eigenbase.relopt.*;
 
@@ -194,7 +195,9 @@ public class HepProgramBuilder
     /**
      * Adds an instruction to attempt to match instances of
      * {@link CommonRelSubExprRule}, but only in cases where vertices have more
-     * than one parent.
+     * than one parent. Before the rules are matched, subexpressions which
+     * have become equivalent as a result of earlier instructions are merged,
+     * so that all their consumers share one vertex.
      */
     public void addCommonRelSubExprInstruction()
     {
@@ -258,6 +261,42 @@ public class HepProgramBuilder
         instructions.add(instruction);
     }
 
+    /**
+     * Adds an instruction to execute a subprogram separately on each input of
+     * each relational expression of a given class, for example on each branch
+     * of every UNION. Each input is rewritten to its own fixpoint, as by
+     * {@link #addSubprogram}, and rules only match within the input being
+     * rewritten; in particular, the relational expression itself is not
+     * rewritten, so to rewrite the rest of the graph, follow this instruction
+     * with an ordinary one.
+     *
+     * <p>Keeping matches local to one input is what makes this worthwhile:
+     * with a match order other than {@link HepMatchOrder#ARBITRARY}, the
+     * planner restarts its walk after each transformation, and for a query
+     * with many independent inputs, restarting within the current input is
+     * much cheaper than restarting over the whole graph.
+     *
+     * <p>The parents are located when the instruction starts. Parents which
+     * are discarded while rewriting an enclosing input are skipped. Match
+     * order and limit are reset for each input. This instruction cannot be
+     * nested within itself.
+     *
+     * @param relClass class of relational expressions whose inputs are to be
+     * rewritten
+     * @param program subprogram to execute on each input
+     */
+    public void addSubprogramForInputs(
+        Class<? extends RelNode> relClass,
+        HepProgram program)
+    {
+        assert (group == null);
+        HepInstruction.SubprogramForInputs instruction =
+            new HepInstruction.SubprogramForInputs();
+        instruction.relClass = relClass;
+        instruction.subprogram = program;
+        instructions.add(instruction);
+    }
+
     /**
      * Returns the constructed program, clearing the state of this program
      * builder as a side-effect.
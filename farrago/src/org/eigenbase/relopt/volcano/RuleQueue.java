@@ -340,18 +340,13 @@ class RuleQueue
     {
         final String matchName = match.toString();
         for (PhaseMatchList matchList : matchListMap.values()) {
-            if (!matchList.names.add(matchName)) {
-                // Identical match has already been added.
+            if (!isRuleAllowed(matchList.phase, match.getRule())) {
                 continue;
             }
 
-            String ruleClassName = match.getRule().getClass().getSimpleName();
-
-            Set<String> phaseRuleSet = phaseRuleMapping.get(matchList.phase);
-            if (phaseRuleSet != allRules) {
-                if (!phaseRuleSet.contains(ruleClassName)) {
-                    continue;
-                }
+            if (!matchList.names.add(matchName)) {
+                // Identical match has already been added.
+                continue;
             }
 
             if (tracer.isLoggable(Level.FINEST)) {
@@ -368,6 +363,40 @@ class RuleQueue
         }
     }
 
+    /**
+     * Returns whether a rule match would be added to any of the per-phase
+     * rule-match lists by {@link #addMatch(VolcanoRuleMatch)}; that is,
+     * whether some remaining phase allows the rule and has not already seen
+     * an identical match. Allows the caller to skip creating the match.
+     *
+     * @param rule Rule
+     * @param matchName Digest of the match
+     *
+     * @return whether the match is new
+     */
+    boolean isNewMatch(RelOptRule rule, String matchName)
+    {
+        for (PhaseMatchList matchList : matchListMap.values()) {
+            if (isRuleAllowed(matchList.phase, rule)
+                && !matchList.names.contains(matchName))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether a rule may fire in a given phase, according to the
+     * phase-rule mapping.
+     */
+    private boolean isRuleAllowed(VolcanoPlannerPhase phase, RelOptRule rule)
+    {
+        Set<String> phaseRuleSet = phaseRuleMapping.get(phase);
+        return (phaseRuleSet == allRules)
+            || phaseRuleSet.contains(rule.getClass().getSimpleName());
+    }
+
     /**
      * Computes the <dfn>importance</dfn> of a node. Importance is defined as
      * follows:
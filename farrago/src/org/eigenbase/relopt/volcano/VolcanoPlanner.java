@@ -84,6 +84,17 @@ public class VolcanoPlanner
     private final List<RelOptRuleOperand> allOperands =
         new ArrayList<RelOptRuleOperand>();
 
+    /**
+     * Index from a class of relational expression to the operands in {@link
+     * #allOperands} which can match an instance of that class, in the same
+     * order. Entries are built on demand by {@link #getClassOperands}, so that
+     * {@link #fireRules} only tests the operands which can possibly match, and
+     * the whole index is discarded when a rule is added or removed.
+     */
+    private final Map<Class<? extends RelNode>, List<RelOptRuleOperand>>
+        classOperands =
+            new HashMap<Class<? extends RelNode>, List<RelOptRuleOperand>>();
+
     /**
      * List of all sets. Used only for debugging.
      */
@@ -168,6 +179,16 @@ public class VolcanoPlanner
 
     private History history;
 
+    /**
+     * Time limit for {@link #findBestExp} in milliseconds, or 0 for none.
+     */
+    private long timeLimit;
+
+    /**
+     * Statistics for the most recent call to {@link #findBestExp}.
+     */
+    VolcanoPlannerStatistics statistics = new VolcanoPlannerStatistics();
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -271,6 +292,7 @@ public class VolcanoPlanner
 
         // Each of this rule's operands is an 'entry point' for a rule call.
         allOperands.addAll(Arrays.asList(rule.operands));
+        classOperands.clear();
 
         // If this is a converter rule, check that it operates on one of the
         // kinds of trait we are interested in, and if so, register the rule
@@ -308,6 +330,7 @@ public class VolcanoPlanner
                 operandIter.remove();
             }
         }
+        classOperands.clear();
 
         // Remove trait mappings. (In particular, entries from conversion
         // graph.)
@@ -397,6 +420,41 @@ public class VolcanoPlanner
         return this;
     }
 
+    /**
+     * Sets a time limit for {@link #findBestExp}. Once the limit has expired
+     * and an implementable plan has been found, the planner stops firing rules
+     * and returns the best plan found so far, even if it is {@link
+     * #ambitious}.
+     *
+     * @param timeLimit time limit in milliseconds, or 0 for no limit
+     */
+    public void setTimeLimit(long timeLimit)
+    {
+        assert timeLimit >= 0 : timeLimit;
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * @return time limit in milliseconds, or 0 if there is no limit
+     *
+     * @see #setTimeLimit(long)
+     */
+    public long getTimeLimit()
+    {
+        return timeLimit;
+    }
+
+    /**
+     * Returns statistics about the most recent call to {@link #findBestExp}:
+     * rule firings, size of the search space, and time spent in each phase.
+     *
+     * @return planner statistics
+     */
+    public VolcanoPlannerStatistics getStatistics()
+    {
+        return statistics;
+    }
+
     /**
      * Finds the most efficient expression to implement the query given via
      * {@link #setRoot(RelNode)}.
@@ -416,6 +474,9 @@ public class VolcanoPlanner
      * number of iterations necessary to first reach an implementable plan or 25
      * iterations whichever is larger).</li>
      * <li>For non-ambitious planners: When an implementable plan is found.</li>
+     * <li>If a {@link #setTimeLimit time limit} is set: When the time limit
+     * has expired and an implementable plan has been found. The remaining
+     * phases are then skipped too.</li>
      * </ol>
      *
      * <p>Furthermore, after every 10 iterations without an implementable plan,
@@ -436,8 +497,14 @@ public class VolcanoPlanner
             history = null;
         }
 
+        statistics = new VolcanoPlannerStatistics();
+        final long deadline =
+            (timeLimit > 0) ? (System.currentTimeMillis() + timeLimit)
+            : Long.MAX_VALUE;
+
         int cumulativeTicks = 0;
         for (VolcanoPlannerPhase phase : VolcanoPlannerPhase.values()) {
+            final long phaseStart = System.currentTimeMillis();
             setInitialImportance();
 
             RelOptCost targetCost = makeHugeCost();
@@ -488,6 +555,21 @@ public class VolcanoPlanner
                     break;
                 }
 
+                if (!root.bestCost.isInfinite()
+                    && (System.currentTimeMillis() >= deadline))
+                {
+                    // Out of time. Settle for the best plan so far.
+                    if (!statistics.isTimeLimitReached()) {
+                        tracer.fine(
+                            "Time limit of " + timeLimit
+                            + " ms reached; TICK = " + cumulativeTicks
+                            + "; PHASE = " + phase.toString()
+                            + "; COST = " + root.bestCost);
+                        statistics.setTimeLimitReached();
+                    }
+                    break;
+                }
+
                 if (tracer.isLoggable(Level.FINE)) {
                     tracer.fine(
                         "PLANNER = " + this
@@ -506,6 +588,24 @@ public class VolcanoPlanner
             }
 
             ruleQueue.phaseCompleted(phase);
+            statistics.phaseCompleted(
+                phase,
+                System.currentTimeMillis() - phaseStart);
+        }
+        int relSetCount = 0;
+        int relSubsetCount = 0;
+        for (RelSet set : allSets) {
+            if (set.equivalentSet == null) {
+                ++relSetCount;
+                relSubsetCount += set.subsets.size();
+            }
+        }
+        statistics.setSearchSpaceSize(
+            relSetCount,
+            relSubsetCount,
+            mapRel2Subset.size());
+        if (tracer.isLoggable(Level.FINE)) {
+            tracer.fine("Planner statistics: " + statistics);
         }
         if (tracer.isLoggable(Level.FINER)) {
             StringWriter sw = new StringWriter();
@@ -1209,7 +1309,7 @@ SUBSET_LOOP:
         RelNode rel,
         boolean deferred)
     {
-        for (RelOptRuleOperand operand : allOperands) {
+        for (RelOptRuleOperand operand : getClassOperands(rel.getClass())) {
             if (operand.matches(rel)) {
                 final VolcanoRuleCall ruleCall;
                 if (deferred) {
@@ -1222,6 +1322,32 @@ SUBSET_LOOP:
         }
     }
 
+    /**
+     * Returns the operands of all rules which can match a relational
+     * expression of a given class, that is, whose matched class is the class
+     * or one of its supertypes. The operands still need to be checked against
+     * the expression itself, since they may also test its traits.
+     *
+     * @param clazz Class of relational expression
+     *
+     * @return operands which may match, in the order the rules were added
+     */
+    private List<RelOptRuleOperand> getClassOperands(
+        Class<? extends RelNode> clazz)
+    {
+        List<RelOptRuleOperand> operands = classOperands.get(clazz);
+        if (operands == null) {
+            operands = new ArrayList<RelOptRuleOperand>();
+            for (RelOptRuleOperand operand : allOperands) {
+                if (operand.getMatchedClass().isAssignableFrom(clazz)) {
+                    operands.add(operand);
+                }
+            }
+            classOperands.put(clazz, operands);
+        }
+        return operands;
+    }
+
     private boolean fixupInputs(RelNode rel)
     {
         int changeCount = 0;
@@ -1668,11 +1794,20 @@ SUBSET_LOOP:
          */
         protected void onMatch()
         {
+            // The same match is often found again, for example when a rel
+            // is re-registered after a set merge. Check its digest before
+            // copying the rels into a new match object.
+            final String digest =
+                VolcanoRuleMatch.computeDigest(getRule(), rels);
+            if (!volcanoPlanner.ruleQueue.isNewMatch(getRule(), digest)) {
+                return;
+            }
             final VolcanoRuleMatch match =
                 new VolcanoRuleMatch(
                     volcanoPlanner,
                     getOperand0(),
-                    rels);
+                    rels,
+                    digest);
             volcanoPlanner.ruleQueue.addMatch(match);
         }
     }
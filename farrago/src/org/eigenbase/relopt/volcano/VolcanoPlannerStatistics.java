@@ -0,0 +1,184 @@
+/*
+// $Id$
+// Package org.eigenbase is a class library of data management components.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.eigenbase.relopt.volcano;
+
+import java.util.*;
+
+import org.eigenbase.relopt.*;
+
+
+/**
+ * VolcanoPlannerStatistics records what a {@link VolcanoPlanner} did during
+ * its most recent call to {@link VolcanoPlanner#findBestExp}: how many rules
+ * it fired (in total and by rule), how large the search space grew, how long
+ * each phase took, and whether it stopped early because it ran out of time.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class VolcanoPlannerStatistics
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private int ruleFiringCount;
+
+    private final Map<String, Integer> ruleFiringCounts =
+        new TreeMap<String, Integer>();
+
+    private final Map<VolcanoPlannerPhase, Long> phaseMillis =
+        new EnumMap<VolcanoPlannerPhase, Long>(VolcanoPlannerPhase.class);
+
+    private int relSetCount;
+    private int relSubsetCount;
+    private int relCount;
+    private boolean timeLimitReached;
+
+    //~ Methods ----------------------------------------------------------------
+
+    void ruleFired(RelOptRule rule)
+    {
+        ++ruleFiringCount;
+        String description = rule.toString();
+        Integer count = ruleFiringCounts.get(description);
+        ruleFiringCounts.put(
+            description,
+            (count == null) ? 1 : (count + 1));
+    }
+
+    void phaseCompleted(VolcanoPlannerPhase phase, long millis)
+    {
+        phaseMillis.put(phase, millis);
+    }
+
+    void setSearchSpaceSize(int relSetCount, int relSubsetCount, int relCount)
+    {
+        this.relSetCount = relSetCount;
+        this.relSubsetCount = relSubsetCount;
+        this.relCount = relCount;
+    }
+
+    void setTimeLimitReached()
+    {
+        timeLimitReached = true;
+    }
+
+    /**
+     * @return total number of rules fired
+     */
+    public int getRuleFiringCount()
+    {
+        return ruleFiringCount;
+    }
+
+    /**
+     * @return number of times each rule fired, keyed by rule description,
+     * in description order
+     */
+    public Map<String, Integer> getRuleFiringCounts()
+    {
+        return Collections.unmodifiableMap(ruleFiringCounts);
+    }
+
+    /**
+     * @return number of equivalence sets at the end of planning, not
+     * counting sets which were merged into others
+     */
+    public int getRelSetCount()
+    {
+        return relSetCount;
+    }
+
+    /**
+     * @return number of subsets of the sets counted by {@link
+     * #getRelSetCount}
+     */
+    public int getRelSubsetCount()
+    {
+        return relSubsetCount;
+    }
+
+    /**
+     * @return number of relational expressions registered with the planner
+     */
+    public int getRelCount()
+    {
+        return relCount;
+    }
+
+    /**
+     * Returns the time spent in a phase.
+     *
+     * @param phase phase of interest
+     *
+     * @return elapsed time in milliseconds, or 0 if the phase did not run
+     */
+    public long getPhaseMillis(VolcanoPlannerPhase phase)
+    {
+        Long millis = phaseMillis.get(phase);
+        return (millis == null) ? 0 : millis;
+    }
+
+    /**
+     * @return total time spent in all phases, in milliseconds
+     */
+    public long getTotalMillis()
+    {
+        long total = 0;
+        for (long millis : phaseMillis.values()) {
+            total += millis;
+        }
+        return total;
+    }
+
+    /**
+     * @return whether the planner stopped looking for a better plan because
+     * its time limit expired
+     */
+    public boolean isTimeLimitReached()
+    {
+        return timeLimitReached;
+    }
+
+    // override Object
+    public String toString()
+    {
+        StringBuilder buf = new StringBuilder();
+        buf.append("rule firings: " + ruleFiringCount);
+        buf.append("; sets: " + relSetCount);
+        buf.append("; subsets: " + relSubsetCount);
+        buf.append("; rels: " + relCount);
+        buf.append("; time limit reached: " + timeLimitReached);
+        buf.append("; phase times (ms):");
+        for (Map.Entry<VolcanoPlannerPhase, Long> entry
+            : phaseMillis.entrySet())
+        {
+            buf.append(" " + entry.getKey() + "=" + entry.getValue());
+        }
+        buf.append("; firings by rule:");
+        for (Map.Entry<String, Integer> entry : ruleFiringCounts.entrySet()) {
+            buf.append(" " + entry.getKey() + "=" + entry.getValue());
+        }
+        return buf.toString();
+    }
+}
+
+// End VolcanoPlannerStatistics.java
@@ -298,6 +298,130 @@ public class VolcanoPlannerTest
             resultLeaf.getLabel());
     }
 
+    /**
+     * Tests that a rule added after relational expressions of the class it
+     * matches have been registered still fires for expressions registered
+     * later.
+     */
+    public void testAddRuleAfterRegister()
+    {
+        VolcanoPlanner planner = new VolcanoPlanner();
+        planner.addRelTraitDef(CallingConventionTraitDef.instance);
+
+        planner.addRule(new GoodSingleRule());
+
+        RelOptCluster cluster = newCluster(planner);
+        planner.ensureRegistered(
+            new NoneLeafRel(cluster, "x"),
+            null,
+            null);
+
+        planner.addRule(new PhysLeafRule());
+
+        NoneLeafRel leafRel =
+            new NoneLeafRel(
+                cluster,
+                "a");
+        RelNode convertedRel =
+            planner.changeTraits(
+                leafRel,
+                PHYS_CALLING_CONVENTION.singletonSet);
+        planner.setRoot(convertedRel);
+        RelNode result = planner.chooseDelegate().findBestExp();
+        assertTrue(result instanceof PhysLeafRel);
+        assertEquals(
+            "a",
+            ((PhysLeafRel) result).getLabel());
+    }
+
+    /**
+     * Tests that the planner records statistics about what it did.
+     */
+    public void testStatistics()
+    {
+        VolcanoPlanner planner = new VolcanoPlanner();
+        planner.ambitious = true;
+        planner.addRelTraitDef(CallingConventionTraitDef.instance);
+
+        RelOptRule physLeafRule = new PhysLeafRule();
+        RelOptRule goodRemoveSingleRule = new GoodRemoveSingleRule();
+        planner.addRule(physLeafRule);
+        planner.addRule(new GoodSingleRule());
+        planner.addRule(goodRemoveSingleRule);
+
+        NoneLeafRel leafRel =
+            new NoneLeafRel(
+                newCluster(planner),
+                "a");
+        NoneSingleRel singleRel =
+            new NoneSingleRel(
+                leafRel.getCluster(),
+                leafRel);
+        RelNode convertedRel =
+            planner.changeTraits(
+                singleRel,
+                PHYS_CALLING_CONVENTION.singletonSet);
+        planner.setRoot(convertedRel);
+        planner.chooseDelegate().findBestExp();
+
+        VolcanoPlannerStatistics statistics = planner.getStatistics();
+        Map<String, Integer> ruleFiringCounts =
+            statistics.getRuleFiringCounts();
+        assertEquals(
+            Integer.valueOf(1),
+            ruleFiringCounts.get(physLeafRule.toString()));
+        assertEquals(
+            Integer.valueOf(1),
+            ruleFiringCounts.get(goodRemoveSingleRule.toString()));
+        int total = 0;
+        for (int count : ruleFiringCounts.values()) {
+            total += count;
+        }
+        assertEquals(total, statistics.getRuleFiringCount());
+
+        // one set for the leaf, one for the single
+        assertEquals(2, statistics.getRelSetCount());
+        assertTrue(
+            statistics.getRelSubsetCount() >= statistics.getRelSetCount());
+        assertTrue(statistics.getRelCount() >= 4);
+        assertFalse(statistics.isTimeLimitReached());
+    }
+
+    /**
+     * Tests that an ambitious planner stops improving the plan once its time
+     * limit has expired.
+     */
+    public void testTimeLimit()
+    {
+        VolcanoPlanner planner = new VolcanoPlanner();
+        planner.ambitious = true;
+        planner.setTimeLimit(1);
+        planner.addRelTraitDef(CallingConventionTraitDef.instance);
+
+        // GoodRemoveSingleRule would find a cheaper plan, but it can only
+        // fire after SlowGoodSingleRule has used up the time limit
+        planner.addRule(new PhysLeafRule());
+        planner.addRule(new SlowGoodSingleRule());
+        planner.addRule(new GoodRemoveSingleRule());
+
+        NoneLeafRel leafRel =
+            new NoneLeafRel(
+                newCluster(planner),
+                "a");
+        NoneSingleRel singleRel =
+            new NoneSingleRel(
+                leafRel.getCluster(),
+                leafRel);
+        RelNode convertedRel =
+            planner.changeTraits(
+                singleRel,
+                PHYS_CALLING_CONVENTION.singletonSet);
+        planner.setRoot(convertedRel);
+        RelNode result = planner.chooseDelegate().findBestExp();
+        assertTrue(result instanceof PhysSingleRel);
+        assertTrue(planner.getStatistics().isTimeLimitReached());
+    }
+
     /**
      * Tests whether planner correctly notifies listeners of events.
      */
@@ -691,6 +815,21 @@ public class VolcanoPlannerTest
         }
     }
 
+    private static class SlowGoodSingleRule
+        extends GoodSingleRule
+    {
+        // override GoodSingleRule
+        public void onMatch(RelOptRuleCall call)
+        {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                throw Util.newInternal(ex);
+            }
+            super.onMatch(call);
+        }
+    }
+
     // NOTE: Previously, ReformedSingleRule did't work because it explicitly
     // specifies PhysLeafRel rather than RelNode for the single input.  Since
     // the PhysLeafRel is in a different subset from the original NoneLeafRel,
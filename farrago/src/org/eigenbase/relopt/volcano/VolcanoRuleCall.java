@@ -244,6 +244,7 @@ public class VolcanoRuleCall
                 this.generatedRelList = new ArrayList<RelNode>();
             }
 
+            volcanoPlanner.statistics.ruleFired(getRule());
             getRule().onMatch(this);
 
             if (tracer.isLoggable(Level.FINE)) {
@@ -53,13 +53,16 @@ class VolcanoRuleMatch
      * @param operand0 Primary operand
      * @param rels List of targets; copied by the constructor, so the client can
      * modify it later
+     * @param digest Digest of the match, as computed by {@link
+     * #computeDigest(RelOptRule, RelNode[])}
      *
      * @pre rels[i] != null
      */
     VolcanoRuleMatch(
         VolcanoPlanner volcanoPlanner,
         RelOptRuleOperand operand0,
-        RelNode [] rels)
+        RelNode [] rels,
+        String digest)
     {
         super(volcanoPlanner, operand0, (RelNode []) rels.clone());
         this.volcanoPlanner = volcanoPlanner;
@@ -71,7 +74,7 @@ class VolcanoRuleMatch
         // for now -- that the set is the same as the root relexp.
         targetSet = volcanoPlanner.getSet(rels[0]);
         assert targetSet != null : rels[0].toString() + " isn't in a set";
-        digest = computeDigest();
+        this.digest = digest;
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -154,12 +157,15 @@ class VolcanoRuleMatch
      * Computes a string describing this rule match. Two rule matches are
      * equivalent if and only if their digests are the same.
      *
+     * @param rule Rule
+     * @param rels Relational expressions matched by the rule's operands
+     *
      * @return description of this rule match
      */
-    private String computeDigest()
+    static String computeDigest(RelOptRule rule, RelNode [] rels)
     {
         StringBuilder buf = new StringBuilder("rule [");
-        buf.append(getRule().toString());
+        buf.append(rule.toString());
         buf.append("] rels [");
         Util.appendList(buf, rels);
         buf.append("]");
@@ -172,7 +178,7 @@ class VolcanoRuleMatch
      */
     public void recomputeDigest()
     {
-        digest = computeDigest();
+        digest = computeDigest(getRule(), rels);
     }
 
     /**
@@ -33,6 +33,7 @@ public class TupleIterResultSet
 
     private final TupleIter tupleIter;
     private TimeoutQueueTupleIter timeoutTupleIter;
+    private boolean endOfData;
 
     //~ Constructors -----------------------------------------------------------
 
@@ -73,6 +74,16 @@ public class TupleIterResultSet
         timeoutTupleIter.start();
     }
 
+    /**
+     * Returns whether the iterator has reported the end of its data, in which
+     * case {@link #getRow} is the total number of rows it produced; false if
+     * the caller stopped fetching early, or the maximum row count was reached.
+     */
+    public boolean isEndOfData()
+    {
+        return endOfData;
+    }
+
     public void close()
         throws SQLException
     {
@@ -101,6 +112,7 @@ public class TupleIterResultSet
                 : tupleIter.fetchNext();
 
             if (next == TupleIter.NoDataReason.END_OF_DATA) {
+                endOfData = true;
                 return false;
             } else if (next instanceof TupleIter.NoDataReason) {
                 // TODO: SWZ: 2/23/2006: better exception
@@ -0,0 +1,561 @@
+/*
+// $Id$
+// Package org.eigenbase is a class library of data management components.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.eigenbase.sql.validate;
+
+import java.math.*;
+
+import java.util.*;
+
+import org.eigenbase.reltype.*;
+import org.eigenbase.sql.*;
+import org.eigenbase.sql.parser.*;
+import org.eigenbase.sql.type.*;
+import org.eigenbase.sql.util.*;
+import org.eigenbase.util.*;
+
+
+/**
+ * SqlLiteralParameterizer rewrites a validated statement so that literals
+ * whose values do not influence how the statement is planned are replaced by
+ * dynamic parameters. Statements which differ only in such literals then
+ * produce the same text, so that a single prepared plan can be shared between
+ * them, with the literal values supplied as parameter values at execution
+ * time.
+ *
+ * <p>To be safe, only a narrow class of literals is replaced: those which are
+ * compared for equality with a column in a top-level conjunct of a WHERE
+ * clause, where the column is not referenced by any other conjunct of the
+ * same clause. Moreover, the literal must be a numeric or character string
+ * literal whose value is representable in the column's type, since the
+ * parameter will be inferred to have that type. All other literals are
+ * retained, because they may affect the statement's type derivation, or the
+ * choice of access path: for example, a range over a column, an IN list, a
+ * LIKE pattern, or a conjunction of several predicates on the same column can
+ * each be turned into a single index search only when the bounds are known at
+ * preparation time.
+ *
+ * <p>Even an equality predicate may be planned differently depending on its
+ * value, if the column is indexed or has a histogram: the value determines
+ * the search key and the estimated selectivity. If an {@link
+ * AccessPathInspector} is supplied, literals compared with such columns, and
+ * with columns whose table cannot be determined, are retained too.
+ *
+ * <p>The rewritten statement is produced as SQL text, in which the
+ * parameters (both those replacing literals and any which were already
+ * present) are numbered in the order in which they appear. Use {@link
+ * #getParamOrdinal} and {@link #getLiteralParamOrdinal} to map the original
+ * parameters and the replaced literals to their positions in the rewritten
+ * statement.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class SqlLiteralParameterizer
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final SqlValidator validator;
+
+    private final AccessPathInspector inspector;
+
+    private final Map<SqlLiteral, Boolean> eligibleLiterals;
+
+    private final List<SqlLiteral> literals;
+
+    private final List<Integer> literalParamOrdinals;
+
+    private final List<Integer> paramOrdinals;
+
+    private int paramCount;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new SqlLiteralParameterizer.
+     *
+     * @param validator validator which was used to validate the statement
+     */
+    public SqlLiteralParameterizer(SqlValidator validator)
+    {
+        this(validator, null);
+    }
+
+    /**
+     * Creates a new SqlLiteralParameterizer which retains literals compared
+     * with columns whose values influence access path selection.
+     *
+     * @param validator validator which was used to validate the statement
+     * @param inspector decides which columns have such access paths, or null
+     * to replace literals regardless of access paths
+     */
+    public SqlLiteralParameterizer(
+        SqlValidator validator,
+        AccessPathInspector inspector)
+    {
+        this.validator = validator;
+        this.inspector = inspector;
+        eligibleLiterals = new IdentityHashMap<SqlLiteral, Boolean>();
+        literals = new ArrayList<SqlLiteral>();
+        literalParamOrdinals = new ArrayList<Integer>();
+        paramOrdinals = new ArrayList<Integer>();
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Rewrites a validated statement, replacing eligible literals with dynamic
+     * parameters.
+     *
+     * @param validatedNode statement, as returned by {@link
+     * SqlValidator#validate}
+     * @param dialect dialect in which to generate SQL
+     *
+     * @return rewritten SQL, or null if the statement has no eligible literals
+     * (or cannot be rewritten safely)
+     */
+    public SqlString parameterize(SqlNode validatedNode, SqlDialect dialect)
+    {
+        eligibleLiterals.clear();
+        literals.clear();
+        literalParamOrdinals.clear();
+        paramOrdinals.clear();
+        paramCount = 0;
+
+        validatedNode.accept(
+            new SqlBasicVisitor<Void>() {
+                public Void visit(SqlCall call)
+                {
+                    if (call instanceof SqlSelect) {
+                        SqlSelect select = (SqlSelect) call;
+                        if (select.getWhere() != null) {
+                            findEligibleLiterals(select);
+                        }
+                    }
+                    return super.visit(call);
+                }
+            });
+        if (eligibleLiterals.isEmpty()) {
+            return null;
+        }
+
+        // Copy the tree, substituting placeholders for eligible literals and
+        // existing parameters.  The placeholders record the order in which
+        // they are unparsed, which is the order in which the parser will
+        // number them when the SQL is parsed again.
+        final List<Placeholder> unparseOrder = new ArrayList<Placeholder>();
+        SqlNode rewrittenNode =
+            validatedNode.accept(
+                new SqlShuttle() {
+                    public SqlNode visit(SqlLiteral literal)
+                    {
+                        if (!eligibleLiterals.containsKey(literal)) {
+                            return literal;
+                        }
+                        return new Placeholder(
+                            -1,
+                            literal,
+                            unparseOrder);
+                    }
+
+                    public SqlNode visit(SqlDynamicParam param)
+                    {
+                        return new Placeholder(
+                            param.getIndex(),
+                            null,
+                            unparseOrder);
+                    }
+                });
+        SqlString sql = rewrittenNode.toSqlString(dialect);
+
+        for (Placeholder placeholder : unparseOrder) {
+            int ordinal = paramCount++;
+            if (placeholder.literal != null) {
+                literals.add(placeholder.literal);
+                literalParamOrdinals.add(ordinal);
+                continue;
+            }
+            int index = placeholder.getIndex();
+            while (paramOrdinals.size() <= index) {
+                paramOrdinals.add(null);
+            }
+            if (paramOrdinals.get(index) != null) {
+                // An existing parameter was unparsed more than once (for
+                // example, because validation duplicated an expression).
+                // The rewritten statement would have more parameters than
+                // the original, so give up.
+                return null;
+            }
+            paramOrdinals.set(index, ordinal);
+        }
+        if (paramOrdinals.contains(null)) {
+            return null;
+        }
+        return sql;
+    }
+
+    /**
+     * @return number of dynamic parameters in the rewritten statement
+     */
+    public int getParamCount()
+    {
+        return paramCount;
+    }
+
+    /**
+     * @return number of dynamic parameters in the original statement
+     */
+    public int getOriginalParamCount()
+    {
+        return paramOrdinals.size();
+    }
+
+    /**
+     * Returns the position in the rewritten statement of a dynamic parameter
+     * of the original statement.
+     *
+     * @param index 0-based index of parameter in original statement
+     *
+     * @return 0-based index of parameter in rewritten statement
+     */
+    public int getParamOrdinal(int index)
+    {
+        return paramOrdinals.get(index);
+    }
+
+    /**
+     * @return literals which were replaced, in the order in which they appear
+     * in the rewritten statement
+     */
+    public List<SqlLiteral> getLiterals()
+    {
+        return Collections.unmodifiableList(literals);
+    }
+
+    /**
+     * Returns the position in the rewritten statement of the dynamic parameter
+     * which replaced a literal.
+     *
+     * @param i 0-based index into {@link #getLiterals}
+     *
+     * @return 0-based index of parameter in rewritten statement
+     */
+    public int getLiteralParamOrdinal(int i)
+    {
+        return literalParamOrdinals.get(i);
+    }
+
+    /**
+     * Returns the value of a literal in the form used for dynamic parameter
+     * values: a {@link BigDecimal} for an exact numeric literal, a {@link
+     * Double} for an approximate one, or a {@link String} for a character
+     * string literal.
+     *
+     * @param literal literal returned by {@link #getLiterals}
+     *
+     * @return Java value
+     */
+    public static Object getParamValue(SqlLiteral literal)
+    {
+        if (literal instanceof SqlNumericLiteral) {
+            BigDecimal value = literal.bigDecimalValue();
+            if (((SqlNumericLiteral) literal).isExact()) {
+                return value;
+            }
+            return value.doubleValue();
+        }
+        if (literal instanceof SqlCharStringLiteral) {
+            return ((NlsString) literal.getValue()).getValue();
+        }
+        throw Util.unexpected(literal.getTypeName());
+    }
+
+    private void findEligibleLiterals(SqlSelect select)
+    {
+        List<SqlNode> conjuncts = new ArrayList<SqlNode>();
+        flattenConjunction(select.getWhere(), conjuncts);
+        final SqlValidatorScope scope = validator.getWhereScope(select);
+
+        // Count the conjuncts referencing each column. Columns are keyed by
+        // the table they resolve to, so that differently qualified
+        // references to the same column are counted together.
+        final Map<List<String>, Integer> columnRefCounts =
+            new HashMap<List<String>, Integer>();
+        for (SqlNode conjunct : conjuncts) {
+            final Set<List<String>> columns = new HashSet<List<String>>();
+            conjunct.accept(
+                new SqlBasicVisitor<Void>() {
+                    public Void visit(SqlIdentifier id)
+                    {
+                        columns.add(getColumnKey(scope, id));
+                        return null;
+                    }
+                });
+            for (List<String> column : columns) {
+                Integer count = columnRefCounts.get(column);
+                columnRefCounts.put(column, (count == null) ? 1 : (count + 1));
+            }
+        }
+
+        for (SqlNode conjunct : conjuncts) {
+            if (conjunct.getKind() != SqlKind.EQUALS) {
+                continue;
+            }
+            SqlNode [] operands = ((SqlCall) conjunct).getOperands();
+            if (operands.length != 2) {
+                continue;
+            }
+            SqlIdentifier id;
+            SqlNode other;
+            if (operands[0] instanceof SqlIdentifier) {
+                id = (SqlIdentifier) operands[0];
+                other = operands[1];
+            } else if (operands[1] instanceof SqlIdentifier) {
+                id = (SqlIdentifier) operands[1];
+                other = operands[0];
+            } else {
+                continue;
+            }
+            if (!(other instanceof SqlLiteral)
+                || (columnRefCounts.get(getColumnKey(scope, id)) != 1))
+            {
+                continue;
+            }
+            SqlLiteral literal = (SqlLiteral) other;
+            if (isRepresentable(literal, id)
+                && !isAccessPathColumn(scope, id))
+            {
+                eligibleLiterals.put(literal, Boolean.TRUE);
+            }
+        }
+    }
+
+    /**
+     * Determines whether a column referenced in the WHERE clause of a query
+     * may be used to search an index, or to estimate selectivity from its
+     * value distribution.
+     */
+    private boolean isAccessPathColumn(
+        SqlValidatorScope scope,
+        SqlIdentifier id)
+    {
+        if (inspector == null) {
+            return false;
+        }
+        String [] names = resolveColumn(scope, id);
+        if (names == null) {
+            // a column of a subquery may be an indexed column of one of its
+            // tables
+            return true;
+        }
+        return inspector.isAccessPathColumn(
+            Arrays.copyOf(names, names.length - 1),
+            names[names.length - 1]);
+    }
+
+    /**
+     * Returns a key which identifies the column referenced by an identifier
+     * in the WHERE clause of a query: the qualified name of its table
+     * followed by the column name if it resolves to a column of a table, or
+     * else the identifier's own names.
+     */
+    private List<String> getColumnKey(SqlValidatorScope scope, SqlIdentifier id)
+    {
+        String [] names = resolveColumn(scope, id);
+        return Arrays.asList((names == null) ? id.names : names);
+    }
+
+    /**
+     * Resolves an identifier in the WHERE clause of a query to a column of a
+     * table.
+     *
+     * @return qualified name of the table followed by the column name, or
+     * null if the identifier does not resolve to a column of a table (for
+     * example, if it is a column of a subquery)
+     */
+    private String [] resolveColumn(SqlValidatorScope scope, SqlIdentifier id)
+    {
+        SqlIdentifier qualifiedId;
+        try {
+            qualifiedId = scope.fullyQualify(id);
+        } catch (EigenbaseException ex) {
+            // e.g. a column of a table in a subquery within the condition
+            return null;
+        }
+        if (qualifiedId.names.length != 2) {
+            return null;
+        }
+        SqlValidatorNamespace namespace =
+            scope.resolve(qualifiedId.names[0], null, null);
+        if ((namespace == null) || (namespace.getTable() == null)) {
+            return null;
+        }
+        String [] tableName = namespace.getTable().getQualifiedName();
+        String [] names = Arrays.copyOf(tableName, tableName.length + 1);
+        names[tableName.length] = qualifiedId.names[1];
+        return names;
+    }
+
+    private static void flattenConjunction(SqlNode node, List<SqlNode> list)
+    {
+        if (node.getKind() == SqlKind.AND) {
+            for (SqlNode operand : ((SqlCall) node).getOperands()) {
+                flattenConjunction(operand, list);
+            }
+        } else {
+            list.add(node);
+        }
+    }
+
+    /**
+     * Determines whether a literal can be replaced by a parameter having the
+     * type of the column it is compared with, without changing the result of
+     * the comparison.
+     */
+    private boolean isRepresentable(SqlLiteral literal, SqlIdentifier column)
+    {
+        RelDataType columnType = validator.getValidatedNodeTypeIfKnown(column);
+        if (columnType == null) {
+            return false;
+        }
+        SqlTypeName columnTypeName = columnType.getSqlTypeName();
+        if (literal instanceof SqlNumericLiteral) {
+            BigDecimal value = literal.bigDecimalValue();
+            boolean exact = ((SqlNumericLiteral) literal).isExact();
+            switch (columnTypeName) {
+            case TINYINT:
+                return exact
+                    && isIntegerInRange(value, Byte.MIN_VALUE, Byte.MAX_VALUE);
+            case SMALLINT:
+                return exact
+                    && isIntegerInRange(
+                        value,
+                        Short.MIN_VALUE,
+                        Short.MAX_VALUE);
+            case INTEGER:
+                return exact
+                    && isIntegerInRange(
+                        value,
+                        Integer.MIN_VALUE,
+                        Integer.MAX_VALUE);
+            case BIGINT:
+                return exact
+                    && isIntegerInRange(value, Long.MIN_VALUE, Long.MAX_VALUE);
+            case DECIMAL:
+                return exact
+                    && (value.scale() <= columnType.getScale())
+                    && ((value.precision() - value.scale())
+                        <= (columnType.getPrecision() - columnType.getScale()));
+            case DOUBLE:
+            case FLOAT:
+                return true;
+            default:
+                return false;
+            }
+        }
+        if (literal instanceof SqlCharStringLiteral) {
+            if (!SqlTypeUtil.inCharFamily(columnType)) {
+                return false;
+            }
+            RelDataType literalType =
+                validator.getValidatedNodeTypeIfKnown(literal);
+            if ((literalType == null)
+                || (literalType.getCharset() == null)
+                || !literalType.getCharset().equals(columnType.getCharset()))
+            {
+                return false;
+            }
+            String value = ((NlsString) literal.getValue()).getValue();
+            return value.length() <= columnType.getPrecision();
+        }
+        return false;
+    }
+
+    private static boolean isIntegerInRange(
+        BigDecimal value,
+        long min,
+        long max)
+    {
+        return ((value.signum() == 0)
+                || (value.stripTrailingZeros().scale() <= 0))
+            && (value.compareTo(BigDecimal.valueOf(min)) >= 0)
+            && (value.compareTo(BigDecimal.valueOf(max)) <= 0);
+    }
+
+    //~ Inner Interfaces -------------------------------------------------------
+
+    /**
+     * Decides which columns have access paths whose use depends on the values
+     * they are compared with.
+     */
+    public interface AccessPathInspector
+    {
+        /**
+         * Determines whether comparing a column with a literal may produce a
+         * different plan than comparing it with a dynamic parameter, for
+         * example because the column is indexed or has a histogram.
+         *
+         * @param tableName fully qualified name of the table
+         * @param columnName name of the column
+         *
+         * @return whether literals compared with the column must be retained
+         */
+        boolean isAccessPathColumn(String [] tableName, String columnName);
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Dynamic parameter which stands in for either a replaced literal or an
+     * existing dynamic parameter, and records the order in which it is
+     * unparsed.
+     */
+    private static class Placeholder
+        extends SqlDynamicParam
+    {
+        private final SqlLiteral literal;
+        private final List<Placeholder> unparseOrder;
+
+        Placeholder(
+            int index,
+            SqlLiteral literal,
+            List<Placeholder> unparseOrder)
+        {
+            super(
+                index,
+                (literal == null) ? SqlParserPos.ZERO
+                : literal.getParserPosition());
+            this.literal = literal;
+            this.unparseOrder = unparseOrder;
+        }
+
+        public void unparse(
+            SqlWriter writer,
+            int leftPrec,
+            int rightPrec)
+        {
+            unparseOrder.add(this);
+            super.unparse(writer, leftPrec, rightPrec);
+        }
+    }
+}
+
+// End SqlLiteralParameterizer.java
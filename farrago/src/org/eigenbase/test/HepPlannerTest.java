@@ -23,6 +23,7 @@ package org.eigenbase.test;
 
 import org.eigenbase.rel.*;
 import org.eigenbase.rel.rules.*;
+import org.eigenbase.relopt.*;
 import org.eigenbase.relopt.hep.*;
 
 
@@ -173,6 +174,51 @@ public class HepPlannerTest
             "select upper(ename) from (select lower(ename) as ename from emp)");
     }
 
+    public void testSubprogramForInputs()
+        throws Exception
+    {
+        // Verify that the subprogram rewrites the inputs of each union
+        // separately: the nested union gets rewritten, since it is an input
+        // of the top union, but the top union itself does not.
+        HepProgramBuilder subprogramBuilder = new HepProgramBuilder();
+        subprogramBuilder.addMatchOrder(HepMatchOrder.TOP_DOWN);
+        subprogramBuilder.addRuleInstance(UnionToDistinctRule.instance);
+
+        HepProgramBuilder programBuilder = new HepProgramBuilder();
+        programBuilder.addSubprogramForInputs(
+            UnionRel.class,
+            subprogramBuilder.createProgram());
+
+        checkPlanning(
+            programBuilder.createProgram(),
+            unionTree);
+    }
+
+    public void testSubprogramForInputsWithMatchLimit()
+        throws Exception
+    {
+        // Verify that each input is rewritten to its own fixpoint when the
+        // subprogram restarts after every match, and that the vertices
+        // discarded along the way are collected without disturbing the other
+        // input.
+        HepProgramBuilder subprogramBuilder = new HepProgramBuilder();
+        subprogramBuilder.addMatchOrder(HepMatchOrder.TOP_DOWN);
+        subprogramBuilder.addMatchLimit(1);
+        subprogramBuilder.addRuleInstance(ProjectToCalcRule.instance);
+        subprogramBuilder.addRuleInstance(MergeCalcRule.instance);
+
+        HepProgramBuilder programBuilder = new HepProgramBuilder();
+        programBuilder.addSubprogramForInputs(
+            UnionRel.class,
+            subprogramBuilder.createProgram());
+
+        checkPlanning(
+            programBuilder.createProgram(),
+            "select upper(ename) from (select lower(ename) as ename from emp)"
+            + " union all"
+            + " select upper(name) from (select lower(name) as name from dept)");
+    }
+
     public void testGroup()
         throws Exception
     {
@@ -190,6 +236,51 @@ public class HepPlannerTest
             programBuilder.createProgram(),
             "select upper(name) from dept where deptno=20");
     }
+
+    public void testMergeEquivalentSubtrees()
+        throws Exception
+    {
+        // Verify that subtrees which only become identical once a rule has
+        // fired are merged, so that the CommonRelSubExprRules see them as a
+        // common subexpression.  Here the branches of the union are equal
+        // once the trivial projection has been removed from the second.
+        HepProgramBuilder programBuilder = new HepProgramBuilder();
+        programBuilder.addRuleInstance(RemoveTrivialProjectRule.instance);
+        programBuilder.addCommonRelSubExprInstruction();
+
+        HepPlanner planner =
+            new HepPlanner(
+                programBuilder.createProgram());
+
+        planner.addRule(new CommonProjectToCalcRule());
+
+        checkPlanning(
+            planner,
+            "select name from dept"
+            + " union all"
+            + " select name from (select * from dept)");
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Rule which converts a {@link ProjectRel} to a {@link CalcRel}, but only
+     * where the project is a common subexpression.
+     */
+    private static class CommonProjectToCalcRule
+        extends CommonRelSubExprRule
+    {
+        CommonProjectToCalcRule()
+        {
+            super(new RelOptRuleOperand(ProjectRel.class, ANY));
+        }
+
+        // implement RelOptRule
+        public void onMatch(RelOptRuleCall call)
+        {
+            ProjectToCalcRule.instance.onMatch(call);
+        }
+    }
 }
 
 // End HepPlannerTest.java
@@ -0,0 +1,159 @@
+/*
+// $Id$
+// Package org.eigenbase is a class library of data management components.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.eigenbase.test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.eigenbase.javac.*;
+
+
+/**
+ * Unit test for {@link JaninoCompiler}, in particular compilers created by
+ * {@link JavaCompiler#forkCompiler}.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class JaninoCompilerTest
+    extends EigenbaseTestCase
+{
+    //~ Constructors -----------------------------------------------------------
+
+    public JaninoCompilerTest(String name)
+        throws Exception
+    {
+        super(name);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Tests that forked compilers can compile on several threads at once, see
+     * classes compiled by their parent, and report their bytecode and its size
+     * through the parent.
+     */
+    public void testFork()
+        throws Exception
+    {
+        JaninoCompiler compiler = new JaninoCompiler();
+        compiler.getArgs().setRetainByteCodes(true);
+        compile(
+            compiler,
+            "fork.Base",
+            "package fork; public class Base { public static int f() "
+            + "{ return 7; } }");
+        int baseSize = compiler.getTotalByteCodeSize();
+        assertTrue(baseSize > 0);
+
+        final int nForks = 4;
+        ExecutorService pool = Executors.newFixedThreadPool(nForks);
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < nForks; ++i) {
+                final JavaCompiler fork = compiler.forkCompiler();
+                assertNotNull(fork);
+                final String className = "fork.Child" + i;
+                final String source =
+                    "package fork; public class Child" + i
+                    + " { public static int g() { return Base.f() + " + i
+                    + "; } }";
+                futures.add(
+                    pool.submit(
+                        new Callable<Integer>() {
+                            public Integer call()
+                                throws Exception
+                            {
+                                compile(fork, className, source);
+                                Class clazz =
+                                    Class.forName(
+                                        className,
+                                        true,
+                                        fork.getClassLoader());
+                                return (Integer) clazz.getMethod("g").invoke(
+                                    null);
+                            }
+                        }));
+            }
+            for (int i = 0; i < nForks; ++i) {
+                assertEquals(7 + i, futures.get(i).get().intValue());
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        Map<String, byte []> byteCodes = compiler.getByteCodes();
+        assertEquals(nForks + 1, byteCodes.size());
+        int total = 0;
+        for (byte [] bytes : byteCodes.values()) {
+            total += bytes.length;
+        }
+        assertEquals(total, compiler.getTotalByteCodeSize());
+        assertTrue(total > baseSize);
+    }
+
+    /**
+     * Tests that bytecode is only counted, not kept, unless the compiler is
+     * asked to retain it.
+     */
+    public void testNoRetainByDefault()
+    {
+        JaninoCompiler compiler = new JaninoCompiler();
+        compile(
+            compiler,
+            "noretain.Base",
+            "package noretain; public class Base { }");
+        assertTrue(compiler.getTotalByteCodeSize() > 0);
+        assertNull(compiler.getByteCodes());
+
+        JavaCompiler fork = compiler.forkCompiler();
+        compile(
+            fork,
+            "noretain.Child",
+            "package noretain; public class Child extends Base { }");
+        assertNull(compiler.getByteCodes());
+    }
+
+    /**
+     * Tests that the synchronized fallback compiler declines to fork, since
+     * its forks could not run concurrently anyway.
+     */
+    public void testSynchronizedDoesNotFork()
+    {
+        assertNull(new SynchronizedJaninoCompiler().forkCompiler());
+    }
+
+    private static void compile(
+        JavaCompiler compiler,
+        String fullClassName,
+        String source)
+    {
+        JavaCompilerArgs args = compiler.getArgs();
+        args.clear();
+        args.setDestdir(System.getProperty("java.io.tmpdir"));
+        args.setFullClassName(fullClassName);
+        args.setSource(source, fullClassName.replace('.', '/') + ".java");
+        compiler.compile();
+    }
+}
+
+// End JaninoCompilerTest.java
@@ -0,0 +1,237 @@
+/*
+// $Id$
+// Package org.eigenbase is a class library of data management components.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.eigenbase.test;
+
+import java.math.*;
+
+import java.util.*;
+
+import org.eigenbase.sql.*;
+import org.eigenbase.sql.util.*;
+import org.eigenbase.sql.validate.*;
+
+
+/**
+ * Unit test for {@link SqlLiteralParameterizer}.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class SqlLiteralParameterizerTest
+    extends SqlValidatorTestCase
+{
+    //~ Constructors -----------------------------------------------------------
+
+    public SqlLiteralParameterizerTest(String name)
+    {
+        super(name);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public void testSoleEquality()
+    {
+        SqlLiteralParameterizer parameterizer =
+            checkParameterized(
+                "select ename from emp where empno = 10 and ename = 'Fred'",
+                2);
+        List<SqlLiteral> literals = parameterizer.getLiterals();
+        assertEquals(
+            new BigDecimal(10),
+            SqlLiteralParameterizer.getParamValue(literals.get(0)));
+        assertEquals(
+            "Fred",
+            SqlLiteralParameterizer.getParamValue(literals.get(1)));
+        assertEquals(0, parameterizer.getLiteralParamOrdinal(0));
+        assertEquals(1, parameterizer.getLiteralParamOrdinal(1));
+    }
+
+    public void testLiteralOnLeft()
+    {
+        checkParameterized("select ename from emp where 10 = empno", 1);
+    }
+
+    public void testRangeKept()
+    {
+        checkNotParameterized(
+            "select ename from emp where empno > 10");
+        checkNotParameterized(
+            "select ename from emp where empno between 10 and 20");
+    }
+
+    public void testLikeKept()
+    {
+        checkNotParameterized(
+            "select ename from emp where ename like 'F%'");
+    }
+
+    public void testSameColumnTwiceKept()
+    {
+        // Two predicates on one column can be combined into a single sarg
+        // only while both bounds are literals.
+        checkNotParameterized(
+            "select ename from emp where empno = 10 and empno = 20");
+        checkParameterized(
+            "select ename from emp where empno = 10 and empno > 5"
+            + " and deptno = 20",
+            1);
+    }
+
+    public void testSameColumnQualifiedKept()
+    {
+        // References to a column count together however they are qualified.
+        checkNotParameterized(
+            "select ename from emp where empno = 10 and emp.empno > 5");
+        checkNotParameterized(
+            "select ename from emp as e where empno = 10 and e.empno > 5");
+    }
+
+    public void testDisjunctionKept()
+    {
+        checkNotParameterized(
+            "select ename from emp where empno = 10 or deptno = 20");
+    }
+
+    public void testUnrepresentableKept()
+    {
+        // out of range for INTEGER
+        checkNotParameterized(
+            "select ename from emp where empno = 12345678901");
+
+        // fractional value against an integer column
+        checkNotParameterized(
+            "select ename from emp where empno = 1.5");
+
+        // longer than the column
+        checkNotParameterized(
+            "select ename from emp where job = 'abcdefghijklmnop'");
+    }
+
+    public void testUserParamsInterleaved()
+    {
+        SqlLiteralParameterizer parameterizer =
+            checkParameterized(
+                "select ename from emp where mgr = ? and empno = 10"
+                + " and deptno = ?",
+                3);
+        assertEquals(2, parameterizer.getOriginalParamCount());
+        assertEquals(0, parameterizer.getParamOrdinal(0));
+        assertEquals(2, parameterizer.getParamOrdinal(1));
+        assertEquals(1, parameterizer.getLiteralParamOrdinal(0));
+    }
+
+    public void testSubqueryParameterized()
+    {
+        checkParameterized(
+            "select * from (select empno from emp where deptno = 20)"
+            + " where empno = 7",
+            2);
+    }
+
+    public void testAccessPathColumnKept()
+    {
+        final List<String> tableNames = new ArrayList<String>();
+        SqlLiteralParameterizer.AccessPathInspector inspector =
+            new SqlLiteralParameterizer.AccessPathInspector() {
+                public boolean isAccessPathColumn(
+                    String [] tableName,
+                    String columnName)
+                {
+                    tableNames.add(Arrays.asList(tableName).toString());
+                    return columnName.equals("EMPNO");
+                }
+            };
+
+        // Only the literal compared with the column without an access path
+        // is replaced.
+        SqlLiteralParameterizer parameterizer =
+            checkParameterized(
+                "select ename from emp where empno = 10 and ename = 'Fred'",
+                1,
+                inspector);
+        assertEquals(
+            "Fred",
+            SqlLiteralParameterizer.getParamValue(
+                parameterizer.getLiterals().get(0)));
+        assertTrue(tableNames.contains("[SALES, EMP]"));
+        checkNotParameterized(
+            "select ename from emp where empno = 10",
+            inspector);
+
+        // A column of a subquery can't be traced to a table, so the literal
+        // compared with it is kept.
+        checkParameterized(
+            "select * from (select empno from emp where deptno = 20)"
+            + " where empno = 7",
+            1,
+            inspector);
+    }
+
+    private SqlLiteralParameterizer checkParameterized(
+        String sql,
+        int expectedParamCount)
+    {
+        return checkParameterized(sql, expectedParamCount, null);
+    }
+
+    private SqlLiteralParameterizer checkParameterized(
+        String sql,
+        int expectedParamCount,
+        SqlLiteralParameterizer.AccessPathInspector inspector)
+    {
+        SqlValidator validator = tester.getValidator();
+        SqlNode node = tester.parseAndValidate(validator, sql);
+        SqlLiteralParameterizer parameterizer =
+            new SqlLiteralParameterizer(validator, inspector);
+        SqlString parameterizedSql =
+            parameterizer.parameterize(node, SqlDialect.EIGENBASE);
+        assertNotNull(sql, parameterizedSql);
+        assertEquals(expectedParamCount, parameterizer.getParamCount());
+        int count = 0;
+        String s = parameterizedSql.getSql();
+        for (int i = s.indexOf('?'); i >= 0; i = s.indexOf('?', i + 1)) {
+            ++count;
+        }
+        assertEquals(s, expectedParamCount, count);
+        return parameterizer;
+    }
+
+    private void checkNotParameterized(String sql)
+    {
+        checkNotParameterized(sql, null);
+    }
+
+    private void checkNotParameterized(
+        String sql,
+        SqlLiteralParameterizer.AccessPathInspector inspector)
+    {
+        SqlValidator validator = tester.getValidator();
+        SqlNode node = tester.parseAndValidate(validator, sql);
+        SqlLiteralParameterizer parameterizer =
+            new SqlLiteralParameterizer(validator, inspector);
+        assertNull(
+            sql,
+            parameterizer.parameterize(node, SqlDialect.EIGENBASE));
+    }
+}
+
+// End SqlLiteralParameterizerTest.java
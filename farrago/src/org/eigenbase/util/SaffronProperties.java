@@ -122,6 +122,15 @@ public class SaffronProperties
     public final StringProperty javaCompilerArgs =
         new StringProperty(this, "saffron.java.compiler.args", null);
 
+    /**
+     * The integer property "saffron.java.compiler.threads" is the maximum
+     * number of independent generated classes which may be compiled
+     * concurrently, across all statements. The default, 0, means one per
+     * available processor; 1 disables concurrent compilation.
+     */
+    public final IntegerProperty javaCompilerThreads =
+        new IntegerProperty(this, "saffron.java.compiler.threads", 0);
+
     /**
      * The boolean property "saffron.stupid" determines whether to optimize
      * variable assignments. If it is true, records are assigned to a variable
@@ -175,6 +175,24 @@ class LcsDataServer
                                 LcsIndexSearchRel.class,
                                 RelOptRule.ANY)))),
                 "with merge child"));
+
+        // RuntimeFilter rules
+        planner.addRule(
+            new LcsRuntimeFilterRule(
+                new RelOptRuleOperand(
+                    JoinRel.class,
+                    new RelOptRuleOperand(LcsRowScanRel.class, RelOptRule.ANY)),
+                "without project"));
+        planner.addRule(
+            new LcsRuntimeFilterRule(
+                new RelOptRuleOperand(
+                    JoinRel.class,
+                    new RelOptRuleOperand(
+                        ProjectRel.class,
+                        new RelOptRuleOperand(
+                            LcsRowScanRel.class,
+                            RelOptRule.ANY))),
+                "with project"));
     }
 
     // implement FarragoMedLocalDataServer
@@ -600,7 +600,7 @@ public class LcsIndexAccessRule
      * @param searchColumns array of column attributes representing the search
      * keys
      */
-    private static RelDataType getSearchKeyRowType(
+    static RelDataType getSearchKeyRowType(
         FennelRel rel,
         FemAbstractAttribute [] searchColumns)
     {
@@ -0,0 +1,459 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.luciddb.lcs;
+
+import java.util.*;
+
+import net.sf.farrago.fem.med.*;
+import net.sf.farrago.fem.sql2003.*;
+import net.sf.farrago.fennel.rel.*;
+import net.sf.farrago.query.*;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.rel.metadata.*;
+import org.eigenbase.relopt.*;
+import org.eigenbase.reltype.*;
+import org.eigenbase.rex.*;
+import org.eigenbase.sql.fun.*;
+import org.eigenbase.sql.type.*;
+
+
+/**
+ * LcsRuntimeFilterRule restricts the scan of a column store table on the left
+ * of an equi-join to the range of join key values found on the right of the
+ * join. It is meant for star joins where no bitmap index on the fact table key
+ * allows {@link LcsIndexSemiJoinRule} to filter the fact table up front:
+ *
+ * <pre>
+ * JoinRel(LcsRowScanRel(F), D) ->
+ *     JoinRel(
+ *         LcsRowScanRel(
+ *             F,
+ *             residual filter on F.k:
+ *                 ProjectRel('[', MIN(D.k), ']', MAX(D.k),
+ *                     AggregateRel(
+ *                         FilterRel(D.k IS NOT NULL, D)))),
+ *         D)
+ * </pre>
+ *
+ * <p>The range is computed from the dimension input when the statement
+ * executes and is applied as a residual filter, so the clusters holding the
+ * key column are read first and the other clusters of the fact table are only
+ * read for rows within the range. This pays off when the dimension input is
+ * restricted by selective predicates and its keys are clustered within the
+ * key domain of the fact table, as surrogate keys of recently added or
+ * related dimension rows usually are. The dimension input is evaluated twice,
+ * as for index semijoins, so the rule only fires when the dimension input has
+ * far fewer distinct keys than the fact table. Whether the keys are clustered
+ * cannot be known from the statistics, so the rule is only part of the
+ * LucidDB program if the session variable {@link
+ * org.luciddb.session.LucidDbSessionPersonality#JOIN_RANGE_FILTERS} is true.
+ *
+ * <p>The selectivity given to the restricted scan does not assume
+ * clustering: if the dimension keys were spread uniformly over the distinct
+ * keys of the fact table, their range would be expected to cover (k - 1) / (k
+ * + 1) of them, for k dimension keys. The scan is never estimated to return
+ * fewer rows than actually join, which is the estimate if the keys are
+ * perfectly clustered.
+ *
+ * <p>Only numeric and datetime keys whose types are identical on both sides
+ * are considered, so that the range compares exactly as the join does.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class LcsRuntimeFilterRule
+    extends RelOptRule
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * The rule only fires if the ratio of distinct keys on the dimension side
+     * to distinct keys of the fact table is below this value.
+     */
+    private static final double MAX_KEY_RATIO = 0.5;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates an LcsRuntimeFilterRule.
+     *
+     * @param operand Root operand, must not be null
+     * @param id Description of rule
+     */
+    public LcsRuntimeFilterRule(RelOptRuleOperand operand, String id)
+    {
+        // This rule is fired for either of the following 2 patterns:
+        //
+        // RelOptRuleOperand(
+        //    JoinRel.class,
+        //    new RelOptRuleOperand(LcsRowScanRel.class, ANY))
+        // or
+        //
+        // RelOptRuleOperand(
+        //    JoinRel.class,
+        //    new RelOptRuleOperand(
+        //        ProjectRel.class,
+        //        new RelOptRuleOperand(LcsRowScanRel.class, ANY)))
+
+        super(operand, "LcsRuntimeFilterRule: " + id);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement RelOptRule
+    public void onMatch(RelOptRuleCall call)
+    {
+        JoinRel join = (JoinRel) call.rels[0];
+        ProjectRel project = null;
+        LcsRowScanRel origRowScan;
+        if (call.rels[1] instanceof ProjectRel) {
+            project = (ProjectRel) call.rels[1];
+            origRowScan = (LcsRowScanRel) call.rels[2];
+        } else {
+            origRowScan = (LcsRowScanRel) call.rels[1];
+        }
+
+        // rows of the left input that don't join can only be dropped if the
+        // join doesn't preserve them
+        if ((join.getJoinType() != JoinRelType.INNER)
+            && (join.getJoinType() != JoinRelType.RIGHT))
+        {
+            return;
+        }
+
+        RelNode leftRel = join.getLeft();
+        RelNode rightRel = join.getRight();
+        List<Integer> leftKeys = new ArrayList<Integer>();
+        List<Integer> rightKeys = new ArrayList<Integer>();
+        RelOptUtil.splitJoinCondition(
+            leftRel,
+            rightRel,
+            join.getCondition(),
+            leftKeys,
+            rightKeys);
+
+        RelDataTypeField [] leftFields = leftRel.getRowType().getFields();
+        RelDataTypeField [] rightFields = rightRel.getRowType().getFields();
+        List<Integer> origResCols = Arrays.asList(origRowScan.residualColumns);
+
+        // use the first key which is eligible; once it has been converted,
+        // the rule fires again for the next one
+        for (int i = 0; i < leftKeys.size(); i++) {
+            RelDataType leftType = leftFields[leftKeys.get(i)].getType();
+            RelDataType rightType = rightFields[rightKeys.get(i)].getType();
+            if (!isRangeKeyType(
+                    join.getCluster().getTypeFactory(),
+                    leftType,
+                    rightType))
+            {
+                continue;
+            }
+
+            int scanOrdinal = leftKeys.get(i);
+            if (project != null) {
+                RexNode projExpr = project.getProjectExps()[scanOrdinal];
+                if (!(projExpr instanceof RexInputRef)) {
+                    continue;
+                }
+                scanOrdinal = ((RexInputRef) projExpr).getIndex();
+            }
+            FemAbstractColumn keyColumn =
+                origRowScan.getColumnForFieldAccess(scanOrdinal);
+            if (keyColumn == null) {
+                continue;
+            }
+            int resCol = origRowScan.getOriginalColumnOrdinal(scanOrdinal);
+            if (origResCols.contains(resCol)) {
+                continue;
+            }
+
+            Double keyRatio =
+                getKeyRatio(
+                    origRowScan,
+                    scanOrdinal,
+                    rightRel,
+                    rightKeys.get(i));
+            if ((keyRatio == null) || (keyRatio >= MAX_KEY_RATIO)) {
+                continue;
+            }
+
+            transformJoin(
+                call,
+                join,
+                project,
+                origRowScan,
+                keyColumn,
+                resCol,
+                rightKeys.get(i),
+                getRangeSelectivity(rightRel, rightKeys.get(i), keyRatio));
+            return;
+        }
+    }
+
+    /**
+     * Determines whether a join key can be restricted to a range computed
+     * from the other input.
+     *
+     * @param typeFactory type factory
+     * @param leftType type of the key in the fact table
+     * @param rightType type of the key in the dimension input
+     *
+     * @return true if the key can be restricted
+     */
+    private static boolean isRangeKeyType(
+        RelDataTypeFactory typeFactory,
+        RelDataType leftType,
+        RelDataType rightType)
+    {
+        if (!SqlTypeUtil.isNumeric(leftType)
+            && !SqlTypeUtil.isDatetime(leftType))
+        {
+            return false;
+        }
+        return SqlTypeUtil.equalSansNullability(
+            typeFactory,
+            leftType,
+            rightType);
+    }
+
+    /**
+     * Estimates the ratio of the number of distinct keys on the dimension side
+     * of the join to the number of distinct keys in the fact table.
+     *
+     * @param rowScan row scan on the fact table
+     * @param scanOrdinal ordinal of the key in the row scan
+     * @param rightRel dimension side of the join
+     * @param rightKey ordinal of the key in the dimension side
+     *
+     * @return ratio, or null if it cannot be estimated
+     */
+    private static Double getKeyRatio(
+        LcsRowScanRel rowScan,
+        int scanOrdinal,
+        RelNode rightRel,
+        int rightKey)
+    {
+        BitSet factKey = new BitSet();
+        factKey.set(scanOrdinal);
+        Double factNdv =
+            RelMetadataQuery.getDistinctRowCount(rowScan, factKey, null);
+        if (factNdv == null) {
+            factNdv = RelMetadataQuery.getRowCount(rowScan);
+        }
+
+        BitSet dimKey = new BitSet();
+        dimKey.set(rightKey);
+        Double dimNdv =
+            RelMetadataQuery.getDistinctRowCount(rightRel, dimKey, null);
+        if (dimNdv == null) {
+            dimNdv = RelMetadataQuery.getRowCount(rightRel);
+        }
+
+        if ((factNdv == null) || (dimNdv == null) || (factNdv <= 0)) {
+            return null;
+        }
+        return dimNdv / factNdv;
+    }
+
+    /**
+     * Estimates the fraction of the rows of the fact table whose keys fall
+     * within the range of keys on the dimension side of the join, assuming
+     * the dimension keys are spread uniformly over the fact table keys.
+     *
+     * @param rightRel dimension side of the join
+     * @param rightKey ordinal of the key in the dimension side
+     * @param keyRatio ratio of distinct keys on the dimension side to
+     * distinct keys in the fact table, as from {@link #getKeyRatio}
+     *
+     * @return selectivity of the range filter
+     */
+    private static double getRangeSelectivity(
+        RelNode rightRel,
+        int rightKey,
+        double keyRatio)
+    {
+        BitSet dimKey = new BitSet();
+        dimKey.set(rightKey);
+        Double dimNdv =
+            RelMetadataQuery.getDistinctRowCount(rightRel, dimKey, null);
+        if (dimNdv == null) {
+            dimNdv = RelMetadataQuery.getRowCount(rightRel);
+        }
+        double spread = 0;
+        if ((dimNdv != null) && (dimNdv > 1)) {
+            spread = (dimNdv - 1) / (dimNdv + 1);
+        }
+
+        // the range holds at least the rows which join
+        return Math.min(1.0, Math.max(keyRatio, spread));
+    }
+
+    /**
+     * Adds a residual filter on the fact table key to the row scan on the left
+     * of the join.
+     *
+     * @param call rule call
+     * @param join the join
+     * @param project projection between the join and the row scan, or null
+     * @param origRowScan original row scan on the fact table
+     * @param keyColumn fact table key column
+     * @param resCol ordinal of the key column in the fact table
+     * @param rightKey ordinal of the key in the dimension side of the join
+     * @param rangeSelectivity estimated selectivity of the new residual filter
+     */
+    private void transformJoin(
+        RelOptRuleCall call,
+        JoinRel join,
+        ProjectRel project,
+        LcsRowScanRel origRowScan,
+        FemAbstractColumn keyColumn,
+        int resCol,
+        int rightKey,
+        double rangeSelectivity)
+    {
+        RelNode rightRel = join.getRight();
+        RelOptCluster cluster = origRowScan.getCluster();
+        RexBuilder rexBuilder = cluster.getRexBuilder();
+        RelDataTypeFactory typeFactory = rexBuilder.getTypeFactory();
+
+        // compute the range of non-null keys on the dimension side
+        RelNode nullFilterRel =
+            RelOptUtil.createNullFilter(
+                rightRel,
+                new Integer[] { rightKey });
+        RelDataType keyType =
+            typeFactory.createTypeWithNullability(
+                rightRel.getRowType().getFields()[rightKey].getType(),
+                true);
+        List<Integer> argList = Collections.singletonList(rightKey);
+        List<AggregateCall> aggCalls = new ArrayList<AggregateCall>();
+        aggCalls.add(
+            new AggregateCall(
+                SqlStdOperatorTable.minOperator,
+                false,
+                argList,
+                keyType,
+                null));
+        aggCalls.add(
+            new AggregateCall(
+                SqlStdOperatorTable.maxOperator,
+                false,
+                argList,
+                keyType,
+                null));
+        RelNode aggRel =
+            new AggregateRel(
+                cluster,
+                nullFilterRel,
+                Collections.<RelDataTypeField>emptyList(),
+                new BitSet(),
+                aggCalls);
+
+        // turn the range into the closed interval expected by the residual
+        // filter; if the dimension side is empty, the bounds are null and
+        // nothing joins anyway
+        RexNode [] tupleExps =
+            {
+                rexBuilder.makeLiteral(
+                    FennelSearchEndpoint.SEARCH_CLOSED_LOWER.getSymbol()),
+                rexBuilder.makeInputRef(keyType, 0),
+                rexBuilder.makeLiteral(
+                    FennelSearchEndpoint.SEARCH_CLOSED_UPPER.getSymbol()),
+                rexBuilder.makeInputRef(keyType, 1)
+            };
+        RelNode tupleRel = CalcRel.createProject(aggRel, tupleExps, null);
+        RelDataType keyRowType =
+            LcsIndexAccessRule.getSearchKeyRowType(
+                origRowScan,
+                new FemAbstractAttribute[] { keyColumn });
+        RelNode valueRel =
+            convert(
+                RelOptUtil.createCastRel(tupleRel, keyRowType, false),
+                join.getTraits().plus(FennelRel.FENNEL_EXEC_CONVENTION));
+
+        // apply the new residual filter after the existing ones, which are
+        // on literal ranges and likely to be more selective
+        int origInputCount = origRowScan.getInputs().length;
+        int origResidualColumnCount = origRowScan.residualColumns.length;
+        RelNode [] rowScanInputRels = new RelNode[origInputCount + 1];
+        System.arraycopy(
+            origRowScan.getInputs(),
+            0,
+            rowScanInputRels,
+            0,
+            origInputCount);
+        rowScanInputRels[origInputCount] = valueRel;
+
+        Integer [] newResCols = new Integer[origResidualColumnCount + 1];
+        System.arraycopy(
+            origRowScan.residualColumns,
+            0,
+            newResCols,
+            0,
+            origResidualColumnCount);
+        newResCols[origResidualColumnCount] = resCol;
+
+        // Create the list of clusters so the clusters containing the
+        // residual columns appear first.
+        List<FemLocalIndex> clusterList =
+            origRowScan.getIndexGuide().createResidualClusterList(newResCols);
+        for (FemLocalIndex clusteredIndex : origRowScan.clusteredIndexes) {
+            if (!clusterList.contains(clusteredIndex)) {
+                clusterList.add(clusteredIndex);
+            }
+        }
+
+        RelNode newLeftRel =
+            new LcsRowScanRel(
+                cluster,
+                rowScanInputRels,
+                origRowScan.lcsTable,
+                clusterList,
+                origRowScan.getConnection(),
+                origRowScan.projectedColumns,
+                origRowScan.isFullScan,
+                newResCols,
+                rangeSelectivity * origRowScan.getInputSelectivity());
+        if (project != null) {
+            newLeftRel =
+                CalcRel.createProject(
+                    newLeftRel,
+                    project.getProjectExps(),
+                    RelOptUtil.getFieldNames(project.getRowType()));
+        }
+
+        JoinRel newJoin =
+            new JoinRel(
+                join.getCluster(),
+                newLeftRel,
+                rightRel,
+                join.getCondition(),
+                join.getJoinType(),
+                join.getVariablesStopped(),
+                join.isSemiJoinDone(),
+                join.getSystemFieldList());
+        call.transformTo(newJoin);
+    }
+}
+
+// End LcsRuntimeFilterRule.java
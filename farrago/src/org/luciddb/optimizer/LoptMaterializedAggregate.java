@@ -0,0 +1,443 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.luciddb.optimizer;
+
+import java.sql.*;
+
+import java.util.*;
+
+import javax.jmi.reflect.*;
+
+import net.sf.farrago.catalog.*;
+import net.sf.farrago.cwm.core.*;
+import net.sf.farrago.cwm.relational.*;
+import net.sf.farrago.fem.med.*;
+import net.sf.farrago.fem.security.*;
+import net.sf.farrago.fem.sql2003.*;
+import net.sf.farrago.resource.*;
+import net.sf.farrago.runtime.*;
+import net.sf.farrago.session.*;
+
+
+/**
+ * LoptMaterializedAggregate is a local table registered as holding the result
+ * of an aggregate query over other local tables, so that {@link
+ * LoptMaterializedAggregateRule} may answer matching queries from it.
+ *
+ * <p>The table is populated by the user (for instance with INSERT ... SELECT,
+ * or by the aggregate designer in <code>ext/aggdes</code>), and registered
+ * afterwards with the <code>sys_root.register_materialized_aggregate</code>
+ * procedure. Registration is recorded as tags on the table: the validated
+ * query text, the base tables it reads, and the time of registration. Any
+ * DML against the base tables or the aggregate table itself after that time
+ * makes the registration stale, and it is ignored until the table is
+ * repopulated and registered again. The MOF ids of all registered tables are
+ * also kept in a single tag on the repository's catalog, so that the
+ * optimizer need not inspect every local table to find them.
+ *
+ * <p>Since a registered table changes the answers to queries over its base
+ * tables, registering one requires the same privilege as modifying the
+ * tables: the current user must own, or be allowed to insert into, the
+ * aggregate table and each of its base tables. Unregistering one only
+ * requires that privilege on the aggregate table.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class LoptMaterializedAggregate
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    public static final String QUERY_TAG = "MATERIALIZED_AGGREGATE_QUERY";
+
+    public static final String BASE_TABLES_TAG =
+        "MATERIALIZED_AGGREGATE_BASE_TABLES";
+
+    public static final String REFRESH_TIMESTAMP_TAG =
+        "MATERIALIZED_AGGREGATE_REFRESH_TIMESTAMP";
+
+    /**
+     * Tag on {@link FarragoRepos#getSelfAsCatalog} listing the MOF ids of all
+     * registered aggregate tables.
+     */
+    public static final String INDEX_TAG = "MATERIALIZED_AGGREGATE_TABLES";
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final FemLocalTable table;
+    private final String query;
+    private final SortedSet<String> baseTableMofIds;
+    private final Timestamp refreshTimestamp;
+
+    //~ Constructors -----------------------------------------------------------
+
+    private LoptMaterializedAggregate(
+        FemLocalTable table,
+        String query,
+        SortedSet<String> baseTableMofIds,
+        Timestamp refreshTimestamp)
+    {
+        this.table = table;
+        this.query = query;
+        this.baseTableMofIds = baseTableMofIds;
+        this.refreshTimestamp = refreshTimestamp;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @return the table holding the aggregated rows
+     */
+    public FemLocalTable getTable()
+    {
+        return table;
+    }
+
+    /**
+     * @return the validated text of the query which populates the table
+     */
+    public String getQuery()
+    {
+        return query;
+    }
+
+    /**
+     * @return MOF ids of the tables read by the query
+     */
+    public SortedSet<String> getBaseTableMofIds()
+    {
+        return baseTableMofIds;
+    }
+
+    /**
+     * Determines whether the aggregate table may no longer hold the result of
+     * its query, because it or one of its base tables has been modified or
+     * dropped since it was registered.
+     *
+     * @param repos repository
+     *
+     * @return true if the table must not be used to answer queries
+     */
+    public boolean isStale(FarragoRepos repos)
+    {
+        if (isModifiedSinceRefresh(table)) {
+            return true;
+        }
+        for (String mofId : baseTableMofIds) {
+            RefBaseObject obj = repos.getMdrRepos().getByMofId(mofId);
+            if (!(obj instanceof FemAbstractColumnSet)) {
+                return true;
+            }
+            if (isModifiedSinceRefresh((FemAbstractColumnSet) obj)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isModifiedSinceRefresh(FemAbstractColumnSet columnSet)
+    {
+        // be conservative about changes within the same millisecond
+        Timestamp dmlTimestamp = FarragoCatalogUtil.getDmlTimestamp(columnSet);
+        if ((dmlTimestamp != null)
+            && (dmlTimestamp.compareTo(refreshTimestamp) >= 0))
+        {
+            return true;
+        }
+        String modTime = columnSet.getModificationTimestamp();
+        return (modTime != null)
+            && (Timestamp.valueOf(modTime).compareTo(refreshTimestamp) >= 0);
+    }
+
+    /**
+     * Finds all registered materialized aggregates, stale or not.
+     *
+     * @param repos repository
+     *
+     * @return list of materialized aggregates
+     */
+    public static List<LoptMaterializedAggregate> lookupAll(
+        FarragoRepos repos)
+    {
+        List<LoptMaterializedAggregate> list =
+            new ArrayList<LoptMaterializedAggregate>();
+        for (String tableMofId : getIndex(repos)) {
+            RefBaseObject obj = repos.getMdrRepos().getByMofId(tableMofId);
+            if (!(obj instanceof FemLocalTable)) {
+                // dropped since it was registered
+                continue;
+            }
+            FemLocalTable table = (FemLocalTable) obj;
+            String query = repos.getTagAnnotationValue(table, QUERY_TAG);
+            String baseTables =
+                repos.getTagAnnotationValue(table, BASE_TABLES_TAG);
+            String refreshTime =
+                repos.getTagAnnotationValue(table, REFRESH_TIMESTAMP_TAG);
+            if ((query == null) || (baseTables == null)
+                || (refreshTime == null))
+            {
+                continue;
+            }
+            SortedSet<String> baseTableMofIds = new TreeSet<String>(
+                Arrays.asList(baseTables.split(" ")));
+            list.add(
+                new LoptMaterializedAggregate(
+                    table,
+                    query,
+                    baseTableMofIds,
+                    Timestamp.valueOf(refreshTime)));
+        }
+        return list;
+    }
+
+    /**
+     * Registers a local table as a materialized aggregate, or marks an
+     * existing registration as fresh after the table has been repopulated.
+     * Invoked as the procedure
+     * <code>sys_root.register_materialized_aggregate</code>.
+     *
+     * @param schemaName name of the schema containing the aggregate table,
+     * or null for the session's default schema
+     * @param tableName name of the aggregate table
+     * @param query aggregate query over other local tables whose columns
+     * correspond, in order, to the columns of the table
+     */
+    public static void registerMaterializedAggregate(
+        String schemaName,
+        String tableName,
+        String query)
+        throws SQLException
+    {
+        FarragoSession session = FarragoUdrRuntime.getSession();
+        FarragoRepos repos = session.getRepos();
+
+        // Validate the query the same way as a view definition, which also
+        // qualifies every name in the stored text.
+        FarragoSessionAnalyzedSql analyzedSql =
+            session.analyzeSql(query, null, null, false);
+
+        FarragoReposTxnContext txn = repos.newTxnContext(true);
+        try {
+            txn.beginWriteTxn();
+            FemLocalTable table = lookupTable(session, schemaName, tableName);
+            String tableDesc = repos.getLocalizedObjectName(table);
+
+            int columnCount = analyzedSql.resultType.getFieldCount();
+            if (columnCount != table.getFeature().size()) {
+                throw FarragoResource.instance()
+                .ValidatorMaterializedAggregateColumnCountMismatch.ex(
+                    tableDesc,
+                    columnCount,
+                    table.getFeature().size());
+            }
+
+            SortedSet<String> baseTableMofIds = new TreeSet<String>();
+            List<FemLocalTable> tables = new ArrayList<FemLocalTable>();
+            tables.add(table);
+            for (CwmModelElement dep : analyzedSql.dependencies) {
+                if (!(dep instanceof CwmNamedColumnSet)) {
+                    // e.g. a routine
+                    continue;
+                }
+                if (!(dep instanceof FemLocalTable) || (dep == table)) {
+                    throw FarragoResource.instance()
+                    .ValidatorMaterializedAggregateInvalidQuery.ex(tableDesc);
+                }
+                baseTableMofIds.add(dep.refMofId());
+                tables.add((FemLocalTable) dep);
+            }
+            if (baseTableMofIds.isEmpty()) {
+                throw FarragoResource.instance()
+                .ValidatorMaterializedAggregateInvalidQuery.ex(tableDesc);
+            }
+            checkInsertPrivilege(session, tables);
+
+            StringBuilder baseTables = new StringBuilder();
+            for (String mofId : baseTableMofIds) {
+                if (baseTables.length() > 0) {
+                    baseTables.append(' ');
+                }
+                baseTables.append(mofId);
+            }
+            repos.setTagAnnotationValue(
+                table,
+                QUERY_TAG,
+                analyzedSql.canonicalString.getSql());
+            repos.setTagAnnotationValue(
+                table,
+                BASE_TABLES_TAG,
+                baseTables.toString());
+            repos.setTagAnnotationValue(
+                table,
+                REFRESH_TIMESTAMP_TAG,
+                FarragoCatalogUtil.createTimestamp());
+
+            SortedSet<String> index = getIndex(repos);
+            index.add(table.refMofId());
+            setIndex(repos, index);
+            txn.commit();
+        } finally {
+            txn.rollback();
+        }
+    }
+
+    /**
+     * Removes the registration of a materialized aggregate, if any. Invoked
+     * as the procedure <code>sys_root.unregister_materialized_aggregate</code>.
+     *
+     * @param schemaName name of the schema containing the aggregate table,
+     * or null for the session's default schema
+     * @param tableName name of the aggregate table
+     */
+    public static void unregisterMaterializedAggregate(
+        String schemaName,
+        String tableName)
+        throws SQLException
+    {
+        FarragoSession session = FarragoUdrRuntime.getSession();
+        FarragoRepos repos = session.getRepos();
+        FarragoReposTxnContext txn = repos.newTxnContext(true);
+        try {
+            txn.beginWriteTxn();
+            FemLocalTable table = lookupTable(session, schemaName, tableName);
+            checkInsertPrivilege(session, Collections.singletonList(table));
+            for (
+                String tagName
+                : new String[] {
+                    QUERY_TAG, BASE_TABLES_TAG, REFRESH_TIMESTAMP_TAG
+                })
+            {
+                FemTagAnnotation tag = repos.getTagAnnotation(table, tagName);
+                if (tag != null) {
+                    tag.refDelete();
+                }
+            }
+
+            SortedSet<String> index = getIndex(repos);
+            index.remove(table.refMofId());
+            setIndex(repos, index);
+            txn.commit();
+        } finally {
+            txn.rollback();
+        }
+    }
+
+    /**
+     * Checks that the current user owns, or holds INSERT privilege on, each
+     * of a list of tables. (The creation grant of an owner satisfies a
+     * request for any action.)
+     */
+    private static void checkInsertPrivilege(
+        FarragoSession session,
+        List<FemLocalTable> tables)
+    {
+        FarragoSessionStmtValidator stmtValidator = session.newStmtValidator();
+        try {
+            for (FemLocalTable table : tables) {
+                stmtValidator.requestPrivilege(
+                    table,
+                    PrivilegedActionEnum.INSERT.toString());
+            }
+            stmtValidator.getPrivilegeChecker().checkAccess();
+        } finally {
+            stmtValidator.closeAllocation();
+        }
+    }
+
+    /**
+     * Reads the MOF ids of the registered aggregate tables, omitting those
+     * which have since been dropped.
+     */
+    private static SortedSet<String> getIndex(FarragoRepos repos)
+    {
+        SortedSet<String> index = new TreeSet<String>();
+        String value =
+            repos.getTagAnnotationValue(
+                (FemAnnotatedElement) repos.getSelfAsCatalog(),
+                INDEX_TAG);
+        if (value == null) {
+            return index;
+        }
+        for (String mofId : value.split(" ")) {
+            if (repos.getMdrRepos().getByMofId(mofId) != null) {
+                index.add(mofId);
+            }
+        }
+        return index;
+    }
+
+    private static void setIndex(FarragoRepos repos, SortedSet<String> index)
+    {
+        FemAnnotatedElement catalog =
+            (FemAnnotatedElement) repos.getSelfAsCatalog();
+        if (index.isEmpty()) {
+            FemTagAnnotation tag = repos.getTagAnnotation(catalog, INDEX_TAG);
+            if (tag != null) {
+                tag.refDelete();
+            }
+            return;
+        }
+        StringBuilder buf = new StringBuilder();
+        for (String mofId : index) {
+            if (buf.length() > 0) {
+                buf.append(' ');
+            }
+            buf.append(mofId);
+        }
+        repos.setTagAnnotationValue(catalog, INDEX_TAG, buf.toString());
+    }
+
+    private static FemLocalTable lookupTable(
+        FarragoSession session,
+        String schemaName,
+        String tableName)
+    {
+        FarragoRepos repos = session.getRepos();
+        String catalogName = session.getSessionVariables().catalogName;
+        CwmCatalog catalog = repos.getCatalog(catalogName);
+        if (catalog == null) {
+            throw FarragoResource.instance().ValidatorUnknownObject.ex(
+                catalogName);
+        }
+        if (schemaName == null) {
+            schemaName = session.getSessionVariables().schemaName;
+        }
+        FemLocalSchema schema =
+            FarragoCatalogUtil.getSchemaByName(catalog, schemaName);
+        if (schema == null) {
+            throw FarragoResource.instance().ValidatorUnknownObject.ex(
+                schemaName);
+        }
+        FemLocalTable table =
+            FarragoCatalogUtil.getModelElementByNameAndType(
+                schema.getOwnedElement(),
+                tableName,
+                FemLocalTable.class);
+        if (table == null) {
+            throw FarragoResource.instance().ValidatorUnknownObject.ex(
+                tableName);
+        }
+        return table;
+    }
+}
+
+// End LoptMaterializedAggregate.java
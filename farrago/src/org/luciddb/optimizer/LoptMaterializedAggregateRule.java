@@ -0,0 +1,694 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.luciddb.optimizer;
+
+import org.luciddb.lcs.*;
+
+import java.util.*;
+import java.util.logging.*;
+
+import net.sf.farrago.catalog.*;
+import net.sf.farrago.query.*;
+import net.sf.farrago.trace.*;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.relopt.*;
+import org.eigenbase.relopt.hep.*;
+import org.eigenbase.reltype.*;
+import org.eigenbase.rex.*;
+import org.eigenbase.sql.fun.*;
+import org.eigenbase.util.*;
+
+
+/**
+ * LoptMaterializedAggregateRule answers an aggregate query over a join of
+ * LCS tables from a registered {@link LoptMaterializedAggregate}, either
+ * directly, if the aggregate table is grouped the same way as the query, or
+ * by rolling up the rows of a finer-grained aggregate table. LucidDB only
+ * applies it in sessions which set the <code>materializedAggregates</code>
+ * session variable, so that other queries don't pay for the lookup.
+ *
+ * <p>The inputs of both the query and the defining query of the aggregate
+ * table are normalized into a select-project-join form: the set of tables
+ * joined, the conjuncts of all filter and inner join conditions, and the
+ * projected expressions, all in terms of the columns of the tables taken in
+ * a canonical order. An aggregate table matches if
+ *
+ * <ul>
+ * <li>it joins the same tables;
+ * <li>each of its conjuncts is also a conjunct of the query, and the
+ * remaining conjuncts of the query can be expressed over its grouping
+ * columns;
+ * <li>each grouping expression of the query is one of its grouping columns;
+ * and
+ * <li>each aggregate of the query is SUM, COUNT, MIN or MAX (not DISTINCT)
+ * of an expression which it also aggregates with the same function.
+ * </ul>
+ *
+ * <p>Expressions are compared by their digests, so the comparison is
+ * syntactic. Stale aggregate tables are skipped, and so are all of them if
+ * the session has a label set, since they reflect the current data. A
+ * rewritten statement is not cached, because a cached plan would not notice
+ * the aggregate table going stale.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class LoptMaterializedAggregateRule
+    extends RelOptRule
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Logger tracer = FarragoTrace.getOptimizerRuleTracer();
+
+    public static final LoptMaterializedAggregateRule instance =
+        new LoptMaterializedAggregateRule(
+            new RelOptRuleOperand(AggregateRel.class, ANY));
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates the singleton.
+     *
+     * @param operand Rule operand
+     */
+    private LoptMaterializedAggregateRule(RelOptRuleOperand operand)
+    {
+        super(operand);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement RelOptRule
+    public void onMatch(RelOptRuleCall call)
+    {
+        AggregateRel agg = (AggregateRel) call.rels[0];
+        if (!agg.getSystemFieldList().isEmpty()
+            || agg.containsDistinctCall())
+        {
+            return;
+        }
+        for (AggregateCall aggCall : agg.getAggCallList()) {
+            if (getRollupAggregation(aggCall, null) == null) {
+                return;
+            }
+        }
+
+        FarragoPreparingStmt stmt = FarragoRelUtil.getPreparingStmt(agg);
+        if ((stmt == null)
+            || (stmt.getSession().getSessionLabelCreationTimestamp() != null)
+            || isDml(call.getPlanner()))
+        {
+            return;
+        }
+
+        SpjForm query = SpjForm.analyze(agg.getChild());
+        if (query == null) {
+            return;
+        }
+
+        // Try the smallest matching aggregate table first.
+        FarragoRepos repos = stmt.getRepos();
+        List<LoptMaterializedAggregate> candidates =
+            new ArrayList<LoptMaterializedAggregate>();
+        for (
+            LoptMaterializedAggregate matAgg
+            : LoptMaterializedAggregate.lookupAll(repos))
+        {
+            if (matAgg.getBaseTableMofIds().equals(query.getTableMofIds())
+                && !matAgg.isStale(repos))
+            {
+                candidates.add(matAgg);
+            }
+        }
+        Collections.sort(
+            candidates,
+            new Comparator<LoptMaterializedAggregate>() {
+                public int compare(
+                    LoptMaterializedAggregate o1,
+                    LoptMaterializedAggregate o2)
+                {
+                    return Long.valueOf(getRowCount(o1)).compareTo(
+                        getRowCount(o2));
+                }
+            });
+
+        for (LoptMaterializedAggregate matAgg : candidates) {
+            RelNode rel = rewrite(agg, query, matAgg, stmt);
+            if (rel != null) {
+                if (tracer.isLoggable(Level.FINE)) {
+                    tracer.fine(
+                        "answering aggregate from materialized aggregate "
+                        + matAgg.getTable().getName());
+                }
+                stmt.disableStatementCaching();
+                call.transformTo(rel);
+                return;
+            }
+        }
+    }
+
+    private static long getRowCount(LoptMaterializedAggregate matAgg)
+    {
+        Long rowCount = matAgg.getTable().getRowCount();
+        return (rowCount == null) ? Long.MAX_VALUE : rowCount;
+    }
+
+    /**
+     * Determines whether a statement modifies a table. Such a statement may
+     * well be populating an aggregate table, so it must not read from one.
+     */
+    private static boolean isDml(RelOptPlanner planner)
+    {
+        RelNode root = planner.getRoot();
+        if (root instanceof HepRelVertex) {
+            root = ((HepRelVertex) root).getCurrentRel();
+        }
+        return root instanceof TableModificationRelBase;
+    }
+
+    /**
+     * Rewrites an aggregate to read from a materialized aggregate table.
+     *
+     * @param agg the aggregate
+     * @param query normalized input of the aggregate
+     * @param matAgg materialized aggregate
+     * @param stmt statement being prepared
+     *
+     * @return rewritten expression, or null if the table does not match
+     */
+    private RelNode rewrite(
+        AggregateRel agg,
+        SpjForm query,
+        LoptMaterializedAggregate matAgg,
+        FarragoPreparingStmt stmt)
+    {
+        RelNode defRel = stmt.expandStoredQuery(matAgg.getQuery());
+        int columnCount = defRel.getRowType().getFieldCount();
+
+        // Trace the columns of the table down to the outputs of the
+        // aggregate in its defining query.
+        int [] columnMap = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columnMap[i] = i;
+        }
+        while (defRel instanceof ProjectRel) {
+            RexNode [] exps = ((ProjectRel) defRel).getProjectExps();
+            for (int i = 0; i < columnCount; i++) {
+                if (columnMap[i] < 0) {
+                    continue;
+                }
+                RexNode exp = exps[columnMap[i]];
+                columnMap[i] =
+                    (exp instanceof RexInputRef)
+                    ? ((RexInputRef) exp).getIndex() : -1;
+            }
+            defRel = ((ProjectRel) defRel).getChild();
+        }
+        if (!(defRel instanceof AggregateRel)) {
+            return null;
+        }
+        AggregateRel defAgg = (AggregateRel) defRel;
+        if (!defAgg.getSystemFieldList().isEmpty()
+            || defAgg.containsDistinctCall())
+        {
+            return null;
+        }
+        SpjForm def = SpjForm.analyze(defAgg.getChild());
+        if ((def == null)
+            || !def.getTableMofIds().equals(query.getTableMofIds()))
+        {
+            return null;
+        }
+
+        // Key the columns of the table by the expressions they hold.
+        List<Integer> defGroupList = Util.toList(defAgg.getGroupSet());
+        int defGroupCount = defGroupList.size();
+        Map<String, Integer> groupColumns = new HashMap<String, Integer>();
+        Map<String, Integer> aggColumns = new HashMap<String, Integer>();
+        for (int i = 0; i < columnCount; i++) {
+            int ordinal = columnMap[i];
+            if (ordinal < 0) {
+                continue;
+            }
+            if (ordinal < defGroupCount) {
+                String key =
+                    def.getOutput(defGroupList.get(ordinal)).toString();
+                if (!groupColumns.containsKey(key)) {
+                    groupColumns.put(key, i);
+                }
+            } else {
+                AggregateCall defCall =
+                    defAgg.getAggCallList().get(ordinal - defGroupCount);
+                String key = getAggKey(defCall, def);
+                if (!aggColumns.containsKey(key)) {
+                    aggColumns.put(key, i);
+                }
+            }
+        }
+
+        // The table may be less restrictive than the query, as long as the
+        // difference can be applied to its grouping columns.
+        Map<String, RexNode> extraConjuncts =
+            new LinkedHashMap<String, RexNode>(query.getConjuncts());
+        for (String conjunct : def.getConjuncts().keySet()) {
+            if (extraConjuncts.remove(conjunct) == null) {
+                return null;
+            }
+        }
+
+        RelOptTable matTable =
+            stmt.loadColumnSet(
+                FarragoCatalogUtil.getQualifiedName(matAgg.getTable()));
+        RelNode rel = matTable.toRel(agg.getCluster(), stmt);
+        RexBuilder rexBuilder = agg.getCluster().getRexBuilder();
+        RelDataType matRowType = rel.getRowType();
+
+        if (!extraConjuncts.isEmpty()) {
+            GroupColumnMapper mapper =
+                new GroupColumnMapper(groupColumns, matRowType);
+            List<RexNode> conditions = new ArrayList<RexNode>();
+            for (RexNode conjunct : extraConjuncts.values()) {
+                conditions.add(conjunct.accept(mapper));
+            }
+            if (mapper.failed) {
+                return null;
+            }
+            rel =
+                CalcRel.createFilter(
+                    rel,
+                    RexUtil.andRexNodeList(rexBuilder, conditions));
+        }
+
+        // Project the grouping columns and aggregates of the query, in order.
+        List<RexNode> exps = new ArrayList<RexNode>();
+        Set<Integer> usedGroupColumns = new HashSet<Integer>();
+        for (int i : Util.toList(agg.getGroupSet())) {
+            Integer column = groupColumns.get(query.getOutput(i).toString());
+            if (column == null) {
+                return null;
+            }
+            usedGroupColumns.add(column);
+            exps.add(
+                rexBuilder.makeInputRef(
+                    matRowType.getFields()[column].getType(),
+                    column));
+        }
+        int groupCount = exps.size();
+        for (AggregateCall aggCall : agg.getAggCallList()) {
+            Integer column = aggColumns.get(getAggKey(aggCall, query));
+            if (column == null) {
+                return null;
+            }
+            exps.add(
+                rexBuilder.makeInputRef(
+                    matRowType.getFields()[column].getType(),
+                    column));
+        }
+        rel = CalcRel.createProject(rel, exps, null);
+
+        // Unless the query groups by every grouping column of the table,
+        // roll the table's groups up into the query's.
+        if (usedGroupColumns.size() < defGroupCount) {
+            RelDataTypeFactory typeFactory = rexBuilder.getTypeFactory();
+            BitSet groupSet = new BitSet();
+            groupSet.set(0, groupCount);
+            List<AggregateCall> rollupCalls = new ArrayList<AggregateCall>();
+            for (int i = 0; i < agg.getAggCallList().size(); i++) {
+                AggregateCall aggCall = agg.getAggCallList().get(i);
+                int arg = groupCount + i;
+                RelDataType type =
+                    typeFactory.createTypeWithNullability(
+                        rel.getRowType().getFields()[arg].getType(),
+                        true);
+                rollupCalls.add(
+                    new AggregateCall(
+                        getRollupAggregation(aggCall, type),
+                        false,
+                        Collections.singletonList(arg),
+                        type,
+                        aggCall.getName()));
+            }
+            rel =
+                new AggregateRel(
+                    agg.getCluster(),
+                    rel,
+                    Collections.<RelDataTypeField>emptyList(),
+                    groupSet,
+                    rollupCalls);
+        }
+
+        return RelOptUtil.createCastRel(rel, agg.getRowType(), true);
+    }
+
+    /**
+     * Returns the aggregate function which combines partial results of an
+     * aggregate call.
+     *
+     * @param aggCall aggregate call
+     * @param type type of the partial results, or null if only checking
+     * whether the call can be rolled up
+     *
+     * @return aggregate function, or null if the call cannot be rolled up
+     */
+    private static Aggregation getRollupAggregation(
+        AggregateCall aggCall,
+        RelDataType type)
+    {
+        String name = aggCall.getAggregation().getName();
+        if (name.equals("SUM")) {
+            return new SqlSumAggFunction(type);
+        } else if (name.equals("COUNT") || name.equals("$SUM0")) {
+            return new SqlSumEmptyIsZeroAggFunction(type);
+        } else if (name.equals("MIN") || name.equals("MAX")) {
+            return aggCall.getAggregation();
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Returns a key which identifies an aggregate call independently of the
+     * relational expression it applies to.
+     */
+    private static String getAggKey(AggregateCall aggCall, SpjForm input)
+    {
+        StringBuilder buf = new StringBuilder();
+        buf.append(aggCall.getAggregation().getName()).append('(');
+        for (int i = 0; i < aggCall.getArgList().size(); i++) {
+            if (i > 0) {
+                buf.append(", ");
+            }
+            buf.append(input.getOutput(aggCall.getArgList().get(i)));
+        }
+        return buf.append(')').toString();
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * SpjForm is the select-project-join form of a relational expression
+     * built from inner joins, filters and projections of full scans of LCS
+     * tables.
+     */
+    private static class SpjForm
+    {
+        private final List<LcsTable> tables = new ArrayList<LcsTable>();
+        private int width;
+        private List<RexNode> outputs = new ArrayList<RexNode>();
+        private final List<RexNode> conjuncts = new ArrayList<RexNode>();
+        private SortedSet<String> tableMofIds;
+        private Map<String, RexNode> conjunctMap;
+
+        /**
+         * Analyzes a relational expression.
+         *
+         * @param rel relational expression
+         *
+         * @return its normalized form, or null if it is not of the required
+         * form, or if it reads any table more than once
+         */
+        static SpjForm analyze(RelNode rel)
+        {
+            SpjForm spj = convert(rel);
+            if ((spj == null) || !spj.canonicalize()) {
+                return null;
+            }
+            return spj;
+        }
+
+        SortedSet<String> getTableMofIds()
+        {
+            return tableMofIds;
+        }
+
+        RexNode getOutput(int i)
+        {
+            return outputs.get(i);
+        }
+
+        Map<String, RexNode> getConjuncts()
+        {
+            return conjunctMap;
+        }
+
+        private static SpjForm convert(RelNode rel)
+        {
+            if (rel instanceof HepRelVertex) {
+                return convert(((HepRelVertex) rel).getCurrentRel());
+            } else if (rel instanceof ProjectRel) {
+                ProjectRel project = (ProjectRel) rel;
+                if (RexOver.containsOver(project.getProjectExps(), null)) {
+                    return null;
+                }
+                SpjForm spj = convert(project.getChild());
+                if (spj == null) {
+                    return null;
+                }
+                List<RexNode> outputs = new ArrayList<RexNode>();
+                for (RexNode exp : project.getProjectExps()) {
+                    outputs.add(spj.expand(exp));
+                }
+                spj.outputs = outputs;
+                return spj;
+            } else if (rel instanceof FilterRel) {
+                FilterRel filter = (FilterRel) rel;
+                SpjForm spj = convert(filter.getChild());
+                if (spj == null) {
+                    return null;
+                }
+                RelOptUtil.decomposeConjunction(
+                    spj.expand(filter.getCondition()),
+                    spj.conjuncts);
+                return spj;
+            } else if (rel instanceof JoinRel) {
+                JoinRel join = (JoinRel) rel;
+                if ((join.getJoinType() != JoinRelType.INNER)
+                    || !join.getSystemFieldList().isEmpty())
+                {
+                    return null;
+                }
+                SpjForm left = convert(join.getLeft());
+                if (left == null) {
+                    return null;
+                }
+                SpjForm right = convert(join.getRight());
+                if (right == null) {
+                    return null;
+                }
+                left.append(right);
+                RelOptUtil.decomposeConjunction(
+                    left.expand(join.getCondition()),
+                    left.conjuncts);
+                return left;
+            } else if (rel instanceof LcsRowScanRel) {
+                LcsRowScanRel rowScan = (LcsRowScanRel) rel;
+                if ((rowScan.getInputs().length > 0)
+                    || !rowScan.isFullScan()
+                    || rowScan.hasResidualFilters())
+                {
+                    return null;
+                }
+                SpjForm spj = new SpjForm();
+                spj.tables.add(rowScan.getLcsTable());
+                spj.width =
+                    rowScan.getLcsTable().getRowType().getFieldCount();
+                RelDataTypeField [] fields = rowScan.getRowType().getFields();
+                for (int i = 0; i < fields.length; i++) {
+                    int ordinal = rowScan.getOriginalColumnOrdinal(i);
+                    if ((ordinal < 0) || (ordinal >= spj.width)) {
+                        // a special column such as the rid
+                        return null;
+                    }
+                    spj.outputs.add(
+                        new RexInputRef(ordinal, fields[i].getType()));
+                }
+                return spj;
+            } else {
+                return null;
+            }
+        }
+
+        /**
+         * Rewrites an expression over the outputs of this form as an
+         * expression over the columns of its tables.
+         */
+        private RexNode expand(RexNode exp)
+        {
+            return exp.accept(
+                new RexShuttle() {
+                    public RexNode visitInputRef(RexInputRef inputRef)
+                    {
+                        return outputs.get(inputRef.getIndex());
+                    }
+                });
+        }
+
+        /**
+         * Appends the tables, outputs and conjuncts of another form to this
+         * one, as if joining them.
+         */
+        private void append(SpjForm right)
+        {
+            int [] columnMap = new int[right.width];
+            for (int i = 0; i < right.width; i++) {
+                columnMap[i] = width + i;
+            }
+            ColumnRemapper remapper = new ColumnRemapper(columnMap);
+            for (RexNode output : right.outputs) {
+                outputs.add(output.accept(remapper));
+            }
+            for (RexNode conjunct : right.conjuncts) {
+                conjuncts.add(conjunct.accept(remapper));
+            }
+            tables.addAll(right.tables);
+            width += right.width;
+        }
+
+        /**
+         * Reorders the tables by MOF id, so that forms of different
+         * expressions over the same tables can be compared.
+         *
+         * @return false if a table occurs more than once
+         */
+        private boolean canonicalize()
+        {
+            int n = tables.size();
+            int [] oldOffsets = new int[n];
+            for (int i = 1; i < n; i++) {
+                oldOffsets[i] =
+                    oldOffsets[i - 1]
+                    + tables.get(i - 1).getRowType().getFieldCount();
+            }
+            SortedMap<String, Integer> order = new TreeMap<String, Integer>();
+            for (int i = 0; i < n; i++) {
+                String mofId = tables.get(i).getCwmColumnSet().refMofId();
+                if (order.put(mofId, i) != null) {
+                    return false;
+                }
+            }
+            int [] columnMap = new int[width];
+            int newOffset = 0;
+            for (int i : order.values()) {
+                int tableWidth = tables.get(i).getRowType().getFieldCount();
+                for (int j = 0; j < tableWidth; j++) {
+                    columnMap[oldOffsets[i] + j] = newOffset + j;
+                }
+                newOffset += tableWidth;
+            }
+
+            ColumnRemapper remapper = new ColumnRemapper(columnMap);
+            List<RexNode> newOutputs = new ArrayList<RexNode>();
+            for (RexNode output : outputs) {
+                newOutputs.add(output.accept(remapper));
+            }
+            outputs = newOutputs;
+            conjunctMap = new LinkedHashMap<String, RexNode>();
+            for (RexNode conjunct : conjuncts) {
+                if (!conjunct.isAlwaysTrue()) {
+                    RexNode newConjunct = conjunct.accept(remapper);
+                    conjunctMap.put(newConjunct.toString(), newConjunct);
+                }
+            }
+            tableMofIds = new TreeSet<String>(order.keySet());
+            return true;
+        }
+    }
+
+    /**
+     * Shuttle which renumbers column references.
+     */
+    private static class ColumnRemapper
+        extends RexShuttle
+    {
+        private final int [] columnMap;
+
+        ColumnRemapper(int [] columnMap)
+        {
+            this.columnMap = columnMap;
+        }
+
+        public RexNode visitInputRef(RexInputRef inputRef)
+        {
+            return new RexInputRef(
+                columnMap[inputRef.getIndex()],
+                inputRef.getType());
+        }
+    }
+
+    /**
+     * Shuttle which rewrites an expression over the columns of the base
+     * tables as an expression over the grouping columns of an aggregate
+     * table, and notes whether it failed because the expression references
+     * other columns.
+     */
+    private static class GroupColumnMapper
+        extends RexShuttle
+    {
+        private final Map<String, Integer> groupColumns;
+        private final RelDataType matRowType;
+        boolean failed;
+
+        GroupColumnMapper(
+            Map<String, Integer> groupColumns,
+            RelDataType matRowType)
+        {
+            this.groupColumns = groupColumns;
+            this.matRowType = matRowType;
+        }
+
+        private RexNode lookup(RexNode exp)
+        {
+            Integer column = groupColumns.get(exp.toString());
+            if (column == null) {
+                return null;
+            }
+            return new RexInputRef(
+                column,
+                matRowType.getFields()[column].getType());
+        }
+
+        public RexNode visitCall(RexCall call)
+        {
+            RexNode ref = lookup(call);
+            return (ref != null) ? ref : super.visitCall(call);
+        }
+
+        public RexNode visitInputRef(RexInputRef inputRef)
+        {
+            RexNode ref = lookup(inputRef);
+            if (ref == null) {
+                failed = true;
+                return inputRef;
+            }
+            return ref;
+        }
+
+        public RexNode visitCorrelVariable(RexCorrelVariable variable)
+        {
+            failed = true;
+            return variable;
+        }
+    }
+}
+
+// End LoptMaterializedAggregateRule.java
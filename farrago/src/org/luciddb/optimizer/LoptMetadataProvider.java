@@ -24,13 +24,17 @@ package org.luciddb.optimizer;
 import org.luciddb.session.*;
 import org.luciddb.lcs.*;
 
+import java.sql.*;
+
 import java.util.*;
 
 import net.sf.farrago.catalog.*;
+import net.sf.farrago.cwm.core.*;
 import net.sf.farrago.cwm.relational.*;
 import net.sf.farrago.fem.sql2003.*;
 import net.sf.farrago.fennel.rel.*;
 import net.sf.farrago.query.*;
+import net.sf.farrago.session.*;
 
 import org.eigenbase.rel.*;
 import org.eigenbase.rel.metadata.*;
@@ -41,6 +45,7 @@ import org.eigenbase.rex.*;
 import org.eigenbase.sarg.*;
 import org.eigenbase.sql.*;
 import org.eigenbase.sql.fun.*;
+import org.eigenbase.sql.type.*;
 import org.eigenbase.stat.*;
 import org.eigenbase.util14.*;
 
@@ -67,6 +72,15 @@ import org.eigenbase.util14.*;
 public class LoptMetadataProvider
     extends ReflectiveRelMetadataProvider
 {
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Histograms are coarse, so an equi-join rowcount estimated from distinct
+     * value counts is only corrected from the histograms of the join keys if
+     * they differ from it by more than this factor.
+     */
+    private static final double HISTOGRAM_SKEW_THRESHOLD = 2.0;
+
     //~ Instance fields --------------------------------------------------------
 
     private FarragoRepos repos;
@@ -745,6 +759,16 @@ public class LoptMetadataProvider
             //          = nRowsLeft * nRowsRight / nGroups
             rowCount = nRowsLeft * nRowsRight / nGroups;
 
+            // correct for skewed or partly overlapping join keys
+            double skewFactor =
+                computeHistogramSkewFactor(
+                    leftChild,
+                    rightChild,
+                    predicate);
+            if (skewFactor != 1.0) {
+                rowCount = Math.max(rowCount * skewFactor, 1.0);
+            }
+
             // adjust for non-equijoin filters
             rowCount *= RelMdUtil.guessSelectivity(nonEquiJoin);
         } else {
@@ -786,6 +810,164 @@ public class LoptMetadataProvider
         return RelMdUtil.capInfinity(rowCount);
     }
 
+    /**
+     * Computes a correction to the rowcount of an equi-join estimated from the
+     * distinct value counts of its keys, by intersecting the histograms of the
+     * base table columns the keys originate from. See {@link
+     * FarragoJoinHistogram}.
+     *
+     * <p>This is only done if the session variable {@link
+     * LucidDbSessionPersonality#JOIN_HISTOGRAM_ESTIMATES} is true.
+     *
+     * <p>If the join has several keys, their factors are combined with
+     * exponential backoff rather than multiplied, since the columns of a
+     * composite key are rarely independent: the factor furthest from 1 is
+     * applied in full, the next one by its square root, the next one by its
+     * fourth root, and so on.
+     *
+     * @param leftChild left input into the join
+     * @param rightChild right input into the join
+     * @param predicate the join condition
+     *
+     * @return factor to multiply the estimated rowcount by; 1.0 if the
+     * histograms are not available or agree with the distinct value counts
+     */
+    private double computeHistogramSkewFactor(
+        RelNode leftChild,
+        RelNode rightChild,
+        RexNode predicate)
+    {
+        if (predicate == null) {
+            return 1.0;
+        }
+        List<Integer> leftKeys = new ArrayList<Integer>();
+        List<Integer> rightKeys = new ArrayList<Integer>();
+        RelOptUtil.splitJoinCondition(
+            leftChild,
+            rightChild,
+            predicate,
+            leftKeys,
+            rightKeys);
+        if (leftKeys.isEmpty()) {
+            return 1.0;
+        }
+
+        FarragoSession session =
+            FennelRelUtil.getPreparingStmt(leftChild).getSession();
+        Boolean enabled =
+            session.getSessionVariables().getBoolean(
+                LucidDbSessionPersonality.JOIN_HISTOGRAM_ESTIMATES);
+        if ((enabled == null) || !enabled) {
+            return 1.0;
+        }
+        Timestamp labelTimestamp = session.getSessionLabelCreationTimestamp();
+        RelDataTypeField [] leftFields = leftChild.getRowType().getFields();
+        RelDataTypeField [] rightFields = rightChild.getRowType().getFields();
+        List<Double> factors = new ArrayList<Double>();
+        for (int i = 0; i < leftKeys.size(); i++) {
+            int leftKey = leftKeys.get(i);
+            int rightKey = rightKeys.get(i);
+            SqlTypeName typeName =
+                leftFields[leftKey].getType().getSqlTypeName();
+            if (typeName.getFamily()
+                != rightFields[rightKey].getType().getSqlTypeName()
+                .getFamily())
+            {
+                continue;
+            }
+            FemAbstractColumn leftColumn =
+                getJoinKeyColumn(leftChild, leftKey);
+            FemAbstractColumn rightColumn =
+                getJoinKeyColumn(rightChild, rightKey);
+            if ((leftColumn == null) || (rightColumn == null)) {
+                continue;
+            }
+            FarragoJoinHistogram histogram =
+                new FarragoJoinHistogram(
+                    leftColumn,
+                    rightColumn,
+                    typeName,
+                    labelTimestamp,
+                    repos.getStatisticsCache());
+            histogram.evaluate();
+            Double factor = histogram.getSkewFactor();
+            if ((factor != null)
+                && ((factor > HISTOGRAM_SKEW_THRESHOLD)
+                    || (factor < (1.0 / HISTOGRAM_SKEW_THRESHOLD))))
+            {
+                factors.add(factor);
+            }
+        }
+
+        Collections.sort(
+            factors,
+            new Comparator<Double>() {
+                public int compare(Double f1, Double f2)
+                {
+                    return Double.compare(
+                        Math.abs(Math.log(f2)),
+                        Math.abs(Math.log(f1)));
+                }
+            });
+        double skewFactor = 1.0;
+        double exponent = 1.0;
+        for (Double factor : factors) {
+            skewFactor *= Math.pow(factor, exponent);
+            exponent /= 2;
+        }
+        return skewFactor;
+    }
+
+    /**
+     * Determines the base table column a join key originates from, looking
+     * through joins, filters and projections.
+     *
+     * @param rel input into a join
+     * @param field ordinal of the join key within the input
+     *
+     * @return the column, or null if the key is derived or doesn't originate
+     * from a single catalog column
+     */
+    private static FemAbstractColumn getJoinKeyColumn(RelNode rel, int field)
+    {
+        while (rel instanceof JoinRelBase) {
+            JoinRelBase join = (JoinRelBase) rel;
+            int nLeftFields = join.getLeft().getRowType().getFieldCount();
+            if (field < nLeftFields) {
+                rel = join.getLeft();
+            } else {
+                rel = join.getRight();
+                field -= nLeftFields;
+            }
+        }
+        RelColumnOrigin origin = getSimpleColumnOrigin(rel, field);
+        if ((origin == null)
+            || !(origin.getOriginTable() instanceof FarragoQueryColumnSet))
+        {
+            return null;
+        }
+        CwmNamedColumnSet columnSet =
+            ((FarragoQueryColumnSet) origin.getOriginTable())
+            .getCwmColumnSet();
+
+        // NOTE: the rid column has a special ordinal, and flattened UDT
+        // columns have none of their own
+        int ordinal = origin.getOriginColumnOrdinal();
+        List<CwmFeature> features = columnSet.getFeature();
+        RelDataTypeField [] fields =
+            origin.getOriginTable().getRowType().getFields();
+        if ((ordinal < 0)
+            || (ordinal >= features.size())
+            || (ordinal >= fields.length)
+            || !(features.get(ordinal) instanceof FemAbstractColumn)
+            || !features.get(ordinal).getName().equals(
+                fields[ordinal].getName()))
+        {
+            return null;
+        }
+        return (FemAbstractColumn) features.get(ordinal);
+    }
+
     /**
      * Returns true if the dimension table is on the LHS of a join
      *
@@ -37,23 +37,48 @@ import org.eigenbase.util.CompositeList;
  * LoptOptimizeJoinRule implements the heuristic planner for determining optimal
  * join orderings. It is triggered by the pattern ProjectRel(MultiJoinRel).
  *
+ * <p>By default, orderings are built greedily, one factor at a time. If the
+ * rule is created with a non-zero dynamic programming threshold, inner joins
+ * with at most that many factors are instead ordered by enumerating every
+ * bushy join tree over connected subsets of the factors, keeping the cheapest
+ * tree for each subset; see {@link #createDpOrdering}.
+ *
  * @author Zelaine Fong
  * @version $Id$
  */
 public class LoptOptimizeJoinRule
     extends RelOptRule
 {
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Largest number of factors for which dynamic programming can be used;
+     * the enumeration does work proportional to 3^n.
+     */
+    public static final int MAX_DP_FACTORS = 12;
+
     public static final LoptOptimizeJoinRule instance =
-        new LoptOptimizeJoinRule();
+        new LoptOptimizeJoinRule(0);
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final int dpMaxFactors;
 
     //~ Constructors -----------------------------------------------------------
 
     /**
      * Creates a LoptOptimizeJoinRule.
+     *
+     * @param dpMaxFactors maximum number of factors in a join for which the
+     * join ordering is determined by dynamic programming rather than greedily,
+     * between 0 (never) and {@link #MAX_DP_FACTORS}
      */
-    private LoptOptimizeJoinRule()
+    public LoptOptimizeJoinRule(int dpMaxFactors)
     {
         super(new RelOptRuleOperand(MultiJoinRel.class, ANY));
+        assert (dpMaxFactors >= 0) && (dpMaxFactors <= MAX_DP_FACTORS)
+            : dpMaxFactors;
+        this.dpMaxFactors = dpMaxFactors;
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -424,7 +449,8 @@ outerForLoop:
 
     /**
      * Generates N optimal join orderings. Each ordering contains each factor as
-     * the first factor in the ordering.
+     * the first factor in the ordering. If the join is small enough to be
+     * ordered by dynamic programming, generates that single ordering instead.
      *
      * @param multiJoin join factors being optimized
      * @param semiJoinOpt optimal semijoins for each factor
@@ -441,6 +467,17 @@ outerForLoop:
             RelOptUtil.getFieldNames(
                 multiJoin.getMultiJoinRel().getRowType());
 
+        if ((multiJoin.getNumJoinFactors() <= dpMaxFactors)
+            && canUseDpOrdering(multiJoin))
+        {
+            LoptJoinTree joinTree = createDpOrdering(multiJoin, semiJoinOpt);
+            if (joinTree != null) {
+                call.transformTo(
+                    createTopProject(multiJoin, joinTree, fieldNames));
+                return;
+            }
+        }
+
         // generate the N join orderings
         for (int i = 0; i < multiJoin.getNumJoinFactors(); i++) {
             // first factor cannot be null generating
@@ -858,6 +895,263 @@ outerForLoop:
         return nextFactor;
     }
 
+    /**
+     * Determines whether the join ordering of a join can be determined by
+     * {@link #createDpOrdering}. The enumeration only builds inner joins, so
+     * outer joins and the join removals that {@link #addFactorToTree} handles
+     * are left to the greedy ordering.
+     *
+     * @param multiJoin join factors being optimized
+     *
+     * @return true if dynamic programming can be used
+     */
+    private boolean canUseDpOrdering(LoptMultiJoin multiJoin)
+    {
+        int nJoinFactors = multiJoin.getNumJoinFactors();
+        if ((nJoinFactors < 3)
+            || multiJoin.getMultiJoinRel().isFullOuterJoin())
+        {
+            return false;
+        }
+        for (int factor = 0; factor < nJoinFactors; factor++) {
+            if (multiJoin.isNullGenerating(factor)
+                || multiJoin.isRemovableOuterJoinFactor(factor)
+                || (multiJoin.getJoinRemovalFactor(factor) != null)
+                || (multiJoin.getOtherSelfJoinFactor(factor) != null))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Generates the cheapest join tree for an inner join by dynamic
+     * programming over subsets of the join factors.
+     *
+     * <p>Subsets of factors are visited in increasing order of their bitmaps,
+     * so every subset is visited after all of its own subsets. For each
+     * subset, every split into two disjoint halves that both have join trees
+     * and that are connected by some join filter is joined, and the cheapest
+     * result (by cumulative cost, then by {@link #rowWidthCost}) is kept as
+     * the subset's join tree. As in the greedy ordering, each join applies
+     * every join filter that references only factors within it and that
+     * neither of its inputs has already applied, so filters referencing a
+     * single factor, or none, are applied by the first join above that factor.
+     * Subsets that are not connected by join filters
+     * never get a join tree, so Cartesian products are never considered; if
+     * the factors as a whole are not connected, null is returned and the
+     * caller falls back to the greedy ordering.
+     *
+     * @param multiJoin join factors being optimized
+     * @param semiJoinOpt optimal semijoins for each factor
+     *
+     * @return cheapest join tree, or null if the join requires a Cartesian
+     * product
+     */
+    private LoptJoinTree createDpOrdering(
+        LoptMultiJoin multiJoin,
+        LoptSemiJoinOptimizer semiJoinOpt)
+    {
+        int nJoinFactors = multiJoin.getNumJoinFactors();
+        int allFactors = (1 << nJoinFactors) - 1;
+
+        // record the factors referenced by each join filter, and from those
+        // the factors that each factor is joined with
+        List<RexNode> joinFilters = multiJoin.getJoinFilters();
+        int [] filterFactors = new int[joinFilters.size()];
+        int [] neighbors = new int[nJoinFactors];
+        for (int i = 0; i < joinFilters.size(); i++) {
+            BitSet factorRefs =
+                multiJoin.getFactorsRefByJoinFilter(joinFilters.get(i));
+            for (
+                int factor = factorRefs.nextSetBit(0);
+                factor >= 0;
+                factor = factorRefs.nextSetBit(factor + 1))
+            {
+                filterFactors[i] |= 1 << factor;
+            }
+            for (
+                int factor = factorRefs.nextSetBit(0);
+                factor >= 0;
+                factor = factorRefs.nextSetBit(factor + 1))
+            {
+                neighbors[factor] |= filterFactors[i] & ~(1 << factor);
+            }
+        }
+
+        LoptJoinTree [] bestTrees = new LoptJoinTree[allFactors + 1];
+        RelOptCost [] bestCosts = new RelOptCost[allFactors + 1];
+        BitSet [] appliedFilters = new BitSet[allFactors + 1];
+        for (int factor = 0; factor < nJoinFactors; factor++) {
+            bestTrees[1 << factor] =
+                new LoptJoinTree(
+                    semiJoinOpt.getChosenSemiJoin(factor),
+                    factor);
+            appliedFilters[1 << factor] = new BitSet(joinFilters.size());
+        }
+
+        for (int factors = 1; factors <= allFactors; factors++) {
+            if (Integer.bitCount(factors) < 2) {
+                continue;
+            }
+
+            // only consider left halves containing the lowest factor, so
+            // each split is considered once; createJoinSubtree decides which
+            // half actually goes on the left
+            int lowest = Integer.lowestOneBit(factors);
+            int rest = factors & ~lowest;
+            for (int sub = rest;; sub = (sub - 1) & rest) {
+                int left = sub | lowest;
+                int right = factors & ~left;
+                if ((right != 0)
+                    && (bestTrees[left] != null)
+                    && (bestTrees[right] != null)
+                    && ((getNeighbors(neighbors, left) & right) != 0))
+                {
+                    BitSet applied = (BitSet) appliedFilters[left].clone();
+                    applied.or(appliedFilters[right]);
+                    LoptJoinTree joinTree =
+                        createDpJoin(
+                            multiJoin,
+                            bestTrees[left],
+                            bestTrees[right],
+                            joinFilters,
+                            applied);
+                    RelOptCost cost =
+                        RelMetadataQuery.getCumulativeCost(
+                            joinTree.getJoinTree());
+                    if (isCheaper(
+                            joinTree,
+                            cost,
+                            bestTrees[factors],
+                            bestCosts[factors]))
+                    {
+                        bestTrees[factors] = joinTree;
+                        bestCosts[factors] = cost;
+                        appliedFilters[factors] = applied;
+                    }
+                }
+                if (sub == 0) {
+                    break;
+                }
+            }
+        }
+
+        return bestTrees[allFactors];
+    }
+
+    /**
+     * Returns the factors joined with any of a set of factors.
+     *
+     * @param neighbors bitmap of the factors joined with each factor
+     * @param factors bitmap of the set of factors
+     *
+     * @return bitmap of the factors joined with the set
+     */
+    private int getNeighbors(int [] neighbors, int factors)
+    {
+        int result = 0;
+        for (int rest = factors; rest != 0; rest &= rest - 1) {
+            result |= neighbors[Integer.numberOfTrailingZeros(rest)];
+        }
+        return result;
+    }
+
+    /**
+     * Creates an inner join between the join trees of two disjoint sets of
+     * factors. The join condition consists of the join filters that reference
+     * only factors on either side and that have not yet been applied by either
+     * subtree.
+     *
+     * @param multiJoin join factors being optimized
+     * @param leftTree join tree of the left factors
+     * @param rightTree join tree of the right factors
+     * @param joinFilters join filters of the join being optimized
+     * @param appliedFilters on entry, the ordinals of the join filters applied
+     * within either subtree; on return, also those applied by the new join
+     *
+     * @return created join tree
+     */
+    private LoptJoinTree createDpJoin(
+        LoptMultiJoin multiJoin,
+        LoptJoinTree leftTree,
+        LoptJoinTree rightTree,
+        List<RexNode> joinFilters,
+        BitSet appliedFilters)
+    {
+        List<Integer> candidates = new ArrayList<Integer>();
+        List<RexNode> filtersToAdd = new ArrayList<RexNode>();
+        for (int i = 0; i < joinFilters.size(); i++) {
+            if (!appliedFilters.get(i)) {
+                candidates.add(i);
+                filtersToAdd.add(joinFilters.get(i));
+            }
+        }
+
+        // addFilters removes the filters it applies from filtersToAdd,
+        // leaving the rest in their original order
+        RexNode condition =
+            addFilters(
+                multiJoin,
+                leftTree,
+                -1,
+                rightTree,
+                filtersToAdd,
+                false);
+        int remaining = 0;
+        for (int i : candidates) {
+            if ((remaining < filtersToAdd.size())
+                && (filtersToAdd.get(remaining) == joinFilters.get(i)))
+            {
+                ++remaining;
+            } else {
+                appliedFilters.set(i);
+            }
+        }
+
+        return createJoinSubtree(
+            multiJoin,
+            leftTree,
+            rightTree,
+            condition,
+            JoinRelType.INNER,
+            filtersToAdd,
+            true,
+            false);
+    }
+
+    /**
+     * Determines whether a join tree is cheaper than the best one found so
+     * far for the same factors. As in {@link #addFactorToTree}, trees of equal
+     * cost are compared by {@link #rowWidthCost}.
+     *
+     * @param joinTree candidate join tree
+     * @param cost cumulative cost of the candidate
+     * @param bestTree best join tree so far, or null
+     * @param bestCost cumulative cost of the best join tree so far
+     *
+     * @return true if the candidate should replace the best join tree
+     */
+    private boolean isCheaper(
+        LoptJoinTree joinTree,
+        RelOptCost cost,
+        LoptJoinTree bestTree,
+        RelOptCost bestCost)
+    {
+        if (bestTree == null) {
+            return true;
+        }
+        if ((cost == null) || (bestCost == null)) {
+            return (cost != null);
+        }
+        if (cost.isEqWithEpsilon(bestCost)) {
+            return rowWidthCost(joinTree.getJoinTree())
+                < rowWidthCost(bestTree.getJoinTree());
+        }
+        return cost.isLt(bestCost);
+    }
+
     /**
      * Returns true if a relnode corresponds to a JoinRel that wasn't one of the
      * original MultiJoinRel input factors
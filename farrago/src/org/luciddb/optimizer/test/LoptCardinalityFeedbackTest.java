@@ -0,0 +1,146 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.luciddb.optimizer.test;
+
+import java.sql.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.jdbc.engine.*;
+import net.sf.farrago.session.*;
+import net.sf.farrago.test.*;
+
+
+/**
+ * LoptCardinalityFeedbackTest tests that row counts observed while executing
+ * a statement are fed back to the LucidDB optimizer, changing the plans of
+ * later statements which contain the same subtree.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class LoptCardinalityFeedbackTest
+    extends FarragoTestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final String JOIN_QUERY =
+        "select * from (select * from facts where x > 5) f, dims d"
+        + " where f.k = d.k";
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new LoptCardinalityFeedbackTest object.
+     *
+     * @param testName JUnit test name
+     *
+     * @throws Exception .
+     */
+    public LoptCardinalityFeedbackTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement TestCase
+    public static Test suite()
+    {
+        return wrappedSuite(LoptCardinalityFeedbackTest.class);
+    }
+
+    /**
+     * Tests that after executing a filtered scan which returns far fewer rows
+     * than estimated, the join containing that scan is planned with the
+     * observed count, so the scan moves from the build side of the hash join
+     * to the probe side.
+     */
+    public void testObservedCountChangesJoinPlan()
+        throws Exception
+    {
+        stmt.executeUpdate("create schema lopt_feedback");
+        try {
+            stmt.executeUpdate("set schema 'lopt_feedback'");
+            stmt.executeUpdate(
+                "alter session implementation set jar"
+                + " sys_boot.sys_boot.luciddb_plugin");
+            stmt.executeUpdate("create table facts(k int, x int)");
+            stmt.executeUpdate("create table dims(k int)");
+            stmt.executeUpdate("insert into facts values (1, 10)");
+            stmt.executeUpdate("insert into dims values (1), (2), (3)");
+
+            FarragoSession session =
+                ((FarragoJdbcEngineConnection) connection).getSession();
+            FarragoStatsUtil.setTableRowCount(
+                session,
+                "",
+                "",
+                "FACTS",
+                1000000);
+            FarragoStatsUtil.setTableRowCount(
+                session,
+                "",
+                "",
+                "DIMS",
+                1000);
+            stmt.executeUpdate(
+                "alter session set \"cardinalityFeedbackFactor\" = 10");
+
+            String planBefore = explain(JOIN_QUERY);
+
+            // Estimated at 100000 rows (default sargable selectivity), but
+            // only one row comes back.
+            resultSet = stmt.executeQuery("select * from facts where x > 5");
+            assertEquals(1, getResultSetCount());
+
+            String planAfter = explain(JOIN_QUERY);
+            assertFalse(
+                "plan unchanged after feedback: " + planAfter,
+                planBefore.equals(planAfter));
+        } finally {
+            stmt.executeUpdate(
+                "alter session set \"cardinalityFeedbackFactor\" = 0");
+            stmt.executeUpdate("alter session implementation set default");
+            stmt.executeUpdate("drop schema lopt_feedback cascade");
+        }
+    }
+
+    private String explain(String sql)
+        throws SQLException
+    {
+        StringBuilder buf = new StringBuilder();
+        resultSet = stmt.executeQuery("explain plan for " + sql);
+        try {
+            while (resultSet.next()) {
+                buf.append(resultSet.getString(1)).append('\n');
+            }
+        } finally {
+            resultSet.close();
+            resultSet = null;
+        }
+        return buf.toString();
+    }
+}
+
+// End LoptCardinalityFeedbackTest.java
@@ -0,0 +1,166 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.luciddb.optimizer.test;
+
+import java.sql.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.jdbc.engine.*;
+import net.sf.farrago.session.*;
+import net.sf.farrago.test.*;
+
+
+/**
+ * LoptJoinRangeFilterTest tests that {@link
+ * org.luciddb.lcs.LcsRuntimeFilterRule} only restricts fact table scans when
+ * the session variable <code>joinRangeFilters</code> is set, and that the
+ * restricted scan returns the same join results.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class LoptJoinRangeFilterTest
+    extends FarragoTestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final String STAR_QUERY =
+        "select f.v, d.name from fact f, dim d"
+        + " where f.k = d.k and d.name = 'B'";
+
+    private static final String FACT_SCAN =
+        "LcsRowScanRel(table=[[LOCALDB, LOPT_RANGE, FACT]]";
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new LoptJoinRangeFilterTest object.
+     *
+     * @param testName JUnit test name
+     *
+     * @throws Exception .
+     */
+    public LoptJoinRangeFilterTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement TestCase
+    public static Test suite()
+    {
+        return wrappedSuite(LoptJoinRangeFilterTest.class);
+    }
+
+    /**
+     * Tests the fact table scan with the session variable off (the default)
+     * and on.
+     */
+    public void testRangeFilter()
+        throws Exception
+    {
+        stmt.executeUpdate("create schema lopt_range");
+        try {
+            stmt.executeUpdate("set schema 'lopt_range'");
+            stmt.executeUpdate(
+                "alter session implementation set jar"
+                + " sys_boot.sys_boot.luciddb_plugin");
+            stmt.executeUpdate("create table fact(k int, v int)");
+            stmt.executeUpdate("create table dim(k int, name varchar(10))");
+            stmt.executeUpdate(
+                "insert into fact values (1, 10), (2, 20), (2, 21),"
+                + " (3, 30), (4, 40), (null, 50)");
+            stmt.executeUpdate(
+                "insert into dim values (1, 'A'), (2, 'B'), (3, 'C')");
+
+            FarragoSession session =
+                ((FarragoJdbcEngineConnection) connection).getSession();
+            FarragoStatsUtil.setTableRowCount(
+                session,
+                "",
+                "",
+                "FACT",
+                1000000);
+            FarragoStatsUtil.setTableRowCount(
+                session,
+                "",
+                "",
+                "DIM",
+                100);
+
+            String factScan = getFactScan(explain(STAR_QUERY));
+            assertFalse(factScan, factScan.contains("residual columns"));
+            int expectedCount = countRows(STAR_QUERY);
+            assertEquals(2, expectedCount);
+
+            stmt.executeUpdate(
+                "alter session set \"joinRangeFilters\" = true");
+            factScan = getFactScan(explain(STAR_QUERY));
+            assertTrue(factScan, factScan.contains("residual columns=[[0]]"));
+            assertEquals(expectedCount, countRows(STAR_QUERY));
+        } finally {
+            stmt.executeUpdate(
+                "alter session set \"joinRangeFilters\" = false");
+            stmt.executeUpdate("alter session implementation set default");
+            stmt.executeUpdate("drop schema lopt_range cascade");
+        }
+    }
+
+    private static String getFactScan(String plan)
+    {
+        for (String line : plan.split("\n")) {
+            if (line.contains(FACT_SCAN)) {
+                return line;
+            }
+        }
+        fail("no scan of FACT in plan: " + plan);
+        return null;
+    }
+
+    private int countRows(String sql)
+        throws Exception
+    {
+        resultSet = stmt.executeQuery(sql);
+        return getResultSetCount();
+    }
+
+    private String explain(String sql)
+        throws SQLException
+    {
+        StringBuilder buf = new StringBuilder();
+        resultSet = stmt.executeQuery("explain plan for " + sql);
+        try {
+            while (resultSet.next()) {
+                buf.append(resultSet.getString(1)).append('\n');
+            }
+        } finally {
+            resultSet.close();
+            resultSet = null;
+        }
+        return buf.toString();
+    }
+}
+
+// End LoptJoinRangeFilterTest.java
@@ -0,0 +1,257 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.luciddb.optimizer.test;
+
+import org.luciddb.optimizer.*;
+
+import java.sql.*;
+
+import java.util.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.jdbc.*;
+import net.sf.farrago.test.*;
+
+
+/**
+ * LoptMaterializedAggregateTest tests the registration of materialized
+ * aggregates and their use by {@link LoptMaterializedAggregateRule}.
+ *
+ * <p>The registration procedures are created in the test schema, since the
+ * <code>sys_root</code> versions only exist in a LucidDB catalog.
+ *
+ * @author agent
+ * @version $Id$
+ */
+public class LoptMaterializedAggregateTest
+    extends FarragoTestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final String AGG_QUERY =
+        "select region, sum(amt) from sales group by region";
+
+    private static final String AGG_DEFINITION =
+        "select region, sum(amt), count(*) from lopt_matagg.sales"
+        + " group by region";
+
+    //~ Instance fields --------------------------------------------------------
+
+    private boolean userCreated;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new LoptMaterializedAggregateTest object.
+     *
+     * @param testName JUnit test name
+     *
+     * @throws Exception .
+     */
+    public LoptMaterializedAggregateTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement TestCase
+    public static Test suite()
+    {
+        return wrappedSuite(LoptMaterializedAggregateTest.class);
+    }
+
+    // implement TestCase
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        stmt.executeUpdate("create schema lopt_matagg");
+        stmt.executeUpdate("set schema 'lopt_matagg'");
+        stmt.executeUpdate(
+            "alter session implementation set jar"
+            + " sys_boot.sys_boot.luciddb_plugin");
+        stmt.executeUpdate(
+            "alter session set \"materializedAggregates\" = true");
+        stmt.executeUpdate(
+            "create procedure register_matagg("
+            + "in schema_name varchar(128), in table_name varchar(128),"
+            + " in query varchar(65535))"
+            + " language java parameter style java modifies sql data"
+            + " external name 'class "
+            + LoptMaterializedAggregate.class.getName()
+            + ".registerMaterializedAggregate'");
+        stmt.executeUpdate(
+            "create procedure unregister_matagg("
+            + "in schema_name varchar(128), in table_name varchar(128))"
+            + " language java parameter style java modifies sql data"
+            + " external name 'class "
+            + LoptMaterializedAggregate.class.getName()
+            + ".unregisterMaterializedAggregate'");
+        stmt.executeUpdate("create table sales(region varchar(10), amt int)");
+        stmt.executeUpdate(
+            "insert into sales values ('EAST', 1), ('EAST', 2), ('WEST', 5)");
+        stmt.executeUpdate(
+            "create table sales_by_region("
+            + "region varchar(10), total int, cnt bigint)");
+        stmt.executeUpdate(
+            "insert into sales_by_region " + AGG_DEFINITION);
+    }
+
+    // implement TestCase
+    protected void tearDown()
+        throws Exception
+    {
+        try {
+            stmt.executeUpdate(
+                "alter session set \"materializedAggregates\" = false");
+            stmt.executeUpdate("alter session implementation set default");
+            stmt.executeUpdate("drop schema lopt_matagg cascade");
+
+            // the user's grants went with the schema
+            if (userCreated) {
+                stmt.executeUpdate("drop user matagg_user");
+            }
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    /**
+     * Tests that a registered aggregate table answers a matching query, and
+     * is ignored once its base table is modified or it is unregistered.
+     */
+    public void testRewriteAndStaleness()
+        throws Exception
+    {
+        assertFalse(explain(AGG_QUERY).contains("SALES_BY_REGION"));
+
+        register();
+        assertTrue(explain(AGG_QUERY).contains("SALES_BY_REGION"));
+        resultSet = stmt.executeQuery(AGG_QUERY + " order by region");
+        Set<String> refSet = new HashSet<String>();
+        refSet.add("EAST");
+        refSet.add("WEST");
+        compareResultSet(refSet);
+
+        stmt.executeUpdate("insert into sales values ('NORTH', 7)");
+        assertFalse(explain(AGG_QUERY).contains("SALES_BY_REGION"));
+
+        // repopulate and register again
+        stmt.executeUpdate("delete from sales_by_region");
+        stmt.executeUpdate("insert into sales_by_region " + AGG_DEFINITION);
+        register();
+        assertTrue(explain(AGG_QUERY).contains("SALES_BY_REGION"));
+
+        stmt.executeUpdate(
+            "call unregister_matagg('LOPT_MATAGG', 'SALES_BY_REGION')");
+        assertFalse(explain(AGG_QUERY).contains("SALES_BY_REGION"));
+    }
+
+    /**
+     * Tests that registered aggregate tables are ignored unless the session
+     * enables them.
+     */
+    public void testDisabled()
+        throws Exception
+    {
+        register();
+        assertTrue(explain(AGG_QUERY).contains("SALES_BY_REGION"));
+        stmt.executeUpdate(
+            "alter session set \"materializedAggregates\" = false");
+        assertFalse(explain(AGG_QUERY).contains("SALES_BY_REGION"));
+    }
+
+    /**
+     * Tests that only a user who may modify both the aggregate table and its
+     * base tables may register it.
+     */
+    public void testRegisterRequiresPrivilege()
+        throws Exception
+    {
+        stmt.executeUpdate("create user matagg_user");
+        userCreated = true;
+        stmt.executeUpdate(
+            "grant execute on specific procedure register_matagg"
+            + " to matagg_user");
+        stmt.executeUpdate("grant insert on sales_by_region to matagg_user");
+        String query =
+            "call lopt_matagg.register_matagg('LOPT_MATAGG',"
+            + " 'SALES_BY_REGION', '" + AGG_DEFINITION + "')";
+
+        FarragoAbstractJdbcDriver driver = newJdbcEngineDriver();
+        Properties props = new Properties();
+        props.put("user", "MATAGG_USER");
+        props.put("password", "");
+        Connection userConnection = driver.connect(getJdbcUri(driver), props);
+        try {
+            Statement userStmt = userConnection.createStatement();
+            try {
+                userStmt.executeUpdate(query);
+                fail("expected privilege check on base table");
+            } catch (SQLException ex) {
+                FarragoJdbcTest.assertExceptionMatches(
+                    ex,
+                    ".*Privilege \"INSERT\" required for access to"
+                    + " table .*\"SALES\".*");
+            }
+
+            stmt.executeUpdate("grant insert on sales to matagg_user");
+            Thread.sleep(10);
+            userStmt.executeUpdate(query);
+            userStmt.close();
+        } finally {
+            userConnection.close();
+        }
+        assertTrue(explain(AGG_QUERY).contains("SALES_BY_REGION"));
+    }
+
+    private void register()
+        throws Exception
+    {
+        // DML in the same millisecond as registration makes it stale
+        Thread.sleep(10);
+        stmt.executeUpdate(
+            "call register_matagg('LOPT_MATAGG', 'SALES_BY_REGION', '"
+            + AGG_DEFINITION + "')");
+    }
+
+    private String explain(String sql)
+        throws SQLException
+    {
+        StringBuilder buf = new StringBuilder();
+        resultSet = stmt.executeQuery("explain plan for " + sql);
+        try {
+            while (resultSet.next()) {
+                buf.append(resultSet.getString(1)).append('\n');
+            }
+        } finally {
+            resultSet.close();
+            resultSet = null;
+        }
+        return buf.toString();
+    }
+}
+
+// End LoptMaterializedAggregateTest.java
@@ -682,6 +682,32 @@ public class LoptMetadataTest
         // TODO: tests when table cardinality is missing
     }
 
+    public void testStatisticsCache()
+        throws Exception
+    {
+        FarragoJdbcEngineConnection farragoConnection =
+            (FarragoJdbcEngineConnection) connection;
+        FarragoSession session = farragoConnection.getSession();
+        FarragoStatisticsCache cache =
+            session.getRepos().getStatisticsCache();
+
+        // statistics which have not changed are read from the cache
+        checkRowCount("EMPS", (double) COLSTORE_EMPS_ROWCOUNT);
+        checkColumn(0, null, 1.0, 150.0);
+        int hitCount = cache.getHitCount();
+        checkRowCount("EMPS", (double) COLSTORE_EMPS_ROWCOUNT);
+        checkColumn(0, null, 1.0, 150.0);
+        assertTrue(cache.getHitCount() > hitCount);
+
+        // updated statistics replace cached ones
+        stmt.executeUpdate(
+            "create table CACHED_STATS (i int)");
+        FarragoStatsUtil.setTableRowCount(session, "", "", "CACHED_STATS", 50);
+        checkRowCount("CACHED_STATS", 50.0);
+        FarragoStatsUtil.setTableRowCount(session, "", "", "CACHED_STATS", 70);
+        checkRowCount("CACHED_STATS", 70.0);
+    }
+
     public void testFilteredStatistics()
         throws Exception
     {
@@ -976,6 +1002,64 @@ public class LoptMetadataTest
             COLSTORE_EMPS_ROWCOUNT * COLSTORE_DEPTS_ROWCOUNT * .5);
     }
 
+    public void testRowCountJoinSkewedHistograms()
+        throws Exception
+    {
+        FarragoJdbcEngineConnection farragoConnection =
+            (FarragoJdbcEngineConnection) connection;
+        FarragoSession session = farragoConnection.getSession();
+
+        // SPARSE_DEPTS.DEPTNO takes the values 0, 10, ..., 990, so only the
+        // low end of its range overlaps with EMPS.DEPTNO (0 to 99)
+        stmt.executeUpdate("create table sparse_depts(deptno int)");
+        FarragoStatsUtil.setTableRowCount(
+            session,
+            "",
+            "",
+            "SPARSE_DEPTS",
+            1000);
+        FarragoStatsUtil.createColumnHistogram(
+            session,
+            "",
+            "",
+            "SPARSE_DEPTS",
+            "DEPTNO",
+            150,
+            100,
+            150,
+            1,
+            "0123456789");
+
+        // the histograms are only consulted if the session asks for it
+        String sql =
+            "select * from emps e, sparse_depts d where e.deptno = d.deptno";
+        transformQuery(sql);
+        Double defaultResult = RelMetadataQuery.getRowCount(rootRel);
+        assertTrue(defaultResult != null);
+
+        stmt.executeUpdate(
+            "alter session set \"joinHistogramEstimates\" = true");
+        try {
+            transformQuery(sql);
+            Double result = RelMetadataQuery.getRowCount(rootRel);
+            assertTrue(result != null);
+
+            // distinct value counts alone would suggest that every EMPS row
+            // finds its DEPTNO in SPARSE_DEPTS
+            double containedRowCount = COLSTORE_EMPS_ROWCOUNT * 1000.0 / 150;
+            assertTrue(result < (containedRowCount / 2));
+            assertTrue(result < (defaultResult / 2));
+
+            // a second statement gets the same estimate, which may now come
+            // from the statistics cache
+            transformQuery(sql);
+            assertEquals(result, RelMetadataQuery.getRowCount(rootRel));
+        } finally {
+            stmt.executeUpdate(
+                "alter session set \"joinHistogramEstimates\" = false");
+        }
+    }
+
     public void testRowCountHashJoin()
         throws Exception
     {
@@ -86,6 +86,33 @@ public class LucidDbSessionPersonality
     public static final String LAST_ROWS_REJECTED_DEFAULT = null;
     public static final String REDUCE_NON_CORRELATED_SUBQUERIES_LUCIDDB_DFLT =
         "true";
+    public static final String JOIN_ORDER_DP_MAX_FACTORS =
+        "joinOrderDpMaxFactors";
+    public static final String JOIN_ORDER_DP_MAX_FACTORS_DEFAULT = "0";
+
+    /**
+     * If true, equi-join rowcounts are corrected from the histograms of the
+     * join keys; see {@link LoptMetadataProvider}.
+     */
+    public static final String JOIN_HISTOGRAM_ESTIMATES =
+        "joinHistogramEstimates";
+    public static final String JOIN_HISTOGRAM_ESTIMATES_DEFAULT = "false";
+
+    /**
+     * If true, scans of fact tables under equi-joins are restricted to the
+     * range of join keys found on the dimension side; see {@link
+     * LcsRuntimeFilterRule}.
+     */
+    public static final String JOIN_RANGE_FILTERS = "joinRangeFilters";
+    public static final String JOIN_RANGE_FILTERS_DEFAULT = "false";
+
+    /**
+     * If true, aggregate queries may be answered from registered aggregate
+     * tables; see {@link LoptMaterializedAggregateRule}.
+     */
+    public static final String MATERIALIZED_AGGREGATES =
+        "materializedAggregates";
+    public static final String MATERIALIZED_AGGREGATES_DEFAULT = "false";
 
     //~ Instance fields --------------------------------------------------------
 
@@ -133,6 +160,14 @@ public class LucidDbSessionPersonality
             true,
             0,
             Integer.MAX_VALUE);
+        paramValidator.registerIntParam(
+            JOIN_ORDER_DP_MAX_FACTORS,
+            false,
+            0,
+            LoptOptimizeJoinRule.MAX_DP_FACTORS);
+        paramValidator.registerBoolParam(JOIN_HISTOGRAM_ESTIMATES, false);
+        paramValidator.registerBoolParam(JOIN_RANGE_FILTERS, false);
+        paramValidator.registerBoolParam(MATERIALIZED_AGGREGATES, false);
         if (defaultPersonality == null) {
             defaultLucidDb = true;
         } else if (defaultPersonality instanceof LucidDbSessionPersonality) {
@@ -245,12 +280,25 @@ public class LucidDbSessionPersonality
 
         boolean alterTable = stmt.getSession().isReentrantAlterTableAddColumn();
 
+        Integer dpMaxFactors =
+            stmt.getSession().getSessionVariables().getInteger(
+                JOIN_ORDER_DP_MAX_FACTORS);
+        Boolean joinRangeFilters =
+            stmt.getSession().getSessionVariables().getBoolean(
+                JOIN_RANGE_FILTERS);
+        Boolean materializedAggregates =
+            stmt.getSession().getSessionVariables().getBoolean(
+                MATERIALIZED_AGGREGATES);
+
         HepProgram program =
             createHepProgram(
                 fennelEnabled,
                 calcVM,
                 medPluginRules,
-                alterTable);
+                alterTable,
+                (dpMaxFactors == null) ? 0 : dpMaxFactors,
+                (joinRangeFilters != null) && joinRangeFilters,
+                (materializedAggregates != null) && materializedAggregates);
         FarragoSessionPlanner planner =
             new LucidDbPlanner(
                 program,
@@ -281,7 +329,10 @@ public class LucidDbSessionPersonality
         boolean fennelEnabled,
         CalcVirtualMachine calcVM,
         Collection<RelOptRule> medPluginRules,
-        boolean alterTable)
+        boolean alterTable,
+        int dpMaxFactors,
+        boolean joinRangeFilters,
+        boolean materializedAggregates)
     {
         HepProgramBuilder builder = new HepProgramBuilder();
 
@@ -292,6 +343,13 @@ public class LucidDbSessionPersonality
         // as well or better than the hand-coding.
         builder.addRuleByDescription("MedMdrJoinRule");
 
+        // If enabled, answer aggregates from registered aggregate tables
+        // while the query still looks like it was written; later rules would
+        // reshape it away from the defining queries of those tables.
+        if (materializedAggregates) {
+            builder.addRuleInstance(LoptMaterializedAggregateRule.instance);
+        }
+
         // Convert SamplingRel/LcsRowScanRel into LcsSamplingRowScanRel
         // early since sampling isn't compatible with index scans.  This
         // could come later, but MUST come before FennelBernoulliSamplingRule
@@ -402,7 +460,14 @@ public class LucidDbSessionPersonality
         subprogramBuilder.addRuleInstance(
             PullUpProjectsOnTopOfMultiJoinRule.instanceRightProjectChild);
         subprogramBuilder.addRuleInstance(new MergeProjectRule(true));
-        builder.addSubprogram(subprogramBuilder.createProgram());
+        HepProgram multiJoinProgram = subprogramBuilder.createProgram();
+
+        // With a match limit of 1, the subprogram restarts its walk after
+        // every conversion, so for a UNION of many join queries, first convert
+        // each branch on its own, restarting within that branch only; then
+        // convert whatever is left outside the unions.
+        builder.addSubprogramForInputs(UnionRel.class, multiJoinProgram);
+        builder.addSubprogram(multiJoinProgram);
 
         // Eliminate reducible constant expression.  Do this after we've
         // removed unnecessary projection expressions to avoid marking
@@ -456,7 +521,11 @@ public class LucidDbSessionPersonality
         // can optimize lower-level joins before their ancestors.  That allows
         // ancestors to have better cost info to work with (well, eventually).
         builder.addMatchOrder(HepMatchOrder.BOTTOM_UP);
-        builder.addRuleInstance(LoptOptimizeJoinRule.instance);
+        if (dpMaxFactors > 0) {
+            builder.addRuleInstance(new LoptOptimizeJoinRule(dpMaxFactors));
+        } else {
+            builder.addRuleInstance(LoptOptimizeJoinRule.instance);
+        }
         builder.addMatchOrder(HepMatchOrder.ARBITRARY);
 
         // Now that we've converted MultiJoinRels back to JoinRels, reduce
@@ -511,6 +580,14 @@ public class LucidDbSessionPersonality
         // Do this after LcsIndexSemiJoinRule
         builder.addRuleClass(LcsIndexAccessRule.class);
 
+        // Restrict fact table scans under star joins to the range of keys
+        // found on the dimension side, if enabled.  Do this after
+        // LcsIndexAccessRule so the residual filters from literal predicates
+        // are already in place.
+        if (joinRangeFilters) {
+            builder.addRuleClass(LcsRuntimeFilterRule.class);
+        }
+
         // TODO zfong 10/27/06 - This rule is currently a no-op because we
         // won't generate a semijoin if it can't be converted to physical
         // RelNodes.  But it's currently left in place in case of bugs.
@@ -528,6 +605,9 @@ public class LucidDbSessionPersonality
         // would have been removed.  However, do this before the last round
         // of projection pushing.  Otherwise, pushing those projections will
         // result in some relational subexpressions no longer being common.
+        // Subexpressions which only became identical through the rules above,
+        // such as filtered scans in several UNION branches, are merged
+        // first so that they are buffered too.
         builder.addCommonRelSubExprInstruction();
 
         // Now that we've finished join ordering optimization, have converted
@@ -816,6 +896,18 @@ public class LucidDbSessionPersonality
         variables.setDefault(
             LAST_ROWS_REJECTED,
             LAST_ROWS_REJECTED_DEFAULT);
+        variables.setDefault(
+            JOIN_ORDER_DP_MAX_FACTORS,
+            JOIN_ORDER_DP_MAX_FACTORS_DEFAULT);
+        variables.setDefault(
+            JOIN_HISTOGRAM_ESTIMATES,
+            JOIN_HISTOGRAM_ESTIMATES_DEFAULT);
+        variables.setDefault(
+            JOIN_RANGE_FILTERS,
+            JOIN_RANGE_FILTERS_DEFAULT);
+        variables.setDefault(
+            MATERIALIZED_AGGREGATES,
+            MATERIALIZED_AGGREGATES_DEFAULT);
         variables.set(
             REDUCE_NON_CORRELATED_SUBQUERIES,
             REDUCE_NON_CORRELATED_SUBQUERIES_LUCIDDB_DFLT);
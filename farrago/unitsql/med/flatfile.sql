@@ -569,4 +569,64 @@ select * from mapped_server.bcp."mapped_fewer_cols";
 select * from mapped_server.bcp."missing_columns";
 
 drop schema test_schema cascade;
+
+
+---------------------------------------------------------------------------
+-- Part 6. Filename patterns and partition directories                   --
+---------------------------------------------------------------------------
+
+--
+-- 6.1 Test a table whose filename is a pattern. The directories named
+--     key=value hold the values of the REGION and YR columns. The file
+--     in region=north has too few columns, so any query which fails to
+--     prune it fails.
+--
+create foreign table flatfile_parts(
+    id int not null,
+    amount int not null,
+    region varchar(10),
+    yr int)
+server flatfile_server
+options (filename 'parts/*/*/part-*');
+
+select * from flatfile_parts where region = 'east' order by id;
+
+--
+-- 6.2 Test pruning under AND, OR and NOT
+--
+select * from flatfile_parts where region = 'west' and yr = 2011
+order by id;
+
+select * from flatfile_parts
+where region = 'east' or (region = 'west' and amount > 50)
+order by id;
+
+select * from flatfile_parts where not (region = 'north' or yr = 2011)
+order by id;
+
+-- a filter which no file satisfies
+select * from flatfile_parts where region = 'south';
+
+--
+-- 6.3 Test pruning through a projection
+--
+select id from (select id, region from flatfile_parts)
+where region = 'west'
+order by id;
+
+--
+-- 6.4 Test partition columns added to a derived row type, and wildcards
+--     within a directory name
+--
+select region, yr, count(*)
+from flatfile_server.BCP."parts/region=*t/*/part-*"
+group by region, yr
+order by 1, 2;
+
+--
+-- 6.5 Test data files whose partition directories differ (should fail)
+--
+select * from flatfile_server.BCP."badparts/*/part-*";
+
+drop foreign table flatfile_parts;
 -- End flatfile.sql
@@ -0,0 +1,68 @@
+-- $Id$
+-- Test scans of JDBC foreign tables which are split into concurrent
+-- range queries on a partition column
+
+create schema jpart;
+
+-- loop back to the default catalog, splitting scans into at most two
+-- partitions whatever the tables ask for
+create server loopback_partition
+foreign data wrapper sys_jdbc
+options(
+    driver_class 'net.sf.farrago.jdbc.engine.FarragoJdbcEngineDriver',
+    url 'jdbc:farrago:',
+    user_name 'sa',
+    max_partition_threads '2');
+
+-- without a connection pool, scans are never split
+create server loopback_partition_nopool
+foreign data wrapper sys_jdbc
+options(
+    driver_class 'net.sf.farrago.jdbc.engine.FarragoJdbcEngineDriver',
+    url 'jdbc:farrago:',
+    user_name 'sa',
+    disable_connection_pool 'true');
+
+create foreign table jpart.emps_by_empno
+server loopback_partition
+options(
+    schema_name 'SALES',
+    table_name 'EMPS',
+    partition_column 'EMPNO',
+    partition_count '4');
+
+-- AGE is null for one employee, who must be read by the first partition
+create foreign table jpart.emps_by_age
+server loopback_partition
+options(
+    schema_name 'SALES',
+    table_name 'EMPS',
+    partition_column 'AGE',
+    partition_count '8');
+
+create foreign table jpart.emps_nopool
+server loopback_partition_nopool
+options(
+    schema_name 'SALES',
+    table_name 'EMPS',
+    partition_column 'EMPNO',
+    partition_count '4');
+
+select empno, name, age from jpart.emps_by_empno order by name;
+
+-- the second execution uses the cached range of EMPNO
+select empno, name, age from jpart.emps_by_empno order by name;
+
+select empno, name, age from jpart.emps_by_age order by name;
+
+-- the range is read with the filter applied
+select name from jpart.emps_by_age where age > 40 order by name;
+
+-- an empty range falls back to the unpartitioned query
+select name from jpart.emps_by_empno where empno > 1000;
+
+select empno, name, age from jpart.emps_nopool order by name;
+
+drop schema jpart cascade;
+drop server loopback_partition cascade;
+drop server loopback_partition_nopool cascade;
@@ -214,6 +214,16 @@ select c1.company, c2.city from
     (select * from customer where id = 1) as c1, 
     (select * from customer where id = 1) as c2;
 
+-- The inputs of this union only become identical once the trivial
+-- projection of the subquery has been removed.  They must be merged so that
+-- the filtered scan is buffered and read once.
+
+explain plan for
+select id, company from customer where company like 'A%'
+union all
+select id, company from (select * from customer) as c
+    where company like 'A%';
+
 !set outputformat table
 -- Run the above queries
 
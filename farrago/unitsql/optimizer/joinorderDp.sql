@@ -0,0 +1,78 @@
+-- $Id$
+-- Tests for join ordering by dynamic programming in LoptOptimizeJoinRule,
+-- comparing plans and results against the greedy ordering
+
+create schema jodp;
+set schema 'jodp';
+
+-- set session personality to LucidDB so that LoptOptimizeJoinRule is used
+alter session implementation set jar sys_boot.sys_boot.luciddb_plugin;
+
+create table f(f int, f_d1 int, f_d2 int, f_d3 int);
+create table d1(d1 int, d1_f int);
+create table d2(d2 int, d2_f int);
+create table d3(d3 int, d3_f int);
+
+insert into f values (0, 1, 2, 3), (1, 1, 2, 4), (2, 5, 2, 3);
+insert into d1 values (10, 1), (11, 5);
+insert into d2 values (20, 2);
+insert into d3 values (30, 3), (31, 4);
+
+-- fake stats
+call sys_boot.mgmt.stat_set_row_count('LOCALDB', 'JODP', 'F', 1000000);
+call sys_boot.mgmt.stat_set_row_count('LOCALDB', 'JODP', 'D1', 1000);
+call sys_boot.mgmt.stat_set_row_count('LOCALDB', 'JODP', 'D2', 100);
+call sys_boot.mgmt.stat_set_row_count('LOCALDB', 'JODP', 'D3', 10);
+
+-- values above the limit are rejected
+alter session set "joinOrderDpMaxFactors" = 13;
+
+---------------------
+-- greedy ordering
+---------------------
+!set outputformat csv
+
+-- star join
+explain plan excluding attributes for
+select f, d1, d2, d3 from f, d1, d2, d3
+    where f.f_d1 = d1.d1_f and f.f_d2 = d2.d2_f and f.f_d3 = d3.d3_f;
+
+!set outputformat table
+
+select f, d1, d2, d3 from f, d1, d2, d3
+    where f.f_d1 = d1.d1_f and f.f_d2 = d2.d2_f and f.f_d3 = d3.d3_f
+    order by f;
+
+-- filter referencing three factors, and one referencing none
+select f, d1, d2 from f, d1, d2
+    where f.f_d1 = d1.d1_f and f.f_d1 + d1.d1_f = d2.d2_f
+    and current_date > date '2000-01-01'
+    order by f;
+
+---------------------------------
+-- dynamic programming ordering
+---------------------------------
+alter session set "joinOrderDpMaxFactors" = 4;
+
+!set outputformat csv
+
+-- star join; the plan should match the greedy one
+explain plan excluding attributes for
+select f, d1, d2, d3 from f, d1, d2, d3
+    where f.f_d1 = d1.d1_f and f.f_d2 = d2.d2_f and f.f_d3 = d3.d3_f;
+
+!set outputformat table
+
+-- results should match the greedy ones
+select f, d1, d2, d3 from f, d1, d2, d3
+    where f.f_d1 = d1.d1_f and f.f_d2 = d2.d2_f and f.f_d3 = d3.d3_f
+    order by f;
+
+select f, d1, d2 from f, d1, d2
+    where f.f_d1 = d1.d1_f and f.f_d1 + d1.d1_f = d2.d2_f
+    and current_date > date '2000-01-01'
+    order by f;
+
+alter session set "joinOrderDpMaxFactors" = 0;
+
+-- End joinorderDp.sql
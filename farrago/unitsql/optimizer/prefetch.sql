@@ -0,0 +1,27 @@
+-- $Id$
+-- Test prefetching of Fennel results on a separate thread
+
+set schema 'sales';
+
+-- values above the limits are rejected
+alter session set "fennelPrefetchDepth" = 17;
+alter session set "fennelPrefetchBufferSize" = 4194305;
+
+alter session set "fennelPrefetchDepth" = 4;
+alter session set "fennelPrefetchBufferSize" = 65536;
+
+-- single prefetching stream
+select name from depts order by 1;
+
+-- two prefetching streams in the same graph, fetched in turn
+select * from
+(select name from emps union all select name from depts)
+ order by 1;
+
+select count(*) from
+(select name from emps union all select name from depts);
+
+alter session set "fennelPrefetchDepth" = 0;
+alter session set "fennelPrefetchBufferSize" = 0;
+
+-- End prefetch.sql
@@ -609,6 +609,7 @@ void ExecStreamFactory::visit(ProxyFlatFileTupleStreamDef &streamDef)
     params.lenient = streamDef.isLenient();
     params.trim = streamDef.isTrim();
     params.mapped = streamDef.isMapped();
+    params.parallelism = std::max(1, streamDef.getParallelism());
     readColumnList(streamDef, params.columnNames);
 
     params.numRowsScan = streamDef.getNumRowsScan();
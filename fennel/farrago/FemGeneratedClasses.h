@@ -884,6 +884,8 @@ bool isMapped();
 static jmethodID meth_isMapped;
 int32_t getNumRowsScan();
 static jmethodID meth_getNumRowsScan;
+int32_t getParallelism();
+static jmethodID meth_getParallelism;
 std::string getQuoteCharacter();
 static jmethodID meth_getQuoteCharacter;
 std::string getRowDelimiter();
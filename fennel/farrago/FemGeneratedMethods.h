@@ -94,6 +94,7 @@ jmethodID ProxyFlatFileTupleStreamDef::meth_isHasHeader = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_isLenient = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_isMapped = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_getNumRowsScan = 0;
+jmethodID ProxyFlatFileTupleStreamDef::meth_getParallelism = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_getQuoteCharacter = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_getRowDelimiter = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_getSubstituteCharacter = 0;
@@ -473,6 +474,7 @@ ProxyFlatFileTupleStreamDef::meth_isHasHeader = pEnv->GetMethodID(jClass,"isHasH
 ProxyFlatFileTupleStreamDef::meth_isLenient = pEnv->GetMethodID(jClass,"isLenient","()Z");
 ProxyFlatFileTupleStreamDef::meth_isMapped = pEnv->GetMethodID(jClass,"isMapped","()Z");
 ProxyFlatFileTupleStreamDef::meth_getNumRowsScan = pEnv->GetMethodID(jClass,"getNumRowsScan","()I");
+ProxyFlatFileTupleStreamDef::meth_getParallelism = pEnv->GetMethodID(jClass,"getParallelism","()I");
 ProxyFlatFileTupleStreamDef::meth_getQuoteCharacter = pEnv->GetMethodID(jClass,"getQuoteCharacter","()Ljava/lang/String;");
 ProxyFlatFileTupleStreamDef::meth_getRowDelimiter = pEnv->GetMethodID(jClass,"getRowDelimiter","()Ljava/lang/String;");
 ProxyFlatFileTupleStreamDef::meth_getSubstituteCharacter = pEnv->GetMethodID(jClass,"getSubstituteCharacter","()Ljava/lang/String;");
@@ -1396,6 +1398,11 @@ int32_t ProxyFlatFileTupleStreamDef::getNumRowsScan()
 return pEnv->CallIntMethod(jObject,meth_getNumRowsScan);
 }
 
+int32_t ProxyFlatFileTupleStreamDef::getParallelism()
+{
+return pEnv->CallIntMethod(jObject,meth_getParallelism);
+}
+
 std::string ProxyFlatFileTupleStreamDef::getQuoteCharacter()
 {
 return constructString(pEnv->CallObjectMethod(jObject,meth_getQuoteCharacter));
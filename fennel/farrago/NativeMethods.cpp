@@ -142,6 +142,49 @@ Java_net_sf_farrago_fennel_FennelStorage_tupleStreamFetch(
     }
 }
 
+extern "C" JNIEXPORT jobject JNICALL
+Java_net_sf_farrago_fennel_FennelStorage_tupleStreamFetchPinned(
+    JNIEnv *pEnvInit, jclass, jlong hStream, jint cbPinned, jint cbLimit)
+{
+    JniEnvRef pEnv(pEnvInit);
+    try {
+        ExecStream &stream =
+            CmdInterpreter::getExecStreamFromLong(hStream);
+        if (cbPinned > 0) {
+            // release the bytes handed out by the previous call; nothing
+            // else consumes from this accessor, so they are still at the
+            // start of the consumption window
+            SharedExecStreamBufAccessor pPinnedAccessor =
+                stream.getGraph().getStreamOutputAccessor(
+                    stream.getStreamId(), 0);
+            PConstBuffer pPinned = pPinnedAccessor->getConsumptionStart();
+            assert(
+                pPinnedAccessor->getConsumptionAvailable() >= uint(cbPinned));
+            pPinnedAccessor->consumeData(pPinned + cbPinned);
+        }
+        ExecStreamScheduler *scheduler = stream.getGraph().getScheduler();
+        assert(scheduler);
+        ExecStreamBufAccessor &bufAccessor = scheduler->readStream(stream);
+        if (bufAccessor.getState() == EXECBUF_EOS) {
+            return NULL;
+        }
+        assert(bufAccessor.isConsumptionPossible());
+        uint cbActual =
+            bufAccessor.getConsumptionAvailableBounded(uint(cbLimit));
+        assert(cbActual);
+        PConstBuffer pBuffer = bufAccessor.getConsumptionStart();
+
+        // The returned buffer is a view of the producer's page; the data is
+        // not consumed until the next call, so the page stays pinned while
+        // Java unmarshals from it.
+        return pEnv->NewDirectByteBuffer(
+            const_cast<PBuffer>(pBuffer), cbActual);
+    } catch (std::exception &ex) {
+        pEnv.handleExcn(ex);
+        return NULL;
+    }
+}
+
 extern "C" JNIEXPORT jint JNICALL
 Java_net_sf_farrago_fennel_FennelStorage_tupleStreamTransformFetch(
     JNIEnv *pEnvInit, jclass, jlong hStream, jint inputOrdinal,
@@ -85,6 +85,14 @@ JNIEXPORT void JNICALL Java_net_sf_farrago_fennel_FennelStorage_tupleStreamGraph
 JNIEXPORT jint JNICALL Java_net_sf_farrago_fennel_FennelStorage_tupleStreamFetch
   (JNIEnv *, jclass, jlong, jbyteArray);
 
+/*
+ * Class:     net_sf_farrago_fennel_FennelStorage
+ * Method:    tupleStreamFetchPinned
+ * Signature: (JII)Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL Java_net_sf_farrago_fennel_FennelStorage_tupleStreamFetchPinned
+  (JNIEnv *, jclass, jlong, jint, jint);
+
 /*
  * Class:     net_sf_farrago_fennel_FennelStorage
  * Method:    tupleStreamTransformFetch
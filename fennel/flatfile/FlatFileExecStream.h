@@ -154,6 +154,19 @@ struct FlatFileExecStreamParams : public SingleOutputExecStreamParams
      */
     std::vector<std::string> columnNames;
 
+    /**
+     * Number of threads used to parse the file. If greater than one, a query
+     * over a delimited file is split into chunks which are parsed
+     * concurrently; see FlatFileParallelReader. Defaults to 1.
+     */
+    uint parallelism;
+
+    /**
+     * Size of the chunks a file is split into when parsed by several
+     * threads, in bytes. Zero selects a default size.
+     */
+    uint chunkSize;
+
     explicit FlatFileExecStreamParams()
     {
         errorFilePath = "";
@@ -164,6 +177,8 @@ struct FlatFileExecStreamParams : public SingleOutputExecStreamParams
         header = true;
         numRowsScan = 0;
         mode = FLATFILE_MODE_QUERY;
+        parallelism = 1;
+        chunkSize = 0;
     }
 };
 
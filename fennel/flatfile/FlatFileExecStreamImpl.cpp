@@ -73,6 +73,20 @@ void FlatFileExecStreamImpl::prepare(
 
     numRowsScan = params.numRowsScan;
     textDesc = params.outputTupleDesc;
+
+    // only full scans of delimited rows can be split between threads
+    parallelism = 1;
+    if (params.rowDelim != 0
+        && (mode == FLATFILE_MODE_QUERY || mode == FLATFILE_MODE_QUERY_TEXT)
+        && numRowsScan == 0)
+    {
+        parallelism = params.parallelism;
+    }
+    chunkSize = params.chunkSize;
+    if (chunkSize == 0) {
+        chunkSize = FlatFileParallelReader::DEFAULT_CHUNK_SIZE;
+    }
+    parallel = false;
 }
 
 void FlatFileExecStreamImpl::getResourceRequirements(
@@ -96,6 +110,18 @@ void FlatFileExecStreamImpl::open(bool restart)
         uint cbPageSize = bufferLock.getPage().getCache().getPageSize();
         pBufferStorage = bufferLock.getPage().getWritableData();
         pBuffer->setStorage((char*)pBufferStorage, cbPageSize);
+
+        // rows are at most a page long, as they are for a sequential scan
+        if (parallelism > 1) {
+            pParallelReader.reset(
+                new FlatFileParallelReader(
+                    dataFilePath,
+                    *pParser,
+                    cbPageSize,
+                    parallelism,
+                    chunkSize),
+                ClosableObjectDestructor());
+        }
     }
     pBuffer->open();
     pBuffer->read();
@@ -170,6 +196,14 @@ void FlatFileExecStreamImpl::open(bool restart)
         }
     }
 
+    // The rest of the file may be parsed in parallel. The buffer only
+    // holds the start of the file, so the read pointer is the offset of
+    // the first row.
+    if (pParallelReader) {
+        FileSize offset = pBuffer->getReadPtr() - (char *) pBufferStorage;
+        parallel = pParallelReader->open(offset, rowDesc);
+    }
+
     done = false;
 }
 
@@ -198,6 +232,25 @@ ExecStreamResult FlatFileExecStreamImpl::execute(
                 break;
             }
 
+            // in a parallel scan, rows are parsed by the reader, and copied
+            // into the buffer storage one at a time
+            if (parallel) {
+                if (!pParallelReader->nextRow(
+                        lastResult, (char *) pBufferStorage))
+                {
+                    done = true;
+                    break;
+                }
+                nTuples++;
+                if (lastResult.status == FlatFileRowParseResult::NO_STATUS) {
+                    handleTuple(lastResult, dataTuple);
+                } else {
+                    logError(lastResult);
+                    nRowErrors++;
+                }
+                continue;
+            }
+
             if ((numRowsScan > 0 && numRowsScan == nRowsOutput)
                 || pBuffer->isDone())
             {
@@ -439,6 +492,10 @@ void FlatFileExecStreamImpl::releaseResources()
     if (pBuffer) {
         pBuffer->close();
     }
+    if (pParallelReader) {
+        pParallelReader->close();
+    }
+    parallel = false;
 }
 
 FENNEL_END_CPPFILE("$Id$");
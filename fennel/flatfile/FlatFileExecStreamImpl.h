@@ -26,6 +26,7 @@
 
 #include "fennel/flatfile/FlatFileBuffer.h"
 #include "fennel/flatfile/FlatFileExecStream.h"
+#include "fennel/flatfile/FlatFileParallelReader.h"
 #include "fennel/flatfile/FlatFileParser.h"
 #include "fennel/segment/SegmentAccessor.h"
 #include "fennel/segment/SegPageLock.h"
@@ -75,6 +76,12 @@ class FENNEL_FLATFILE_EXPORT FlatFileExecStreamImpl
     TupleData textTuple, dataTuple;
     bool isRowPending;
 
+    // for parallel scans
+    uint parallelism;
+    uint chunkSize;
+    SharedFlatFileParallelReader pParallelReader;
+    bool parallel;
+
     // for sampling/describe mode
     FlatFileMode mode;
     int numRowsScan;
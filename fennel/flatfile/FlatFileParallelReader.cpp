@@ -0,0 +1,278 @@
+/*
+// $Id$
+// Fennel is a library of data storage and processing components.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+#include "fennel/common/CommonPreamble.h"
+#include "fennel/common/FennelResource.h"
+#include "fennel/common/FennelExcn.h"
+#include "fennel/flatfile/FlatFileParallelReader.h"
+
+#ifndef __MSVC__
+#include <fcntl.h>
+#include <sys/mman.h>
+#include <sys/stat.h>
+#endif
+
+FENNEL_BEGIN_CPPFILE("$Id$");
+
+const uint FlatFileParallelReader::DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+void FlatFileChunkTask::execute()
+{
+    StrictMutexGuard guard(reader.mutex);
+    if (reader.closing) {
+        // the chunk will never be read
+        return;
+    }
+    guard.unlock();
+    try {
+        reader.parseChunk(*pChunk);
+    } catch (std::exception &ex) {
+        pChunk->error = ex.what();
+    }
+    guard.lock();
+    pChunk->done = true;
+    reader.condition.notify_all();
+}
+
+FlatFileParallelReader::FlatFileParallelReader(
+    const std::string &pathInit,
+    const FlatFileParser &parserInit,
+    uint maxRowSizeInit,
+    uint nThreadsInit,
+    uint chunkSizeInit)
+    : path(pathInit),
+      parser(parserInit)
+{
+    maxRowSize = maxRowSizeInit;
+    nThreads = nThreadsInit;
+    chunkSize = chunkSizeInit;
+    fd = -1;
+    pMap = pMapEnd = NULL;
+    pNextStart = pExpected = NULL;
+    iRow = 0;
+    closing = false;
+}
+
+FlatFileParallelReader::~FlatFileParallelReader()
+{
+}
+
+bool FlatFileParallelReader::open(
+    FileSize offset,
+    const FlatFileRowDescriptor &rowDescInit)
+{
+    // in case we are reopening
+    close();
+
+#ifdef __MSVC__
+    return false;
+#else
+    fd = ::open(path.c_str(), O_RDONLY);
+    if (fd < 0) {
+        throw FennelExcn(
+            FennelResource::instance().readDataFailed(path));
+    }
+    struct stat fileStat;
+    if (::fstat(fd, &fileStat)
+        || (FileSize(fileStat.st_size) <= offset + chunkSize)
+        || (FileSize(fileStat.st_size) != size_t(fileStat.st_size)))
+    {
+        ::close(fd);
+        fd = -1;
+        return false;
+    }
+    size_t cbMap = fileStat.st_size;
+    void *v = ::mmap(NULL, cbMap, PROT_READ, MAP_PRIVATE, fd, 0);
+    if (v == MAP_FAILED) {
+        ::close(fd);
+        fd = -1;
+        return false;
+    }
+    // each chunk is read sequentially
+    ::madvise(v, cbMap, MADV_SEQUENTIAL);
+    pMap = static_cast<char *>(v);
+    pMapEnd = pMap + cbMap;
+    needsClose = true;
+
+    rowDesc = rowDescInit;
+    pNextStart = pExpected = pMap + offset;
+    iRow = 0;
+    threadPool.start(nThreads);
+    for (uint i = 0; i < 2 * nThreads; i++) {
+        submitChunk();
+    }
+    return true;
+#endif
+}
+
+void FlatFileParallelReader::closeImpl()
+{
+    // skip queued chunks, and wait for those being parsed
+    StrictMutexGuard guard(mutex);
+    closing = true;
+    guard.unlock();
+    threadPool.stop();
+    guard.lock();
+    closing = false;
+    guard.unlock();
+    chunks.clear();
+#ifndef __MSVC__
+    if (pMap) {
+        ::munmap(pMap, pMapEnd - pMap);
+        pMap = pMapEnd = NULL;
+    }
+    if (fd >= 0) {
+        ::close(fd);
+        fd = -1;
+    }
+#endif
+}
+
+char *FlatFileParallelReader::findRowStart(char *p)
+{
+    while (p < pMapEnd && !parser.isRowDelim(*p)) {
+        p++;
+    }
+    while (p < pMapEnd && parser.isRowDelim(*p)) {
+        p++;
+    }
+    return p;
+}
+
+void FlatFileParallelReader::submitChunk()
+{
+    if (pNextStart >= pMapEnd) {
+        return;
+    }
+    SharedFlatFileChunk pChunk(new FlatFileChunk());
+    pChunk->pStart = pNextStart;
+    if (FileSize(pMapEnd - pNextStart) <= chunkSize) {
+        pChunk->pLimit = pMapEnd;
+    } else {
+        // the row delimiter may be the last character of this chunk
+        pChunk->pLimit = findRowStart(pNextStart + chunkSize - 1);
+    }
+    pChunk->pEnd = NULL;
+    pChunk->done = false;
+    pChunk->validated = false;
+    pNextStart = pChunk->pLimit;
+
+    chunks.push_back(pChunk);
+    FlatFileChunkTask task(*this, pChunk);
+    threadPool.submitTask(task);
+}
+
+void FlatFileParallelReader::parseChunk(FlatFileChunk &chunk)
+{
+    FlatFileParser chunkParser(parser);
+    FlatFileRowParseResult result;
+    chunk.rows.clear();
+    chunk.columns.clear();
+
+    char *p = chunk.pStart;
+    while (p < chunk.pLimit) {
+        uint size = std::min(FileSize(pMapEnd - p), FileSize(maxRowSize));
+        chunkParser.scanRow(p, size, rowDesc, result);
+        if (result.status == FlatFileRowParseResult::INCOMPLETE_COLUMN
+            && p + size < pMapEnd)
+        {
+            // as in a sequential scan, which reads a page at a time
+            result.status = FlatFileRowParseResult::ROW_TOO_LARGE;
+        }
+        assert(result.next > p);
+
+        FlatFileParsedRow row;
+        row.current = p;
+        row.size = result.next - p;
+        row.status = result.status;
+        row.iColumn = chunk.columns.size();
+        row.nColumns = result.getReadCount();
+        chunk.columns.insert(
+            chunk.columns.end(),
+            result.offsets.begin(),
+            result.offsets.end());
+        chunk.columns.insert(
+            chunk.columns.end(),
+            result.sizes.begin(),
+            result.sizes.end());
+        chunk.rows.push_back(row);
+
+        p = result.next;
+    }
+    chunk.pEnd = p;
+}
+
+void FlatFileParallelReader::validateChunk(FlatFileChunk &chunk)
+{
+    StrictMutexGuard guard(mutex);
+    while (!chunk.done) {
+        condition.wait(guard);
+    }
+    guard.unlock();
+
+    if (!chunk.error.empty()) {
+        throw FennelExcn(chunk.error);
+    }
+    if (chunk.pStart != pExpected) {
+        // the previous chunk's last row did not end where expected, because
+        // of a quoted row delimiter; start again from where it did end
+        chunk.pStart = pExpected;
+        parseChunk(chunk);
+    }
+    chunk.validated = true;
+}
+
+bool FlatFileParallelReader::nextRow(
+    FlatFileRowParseResult &result,
+    char *pRowBuffer)
+{
+    while (!chunks.empty()) {
+        FlatFileChunk &chunk = *(chunks.front());
+        if (!chunk.validated) {
+            validateChunk(chunk);
+        }
+        if (iRow < chunk.rows.size()) {
+            FlatFileParsedRow &row = chunk.rows[iRow++];
+            memcpy(pRowBuffer, row.current, row.size);
+            result.status = row.status;
+            result.current = pRowBuffer;
+            result.next = pRowBuffer + row.size;
+            VectorOfUint::iterator pOffsets =
+                chunk.columns.begin() + row.iColumn;
+            VectorOfUint::iterator pSizes = pOffsets + row.nColumns;
+            result.offsets.assign(pOffsets, pSizes);
+            result.sizes.assign(pSizes, pSizes + row.nColumns);
+            return true;
+        }
+
+        // done with this chunk; start on another one
+        pExpected = chunk.pEnd;
+        chunks.pop_front();
+        iRow = 0;
+        submitChunk();
+    }
+    return false;
+}
+
+FENNEL_END_CPPFILE("$Id$");
+
+// End FlatFileParallelReader.cpp
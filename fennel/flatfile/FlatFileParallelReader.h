@@ -0,0 +1,306 @@
+/*
+// $Id$
+// Fennel is a library of data storage and processing components.
+// Copyright (C) 2011 The Eigenbase Project
+// Copyright (C) 2011 SQLstream, Inc.
+// Copyright (C) 2011 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+#ifndef Fennel_FlatFileParallelReader_Included
+#define Fennel_FlatFileParallelReader_Included
+
+#include "fennel/common/ClosableObject.h"
+#include "fennel/flatfile/FlatFileParser.h"
+#include "fennel/synch/SynchMonitoredObject.h"
+#include "fennel/synch/ThreadPool.h"
+
+#include <deque>
+
+FENNEL_BEGIN_NAMESPACE
+
+class FlatFileParallelReader;
+typedef boost::shared_ptr<FlatFileParallelReader> SharedFlatFileParallelReader;
+
+/**
+ * FlatFileParsedRow records where a row was found by a FlatFileParallelReader,
+ * and where its columns are.
+ */
+struct FlatFileParsedRow
+{
+    /**
+     * Start of the row text in the mapped file
+     */
+    char *current;
+
+    /**
+     * Length of the row text, including row delimiters
+     */
+    uint size;
+
+    /**
+     * Result of parsing the row
+     */
+    FlatFileRowParseResult::RowStatus status;
+
+    /**
+     * Index of the column offsets of this row in FlatFileChunk::columns; the
+     * column sizes follow the offsets
+     */
+    uint iColumn;
+
+    /**
+     * Number of columns read
+     */
+    uint nColumns;
+};
+
+/**
+ * FlatFileChunk is a range of a flat file parsed as a unit by a
+ * FlatFileParallelReader. A chunk contains the rows which start between
+ * pStart and pLimit; its last row may extend beyond pLimit.
+ */
+struct FlatFileChunk
+{
+    /**
+     * Where the first row of the chunk is expected to start
+     */
+    char *pStart;
+
+    /**
+     * Where the first row of the next chunk is expected to start
+     */
+    char *pLimit;
+
+    /**
+     * Where the last row of the chunk actually ended
+     */
+    char *pEnd;
+
+    std::vector<FlatFileParsedRow> rows;
+
+    VectorOfUint columns;
+
+    /**
+     * Whether the chunk has been parsed; guarded by the reader's mutex
+     */
+    bool done;
+
+    /**
+     * Whether the chunk is known to start on a row boundary
+     */
+    bool validated;
+
+    /**
+     * Description of an error which occurred while parsing the chunk, or
+     * empty
+     */
+    std::string error;
+};
+
+typedef boost::shared_ptr<FlatFileChunk> SharedFlatFileChunk;
+
+/**
+ * FlatFileChunkTask parses a chunk on behalf of a FlatFileParallelReader, in
+ * a thread of its pool.
+ */
+class FENNEL_FLATFILE_EXPORT FlatFileChunkTask
+{
+    FlatFileParallelReader &reader;
+    SharedFlatFileChunk pChunk;
+
+public:
+    explicit FlatFileChunkTask(
+        FlatFileParallelReader &readerInit,
+        SharedFlatFileChunk pChunkInit)
+        : reader(readerInit),
+          pChunk(pChunkInit)
+    {
+    }
+
+    /**
+     * Parses the chunk; this satisfies the ThreadPool Task signature.
+     */
+    void execute();
+};
+
+/**
+ * FlatFileParallelReader parses a delimited flat file with several threads.
+ * The file is mapped into memory and divided into chunks of about the same
+ * size, which are parsed concurrently by a thread pool, while the rows are
+ * returned in file order to the calling thread.
+ *
+ * <p>
+ *
+ * A chunk is expected to start after the first row delimiter following the
+ * end of the previous chunk. This guess is wrong when the delimiter is
+ * quoted or escaped. Since a chunk's rows are only returned once the previous
+ * chunk has been returned, the reader then knows where the chunk really
+ * starts, and parses it again from there in the calling thread. Files with
+ * few quoted row delimiters are therefore parsed almost entirely in parallel,
+ * and any file is parsed exactly as it would be sequentially.
+ *
+ * <p>
+ *
+ * Rows are returned as in a sequential scan, with the same status and the
+ * same limit on their length. Each row's text is copied into a buffer
+ * supplied by the caller, so that it can be unquoted in place without
+ * altering the mapped file, which other threads may be reading.
+ *
+ * <p>
+ *
+ * At most two chunks per thread are parsed ahead of the row being returned.
+ *
+ * @author agent
+ * @version $Id$
+ */
+class FENNEL_FLATFILE_EXPORT FlatFileParallelReader
+    : public ClosableObject, protected SynchMonitoredObject
+{
+    friend class FlatFileChunkTask;
+
+    std::string path;
+    FlatFileParser parser;
+    FlatFileRowDescriptor rowDesc;
+    uint maxRowSize;
+    uint nThreads;
+    FileSize chunkSize;
+
+    int fd;
+    char *pMap;
+    char *pMapEnd;
+
+    ThreadPool<FlatFileChunkTask> threadPool;
+
+    /**
+     * Chunks submitted to the thread pool, in file order; the rows of the
+     * first one are being returned
+     */
+    std::deque<SharedFlatFileChunk> chunks;
+
+    /**
+     * Expected start of the next chunk to be submitted
+     */
+    char *pNextStart;
+
+    /**
+     * Where the next row to be returned starts
+     */
+    char *pExpected;
+
+    /**
+     * Index of the next row to be returned from the first chunk
+     */
+    uint iRow;
+
+    /**
+     * Whether the reader is being closed, so that queued chunks should not
+     * be parsed; guarded by mutex
+     */
+    bool closing;
+
+    // implement ClosableObject
+    void closeImpl();
+
+    /**
+     * Finds the start of the row following the character at p.
+     *
+     * @return position after the row delimiters following p, or the end of
+     * the file
+     */
+    char *findRowStart(char *p);
+
+    /**
+     * Creates the next chunk, if any remains, and submits it to the thread
+     * pool.
+     */
+    void submitChunk();
+
+    /**
+     * Parses the rows starting within a chunk.
+     */
+    void parseChunk(FlatFileChunk &chunk);
+
+    /**
+     * Waits until a chunk has been parsed, and makes sure that it starts
+     * where the previous chunk ended.
+     */
+    void validateChunk(FlatFileChunk &chunk);
+
+public:
+    /**
+     * Default size of chunks, in bytes
+     */
+    static const uint DEFAULT_CHUNK_SIZE;
+
+    /**
+     * Constructs a reader. See FlatFileExecStreamParams for more detail on
+     * the parameters.
+     *
+     * @param path location of flat file to be read
+     *
+     * @param parser parser configured with the file's delimiters; it is
+     * copied for each chunk
+     *
+     * @param maxRowSize largest number of characters in a row, including its
+     * delimiters; longer rows are reported as ROW_TOO_LARGE
+     *
+     * @param nThreads number of threads parsing chunks
+     *
+     * @param chunkSize size of chunks, in bytes
+     */
+    explicit FlatFileParallelReader(
+        const std::string &path,
+        const FlatFileParser &parser,
+        uint maxRowSize,
+        uint nThreads,
+        uint chunkSize);
+
+    virtual ~FlatFileParallelReader();
+
+    /**
+     * Maps the file and starts parsing it. Files which fit in a single chunk
+     * are not worth reading in parallel, and some files cannot be mapped, for
+     * instance if they are larger than the address space; the caller should
+     * read them sequentially.
+     *
+     * @param offset position of the first row in the file, after any header
+     *
+     * @param rowDesc descriptor of the rows to be parsed
+     *
+     * @return whether the file will be read by this reader
+     */
+    bool open(FileSize offset, const FlatFileRowDescriptor &rowDesc);
+
+    /**
+     * Returns the next row of the file.
+     *
+     * @param[out] result result of parsing the row; its column pointers
+     * refer to pRowBuffer
+     *
+     * @param[out] pRowBuffer buffer into which the row's text is copied;
+     * must be at least maxRowSize characters long
+     *
+     * @return false if there are no more rows
+     */
+    bool nextRow(FlatFileRowParseResult &result, char *pRowBuffer);
+};
+
+FENNEL_END_NAMESPACE
+
+#endif
+
+// End FlatFileParallelReader.h
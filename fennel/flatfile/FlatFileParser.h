@@ -437,13 +437,6 @@ class FENNEL_FLATFILE_EXPORT FlatFileParser
         int size,
         bool search);
 
-    /**
-     * Determines whether or not character is a row delimiter. If the row
-     * delimiter is any of the line characters (/r or /n), then it must be
-     * encoded as newline (/n) and it matches any other line character.
-     */
-    bool isRowDelim(char c);
-
 public:
     /**
      * Constructs a FlatFileParser. See FlatFileExecStreamParams for more
@@ -467,6 +460,13 @@ public:
         const char escape,
         bool doTrim = false);
 
+    /**
+     * Determines whether or not character is a row delimiter. If the row
+     * delimiter is any of the line characters (/r or /n), then it must be
+     * encoded as newline (/n) and it matches any other line character.
+     */
+    bool isRowDelim(char c);
+
     /**
      * Scans through buffer until the end of a row is reached, and locates
      * columns within the row. The main options are a "bounded", "lenient",
@@ -73,11 +73,13 @@ public:
         FENNEL_UNIT_TEST_CASE(FlatFileExecStreamTest, testBuffer);
         FENNEL_UNIT_TEST_CASE(FlatFileExecStreamTest, testParser);
         FENNEL_UNIT_TEST_CASE(FlatFileExecStreamTest, testStream);
+        FENNEL_UNIT_TEST_CASE(FlatFileExecStreamTest, testParallelStream);
     }
 
     void testBuffer();
     void testParser();
     void testStream();
+    void testParallelStream();
 };
 
 void FlatFileExecStreamTest::testBuffer()
@@ -241,6 +243,49 @@ void FlatFileExecStreamTest::testStream()
     verifyStringOutput(*pOutputStream, 3, expected);
 }
 
+void FlatFileExecStreamTest::testParallelStream()
+{
+    StandardTypeDescriptorFactory stdTypeFactory;
+    TupleAttributeDescriptor attrDesc(
+        stdTypeFactory.newDataType(STANDARD_TYPE_VARCHAR),
+        false,
+        32);
+
+    FlatFileExecStreamParams flatfileParams;
+    flatfileParams.scratchAccessor =
+        pSegmentFactory->newScratchSegment(pCache, 1);
+    flatfileParams.outputTupleDesc.push_back(attrDesc);
+    flatfileParams.outputTupleDesc.push_back(attrDesc);
+    flatfileParams.dataFilePath = "flatfile/parallel";
+    flatfileParams.fieldDelim = ',';
+    flatfileParams.rowDelim = '\n';
+    flatfileParams.quoteChar = '"';
+    flatfileParams.escapeChar = '\\';
+    flatfileParams.header = false;
+    flatfileParams.lenient = false;
+    flatfileParams.trim = false;
+    flatfileParams.mapped = false;
+    flatfileParams.mode = FLATFILE_MODE_QUERY_TEXT;
+
+    // Chunks much shorter than rows, some of which contain quoted row
+    // delimiters, so that most chunks start in the wrong place.
+    flatfileParams.parallelism = 3;
+    flatfileParams.chunkSize = 8;
+
+    ExecStreamEmbryo flatfileStreamEmbryo;
+    flatfileStreamEmbryo.init(
+        FlatFileExecStream::newFlatFileExecStream(), flatfileParams);
+    flatfileStreamEmbryo.getStream()->setName("FlatFileExecStream");
+
+    SharedExecStream pOutputStream = prepareSourceGraph(flatfileStreamEmbryo);
+    std::vector<std::string> expected;
+    expected.push_back("[ 'No one\ntravels', '1' ]");
+    expected.push_back("[ 'Along this way', '2' ]");
+    expected.push_back("[ 'but I,\nThis\nautumn', '3' ]");
+    expected.push_back("[ 'evening.', '4' ]");
+    verifyStringOutput(*pOutputStream, 4, expected);
+}
+
 FENNEL_UNIT_TEST_SUITE(FlatFileExecStreamTest);
 
 // End FlatFileExecStreamTest.cpp
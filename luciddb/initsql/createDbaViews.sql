@@ -929,3 +929,27 @@ returns integer
 language java
 no sql
 external name 'class net.sf.farrago.syslib.FarragoManagementUDR.getCurrentSessionId';
+
+-- Registers a table populated with the result of an aggregate query, so that
+-- the optimizer may answer matching queries from it in sessions which set
+-- "materializedAggregates" to true; call again after repopulating the
+-- table, since any DML on it or on the tables the query reads makes the
+-- registration stale
+create or replace procedure register_materialized_aggregate(
+    in schema_name varchar(128),
+    in table_name varchar(128),
+    in query varchar(65535))
+language java
+parameter style java
+modifies sql data
+external name
+'class org.luciddb.optimizer.LoptMaterializedAggregate.registerMaterializedAggregate';
+
+create or replace procedure unregister_materialized_aggregate(
+    in schema_name varchar(128),
+    in table_name varchar(128))
+language java
+parameter style java
+modifies sql data
+external name
+'class org.luciddb.optimizer.LoptMaterializedAggregate.unregisterMaterializedAggregate';
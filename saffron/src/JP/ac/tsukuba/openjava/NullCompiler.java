@@ -26,6 +26,16 @@ public class NullCompiler implements JavaCompiler
     {
         return 0;
     }
+
+    public java.util.Map<String, byte []> getByteCodes()
+    {
+        return null;
+    }
+
+    public JavaCompiler forkCompiler()
+    {
+        return null;
+    }
     
 	public void compile() {
 	}
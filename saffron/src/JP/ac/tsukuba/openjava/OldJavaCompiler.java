@@ -28,6 +28,16 @@ public class OldJavaCompiler implements JavaCompiler
     {
         return 0;
     }
+
+    public java.util.Map<String, byte []> getByteCodes()
+    {
+        return null;
+    }
+
+    public JavaCompiler forkCompiler()
+    {
+        return null;
+    }
     
 	public JavaCompilerArgs getArgs() {
 		return args;
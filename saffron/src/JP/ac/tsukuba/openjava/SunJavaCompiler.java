@@ -51,6 +51,16 @@ public class SunJavaCompiler implements JavaCompiler
     {
         return 0;
     }
+
+    public java.util.Map<String, byte []> getByteCodes()
+    {
+        return null;
+    }
+
+    public JavaCompiler forkCompiler()
+    {
+        return null;
+    }
     
 	public void compile() {
 		compile(args.getStringArray());